@@ -10,6 +10,7 @@ import claw.tatsu.common.Target;
 import claw.tatsu.xcodeml.backend.OmniBackendDriver;
 import claw.wani.ClawConstant;
 import claw.wani.report.ClawTransformationReport;
+import claw.wani.report.PhaseTimes;
 import claw.wani.x2t.configuration.Configuration;
 import claw.wani.x2t.translator.ClawTranslatorDriver;
 import org.apache.commons.cli.*;
@@ -25,6 +26,8 @@ import java.io.File;
 public class ClawX2T {
 
   private static final String ERR_INTERNAL = "internal";
+  // Fraction of the heap above which cached modules are evicted
+  private static final double MEMORY_PRESSURE = 0.75;
 
   /**
    * Print an error message an abort.
@@ -130,6 +133,20 @@ public class ClawX2T {
     options.addOption("ap", "add-paren", false,
         "Force backend to add parenthesis in binary mathematical binary " +
             "operation.");
+    options.addOption("i", "instrument", false,
+        "surround the parallel regions with calls to the claw_timing " +
+            "module.");
+    options.addOption("cg", "call-graph", true,
+        "specify the call graph index file shared by the translation units.");
+    options.addOption("cc", "config-cache", true,
+        "specify the directory of the configuration snapshots.");
+    options.addOption("mb", "memory-bounded", false,
+        "release the memory of the finished function definitions and of " +
+            "the cached modules during the translation.");
+    options.addOption("pt", "phase-times", true,
+        "append the wall time of each translation phase to the given file.");
+    options.addOption("bx", "binary-xcodeml", false,
+        "write the transformed XcodeML output file in the binary format.");
     return options;
   }
 
@@ -242,6 +259,11 @@ public class ClawX2T {
       }
     }
 
+    // Configuration snapshot directory
+    if(cmd.hasOption("cc")) {
+      Configuration.get().setSnapshotDirectory(cmd.getOptionValue("cc"));
+    }
+
     // --show-configuration option
     if(cmd.hasOption("sc")) {
       Configuration.get().load(configurationPath, configurationFile,
@@ -273,6 +295,18 @@ public class ClawX2T {
       }
     }
 
+    // Call graph index option
+    if(cmd.hasOption("cg")) {
+      Context.get().setCallGraphFile(cmd.getOptionValue("cg"));
+    }
+
+    // Memory-bounded option
+    if(cmd.hasOption("mb")) {
+      Context.get().setMemoryBounded(true);
+      Context.get().getModuleCache().enableEviction(ClawConstant.INDENT_OUTPUT,
+          MEMORY_PRESSURE);
+    }
+
     // Override some configuration value.
     if(cmd.hasOption("x")) {
       for(String keyValue : cmd.getOptionValues("x")) {
@@ -287,20 +321,33 @@ public class ClawX2T {
       Configuration.get().setForcePure();
     }
 
+    // Instrumentation option
+    if(cmd.hasOption("i")) {
+      Configuration.get().overrideConfigurationParameter(
+          Configuration.INSTRUMENTATION, "true");
+    }
+
     // Add parenthesis option
     if(cmd.hasOption("ap")) {
       XmOption.setAddPar(true);
     }
 
+    PhaseTimes phaseTimes = new PhaseTimes();
+    phaseTimes.start("analyze");
     ClawTranslatorDriver translatorDriver =
         new ClawTranslatorDriver(input, xcmlOutput);
+    translatorDriver.setBinaryOutput(cmd.hasOption("bx"));
 
     translatorDriver.analyze();
+    phaseTimes.start("transform");
     translatorDriver.transform();
+    phaseTimes.start("flush");
     translatorDriver.flush();
+    phaseTimes.stop();
 
     // Produce report (unless we've used the Python driver)
     if(cmd.hasOption("r")) {
+      translatorDriver.getTranslationUnit().restoreSpilled();
       ClawTransformationReport report =
           new ClawTransformationReport(cmd.getOptionValue("r"));
       report.generate(args, translatorDriver);
@@ -316,6 +363,7 @@ public class ClawX2T {
       backend = new OmniBackendDriver(OmniBackendDriver.Lang.FORTRAN);
     }
 
+    phaseTimes.start("decompile");
     if(xcmlOutput == null) { // XcodeML output not written to file. Use pipe.
       if(!backend.decompile(targetLangOutput,
           translatorDriver.getTranslationUnit(), maxColumns,
@@ -330,5 +378,10 @@ public class ClawX2T {
         error(xcmlOutput, 0, 0, "Unable to decompile XcodeML to Fortran");
       }
     }
+
+    // Phase times option
+    if(cmd.hasOption("pt")) {
+      phaseTimes.write(cmd.getOptionValue("pt"), input);
+    }
   }
 }
@@ -0,0 +1,180 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw;
+
+import claw.tatsu.xcodeml.xnode.XnodeUtil;
+import claw.tatsu.xcodeml.xnode.common.BinaryXcodeML;
+import claw.wani.ClawConstant;
+import org.apache.commons.cli.*;
+import org.w3c.dom.Document;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * ClawXcodeMLConverter converts XcodeML files between the textual format used
+ * by the OMNI Compiler tools and the binary format read and written by the
+ * translator.
+ *
+ * @author clementval
+ */
+public class ClawXcodeMLConverter {
+
+  // Reads of each format when measuring the read time, best one is kept
+  private static final int STATS_ROUNDS = 10;
+
+  /**
+   * Print an error message an abort.
+   *
+   * @param msg Error message.
+   */
+  private static void error(String msg) {
+    System.err.println("xcodeml-convert:" + msg);
+    System.exit(1);
+  }
+
+  /**
+   * Print program usage.
+   */
+  private static void usage() {
+    HelpFormatter formatter = new HelpFormatter();
+    formatter.printHelp("xcodeml-convert [options] <input>", prepareOptions());
+    System.exit(1);
+  }
+
+  /**
+   * Prepare the set of available options.
+   *
+   * @return Options object.
+   */
+  private static Options prepareOptions() {
+    Options options = new Options();
+    options.addOption("h", "help", false,
+        "display program usage.");
+    options.addOption("o", true,
+        "specify the output file. Standard output if not given.");
+    options.addOption("b", "binary", false,
+        "convert to the binary format. Default for a textual input.");
+    options.addOption("x", "xml", false,
+        "convert to the textual format. Default for a binary input.");
+    options.addOption("s", "stats", false,
+        "print the size and read time of both formats. Requires -o.");
+    return options;
+  }
+
+  /**
+   * Main point of entry of the program.
+   *
+   * @param args Arguments of the program.
+   * @throws Exception if conversion failed.
+   */
+  public static void main(String[] args) throws Exception {
+    CommandLine cmd;
+    try {
+      cmd = new DefaultParser().parse(prepareOptions(), args);
+    } catch(ParseException pex) {
+      error(pex.getMessage());
+      return;
+    }
+    if(cmd.hasOption("h") || cmd.getArgs().length != 1
+        || (cmd.hasOption("b") && cmd.hasOption("x")))
+    {
+      usage();
+      return;
+    }
+    if(cmd.hasOption("s") && !cmd.hasOption("o")) {
+      error("statistics require an output file");
+      return;
+    }
+
+    Path input = Paths.get(cmd.getArgs()[0]);
+    boolean binaryInput = BinaryXcodeML.isBinary(input);
+    boolean toBinary = cmd.hasOption("b") || !(cmd.hasOption("x")
+        || binaryInput);
+    if(toBinary == binaryInput) {
+      error(input + " is already in the requested format");
+      return;
+    }
+
+    Document doc = XnodeUtil.readXmlFile(input.toString());
+    if(doc == null) {
+      error("unable to read " + input);
+      return;
+    }
+
+    String output = cmd.getOptionValue("o");
+    try(OutputStream out = output == null ? System.out
+        : Files.newOutputStream(Paths.get(output)))
+    {
+      if(toBinary) {
+        BinaryXcodeML.write(doc, out);
+      } else {
+        BinaryXcodeML.writeXml(doc, out, ClawConstant.INDENT_OUTPUT);
+      }
+    } catch(IOException e) {
+      error("unable to write " + (output == null ? "output" : output));
+      return;
+    }
+
+    if(cmd.hasOption("s")) {
+      Path binary = toBinary ? Paths.get(output) : input;
+      Path xml = toBinary ? input : Paths.get(output);
+      printStats(xml, binary);
+    }
+  }
+
+  /**
+   * Print the size and the read time of the two formats of a document.
+   *
+   * @param xml    Textual XcodeML file.
+   * @param binary Binary XcodeML file.
+   * @throws IOException If a file cannot be read.
+   */
+  private static void printStats(Path xml, Path binary) throws IOException {
+    long xmlSize = Files.size(xml);
+    long binarySize = Files.size(binary);
+    double xmlTime = readTime(xml);
+    double binaryTime = readTime(binary);
+    System.err.printf("textual: %d bytes, read in %.1f ms (%.1f MB/s)%n",
+        xmlSize, xmlTime, throughput(xmlSize, xmlTime));
+    System.err.printf("binary:  %d bytes, read in %.1f ms (%.1f MB/s)%n",
+        binarySize, binaryTime, throughput(binarySize, binaryTime));
+    System.err.printf("binary/textual: size %.2f, read time %.2f%n",
+        (double) binarySize / xmlSize, binaryTime / xmlTime);
+  }
+
+  /**
+   * Get the best read time of a file over several reads.
+   *
+   * @param file Textual or binary XcodeML file.
+   * @return Read time in milliseconds.
+   * @throws IOException If the file cannot be read.
+   */
+  private static double readTime(Path file) throws IOException {
+    long best = Long.MAX_VALUE;
+    for(int i = 0; i < STATS_ROUNDS; ++i) {
+      long start = System.nanoTime();
+      if(XnodeUtil.readXmlFile(file.toString()) == null) {
+        throw new IOException("Unable to read " + file);
+      }
+      best = Math.min(best, System.nanoTime() - start);
+    }
+    return best / 1e6;
+  }
+
+  /**
+   * Compute a read throughput.
+   *
+   * @param size Size in bytes.
+   * @param time Time in milliseconds.
+   * @return Throughput in megabytes per second.
+   */
+  private static double throughput(long size, double time) {
+    return time > 0 ? size / (time * 1e3) : 0;
+  }
+}
@@ -0,0 +1,30 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.shenron.analysis;
+
+import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
+import claw.tatsu.xcodeml.xnode.fortran.FfunctionDefinition;
+
+/**
+ * An Analysis computes information about a function definition. Its result is
+ * cached by the AnalysisManager until a transformation that does not preserve
+ * it is applied. Therefore, the result must only depend on the function
+ * definition and must not be modified by its users.
+ *
+ * @param <T> Type of the analysis result.
+ * @author clementval
+ * @see AnalysisManager
+ */
+public interface Analysis<T> {
+
+  /**
+   * Compute the analysis for a function definition.
+   *
+   * @param xcodeml Current translation unit.
+   * @param fctDef  Function definition to be analyzed.
+   * @return Result of the analysis.
+   */
+  T compute(XcodeProgram xcodeml, FfunctionDefinition fctDef);
+}
@@ -0,0 +1,150 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.shenron.analysis;
+
+import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
+import claw.tatsu.xcodeml.xnode.fortran.FfunctionDefinition;
+
+import java.util.*;
+
+/**
+ * The AnalysisManager computes the registered analyses lazily for each
+ * function definition and caches their results. Analyses are registered and
+ * requested by their class.
+ *
+ * After a transformation is applied, the cached results are invalidated
+ * except the ones of the analyses the transformation declares to preserve.
+ * A transformation that queries an analysis after modifying the function
+ * definition it analyzes must invalidate it first.
+ *
+ * @author clementval
+ * @see claw.shenron.transformation.Transformation#getPreservedAnalyses()
+ */
+public class AnalysisManager {
+
+  private final Map<Class<?>, Analysis<?>> _analyses;
+  private final Map<FfunctionDefinition, Map<Class<?>, Object>> _cache;
+  private final Map<Class<?>, Integer> _hits;
+  private final Map<Class<?>, Integer> _misses;
+
+  /**
+   * Constructs a new analysis manager without analysis.
+   */
+  public AnalysisManager() {
+    _analyses = new LinkedHashMap<>();
+    _cache = new HashMap<>();
+    _hits = new HashMap<>();
+    _misses = new HashMap<>();
+  }
+
+  /**
+   * Register an analysis. An analysis already registered for the same class is
+   * replaced.
+   *
+   * @param analysis Analysis to be registered.
+   */
+  public void register(Analysis<?> analysis) {
+    _analyses.put(analysis.getClass(), analysis);
+    invalidateAll();
+  }
+
+  /**
+   * Get the classes of the registered analyses.
+   *
+   * @return Classes in registration order.
+   */
+  public Set<Class<?>> getAnalyses() {
+    return Collections.unmodifiableSet(_analyses.keySet());
+  }
+
+  /**
+   * Get the result of an analysis for a function definition. The analysis is
+   * computed if its result is not cached.
+   *
+   * @param type    Class of the analysis.
+   * @param xcodeml Current translation unit.
+   * @param fctDef  Function definition to be analyzed.
+   * @param <T>     Type of the analysis result.
+   * @return Result of the analysis.
+   * @throws IllegalArgumentException If the analysis is not registered.
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T get(Class<? extends Analysis<T>> type, XcodeProgram xcodeml,
+                   FfunctionDefinition fctDef)
+  {
+    Analysis<T> analysis = (Analysis<T>) _analyses.get(type);
+    if(analysis == null) {
+      throw new IllegalArgumentException("Analysis not registered: "
+          + type.getSimpleName());
+    }
+    Map<Class<?>, Object> results =
+        _cache.computeIfAbsent(fctDef, k -> new HashMap<>());
+    if(results.containsKey(type)) {
+      _hits.merge(type, 1, Integer::sum);
+      return (T) results.get(type);
+    }
+    _misses.merge(type, 1, Integer::sum);
+    T result = analysis.compute(xcodeml, fctDef);
+    results.put(type, result);
+    return result;
+  }
+
+  /**
+   * Invalidate all the cached results of a function definition.
+   *
+   * @param fctDef Function definition modified.
+   */
+  public void invalidate(FfunctionDefinition fctDef) {
+    _cache.remove(fctDef);
+  }
+
+  /**
+   * Invalidate the cached results of all the function definitions except the
+   * ones of the preserved analyses.
+   *
+   * @param preserved Classes of the analyses still valid.
+   */
+  public void invalidate(Set<Class<? extends Analysis<?>>> preserved) {
+    if(preserved.isEmpty()) {
+      invalidateAll();
+      return;
+    }
+    Iterator<Map<Class<?>, Object>> it = _cache.values().iterator();
+    while(it.hasNext()) {
+      Map<Class<?>, Object> results = it.next();
+      results.keySet().retainAll(preserved);
+      if(results.isEmpty()) {
+        it.remove();
+      }
+    }
+  }
+
+  /**
+   * Invalidate all the cached results.
+   */
+  public void invalidateAll() {
+    _cache.clear();
+  }
+
+  /**
+   * Get the number of requests of an analysis answered from the cache.
+   *
+   * @param type Class of the analysis.
+   * @return Number of cache hits.
+   */
+  public int getHits(Class<?> type) {
+    return _hits.getOrDefault(type, 0);
+  }
+
+  /**
+   * Get the number of requests of an analysis that computed it.
+   *
+   * @param type Class of the analysis.
+   * @return Number of cache misses.
+   */
+  public int getMisses(Class<?> type) {
+    return _misses.getOrDefault(type, 0);
+  }
+}
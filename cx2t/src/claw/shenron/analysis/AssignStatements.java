@@ -0,0 +1,27 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.shenron.analysis;
+
+import claw.tatsu.xcodeml.abstraction.AssignStatement;
+import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
+import claw.tatsu.xcodeml.xnode.fortran.FfunctionDefinition;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Assignment statements of a function definition in AST order.
+ *
+ * @author clementval
+ */
+public class AssignStatements implements Analysis<List<AssignStatement>> {
+
+  @Override
+  public List<AssignStatement> compute(XcodeProgram xcodeml,
+                                       FfunctionDefinition fctDef)
+  {
+    return Collections.unmodifiableList(fctDef.gatherAssignStatements());
+  }
+}
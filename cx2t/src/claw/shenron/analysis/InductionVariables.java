@@ -0,0 +1,26 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.shenron.analysis;
+
+import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
+import claw.tatsu.xcodeml.xnode.fortran.FfunctionDefinition;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Induction variables of the do statements of a function definition.
+ *
+ * @author clementval
+ */
+public class InductionVariables implements Analysis<Set<String>> {
+
+  @Override
+  public Set<String> compute(XcodeProgram xcodeml,
+                             FfunctionDefinition fctDef)
+  {
+    return Collections.unmodifiableSet(fctDef.detectInductionVariables());
+  }
+}
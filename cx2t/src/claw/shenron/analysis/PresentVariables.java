@@ -0,0 +1,27 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.shenron.analysis;
+
+import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
+import claw.tatsu.xcodeml.xnode.fortran.FfunctionDefinition;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Variables of a function definition that are input/output parameters.
+ *
+ * @author clementval
+ */
+public class PresentVariables implements Analysis<List<String>> {
+
+  @Override
+  public List<String> compute(XcodeProgram xcodeml,
+                              FfunctionDefinition fctDef)
+  {
+    return Collections.unmodifiableList(
+        fctDef.getPresentVariables(xcodeml));
+  }
+}
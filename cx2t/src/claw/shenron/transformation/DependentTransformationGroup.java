@@ -46,6 +46,7 @@ public class DependentTransformationGroup extends TransformationGroup {
         if(base.canBeTransformedWith(xcodeml, candidate)) {
           try {
             base.transform(xcodeml, translator, candidate);
+            invalidateAnalyses(translator, base);
             if(candidate.isTransformed()) {
               incrementAppliedTransformation();
             }
@@ -35,6 +35,7 @@ public class IndependentTransformationGroup extends TransformationGroup {
     for(Transformation trans : getTransformations()) {
       try {
         trans.transform(xcodeml, translator, null);
+        invalidateAnalyses(translator, trans);
         if(trans.isTransformed()) {
           incrementAppliedTransformation();
         }
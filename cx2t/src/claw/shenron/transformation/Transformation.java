@@ -4,10 +4,16 @@
  */
 package claw.shenron.transformation;
 
+import claw.shenron.analysis.Analysis;
 import claw.shenron.translator.AnalyzedPragma;
 import claw.shenron.translator.Translator;
 import claw.tatsu.xcodeml.exception.IllegalTransformationException;
 import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
+import claw.tatsu.xcodeml.xnode.fortran.FfunctionDefinition;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
 
 /**
  * A Transformation is an object capable of analyzing a possible code
@@ -79,6 +85,34 @@ public abstract class Transformation {
     return true;
   }
 
+  /**
+   * Get the analyses whose cached results are still valid after the
+   * transformation is applied. Default behavior is to preserve none.
+   *
+   * @return Set of analysis classes.
+   * @see claw.shenron.analysis.AnalysisManager
+   */
+  public Set<Class<? extends Analysis<?>>> getPreservedAnalyses() {
+    return Collections.emptySet();
+  }
+
+  /**
+   * Get the function definitions the transformation can read or modify when
+   * it is applied, besides the functions they call. Default behavior is the
+   * function definition in which the directive is located.
+   *
+   * @param xcodeml The XcodeML on which the transformations are applied.
+   * @return Function definitions. Null if the transformation can touch any
+   * function definition of the translation unit.
+   */
+  public List<FfunctionDefinition> getTouchedFunctions(XcodeProgram xcodeml) {
+    if(_directive == null || _directive.getPragma() == null) {
+      return null;
+    }
+    FfunctionDefinition fctDef = _directive.getPragma().findParentFunction();
+    return fctDef == null ? null : Collections.singletonList(fctDef);
+  }
+
   /**
    * Apply the actual transformation.
    *
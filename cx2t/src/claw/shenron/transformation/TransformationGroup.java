@@ -24,6 +24,7 @@ public abstract class TransformationGroup {
   private final String _name;
   private List<Transformation> _transformations;
   private int _appliedTransformation;
+  private int _releasedTransformation;
 
   /**
    * TransformationGroup ctor.
@@ -41,7 +42,7 @@ public abstract class TransformationGroup {
    * @return The number of transformation in the group.
    */
   public int count() {
-    return _transformations.size();
+    return _transformations.size() + _releasedTransformation;
   }
 
   /**
@@ -98,6 +99,31 @@ public abstract class TransformationGroup {
     ++_appliedTransformation;
   }
 
+  /**
+   * Drop the applied transformations so the nodes they refer to can be
+   * released. The transformation counters are kept.
+   */
+  public void releaseTransformations() {
+    _releasedTransformation += _transformations.size();
+    _transformations = new ArrayList<>();
+  }
+
+  /**
+   * Invalidate the cached analyses of the translator not preserved by an
+   * applied transformation.
+   *
+   * @param translator     The translator used to applied the transformation.
+   * @param transformation The transformation just applied.
+   */
+  protected void invalidateAnalyses(Translator translator,
+                                    Transformation transformation)
+  {
+    if(translator != null && translator.getAnalysisManager() != null) {
+      translator.getAnalysisManager()
+          .invalidate(transformation.getPreservedAnalyses());
+    }
+  }
+
   /**
    * Apply all transformation stored in this group. Method transform from each
    * transformation is called.
@@ -4,6 +4,7 @@
  */
 package claw.shenron.translator;
 
+import claw.shenron.analysis.AnalysisManager;
 import claw.shenron.transformation.Transformation;
 import claw.shenron.transformation.TransformationGroup;
 import claw.tatsu.xcodeml.exception.IllegalDirectiveException;
@@ -70,6 +71,14 @@ public interface Translator {
    */
   Map<Class, TransformationGroup> getGroups();
 
+  /**
+   * Get the analysis manager caching the analyses of the function definitions
+   * for the transformations.
+   *
+   * @return The analysis manager.
+   */
+  AnalysisManager getAnalysisManager();
+
   /**
    * Get the next transformation counter value.
    *
@@ -0,0 +1,552 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.analysis.cost;
+
+import claw.tatsu.common.CompilerDirective;
+import claw.tatsu.xcodeml.abstraction.AssignStatement;
+import claw.tatsu.xcodeml.abstraction.FunctionCall;
+import claw.tatsu.xcodeml.xnode.XnodeUtil;
+import claw.tatsu.xcodeml.xnode.common.Xattr;
+import claw.tatsu.xcodeml.xnode.common.Xcode;
+import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
+import claw.tatsu.xcodeml.xnode.common.Xnode;
+import claw.tatsu.xcodeml.xnode.fortran.FbasicType;
+import claw.tatsu.xcodeml.xnode.fortran.FfunctionDefinition;
+import claw.tatsu.xcodeml.xnode.fortran.FortranType;
+import claw.tatsu.xcodeml.xnode.fortran.Xintrinsic;
+
+import java.util.*;
+
+/**
+ * Static cost model of a kernel. A kernel is an outermost do statement of an
+ * accelerator compute region, i.e. an OpenACC parallel, kernels or serial
+ * construct or an OpenMP target construct. The model estimates per iteration
+ * of the loop nest:
+ * <ul>
+ * <li> The bytes loaded: one element per distinct array reference read.
+ * <li> The bytes stored: one element per distinct array reference written.
+ * <li> The floating-point operations of the right hand side of the
+ * assignments. Each arithmetic operator and each arithmetic intrinsic call
+ * counts as one operation.
+ * </ul>
+ *
+ * Scalars are assumed to stay in registers and all the statements are counted
+ * as if executed at each iteration. The element size is computed from the
+ * kind of the type when it is an integer constant. Named kinds are assumed to
+ * be double precision.
+ *
+ * @author clementval
+ */
+public class KernelCost {
+
+  private static final int DEFAULT_KIND_SIZE = 4;
+  private static final int NAMED_KIND_SIZE = 8;
+
+  private static final Set<String> ACC_COMPUTE_CONSTRUCTS = new HashSet<>(
+      Arrays.asList("parallel", "kernels", "serial"));
+  private static final String OMP_COMPUTE_CONSTRUCT = "target";
+  private static final Set<String> OMP_DATA_CONSTRUCTS = new HashSet<>(
+      Arrays.asList("data", "enter", "exit", "update"));
+  private static final Set<String> LOOP_CONSTRUCTS = new HashSet<>(
+      Arrays.asList("loop", "do", "distribute", "simd"));
+  private static final String END = "end";
+
+  private static final Set<Xcode> FLOP_OPERATORS = EnumSet.of(Xcode.PLUS_EXPR,
+      Xcode.MINUS_EXPR, Xcode.MUL_EXPR, Xcode.DIV_EXPR, Xcode.F_POWER_EXPR,
+      Xcode.UNARY_MINUS_EXPR);
+
+  private static final Set<Xintrinsic> FLOP_INTRINSICS = EnumSet.of(
+      Xintrinsic.ABS, Xintrinsic.AINT, Xintrinsic.ANINT, Xintrinsic.DIM,
+      Xintrinsic.MAX, Xintrinsic.MIN, Xintrinsic.MOD, Xintrinsic.MODULO,
+      Xintrinsic.SIGN, Xintrinsic.SQRT, Xintrinsic.EXP, Xintrinsic.LOG,
+      Xintrinsic.LOG10, Xintrinsic.SIN, Xintrinsic.COS, Xintrinsic.TAN,
+      Xintrinsic.ASIN, Xintrinsic.ATAN, Xintrinsic.ATAN2, Xintrinsic.SINH,
+      Xintrinsic.COSH, Xintrinsic.TANH, Xintrinsic.HYPOT, Xintrinsic.ERF,
+      Xintrinsic.ERFC, Xintrinsic.GAMMA);
+
+  private final XcodeProgram _xcodeml;
+  private final String _name;
+  private final int _lineNo;
+  private long _iterations;
+  private long _loadedBytes;
+  private long _storedBytes;
+  private long _flops;
+
+  /**
+   * Constructs and run the cost model of a kernel.
+   *
+   * @param xcodeml    Current translation unit.
+   * @param name       Name of the kernel used in the report.
+   * @param kernel     Outermost do statement of the kernel.
+   * @param tripCounts Expected number of iterations of loops whose bounds are
+   *                   not constant. Keys are lower case induction variables.
+   */
+  public KernelCost(XcodeProgram xcodeml, String name, Xnode kernel,
+                    Map<String, Integer> tripCounts)
+  {
+    _xcodeml = xcodeml;
+    _name = name;
+    _lineNo = kernel.lineNo();
+    computeIterations(kernel, tripCounts);
+    computeBytes(kernel);
+    computeFlops(kernel);
+  }
+
+  /**
+   * Run the cost model on all the kernels of the translation unit.
+   *
+   * @param xcodeml    Current translation unit.
+   * @param tripCounts Expected number of iterations of loops whose bounds are
+   *                   not constant. Keys are lower case induction variables.
+   * @return Cost of each kernel named after its function and its position in
+   * the function. Empty if the translation unit has no compute region.
+   */
+  public static List<KernelCost> analyze(XcodeProgram xcodeml,
+                                         Map<String, Integer> tripCounts)
+  {
+    List<KernelCost> costs = new ArrayList<>();
+    for(FfunctionDefinition fctDef : xcodeml.getAllFctDef()) {
+      List<Xnode> kernels = new ArrayList<>();
+      findKernels(fctDef.body(), false, kernels);
+      int index = 1;
+      for(Xnode doStmt : kernels) {
+        costs.add(new KernelCost(xcodeml, String.format("%s#%d",
+            fctDef.getName(), index++), doStmt, tripCounts));
+      }
+    }
+    return costs;
+  }
+
+  /**
+   * Find the outermost do statements of the compute regions in a block and
+   * its nested blocks. Regions start and end with pragma statements of the
+   * same block. A combined construct, e.g. acc parallel loop, only applies to
+   * the do statement following it.
+   *
+   * @param block    Body node.
+   * @param inRegion True if the block is inside a compute region.
+   * @param kernels  List to which the kernels are added in document order.
+   */
+  private static void findKernels(Xnode block, boolean inRegion,
+                                  List<Xnode> kernels)
+  {
+    int depth = inRegion ? 1 : 0;
+    boolean combined = false;
+    for(Xnode stmt : block.children()) {
+      if(stmt.is(Xcode.F_PRAGMA_STATEMENT)) {
+        switch(getComputeDirective(stmt.value())) {
+          case START:
+            ++depth;
+            break;
+          case COMBINED:
+            combined = true;
+            break;
+          case END:
+            depth = Math.max(inRegion ? 1 : 0, depth - 1);
+            break;
+          default:
+            break;
+        }
+        continue;
+      }
+      if(stmt.is(Xcode.F_DO_STATEMENT) && (depth > 0 || combined)) {
+        kernels.add(stmt);
+      } else {
+        for(Xnode nested : getNestedBlocks(stmt)) {
+          findKernels(nested, depth > 0 || combined, kernels);
+        }
+      }
+      combined = false;
+    }
+  }
+
+  /**
+   * Get the blocks nested in a statement.
+   *
+   * @param node Statement or part of a statement.
+   * @return Outermost body nodes of the node in document order.
+   */
+  private static List<Xnode> getNestedBlocks(Xnode node) {
+    List<Xnode> blocks = new ArrayList<>();
+    for(Xnode child : node.children()) {
+      if(child.is(Xcode.BODY)) {
+        blocks.add(child);
+      } else {
+        blocks.addAll(getNestedBlocks(child));
+      }
+    }
+    return blocks;
+  }
+
+  /**
+   * Recognize the directives starting or ending a compute region.
+   *
+   * @param directive Value of a pragma statement.
+   * @return Kind of the directive regarding compute regions.
+   */
+  private static ComputeDirective getComputeDirective(String directive) {
+    // Construct names come first and have no argument
+    List<String> construct = new ArrayList<>();
+    for(String token : directive.trim().toLowerCase().split("\\s+")) {
+      if(token.contains("(")) {
+        break;
+      }
+      construct.add(token);
+    }
+    if(construct.size() < 2) {
+      return ComputeDirective.OTHER;
+    }
+    CompilerDirective language = CompilerDirective.fromString(construct.get(0));
+    boolean end = construct.get(1).equals(END);
+    List<String> names = construct.subList(end ? 2 : 1, construct.size());
+    if(names.isEmpty()) {
+      return ComputeDirective.OTHER;
+    }
+    boolean compute;
+    if(language == CompilerDirective.OPENACC) {
+      compute = ACC_COMPUTE_CONSTRUCTS.contains(names.get(0));
+    } else if(language == CompilerDirective.OPENMP) {
+      compute = names.get(0).equals(OMP_COMPUTE_CONSTRUCT)
+          && (names.size() == 1 || !OMP_DATA_CONSTRUCTS.contains(names.get(1)));
+    } else {
+      return ComputeDirective.OTHER;
+    }
+    if(!compute) {
+      return ComputeDirective.OTHER;
+    }
+    boolean loop = names.stream().anyMatch(LOOP_CONSTRUCTS::contains);
+    if(end) {
+      // End of a combined construct follows its do statement
+      return loop ? ComputeDirective.OTHER : ComputeDirective.END;
+    }
+    return loop ? ComputeDirective.COMBINED : ComputeDirective.START;
+  }
+
+  /**
+   * Get the name of the kernel.
+   *
+   * @return Name given to the kernel.
+   */
+  public String getName() {
+    return _name;
+  }
+
+  /**
+   * Get the line of the kernel in the original code.
+   *
+   * @return Line number of the outermost do statement.
+   */
+  public int getLineNo() {
+    return _lineNo;
+  }
+
+  /**
+   * Get the number of iterations of the perfectly nested loops of the kernel.
+   *
+   * @return Number of iterations. 0 if unknown.
+   */
+  public long getIterations() {
+    return _iterations;
+  }
+
+  /**
+   * Get the bytes loaded per iteration.
+   *
+   * @return Estimated number of bytes loaded.
+   */
+  public long getLoadedBytes() {
+    return _loadedBytes;
+  }
+
+  /**
+   * Get the bytes stored per iteration.
+   *
+   * @return Estimated number of bytes stored.
+   */
+  public long getStoredBytes() {
+    return _storedBytes;
+  }
+
+  /**
+   * Get the floating-point operations per iteration.
+   *
+   * @return Estimated number of floating-point operations.
+   */
+  public long getFlops() {
+    return _flops;
+  }
+
+  /**
+   * Get the arithmetic intensity of the kernel.
+   *
+   * @return Floating-point operations per byte loaded or stored. 0 if the
+   * kernel does not access memory.
+   */
+  public double getArithmeticIntensity() {
+    long bytes = _loadedBytes + _storedBytes;
+    return bytes == 0 ? 0 : (double) _flops / bytes;
+  }
+
+  /**
+   * Check whether the kernel is limited by the memory bandwidth on a machine.
+   *
+   * @param machineBalance Floating-point operations the machine performs per
+   *                       byte transferred from memory.
+   * @return True if the arithmetic intensity is below the machine balance.
+   */
+  public boolean isMemoryBound(double machineBalance) {
+    return _loadedBytes + _storedBytes > 0
+        && getArithmeticIntensity() < machineBalance;
+  }
+
+  /**
+   * Get the estimated cost of an iteration expressed in floating-point
+   * operations. Memory accesses are converted with the machine balance.
+   *
+   * @param machineBalance Floating-point operations the machine performs per
+   *                       byte transferred from memory.
+   * @return Maximum of the floating-point operations and the converted bytes.
+   */
+  public double getCost(double machineBalance) {
+    return Math.max((double) _flops,
+        (_loadedBytes + _storedBytes) * machineBalance);
+  }
+
+  /**
+   * Get the estimated cost of all the iterations of the kernel expressed in
+   * floating-point operations.
+   *
+   * @param machineBalance Floating-point operations the machine performs per
+   *                       byte transferred from memory.
+   * @return Cost of an iteration times the number of iterations. 0 if the
+   * number of iterations is unknown.
+   */
+  public double getTotalCost(double machineBalance) {
+    return getCost(machineBalance) * _iterations;
+  }
+
+  /**
+   * Compute the number of iterations of the perfectly nested loops.
+   *
+   * @param kernel     Outermost do statement of the kernel.
+   * @param tripCounts Expected number of iterations of non constant loops.
+   */
+  private void computeIterations(Xnode kernel,
+                                 Map<String, Integer> tripCounts)
+  {
+    _iterations = 1;
+    Xnode doStmt = kernel;
+    while(doStmt != null) {
+      long tripCount = getTripCount(doStmt, tripCounts);
+      if(tripCount <= 0) {
+        _iterations = 0;
+        return;
+      }
+      _iterations *= tripCount;
+      Xnode body = doStmt.body();
+      doStmt = body != null && body.children().size() == 1
+          && body.firstChild().is(Xcode.F_DO_STATEMENT)
+          ? body.firstChild() : null;
+    }
+  }
+
+  /**
+   * Get the number of iterations of a do statement.
+   *
+   * @param doStmt     Do statement node.
+   * @param tripCounts Expected number of iterations of non constant loops.
+   * @return Number of iterations. 0 if unknown.
+   */
+  private long getTripCount(Xnode doStmt, Map<String, Integer> tripCounts) {
+    Xnode var = doStmt.matchDirectDescendant(Xcode.VAR);
+    Xnode range = doStmt.matchDirectDescendant(Xcode.INDEX_RANGE);
+    if(var == null || range == null) {
+      return 0;
+    }
+    Long lower = getIntValue(range.matchDirectDescendant(Xcode.LOWER_BOUND));
+    Long upper = getIntValue(range.matchDirectDescendant(Xcode.UPPER_BOUND));
+    Xnode stepNode = range.matchDirectDescendant(Xcode.STEP);
+    Long step = stepNode == null ? Long.valueOf(1) : getIntValue(stepNode);
+    if(lower != null && upper != null && step != null && step > 0) {
+      return Math.max(0, (upper - lower) / step + 1);
+    }
+    return tripCounts.getOrDefault(var.value().toLowerCase(), 0);
+  }
+
+  /**
+   * Get the value of a bound node holding an integer constant.
+   *
+   * @param bound Lower bound, upper bound or step node.
+   * @return Value of the constant. Null if the bound is not an integer
+   * constant.
+   */
+  private Long getIntValue(Xnode bound) {
+    if(bound == null || !Xnode.isOfCode(bound.firstChild(),
+        Xcode.F_INT_CONSTANT))
+    {
+      return null;
+    }
+    try {
+      return Long.parseLong(bound.firstChild().value().trim());
+    } catch(NumberFormatException ignored) {
+      return null;
+    }
+  }
+
+  /**
+   * Compute the bytes loaded and stored per iteration.
+   *
+   * @param kernel Outermost do statement of the kernel.
+   */
+  private void computeBytes(Xnode kernel) {
+    // Map the array identifiers to the node holding their type
+    Map<String, Xnode> refs = new HashMap<>();
+    for(Xnode arrayRef : kernel.matchAll(Xcode.F_ARRAY_REF)) {
+      Xnode memberRef = arrayRef.matchAncestor(Xcode.F_MEMBER_REF);
+      Xnode ref = memberRef == null ? arrayRef : memberRef;
+      refs.putIfAbsent(ref.constructRepresentation(false, false), ref);
+    }
+    List<Xnode> region = Collections.singletonList(kernel);
+    for(String read : XnodeUtil.getReadArrays(region)) {
+      _loadedBytes += getElementSize(refs.get(read));
+    }
+    for(String written : XnodeUtil.getWrittenArrays(region)) {
+      _storedBytes += getElementSize(refs.get(written));
+    }
+  }
+
+  /**
+   * Compute the floating-point operations per iteration.
+   *
+   * @param kernel Outermost do statement of the kernel.
+   */
+  private void computeFlops(Xnode kernel) {
+    for(Xnode node : kernel.matchAll(Xcode.F_ASSIGN_STATEMENT)) {
+      Xnode rhs = new AssignStatement(node.element()).getRhs();
+      if(rhs == null) {
+        continue;
+      }
+      _flops += countFlops(rhs);
+    }
+  }
+
+  /**
+   * Count the floating-point operations of an expression and its
+   * sub-expressions.
+   *
+   * @param expr Expression node.
+   * @return Number of floating-point operations.
+   */
+  private long countFlops(Xnode expr) {
+    long flops = isFlop(expr) ? 1 : 0;
+    for(Xnode child : expr.matchAll(Xcode.FUNCTION_CALL)) {
+      flops += isFlop(child) ? 1 : 0;
+    }
+    for(Xcode opcode : FLOP_OPERATORS) {
+      for(Xnode child : expr.matchAll(opcode)) {
+        flops += isFlop(child) ? 1 : 0;
+      }
+    }
+    return flops;
+  }
+
+  /**
+   * Check whether a node is a floating-point operation.
+   *
+   * @param node Expression node.
+   * @return True if the node is an arithmetic operator or an arithmetic
+   * intrinsic call with a real or complex result.
+   */
+  private boolean isFlop(Xnode node) {
+    if(node.is(Xcode.FUNCTION_CALL)) {
+      FunctionCall fctCall = new FunctionCall(node);
+      if(FLOP_INTRINSICS.stream().noneMatch(fctCall::isIntrinsicCall)) {
+        return false;
+      }
+    } else if(!FLOP_OPERATORS.contains(node.opcode())) {
+      return false;
+    }
+    FortranType type = getIntrinsicType(node.getAttribute(Xattr.TYPE));
+    return type == FortranType.REAL || type == FortranType.COMPLEX;
+  }
+
+  /**
+   * Get the intrinsic type at the end of a type chain.
+   *
+   * @param type Type hash or built-in type.
+   * @return Intrinsic type. Null if the type cannot be resolved.
+   */
+  private FortranType getIntrinsicType(String type) {
+    while(type != null && !FortranType.isBuiltInType(type)) {
+      if(!_xcodeml.getTypeTable().isBasicType(type)) {
+        return null;
+      }
+      type = _xcodeml.getTypeTable().getBasicType(type).getRef();
+    }
+    return type == null ? null : FortranType.fromString(type);
+  }
+
+  /**
+   * Get the size in bytes of an element of the referenced array.
+   *
+   * @param ref Array or member reference node.
+   * @return Size in bytes of an element.
+   */
+  private int getElementSize(Xnode ref) {
+    String type = ref == null ? null : ref.getAttribute(Xattr.TYPE);
+    Xnode kind = null;
+    while(type != null && !FortranType.isBuiltInType(type)) {
+      if(!_xcodeml.getTypeTable().isBasicType(type)) {
+        return NAMED_KIND_SIZE;
+      }
+      FbasicType bt = _xcodeml.getTypeTable().getBasicType(type);
+      if(kind == null && bt.hasKind()) {
+        kind = bt.getKind();
+      }
+      type = bt.getRef();
+    }
+    if(type == null) {
+      return NAMED_KIND_SIZE;
+    }
+    int size = kind == null ? DEFAULT_KIND_SIZE : getKindSize(kind);
+    switch(FortranType.fromString(type)) {
+      case CHARACTER:
+        return 1;
+      case COMPLEX:
+        return 2 * size;
+      case INTEGER:
+      case LOGICAL:
+      case REAL:
+        return size;
+      default:
+        return NAMED_KIND_SIZE;
+    }
+  }
+
+  /**
+   * Get the size in bytes corresponding to a kind.
+   *
+   * @param kind Kind node of a basic type.
+   * @return Value of the kind if it is an integer constant. Size of a double
+   * precision value otherwise.
+   */
+  private int getKindSize(Xnode kind) {
+    if(Xnode.isOfCode(kind.firstChild(), Xcode.F_INT_CONSTANT)) {
+      try {
+        return Integer.parseInt(kind.firstChild().value().trim());
+      } catch(NumberFormatException ignored) {
+        return NAMED_KIND_SIZE;
+      }
+    }
+    return NAMED_KIND_SIZE;
+  }
+
+  /**
+   * Kind of a directive regarding compute regions.
+   */
+  private enum ComputeDirective {
+    START, COMBINED, END, OTHER
+  }
+}
@@ -0,0 +1,190 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.analysis.dependency;
+
+import claw.tatsu.xcodeml.xnode.common.Xattr;
+import claw.tatsu.xcodeml.xnode.common.Xcode;
+import claw.tatsu.xcodeml.xnode.common.Xnode;
+
+import java.util.*;
+
+/**
+ * Definition and use analysis of the variables of a block. The analysis is
+ * flow insensitive: it counts the definitions of each variable and gathers
+ * the used variables in the whole block including its nested blocks.
+ *
+ * A variable is considered as defined when:<ul>
+ * <li> It is the base variable of the left hand side of an assignment.
+ * <li> It is the induction variable of a do statement.
+ * <li> It appears in an allocate, deallocate, nullify, pointer assignment or
+ * read statement.
+ * <li> It appears in the arguments of a call to a non intrinsic
+ * function/subroutine.
+ * </ul>
+ *
+ * Calls to non intrinsic functions/subroutines might also define variables
+ * not visible in the block (module variables). This is reported by
+ * {@link #hasUnknownSideEffect()}.
+ *
+ * @author clementval
+ */
+public class DefUseAnalysis {
+
+  private static final List<Xcode> DEFINING_STATEMENTS = Arrays.asList(
+      Xcode.F_ALLOCATE_STATEMENT, Xcode.F_DEALLOCATE_STATEMENT,
+      Xcode.F_NULLIFY_STATEMENT, Xcode.F_POINTER_ASSIGN_STATEMENT,
+      Xcode.F_READ_STATEMENT
+  );
+
+  private final Map<String, Integer> _definitions;
+  private final Set<String> _uses;
+  private boolean _unknownSideEffect;
+
+  /**
+   * Constructs and run the analysis of a block.
+   *
+   * @param block Node to be analyzed.
+   */
+  public DefUseAnalysis(Xnode block) {
+    _definitions = new HashMap<>();
+    _uses = getUsedNames(block);
+    _unknownSideEffect = false;
+    analyze(block);
+  }
+
+  /**
+   * Get the number of definitions of a variable in the block.
+   *
+   * @param name Name of the variable.
+   * @return Number of definitions. 0 if the variable is not defined.
+   */
+  public int getDefinitionCount(String name) {
+    return _definitions.getOrDefault(name.toLowerCase(), 0);
+  }
+
+  /**
+   * Check whether a variable is defined in the block.
+   *
+   * @param name Name of the variable.
+   * @return True if the variable is defined at least once.
+   */
+  public boolean isDefined(String name) {
+    return getDefinitionCount(name) > 0;
+  }
+
+  /**
+   * Remove a definition of a variable. Used when a defining statement is
+   * moved out of the analyzed block.
+   *
+   * @param name Name of the variable.
+   */
+  public void removeDefinition(String name) {
+    int count = getDefinitionCount(name);
+    if(count > 1) {
+      _definitions.put(name.toLowerCase(), count - 1);
+    } else {
+      _definitions.remove(name.toLowerCase());
+    }
+  }
+
+  /**
+   * Get the names of all the variables used in the block.
+   *
+   * @return Set of lower case names.
+   */
+  public Set<String> getUses() {
+    return _uses;
+  }
+
+  /**
+   * Check whether the block calls non intrinsic functions/subroutines that
+   * might define variables not visible in the block.
+   *
+   * @return True if such a call is found.
+   */
+  public boolean hasUnknownSideEffect() {
+    return _unknownSideEffect;
+  }
+
+  /**
+   * Gather the names of all variables used in a node.
+   *
+   * @param node Node to be analyzed.
+   * @return Set of lower case names.
+   */
+  public static Set<String> getUsedNames(Xnode node) {
+    Set<String> names = new HashSet<>();
+    if(node == null) {
+      return names;
+    }
+    if(node.is(Xcode.VAR)) {
+      names.add(node.value().toLowerCase());
+    }
+    for(Xnode var : node.matchAll(Xcode.VAR)) {
+      names.add(var.value().toLowerCase());
+    }
+    return names;
+  }
+
+  /**
+   * Gather the definitions of the block.
+   *
+   * @param block Node to be analyzed.
+   */
+  private void analyze(Xnode block) {
+    for(Xnode assign : matchAllWithSelf(block, Xcode.F_ASSIGN_STATEMENT)) {
+      Xnode lhs = assign.firstChild();
+      Xnode var = Xnode.isOfCode(lhs, Xcode.VAR)
+          ? lhs : lhs.matchDescendant(Xcode.VAR);
+      if(var != null) {
+        addDefinition(var.value());
+      }
+    }
+    for(Xnode doStmt : matchAllWithSelf(block, Xcode.F_DO_STATEMENT)) {
+      Xnode induction = doStmt.matchDirectDescendant(Xcode.VAR);
+      if(induction != null) {
+        addDefinition(induction.value());
+      }
+    }
+    for(Xcode opcode : DEFINING_STATEMENTS) {
+      for(Xnode stmt : matchAllWithSelf(block, opcode)) {
+        getUsedNames(stmt).forEach(this::addDefinition);
+      }
+    }
+    for(Xnode fctCall : matchAllWithSelf(block, Xcode.FUNCTION_CALL)) {
+      if(!fctCall.getBooleanAttribute(Xattr.IS_INTRINSIC)) {
+        _unknownSideEffect = true;
+        getUsedNames(fctCall.matchDirectDescendant(Xcode.ARGUMENTS))
+            .forEach(this::addDefinition);
+      }
+    }
+  }
+
+  /**
+   * Add a definition of a variable.
+   *
+   * @param name Name of the variable.
+   */
+  private void addDefinition(String name) {
+    _definitions.merge(name.toLowerCase(), 1, Integer::sum);
+  }
+
+  /**
+   * Gather the descendants of a node with a given opcode including the node
+   * itself.
+   *
+   * @param node   Root node of the search.
+   * @param opcode Opcode to be matched.
+   * @return List of matching nodes.
+   */
+  private static List<Xnode> matchAllWithSelf(Xnode node, Xcode opcode) {
+    List<Xnode> nodes = new ArrayList<>();
+    if(node.is(opcode)) {
+      nodes.add(node);
+    }
+    nodes.addAll(node.matchAll(opcode));
+    return nodes;
+  }
+}
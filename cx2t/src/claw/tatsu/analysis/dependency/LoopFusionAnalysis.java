@@ -0,0 +1,297 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.analysis.dependency;
+
+import claw.tatsu.primitive.Loop;
+import claw.tatsu.xcodeml.abstraction.AssignStatement;
+import claw.tatsu.xcodeml.abstraction.NestedDoStatement;
+import claw.tatsu.xcodeml.xnode.common.Xattr;
+import claw.tatsu.xcodeml.xnode.common.Xcode;
+import claw.tatsu.xcodeml.xnode.common.Xnode;
+
+import java.util.*;
+
+/**
+ * Analysis of the legality and the profitability of the fusion of two
+ * adjacent groups of nested do statements. The first group is executed before
+ * the second one in the original code.
+ *
+ * Fusion is considered legal when:<ul>
+ * <li> Both groups have the same size and the same iteration ranges.
+ * <li> Each do statement of both groups is free of loop carried dependence.
+ * <li> None of the bodies contains a statement altering the control flow, a
+ * directive or a call to a non intrinsic function.
+ * <li> Every variable written in one group and used in the other one is an
+ * array accessed with the exact same subscripts in both groups, and those
+ * subscripts include all the induction variables of the group.
+ * </ul>
+ *
+ * Profitability is measured as the number of arrays accessed by both groups.
+ * These arrays are streamed once instead of twice after the fusion.
+ *
+ * @author clementval
+ */
+public class LoopFusionAnalysis {
+
+  private static final List<Xcode> UNSAFE_STATEMENTS = Arrays.asList(
+      Xcode.F_CYCLE_STATEMENT, Xcode.F_EXIT_STATEMENT,
+      Xcode.F_RETURN_STATEMENT, Xcode.F_STOP_STATEMENT, Xcode.GOTO_STATEMENT,
+      Xcode.F_PRAGMA_STATEMENT
+  );
+
+  private final NestedDoStatement _first;
+  private final NestedDoStatement _second;
+  private final Set<String> _sharedArrays;
+  private boolean _legal;
+
+  /**
+   * Constructs and run the fusion analysis of two groups of nested do
+   * statements.
+   *
+   * @param first  Group of nested do statements executed first.
+   * @param second Group of nested do statements executed after the first one.
+   */
+  public LoopFusionAnalysis(NestedDoStatement first, NestedDoStatement second)
+  {
+    _first = first;
+    _second = second;
+    _sharedArrays = new TreeSet<>();
+    _legal = analyze();
+    if(_legal) {
+      _sharedArrays.addAll(gatherArrayNames(_first));
+      _sharedArrays.retainAll(gatherArrayNames(_second));
+    }
+  }
+
+  /**
+   * Check whether the fusion of the two groups preserves the semantic of the
+   * original code.
+   *
+   * @return True if the fusion is legal. False otherwise.
+   */
+  public boolean isLegal() {
+    return _legal;
+  }
+
+  /**
+   * Get the names of the arrays accessed in both groups.
+   *
+   * @return Sorted set of array names. Empty if the fusion is not legal.
+   */
+  public Set<String> getSharedArrays() {
+    return _sharedArrays;
+  }
+
+  /**
+   * Get the profitability score of the fusion.
+   *
+   * @return Number of arrays shared by the two groups. 0 if the fusion is not
+   * legal.
+   */
+  public int getScore() {
+    return _sharedArrays.size();
+  }
+
+  /**
+   * Perform the legality analysis.
+   *
+   * @return True if the fusion is legal. False otherwise.
+   */
+  private boolean analyze() {
+    if(_first == null || _second == null || _first.size() == 0
+        || _first.size() != _second.size())
+    {
+      return false;
+    }
+
+    for(int i = 0; i < _first.size(); ++i) {
+      if(!Loop.hasSameIndexRange(_first.get(i), _second.get(i))
+          || hasLoopCarriedDependence(_first.get(i))
+          || hasLoopCarriedDependence(_second.get(i)))
+      {
+        return false;
+      }
+    }
+
+    Xnode body1 = _first.getInnerStatement().body();
+    Xnode body2 = _second.getInnerStatement().body();
+    if(hasUnsafeStatement(body1) || hasUnsafeStatement(body2)) {
+      return false;
+    }
+
+    Set<String> written1 = gatherWrittenNames(body1);
+    Set<String> written2 = gatherWrittenNames(body2);
+    if(written1 == null || written2 == null) {
+      return false;
+    }
+
+    Set<String> conflicts = new HashSet<>(written1);
+    conflicts.retainAll(gatherUsedNames(body2));
+    Set<String> conflicts2 = new HashSet<>(written2);
+    conflicts2.retainAll(gatherUsedNames(body1));
+    conflicts.addAll(conflicts2);
+
+    List<String> inductionVars = _first.getInductionVariables();
+    for(String conflict : conflicts) {
+      if(inductionVars.contains(conflict)
+          || !isAccessedPointwise(conflict, body1, body2, inductionVars))
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Check whether the given do statement carries a dependence.
+   *
+   * @param doStmt Do statement to be analyzed.
+   * @return True if a dependence is carried or cannot be analyzed. False
+   * otherwise.
+   */
+  private boolean hasLoopCarriedDependence(Xnode doStmt) {
+    try {
+      return !new DependenceAnalysis(doStmt).isIndependent();
+    } catch(Exception ignored) {
+      return true;
+    }
+  }
+
+  /**
+   * Check whether the body contains a statement that prevents the fusion.
+   *
+   * @param body Body to be checked.
+   * @return True if an unsafe statement is found. False otherwise.
+   */
+  private boolean hasUnsafeStatement(Xnode body) {
+    for(Xcode opcode : UNSAFE_STATEMENTS) {
+      if(body.matchDescendant(opcode) != null) {
+        return true;
+      }
+    }
+    for(Xnode fctCall : body.matchAll(Xcode.FUNCTION_CALL)) {
+      if(!fctCall.getBooleanAttribute(Xattr.IS_INTRINSIC)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Gather the names of all variables written in the body.
+   *
+   * @param body Body to be analyzed.
+   * @return Set of written names. Null if one of the written variable is not a
+   * plain variable or array reference.
+   */
+  private Set<String> gatherWrittenNames(Xnode body) {
+    Set<String> names = new HashSet<>();
+    for(Xnode assign : body.matchAll(Xcode.F_ASSIGN_STATEMENT)) {
+      AssignStatement as = new AssignStatement(assign.element());
+      if(!Xnode.isOfCode(as.getLhs(), Xcode.VAR)
+          && !Xnode.isOfCode(as.getLhs(), Xcode.F_ARRAY_REF))
+      {
+        return null;
+      }
+      names.add(as.getLhsName().toLowerCase());
+    }
+    return names;
+  }
+
+  /**
+   * Gather the names of all variables used in the body.
+   *
+   * @param body Body to be analyzed.
+   * @return Set of used names.
+   */
+  private Set<String> gatherUsedNames(Xnode body) {
+    Set<String> names = new HashSet<>();
+    for(Xnode var : body.matchAll(Xcode.VAR)) {
+      names.add(var.value().toLowerCase());
+    }
+    return names;
+  }
+
+  /**
+   * Gather the names of all arrays referenced in the inner body of the group.
+   *
+   * @param group Group of nested do statements.
+   * @return Set of array names.
+   */
+  private Set<String> gatherArrayNames(NestedDoStatement group) {
+    Set<String> names = new HashSet<>();
+    for(Xnode arrayRef :
+        group.getInnerStatement().body().matchAll(Xcode.F_ARRAY_REF))
+    {
+      Xnode var = arrayRef.matchSeq(Xcode.VAR_REF, Xcode.VAR);
+      if(var != null) {
+        names.add(var.value().toLowerCase());
+      }
+    }
+    return names;
+  }
+
+  /**
+   * Check that every access to the variable in both bodies is an array
+   * reference with the same subscripts and that the subscripts include all the
+   * induction variables. In this case, an element is only accessed by one
+   * iteration of each group and the fusion keeps the original order.
+   *
+   * @param name          Name of the variable.
+   * @param body1         Inner body of the first group.
+   * @param body2         Inner body of the second group.
+   * @param inductionVars Induction variables of the group.
+   * @return True if all accesses are point-wise. False otherwise.
+   */
+  private boolean isAccessedPointwise(String name, Xnode body1, Xnode body2,
+                                      List<String> inductionVars)
+  {
+    String representation = null;
+    for(Xnode body : Arrays.asList(body1, body2)) {
+      for(Xnode var : body.matchAll(Xcode.VAR)) {
+        if(!var.value().equalsIgnoreCase(name)) {
+          continue;
+        }
+        Xnode arrayRef = var.ancestor() == null
+            ? null : var.ancestor().ancestor();
+        if(!Xnode.isOfCode(var.ancestor(), Xcode.VAR_REF)
+            || !Xnode.isOfCode(arrayRef, Xcode.F_ARRAY_REF)
+            || !hasAllInductionVariables(arrayRef, inductionVars))
+        {
+          return false;
+        }
+        String crt = arrayRef.constructRepresentation(false, false);
+        if(representation == null) {
+          representation = crt;
+        } else if(!representation.equals(crt)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Check whether all induction variables are used directly as subscripts of
+   * the array reference.
+   *
+   * @param arrayRef      Array reference node.
+   * @param inductionVars Induction variables of the group.
+   * @return True if all induction variables are found. False otherwise.
+   */
+  private boolean hasAllInductionVariables(Xnode arrayRef,
+                                           List<String> inductionVars)
+  {
+    Set<String> subscripts = new HashSet<>();
+    for(Xnode index : arrayRef.children()) {
+      if(index.is(Xcode.ARRAY_INDEX)
+          && Xnode.isOfCode(index.firstChild(), Xcode.VAR))
+      {
+        subscripts.add(index.firstChild().value().toLowerCase());
+      }
+    }
+    return subscripts.containsAll(inductionVars);
+  }
+}
@@ -0,0 +1,255 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.analysis.dependency;
+
+import claw.tatsu.directive.common.ReductionOperator;
+import claw.tatsu.xcodeml.abstraction.AssignStatement;
+import claw.tatsu.xcodeml.abstraction.FunctionCall;
+import claw.tatsu.xcodeml.xnode.common.Xcode;
+import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
+import claw.tatsu.xcodeml.xnode.common.Xnode;
+import claw.tatsu.xcodeml.xnode.fortran.FbasicType;
+import claw.tatsu.xcodeml.xnode.fortran.FortranType;
+import claw.tatsu.xcodeml.xnode.fortran.Xintrinsic;
+
+import java.util.*;
+
+/**
+ * Reduction analysis of the variables shared by all the iterations of a
+ * parallel block. A candidate variable is recognized as a reduction variable
+ * when:<ul>
+ * <li> It is a scalar.
+ * <li> All its definitions in the block are assignments of the form
+ * {@code s = s op expr} (or {@code s = s - expr}, {@code s = max(s, expr)},
+ * {@code s = min(s, expr)}) with the same operator.
+ * <li> The expression does not reference the variable.
+ * <li> The variable is not used anywhere else in the block.
+ * </ul>
+ *
+ * Reordering a floating-point sum or product changes its result. Such
+ * reductions are refused unless the relaxed mode is enabled. Integer and
+ * logical reductions as well as max and min reductions are always accepted.
+ *
+ * Candidates defined in the block that do not match these rules are refused
+ * and the reason is reported by {@link #getRefusals()}.
+ *
+ * @author clementval
+ */
+public class ReductionAnalysis {
+
+  private final XcodeProgram _xcodeml;
+  private final boolean _relaxed;
+  private final Map<String, ReductionOperator> _reductions;
+  private final Map<String, String> _refusals;
+
+  /**
+   * Constructs and run the analysis of a block.
+   *
+   * @param xcodeml    Current translation unit.
+   * @param block      Node to be analyzed.
+   * @param candidates Names of the variables shared by all the iterations.
+   * @param relaxed    If true, floating-point sum and product are accepted.
+   */
+  public ReductionAnalysis(XcodeProgram xcodeml, Xnode block,
+                           Collection<String> candidates, boolean relaxed)
+  {
+    _xcodeml = xcodeml;
+    _relaxed = relaxed;
+    _reductions = new LinkedHashMap<>();
+    _refusals = new LinkedHashMap<>();
+    DefUseAnalysis defUse = new DefUseAnalysis(block);
+    for(String candidate : candidates) {
+      if(defUse.isDefined(candidate)) {
+        analyze(block, candidate.toLowerCase(), defUse);
+      }
+    }
+  }
+
+  /**
+   * Get the recognized reduction variables.
+   *
+   * @return Map of lower case variable names and their reduction operator in
+   * the order of the candidates.
+   */
+  public Map<String, ReductionOperator> getReductions() {
+    return _reductions;
+  }
+
+  /**
+   * Get the candidates defined in the block that are not recognized as
+   * reduction variables.
+   *
+   * @return Map of lower case variable names and the reason of the refusal.
+   */
+  public Map<String, String> getRefusals() {
+    return _refusals;
+  }
+
+  /**
+   * Analyze a candidate variable defined in the block.
+   *
+   * @param block  Node to be analyzed.
+   * @param name   Lower case name of the variable.
+   * @param defUse Definition and use analysis of the block.
+   */
+  private void analyze(Xnode block, String name, DefUseAnalysis defUse) {
+    List<Xnode> vars = new ArrayList<>();
+    for(Xnode var : block.matchAll(Xcode.VAR)) {
+      if(var.value().equalsIgnoreCase(name)) {
+        vars.add(var);
+      }
+    }
+    FortranType type = getScalarType(vars.get(0));
+    if(type == null) {
+      _refusals.put(name, "not a scalar variable");
+      return;
+    }
+
+    ReductionOperator operator = null;
+    int accumulations = 0;
+    for(Xnode node : block.matchAll(Xcode.F_ASSIGN_STATEMENT)) {
+      AssignStatement assign = new AssignStatement(node.element());
+      if(!Xnode.isOfCode(assign.getLhs(), Xcode.VAR)
+          || !assign.getLhs().value().equalsIgnoreCase(name))
+      {
+        continue;
+      }
+      ReductionOperator crt = matchAccumulation(assign.getRhs(), name);
+      if(crt == null) {
+        _refusals.put(name, String.format("assignment at line %d is not an " +
+            "accumulation", node.lineNo()));
+        return;
+      }
+      if(operator != null && operator != crt) {
+        _refusals.put(name, String.format("operators %s and %s are mixed",
+            operator.fortran(), crt.fortran()));
+        return;
+      }
+      operator = crt;
+      ++accumulations;
+    }
+
+    // Each accumulation uses the variable twice: on both sides
+    if(accumulations != defUse.getDefinitionCount(name)
+        || vars.size() != 2 * accumulations)
+    {
+      _refusals.put(name, "used outside of an accumulation");
+      return;
+    }
+
+    if(operator.isOrderSensitive() && !_relaxed
+        && (type == FortranType.REAL || type == FortranType.COMPLEX))
+    {
+      _refusals.put(name, String.format("floating-point reduction with " +
+          "operator %s depends on the evaluation order", operator.fortran()));
+      return;
+    }
+    _reductions.put(name, operator);
+  }
+
+  /**
+   * Match the right hand side of an assignment to the variable with an
+   * accumulation pattern.
+   *
+   * @param rhs  Right hand side of the assignment.
+   * @param name Lower case name of the assigned variable.
+   * @return Reduction operator of the accumulation. Null if the right hand
+   * side is not an accumulation.
+   */
+  private ReductionOperator matchAccumulation(Xnode rhs, String name) {
+    // The expression combined with the variable must not reference it
+    if(countUses(rhs, name) != 1) {
+      return null;
+    }
+    switch(rhs.opcode()) {
+      case PLUS_EXPR:
+        return isOperand(rhs, name) ? ReductionOperator.SUM : null;
+      case MINUS_EXPR:
+        // s = s - expr is a sum of the negated values. expr - s is not.
+        return isVar(rhs.child(0), name) ? ReductionOperator.SUM : null;
+      case MUL_EXPR:
+        return isOperand(rhs, name) ? ReductionOperator.PRODUCT : null;
+      case LOG_AND_EXPR:
+        return isOperand(rhs, name) ? ReductionOperator.AND : null;
+      case LOG_OR_EXPR:
+        return isOperand(rhs, name) ? ReductionOperator.OR : null;
+      case FUNCTION_CALL:
+        FunctionCall fctCall = new FunctionCall(rhs);
+        if(fctCall.arguments().stream().noneMatch(a -> isVar(a, name))) {
+          return null;
+        }
+        if(fctCall.isIntrinsicCall(Xintrinsic.MAX)) {
+          return ReductionOperator.MAX;
+        } else if(fctCall.isIntrinsicCall(Xintrinsic.MIN)) {
+          return ReductionOperator.MIN;
+        }
+        return null;
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Check whether the variable is one of the operands of a binary expression.
+   *
+   * @param expr Binary expression node.
+   * @param name Lower case name of the variable.
+   * @return True if the variable is the left or right operand.
+   */
+  private boolean isOperand(Xnode expr, String name) {
+    return isVar(expr.child(0), name) || isVar(expr.child(1), name);
+  }
+
+  /**
+   * Check whether a node is a reference to the variable.
+   *
+   * @param node Node to be checked.
+   * @param name Lower case name of the variable.
+   * @return True if the node is a Var node with the given name.
+   */
+  private boolean isVar(Xnode node, String name) {
+    return Xnode.isOfCode(node, Xcode.VAR)
+        && node.value().equalsIgnoreCase(name);
+  }
+
+  /**
+   * Count the references to a variable in a node.
+   *
+   * @param node Node to be analyzed.
+   * @param name Lower case name of the variable.
+   * @return Number of Var nodes with the given name.
+   */
+  private int countUses(Xnode node, String name) {
+    int count = isVar(node, name) ? 1 : 0;
+    for(Xnode var : node.matchAll(Xcode.VAR)) {
+      if(var.value().equalsIgnoreCase(name)) {
+        ++count;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Get the intrinsic type of a scalar variable.
+   *
+   * @param var Var node referencing the variable.
+   * @return Intrinsic type of the variable. Null if the variable is an array
+   * or its type cannot be resolved.
+   */
+  private FortranType getScalarType(Xnode var) {
+    String type = var.getType();
+    while(type != null && !FortranType.isBuiltInType(type)) {
+      if(!_xcodeml.getTypeTable().isBasicType(type)) {
+        return null;
+      }
+      FbasicType bt = _xcodeml.getTypeTable().getBasicType(type);
+      if(bt.isArray()) {
+        return null;
+      }
+      type = bt.getRef();
+    }
+    return type == null ? null : FortranType.fromString(type);
+  }
+}
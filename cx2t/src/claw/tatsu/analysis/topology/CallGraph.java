@@ -0,0 +1,528 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.analysis.topology;
+
+import claw.tatsu.xcodeml.abstraction.FunctionCall;
+import claw.tatsu.xcodeml.xnode.common.*;
+import claw.tatsu.xcodeml.xnode.fortran.FfunctionDefinition;
+import claw.tatsu.xcodeml.xnode.fortran.FmoduleDefinition;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Whole-program index of the procedures of a translation unit. The index maps
+ * the procedure names to their definition, function type and module and
+ * records the call edges between them. It is built in a single traversal of
+ * the translation unit and resolves:
+ * <ul>
+ * <li> Renamed procedures of use statements (local_name =&gt; use_name).
+ * <li> Type-bound procedures (binding name =&gt; procedure name) when the
+ * binding name is bound to a single procedure.
+ * </ul>
+ *
+ * Procedures of other translation units can be added by loading an index
+ * file written by a previous translation. They have no definition and are
+ * only used to locate the module of a called procedure.
+ *
+ * Names are case insensitive. The index is a snapshot of the translation unit
+ * when it is built and lookups of a procedure created afterwards are missed.
+ *
+ * @author clementval
+ */
+public class CallGraph {
+
+  private static final String HEADER = "# CLAW call graph";
+  private static final String SEPARATOR = "\t";
+  private static final String CALLEE_SEPARATOR = ",";
+  private static final String NONE = "-";
+
+  // Procedures by name in document order
+  private final Map<String, List<Procedure>> _procedures;
+  // Procedure names by type-bound binding name
+  private final Map<String, Set<String>> _bindings;
+  // Renamed procedures by local name for each caller
+  private final Map<String, Map<String, Rename>> _renames;
+
+  /**
+   * Constructs an empty call graph.
+   */
+  public CallGraph() {
+    _procedures = new LinkedHashMap<>();
+    _bindings = new HashMap<>();
+    _renames = new HashMap<>();
+  }
+
+  /**
+   * Build the call graph of a translation unit.
+   *
+   * @param xcodeml Current XcodeML translation unit.
+   * @return The call graph of the translation unit.
+   */
+  public static CallGraph build(XcodeProgram xcodeml) {
+    CallGraph graph = new CallGraph();
+    if(xcodeml.getTypeTable() != null) {
+      for(Xnode tbp : xcodeml.getTypeTable()
+          .matchAll(Xcode.TYPE_BOUND_PROCEDURE))
+      {
+        Xnode bindingName = tbp.matchDirectDescendant(Xcode.NAME);
+        Xnode procedureName = tbp.matchSeq(Xcode.BINDING, Xcode.NAME);
+        if(bindingName != null && procedureName != null) {
+          graph._bindings.computeIfAbsent(key(bindingName.value()),
+              k -> new LinkedHashSet<>()).add(key(procedureName.value()));
+        }
+      }
+    }
+
+    List<FfunctionDefinition> fctDefs = xcodeml.getAllFctDef();
+    for(FfunctionDefinition fctDef : fctDefs) {
+      FmoduleDefinition mod = fctDef.findParentModule();
+      String type = fctDef.name().getType();
+      graph.add(new Procedure(fctDef.getName(),
+          mod == null ? null : mod.getName(),
+          type == null || type.isEmpty() ? null : type, fctDef));
+      graph.readRenames(fctDef, mod);
+    }
+
+    // Call edges are only resolved once all the bindings and renames are known
+    for(FfunctionDefinition fctDef : fctDefs) {
+      Procedure caller = graph.getProcedure(fctDef.getName(), fctDef);
+      if(fctDef.body() == null) {
+        continue;
+      }
+      for(Xnode node : fctDef.body().matchAll(Xcode.FUNCTION_CALL)) {
+        if(node.getBooleanAttribute(Xattr.IS_INTRINSIC)
+            || !fctDef.equals(node.findParentFunction()))
+        {
+          continue;
+        }
+        FunctionCall fctCall = new FunctionCall(node);
+        if(fctCall.getFctName() != null) {
+          caller._callees.add(graph.resolve(caller.getName(), fctCall));
+        }
+      }
+    }
+    return graph;
+  }
+
+  /**
+   * Read the renamed procedures of the use statements visible in a function
+   * definition.
+   *
+   * @param fctDef Function definition.
+   * @param mod    Module enclosing the function definition. Can be null.
+   */
+  private void readRenames(FfunctionDefinition fctDef, FmoduleDefinition mod) {
+    List<Xnode> uses = new ArrayList<>();
+    if(fctDef.getDeclarationTable() != null) {
+      uses.addAll(fctDef.getDeclarationTable().uses());
+    }
+    if(mod != null && mod.getDeclarationTable() != null) {
+      uses.addAll(mod.getDeclarationTable().uses());
+    }
+    for(Xnode use : uses) {
+      for(Xnode rename : use.children()) {
+        if((rename.is(Xcode.RENAME) || rename.is(Xcode.RENAMABLE))
+            && rename.hasAttribute(Xattr.LOCAL_NAME)
+            && rename.hasAttribute(Xattr.USE_NAME))
+        {
+          _renames.computeIfAbsent(key(fctDef.getName()), k -> new HashMap<>())
+              .putIfAbsent(key(rename.getAttribute(Xattr.LOCAL_NAME)),
+                  new Rename(use.getAttribute(Xattr.NAME),
+                      key(rename.getAttribute(Xattr.USE_NAME))));
+        }
+      }
+    }
+  }
+
+  /**
+   * Add a procedure to the index.
+   *
+   * @param procedure Procedure to be added.
+   */
+  private void add(Procedure procedure) {
+    _procedures.computeIfAbsent(key(procedure.getName()),
+        k -> new ArrayList<>()).add(procedure);
+  }
+
+  /**
+   * Get the procedure record of a function definition.
+   *
+   * @param name   Name of the procedure.
+   * @param fctDef Function definition of the procedure.
+   * @return The procedure record.
+   */
+  private Procedure getProcedure(String name, FfunctionDefinition fctDef) {
+    for(Procedure procedure : _procedures.get(key(name))) {
+      if(fctDef.equals(procedure.getDefinition())) {
+        return procedure;
+      }
+    }
+    throw new NoSuchElementException("Procedure not indexed: " + name);
+  }
+
+  /**
+   * Get the index key of a name.
+   *
+   * @param name Procedure, binding or module name.
+   * @return Lower case name.
+   */
+  private static String key(String name) {
+    return name.toLowerCase();
+  }
+
+  /**
+   * Resolve the name of the procedure called by a function call.
+   *
+   * @param caller  Name of the calling procedure.
+   * @param fctCall Function call.
+   * @return Lower case name of the called procedure.
+   */
+  public String resolve(String caller, FunctionCall fctCall) {
+    if(fctCall.isTbpCall()) {
+      return resolveBinding(fctCall.getFctName());
+    }
+    return resolve(caller, fctCall.getFctName());
+  }
+
+  /**
+   * Resolve the name of a procedure called from another procedure. A name
+   * renamed in a use statement of the caller is resolved to its use name.
+   * Otherwise, a name bound to a single type-bound procedure is resolved to
+   * this procedure unless a procedure already has this name.
+   *
+   * @param caller Name of the calling procedure.
+   * @param name   Called name.
+   * @return Lower case name of the called procedure.
+   */
+  public String resolve(String caller, String name) {
+    Rename rename = getRename(caller, name);
+    if(rename != null) {
+      return rename._useName;
+    }
+    if(_procedures.containsKey(key(name))) {
+      return key(name);
+    }
+    return resolveBinding(name);
+  }
+
+  /**
+   * Resolve a type-bound binding name.
+   *
+   * @param name Binding name.
+   * @return Lower case name of the procedure if the binding name is bound to
+   * a single procedure. Lower case binding name otherwise.
+   */
+  private String resolveBinding(String name) {
+    Set<String> procedures = _bindings.get(key(name));
+    if(procedures != null && procedures.size() == 1) {
+      return procedures.iterator().next();
+    }
+    return key(name);
+  }
+
+  /**
+   * Get the rename of a name in the use statements visible from a caller.
+   *
+   * @param caller Name of the calling procedure.
+   * @param name   Local name.
+   * @return The rename if any. Null otherwise.
+   */
+  private Rename getRename(String caller, String name) {
+    if(caller == null || name == null) {
+      return null;
+    }
+    Map<String, Rename> renames = _renames.get(key(caller));
+    return renames == null ? null : renames.get(key(name));
+  }
+
+  /**
+   * Find the module in which a procedure called from another procedure is
+   * defined.
+   *
+   * @param caller Name of the calling procedure.
+   * @param name   Called name.
+   * @return Name of the module if known. Null otherwise.
+   */
+  public String getModule(String caller, String name) {
+    Rename rename = getRename(caller, name);
+    if(rename != null) {
+      return rename._module;
+    }
+    List<Procedure> procedures = _procedures.get(resolve(caller, name));
+    if(procedures != null) {
+      for(Procedure procedure : procedures) {
+        if(procedure.getModule() != null) {
+          return procedure.getModule();
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Find the definition of a procedure in the translation unit.
+   *
+   * @param module Name of the module in which the definition is searched. If
+   *               null, the first definition in document order is returned.
+   * @param name   Name of the procedure.
+   * @return The function definition if indexed and still part of the
+   * translation unit. Empty otherwise.
+   */
+  public Optional<FfunctionDefinition> findDefinition(String module,
+                                                      String name)
+  {
+    if(name == null) {
+      return Optional.empty();
+    }
+    List<Procedure> procedures = _procedures.get(key(name));
+    if(procedures == null) {
+      return Optional.empty();
+    }
+    for(Procedure procedure : procedures) {
+      FfunctionDefinition fctDef = procedure.getDefinition();
+      if(fctDef != null
+          && (module == null || module.equalsIgnoreCase(procedure.getModule()))
+          && fctDef.getName().equalsIgnoreCase(name)
+          && fctDef.matchAncestor(Xcode.GLOBAL_DECLARATIONS) != null)
+      {
+        return Optional.of(fctDef);
+      }
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Drop the references to a function definition detached from the
+   * translation unit. Its procedures stay in the index.
+   *
+   * @param fctDef Function definition detached.
+   */
+  public void release(FfunctionDefinition fctDef) {
+    for(List<Procedure> procedures : _procedures.values()) {
+      for(Procedure procedure : procedures) {
+        if(fctDef.equals(procedure._definition)) {
+          procedure._definition = null;
+        }
+      }
+    }
+  }
+
+  /**
+   * Get the procedures indexed under a name.
+   *
+   * @param name Name of the procedure.
+   * @return List of procedures in document order. Procedures loaded from an
+   * index file come last.
+   */
+  public List<Procedure> getProcedures(String name) {
+    List<Procedure> procedures = _procedures.get(key(name));
+    return procedures == null ? Collections.emptyList()
+        : Collections.unmodifiableList(procedures);
+  }
+
+  /**
+   * Get the procedures called by a procedure.
+   *
+   * @param name Name of the calling procedure.
+   * @return Lower case names of the called procedures. Empty if the procedure
+   * is not indexed.
+   */
+  public Set<String> getCallees(String name) {
+    Set<String> callees = new LinkedHashSet<>();
+    for(Procedure procedure : getProcedures(name)) {
+      callees.addAll(procedure.getCallees());
+    }
+    return callees;
+  }
+
+  /**
+   * Get the number of indexed procedures.
+   *
+   * @return Number of procedures.
+   */
+  public int size() {
+    return _procedures.values().stream().mapToInt(List::size).sum();
+  }
+
+  /**
+   * Load the procedures of other translation units from an index file.
+   * Procedures already defined in the current translation unit are ignored.
+   *
+   * @param file Index file.
+   * @throws IOException If the file exists but cannot be read.
+   */
+  public void load(Path file) throws IOException {
+    if(!file.toFile().isFile()) {
+      return;
+    }
+    for(Procedure procedure : readFile(file)) {
+      if(!_procedures.containsKey(key(procedure.getName()))) {
+        add(procedure);
+      }
+    }
+  }
+
+  /**
+   * Write the procedures of the translation unit to an index file. The
+   * procedures of the file that are not defined in the current translation
+   * unit are kept. The file is written next to its final location and moved
+   * so concurrent translations never read a partial index.
+   *
+   * @param file Index file.
+   * @throws IOException If the file cannot be written.
+   */
+  public void write(Path file) throws IOException {
+    Map<String, Procedure> entries = new TreeMap<>();
+    if(file.toFile().isFile()) {
+      for(Procedure procedure : readFile(file)) {
+        entries.put(entryKey(procedure), procedure);
+      }
+    }
+    for(List<Procedure> procedures : _procedures.values()) {
+      for(Procedure procedure : procedures) {
+        if(procedure.getDefinition() != null) {
+          entries.put(entryKey(procedure), procedure);
+        }
+      }
+    }
+
+    Path directory = file.toAbsolutePath().getParent();
+    Files.createDirectories(directory);
+    Path tmp = Files.createTempFile(directory, "callgraph", ".tmp");
+    try {
+      try(BufferedWriter writer = Files.newBufferedWriter(tmp,
+          StandardCharsets.UTF_8))
+      {
+        writer.write(HEADER);
+        writer.newLine();
+        for(Procedure procedure : entries.values()) {
+          writer.write(procedure.getModule() == null ? NONE
+              : procedure.getModule());
+          writer.write(SEPARATOR);
+          writer.write(procedure.getName());
+          writer.write(SEPARATOR);
+          writer.write(procedure.getCallees().isEmpty() ? NONE
+              : String.join(CALLEE_SEPARATOR, procedure.getCallees()));
+          writer.newLine();
+        }
+      }
+      Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  /**
+   * Get the key of a procedure in an index file.
+   *
+   * @param procedure Procedure.
+   * @return Module and name of the procedure.
+   */
+  private static String entryKey(Procedure procedure) {
+    return (procedure.getModule() == null ? NONE : key(procedure.getModule()))
+        + SEPARATOR + key(procedure.getName());
+  }
+
+  /**
+   * Read the procedures of an index file.
+   *
+   * @param file Index file.
+   * @return List of procedures without definition.
+   * @throws IOException If the file cannot be read or is not valid.
+   */
+  private static List<Procedure> readFile(Path file) throws IOException {
+    List<Procedure> procedures = new ArrayList<>();
+    List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+    if(lines.isEmpty() || !lines.get(0).equals(HEADER)) {
+      throw new IOException("Invalid call graph file " + file);
+    }
+    for(String line : lines.subList(1, lines.size())) {
+      String[] fields = line.split(SEPARATOR);
+      if(fields.length != 3) {
+        throw new IOException("Invalid call graph file " + file);
+      }
+      Procedure procedure = new Procedure(fields[1],
+          fields[0].equals(NONE) ? null : fields[0], null, null);
+      if(!fields[2].equals(NONE)) {
+        procedure._callees.addAll(
+            Arrays.asList(fields[2].split(CALLEE_SEPARATOR)));
+      }
+      procedures.add(procedure);
+    }
+    return procedures;
+  }
+
+  /**
+   * Procedure record of the index.
+   */
+  public static final class Procedure {
+
+    private final String _name;
+    private final String _module;
+    private final String _type;
+    private FfunctionDefinition _definition;
+    private final Set<String> _callees;
+
+    /**
+     * Constructs a new procedure record.
+     *
+     * @param name       Name of the procedure.
+     * @param module     Name of the enclosing module. Null if the procedure
+     *                   is not a module procedure.
+     * @param type       Function type hash. Null if unknown.
+     * @param definition Function definition. Null for the procedures of other
+     *                   translation units.
+     */
+    private Procedure(String name, String module, String type,
+                      FfunctionDefinition definition)
+    {
+      _name = name;
+      _module = module;
+      _type = type;
+      _definition = definition;
+      _callees = new LinkedHashSet<>();
+    }
+
+    public String getName() {
+      return _name;
+    }
+
+    public String getModule() {
+      return _module;
+    }
+
+    public String getType() {
+      return _type;
+    }
+
+    public FfunctionDefinition getDefinition() {
+      return _definition;
+    }
+
+    public Set<String> getCallees() {
+      return Collections.unmodifiableSet(_callees);
+    }
+  }
+
+  /**
+   * Procedure renamed in a use statement.
+   */
+  private static final class Rename {
+
+    private final String _module;
+    private final String _useName;
+
+    Rename(String module, String useName) {
+      _module = module;
+      _useName = useName;
+    }
+  }
+}
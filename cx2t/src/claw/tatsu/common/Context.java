@@ -26,6 +26,8 @@ public class Context {
   private CompilerDirective _compilerDirective;
   private Target _target;
   private ModuleCache _moduleCache;
+  private String _callGraphFile;
+  private boolean _memoryBounded = false;
 
   /**
    * Lazy holder pattern.
@@ -122,6 +124,44 @@ public class Context {
     return _acceleratorConfiguration;
   }
 
+  /**
+   * Get the call graph index file shared by the translation units.
+   *
+   * @return Path of the index file. Null if the call graph is not shared.
+   */
+  public String getCallGraphFile() {
+    return _callGraphFile;
+  }
+
+  /**
+   * Set the call graph index file shared by the translation units.
+   *
+   * @param callGraphFile Path of the index file. Null to not share the call
+   *                      graph.
+   */
+  public void setCallGraphFile(String callGraphFile) {
+    _callGraphFile = callGraphFile;
+  }
+
+  /**
+   * Check whether the translation releases the memory of the finished parts
+   * of the translation unit and of the module cache.
+   *
+   * @return True if the memory-bounded mode is enabled.
+   */
+  public boolean isMemoryBounded() {
+    return _memoryBounded;
+  }
+
+  /**
+   * Enable or disable the memory-bounded mode.
+   *
+   * @param memoryBounded True to enable the memory-bounded mode.
+   */
+  public void setMemoryBounded(boolean memoryBounded) {
+    _memoryBounded = memoryBounded;
+  }
+
   /**
    * Check is current target is corresponding to the given one.
    *
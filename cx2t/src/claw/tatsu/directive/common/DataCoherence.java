@@ -0,0 +1,446 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.directive.common;
+
+import claw.tatsu.TatsuConstant;
+import claw.tatsu.common.Context;
+import claw.tatsu.directive.generator.DirectiveGenerator;
+import claw.tatsu.xcodeml.xnode.common.Xattr;
+import claw.tatsu.xcodeml.xnode.common.Xcode;
+import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
+import claw.tatsu.xcodeml.xnode.common.Xid;
+import claw.tatsu.xcodeml.xnode.common.Xnode;
+import claw.tatsu.xcodeml.xnode.fortran.FbasicType;
+import claw.tatsu.xcodeml.xnode.fortran.FfunctionDefinition;
+import claw.tatsu.xcodeml.xnode.fortran.FmoduleDefinition;
+
+import java.util.*;
+
+/**
+ * Host/device coherence dataflow used to eliminate redundant update
+ * directives. Statements of a block are visited in order while the set of
+ * variables having identical values on host and device is tracked. A variable
+ * becomes coherent after an update directive in any direction and stays
+ * coherent until it is written on either side. An update of a coherent
+ * variable does not change any value and is removed.
+ *
+ * The analysis is conservative: labels, calls to subroutines or non intrinsic
+ * functions, I/O and pointer statements as well as directives moving or
+ * allocating data reset the tracked state. Each nested block starts with an
+ * empty state. Pointers, targets, associate names and the variables they are
+ * associated with can alias each other, so a write to any of them is a write
+ * to all of them.
+ *
+ * @author clementval
+ */
+public class DataCoherence {
+
+  private static final String MARKER = "\u0001";
+
+  private static final List<Xcode> RESET_STATEMENTS = Arrays.asList(
+      Xcode.STATEMENT_LABEL, Xcode.GOTO_STATEMENT, Xcode.F_READ_STATEMENT,
+      Xcode.F_OPEN_STATEMENT, Xcode.F_INQUIRE_STATEMENT,
+      Xcode.F_POINTER_ASSIGN_STATEMENT, Xcode.F_NULLIFY_STATEMENT,
+      Xcode.F_ALLOCATE_STATEMENT, Xcode.F_DEALLOCATE_STATEMENT
+  );
+
+  private static final List<String> DATA_KEYWORDS = Arrays.asList(
+      "copy", "create", "delete", "enterdata", "exitdata", "map(", "declare"
+  );
+
+  private final XcodeProgram _xcodeml;
+  private final String[][] _templates;
+  private final List<String> _removed;
+  private final Set<String> _associated;
+  private FfunctionDefinition _fctDef;
+  private FmoduleDefinition _moduleDef;
+
+  /**
+   * Constructs a new coherence analysis for the directive language of the
+   * current context.
+   *
+   * @param xcodeml Current translation unit.
+   */
+  public DataCoherence(XcodeProgram xcodeml) {
+    _xcodeml = xcodeml;
+    _removed = new ArrayList<>();
+    _associated = new HashSet<>();
+    _templates = new String[][]{
+        getTemplate(DataMovement.HOST_TO_DEVICE),
+        getTemplate(DataMovement.DEVICE_TO_HOST)
+    };
+  }
+
+  /**
+   * Get the variables removed from update directives so far. A variable is
+   * listed once for each removed transfer.
+   *
+   * @return List of removed variables.
+   */
+  public List<String> getRemovedTransfers() {
+    return _removed;
+  }
+
+  /**
+   * Remove the redundant updates in the given block and all its nested
+   * blocks.
+   *
+   * @param body Body node to be optimized.
+   * @return Number of removed transfers.
+   */
+  public int optimize(Xnode body) {
+    int before = _removed.size();
+    if(_templates[0] == null || _templates[1] == null) {
+      return 0;
+    }
+    initAliases(body);
+    for(Xnode nested : body.matchAll(Xcode.BODY)) {
+      optimizeBlock(nested);
+    }
+    optimizeBlock(body);
+    return _removed.size() - before;
+  }
+
+  /**
+   * Apply the dataflow on the direct children of a body.
+   *
+   * @param body Body node.
+   */
+  private void optimizeBlock(Xnode body) {
+    Set<String> coherent = new HashSet<>();
+    Xnode crt = body.firstChild();
+    while(crt != null) {
+      if(crt.is(Xcode.F_PRAGMA_STATEMENT)) {
+        List<Xnode> chunks = getChunks(crt);
+        Xnode next = chunks.get(chunks.size() - 1).nextSibling();
+        processPragma(chunks, coherent);
+        crt = next;
+        continue;
+      }
+      if(needsReset(crt)) {
+        coherent.clear();
+      } else {
+        Set<String> written = getWrittenNames(crt);
+        if(written.stream().anyMatch(this::isAliased)) {
+          coherent.removeIf(v -> isAliased(getBaseName(v)));
+        }
+        coherent.removeIf(v -> written.contains(getBaseName(v)));
+      }
+      crt = crt.nextSibling();
+    }
+  }
+
+  /**
+   * Process a directive. Coherent variables are removed from update
+   * directives and the other ones become coherent.
+   *
+   * @param chunks   Pragma statements forming the directive.
+   * @param coherent Set of coherent variables.
+   */
+  private void processPragma(List<Xnode> chunks, Set<String> coherent) {
+    String directive = normalize(join(chunks));
+    for(int i = 0; i < _templates.length; ++i) {
+      String[] template = _templates[i];
+      if(directive.startsWith(template[0]) && directive.endsWith(template[1])
+          && directive.length() > template[0].length() + template[1].length())
+      {
+        List<String> vars = splitVariables(directive.substring(
+            template[0].length(), directive.length() - template[1].length()));
+        if(vars == null) {
+          return; // Additional clauses. Update is kept as is.
+        }
+        List<String> kept = new ArrayList<>();
+        for(String var : vars) {
+          if(coherent.contains(var)) {
+            _removed.add(var);
+          } else {
+            coherent.add(var);
+            kept.add(var);
+          }
+        }
+        if(kept.size() != vars.size()) {
+          rewrite(chunks, kept, i == 0
+              ? DataMovement.HOST_TO_DEVICE : DataMovement.DEVICE_TO_HOST);
+        }
+        return;
+      }
+    }
+    if(isDataDirective(directive)) {
+      coherent.clear();
+    }
+  }
+
+  /**
+   * Check whether a directive might move or allocate data.
+   *
+   * @param directive Normalized directive.
+   * @return True if the directive contains a data keyword.
+   */
+  private boolean isDataDirective(String directive) {
+    for(String keyword : DATA_KEYWORDS) {
+      if(directive.contains(keyword)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Replace an update directive by a new one with the kept variables or delete
+   * it if no variable is left.
+   *
+   * @param chunks    Pragma statements forming the directive.
+   * @param kept      Variables kept in the update.
+   * @param direction Direction of the update.
+   */
+  private void rewrite(List<Xnode> chunks, List<String> kept,
+                       DataMovement direction)
+  {
+    if(!kept.isEmpty()) {
+      Xnode hook = chunks.get(0);
+      for(String directive :
+          Context.get().getGenerator().getUpdateClause(direction, kept))
+      {
+        for(Xnode pragma : _xcodeml.createPragma(directive,
+            Context.get().getMaxColumns()))
+        {
+          hook.insertBefore(pragma);
+        }
+      }
+    }
+    for(Xnode chunk : chunks) {
+      chunk.delete();
+    }
+  }
+
+  /**
+   * Get the pragma statements forming a directive split with continuation
+   * symbols.
+   *
+   * @param pragma First pragma statement of the directive.
+   * @return List of pragma statements.
+   */
+  static List<Xnode> getChunks(Xnode pragma) {
+    List<Xnode> chunks = new ArrayList<>();
+    Xnode crt = pragma;
+    chunks.add(crt);
+    while(crt.value().trim().endsWith(TatsuConstant.CONTINUATION_LINE_SYMBOL)
+        && Xnode.isOfCode(crt.nextSibling(), Xcode.F_PRAGMA_STATEMENT))
+    {
+      crt = crt.nextSibling();
+      chunks.add(crt);
+    }
+    return chunks;
+  }
+
+  /**
+   * Join the chunks of a directive. The continuation symbols and the prefix of
+   * the continued chunks are dropped.
+   *
+   * @param chunks Pragma statements forming the directive.
+   * @return Full directive.
+   */
+  static String join(List<Xnode> chunks) {
+    StringBuilder directive = new StringBuilder();
+    String prefix = Context.get().getGenerator().getPrefix();
+    for(int i = 0; i < chunks.size(); ++i) {
+      String value = chunks.get(i).value().trim();
+      if(value.endsWith(TatsuConstant.CONTINUATION_LINE_SYMBOL)) {
+        value = value.substring(0, value.length() - 1);
+      }
+      if(i > 0 && value.toLowerCase().startsWith(prefix)) {
+        value = value.substring(prefix.length());
+      }
+      directive.append(value).append(" ");
+    }
+    return directive.toString();
+  }
+
+  /**
+   * Split the variables of an update clause. Commas nested in parenthesis
+   * (array sections) are not considered as separators.
+   *
+   * @param list Normalized variables list.
+   * @return List of variables. Null if the list is not well formed.
+   */
+  private List<String> splitVariables(String list) {
+    List<String> vars = new ArrayList<>();
+    int depth = 0;
+    int start = 0;
+    for(int i = 0; i < list.length(); ++i) {
+      char c = list.charAt(i);
+      if(c == '(') {
+        ++depth;
+      } else if(c == ')' && --depth < 0) {
+        return null;
+      } else if(c == ',' && depth == 0) {
+        vars.add(list.substring(start, i));
+        start = i + 1;
+      }
+    }
+    vars.add(list.substring(start));
+    return vars;
+  }
+
+  /**
+   * Check whether a statement invalidates all the tracked information.
+   *
+   * @param stmt Statement to be checked.
+   * @return True if the statement might write any variable, move data or is
+   * a jump target.
+   */
+  private boolean needsReset(Xnode stmt) {
+    for(Xcode opcode : RESET_STATEMENTS) {
+      if(stmt.is(opcode) || stmt.matchDescendant(opcode) != null) {
+        return true;
+      }
+    }
+    for(Xnode pragma : stmt.matchAll(Xcode.F_PRAGMA_STATEMENT)) {
+      if(isDataDirective(normalize(pragma.value()))) {
+        return true;
+      }
+    }
+    for(Xnode fctCall : stmt.matchAll(Xcode.FUNCTION_CALL)) {
+      if(!fctCall.getBooleanAttribute(Xattr.IS_INTRINSIC)
+          || Xnode.isOfCode(fctCall.ancestor(), Xcode.EXPR_STATEMENT))
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Gather the base name of every variable written by a statement.
+   *
+   * @param stmt Statement to be analyzed.
+   * @return Set of lower case names.
+   */
+  private Set<String> getWrittenNames(Xnode stmt) {
+    Set<String> names = new HashSet<>();
+    List<Xnode> assignments = new ArrayList<>();
+    if(stmt.is(Xcode.F_ASSIGN_STATEMENT)) {
+      assignments.add(stmt);
+    }
+    assignments.addAll(stmt.matchAll(Xcode.F_ASSIGN_STATEMENT));
+    for(Xnode assign : assignments) {
+      Xnode lhs = assign.firstChild();
+      Xnode var = lhs.is(Xcode.VAR) ? lhs : lhs.matchDescendant(Xcode.VAR);
+      if(var != null) {
+        names.add(var.value().toLowerCase());
+      }
+    }
+    List<Xnode> doStmts = new ArrayList<>();
+    if(stmt.is(Xcode.F_DO_STATEMENT)) {
+      doStmts.add(stmt);
+    }
+    doStmts.addAll(stmt.matchAll(Xcode.F_DO_STATEMENT));
+    for(Xnode doStmt : doStmts) {
+      Xnode induction = doStmt.matchDirectDescendant(Xcode.VAR);
+      if(induction != null) {
+        names.add(induction.value().toLowerCase());
+      }
+    }
+    return names;
+  }
+
+  /**
+   * Gather the scopes used to resolve the variables and the names involved in
+   * the associate statements of the function definition enclosing a block.
+   *
+   * @param body Body node to be optimized.
+   */
+  private void initAliases(Xnode body) {
+    _fctDef = body.findParentFunction();
+    _moduleDef = body.findParentModule();
+    _associated.clear();
+    Xnode scope = _fctDef == null ? body : _fctDef;
+    for(Xnode associate : scope.matchAll(Xcode.ASSOCIATE_STATEMENT)) {
+      Xnode symbols = associate.matchDirectDescendant(Xcode.SYMBOLS);
+      if(symbols == null) {
+        continue;
+      }
+      for(Xnode name : symbols.matchAll(Xcode.NAME)) {
+        _associated.add(name.value());
+      }
+      for(Xnode var : symbols.matchAll(Xcode.VAR)) {
+        _associated.add(var.value());
+      }
+    }
+  }
+
+  /**
+   * Check whether a variable can be accessed through another name. Pointers,
+   * targets, associate names and the variables they are associated with can
+   * be aliased.
+   *
+   * @param name Lower case variable name.
+   * @return True if the variable can be aliased. False otherwise.
+   */
+  private boolean isAliased(String name) {
+    if(_associated.contains(name)) {
+      return true;
+    }
+    Xid id = _fctDef == null ? null : _fctDef.findId(name);
+    if(id == null && _moduleDef != null
+        && _moduleDef.getSymbolTable().contains(name))
+    {
+      id = _moduleDef.getSymbolTable().get(name);
+    }
+    FbasicType type =
+        id == null ? null : _xcodeml.getTypeTable().getBasicType(id);
+    return type != null && (type.isPointer() || type.isTarget());
+  }
+
+  /**
+   * Get the base variable name of an update clause item.
+   *
+   * @param var Normalized item such as a, a(1:n) or a%b.
+   * @return Base variable name.
+   */
+  private static String getBaseName(String var) {
+    int end = var.length();
+    for(char c : new char[]{'(', '%'}) {
+      int idx = var.indexOf(c);
+      if(idx >= 0 && idx < end) {
+        end = idx;
+      }
+    }
+    return var.substring(0, end);
+  }
+
+  /**
+   * Generate the text before and after the variables list of an update
+   * directive in the given direction.
+   *
+   * @param direction Direction of the update.
+   * @return Array with the normalized head and tail of the directive. Null if
+   * the directive language has no update directive.
+   */
+  private static String[] getTemplate(DataMovement direction) {
+    DirectiveGenerator generator = Context.get().getGenerator();
+    String[] directives = generator.getUpdateClause(direction,
+        Collections.singletonList(MARKER));
+    if(directives.length != 1 || !directives[0].contains(MARKER)) {
+      return null;
+    }
+    String directive = normalize(directives[0]);
+    int idx = directive.indexOf(MARKER);
+    return new String[]{
+        directive.substring(0, idx), directive.substring(idx + 1)
+    };
+  }
+
+  /**
+   * Normalize a directive by removing all white spaces and converting it to
+   * lower case.
+   *
+   * @param directive Directive to be normalized.
+   * @return Normalized directive.
+   */
+  static String normalize(String directive) {
+    return directive.replaceAll("\\s+", "").toLowerCase();
+  }
+}
@@ -13,6 +13,7 @@ import claw.tatsu.directive.generator.DirectiveGenerator;
 import claw.tatsu.primitive.Function;
 import claw.tatsu.primitive.Pragma;
 import claw.tatsu.xcodeml.abstraction.FunctionCall;
+import claw.tatsu.xcodeml.abstraction.NestedDoStatement;
 import claw.tatsu.xcodeml.abstraction.Xblock;
 import claw.tatsu.xcodeml.xnode.XnodeUtil;
 import claw.tatsu.xcodeml.xnode.common.Xattr;
@@ -126,6 +127,29 @@ public final class Directive {
     return p;
   }
 
+  /**
+   * Generate a cache directive at the top of the body of the given do
+   * statement.
+   *
+   * @param xcodeml Object representation of the current XcodeML
+   *                representation in which the pragmas will be generated.
+   * @param doStmt  Do statement in which the directive is generated.
+   * @param vars    List of variables or array sections to be cached.
+   * @return Inserted pragma. Null if the directive language has no cache
+   * directive.
+   */
+  public static Xnode generateCacheDirective(XcodeProgram xcodeml,
+                                             Xnode doStmt, List<String> vars)
+  {
+    String[] directives = Context.get().getGenerator().getCacheDirective(vars);
+    if(directives.length == 0 || !Xnode.isOfCode(doStmt, Xcode.F_DO_STATEMENT)
+        || doStmt.body().firstChild() == null)
+    {
+      return null;
+    }
+    return addPragmasBefore(xcodeml, directives, doStmt.body().firstChild());
+  }
+
   /**
    * Check if there is a !$claw nodep directive before the do statement.
    *
@@ -206,6 +230,105 @@ public final class Directive {
     return new Xblock(startBlock, endBlock);
   }
 
+  /**
+   * Generate directives for a parallel region around a group of nested do
+   * statements mapped on the accelerator execution hierarchy. Launch hints are
+   * added to the parallel construct. The outer levels of the group are
+   * distributed and, if defined by the mapping, the inner levels get their own
+   * construct. If the directive language has no inner construct, all levels
+   * are collapsed in the outer construct.
+   *
+   * Reduction clauses are set on each construct of the nest accepting them,
+   * the parallel construct included if the directive language combines the
+   * partial results there. The reduction variables are then copied to and
+   * from the device by the parallel construct.
+   *
+   * @param xcodeml  Object representation of the current XcodeML
+   *                 representation in which the pragmas will be generated.
+   * @param privates   List of variables to be set privates.
+   * @param reductions Reduction variables and their operator.
+   * @param loops      Group of nested do statements.
+   * @param mapping    Mapping of the group.
+   * @return Block with start and end directive if generated.
+   */
+  public static Xblock generateParallelLoopClause(
+      XcodeProgram xcodeml, List<String> privates,
+      Map<String, ReductionOperator> reductions, NestedDoStatement loops,
+      LoopMapping mapping)
+  {
+    if(Context.get().getGenerator().getDirectiveLanguage()
+        == CompilerDirective.NONE)
+    {
+      return null;
+    }
+
+    DirectiveGenerator dg = Context.get().getGenerator();
+    Xnode outer = loops.getOuterStatement();
+    int collapse = mapping.getCollapse();
+    String reductionClauses = getReductionClauses(dg, reductions);
+    String loopReductionClauses =
+        dg.hasOuterLoopReduction() ? reductionClauses : "";
+    String parallelClauses = dg.getParallelHintClauses(mapping);
+    String dataClauses = "";
+    if(!reductionClauses.isEmpty() && dg.hasParallelReduction()) {
+      parallelClauses = format(parallelClauses, reductionClauses);
+      dataClauses = dg.getReductionDataClause(
+          new ArrayList<>(reductions.keySet()));
+    }
+    String[] innerStart = new String[0];
+    if(mapping.getInnerCollapse() > 0 && collapse < loops.size()) {
+      // Each inner iteration needs its own copy of the private variables
+      innerStart = dg.getStartInnerLoopDirective(mapping.getInnerCollapse(),
+          format(dg.getPrivateClause(privates), reductionClauses));
+    }
+
+    Xnode startBlock = addPragmasBefore(xcodeml,
+        dg.getStartParallelDirective(parallelClauses, dataClauses), outer);
+    Xnode endBlock = addPragmaAfter(xcodeml, dg.getEndParallelDirective(),
+        outer);
+    if(innerStart.length == 0) {
+      addPragmasBefore(xcodeml, dg.getStartLoopDirective(
+          collapse + mapping.getInnerCollapse(), false, false,
+          format(dg.getPrivateClause(privates), loopReductionClauses)),
+          outer);
+      addPragmaAfter(xcodeml, dg.getEndLoopDirective(), outer);
+    } else {
+      // Partial results of each outer iteration are combined as well
+      addPragmasBefore(xcodeml,
+          dg.getStartOuterLoopDirective(collapse, loopReductionClauses), outer);
+      addPragmaAfter(xcodeml, dg.getEndLoopDirective(), outer);
+      Xnode inner = loops.get(collapse);
+      addPragmasBefore(xcodeml, innerStart, inner);
+      addPragmaAfter(xcodeml, dg.getEndInnerLoopDirective(), inner);
+    }
+    return new Xblock(startBlock, endBlock);
+  }
+
+  /**
+   * Get the reduction clauses for a set of reduction variables. One clause is
+   * generated per operator.
+   *
+   * @param dg         Current directive generator.
+   * @param reductions Reduction variables and their operator.
+   * @return Formatted clauses. Empty if there is no reduction variable.
+   */
+  private static String getReductionClauses(
+      DirectiveGenerator dg, Map<String, ReductionOperator> reductions)
+  {
+    String clauses = "";
+    if(reductions == null) {
+      return clauses;
+    }
+    for(ReductionOperator operator : ReductionOperator.values()) {
+      List<String> vars = reductions.entrySet().stream()
+          .filter(e -> e.getValue() == operator)
+          .map(Map.Entry::getKey)
+          .collect(Collectors.toList());
+      clauses = format(clauses, dg.getReductionClause(operator, vars));
+    }
+    return clauses;
+  }
+
   /**
    * Format two string together.
    *
@@ -238,6 +361,47 @@ public final class Directive {
         Context.get().getGenerator().getEndLoopDirective());
   }
 
+  /**
+   * Generates SIMD directives for a group of nested do statements. When the
+   * group has a single level, the worksharing and SIMD constructs are combined
+   * on it. Otherwise, the worksharing construct is applied on the outer do
+   * statement and the SIMD construct on the inner one. If the current
+   * directive language has no SIMD construct, the plain loop directives are
+   * generated instead.
+   *
+   * @param xcodeml       Object representation of the current XcodeML
+   *                      representation in which the pragmas will be
+   *                      generated.
+   * @param loops         Group of nested do statements.
+   * @param privateClause Private clause added to the worksharing and SIMD
+   *                      constructs.
+   * @param simdClauses   Additional clauses added to the SIMD construct.
+   */
+  public static void generateSimdLoopDirectives(XcodeProgram xcodeml,
+                                                NestedDoStatement loops,
+                                                String privateClause,
+                                                String simdClauses)
+  {
+    DirectiveGenerator gen = Context.get().getGenerator();
+    boolean combined = loops.size() == 1;
+    String[] simdStart = gen.getStartSimdDirective(combined,
+        format(privateClause, simdClauses));
+    if(simdStart.length == 0) {
+      generateLoopDirectives(xcodeml, loops.getOuterStatement(),
+          loops.getOuterStatement(), NO_COLLAPSE);
+      return;
+    }
+    if(!combined) {
+      insertPragmas(xcodeml, loops.getOuterStatement(),
+          loops.getOuterStatement(), gen.getStartLoopDirective(NO_COLLAPSE,
+              false, false, privateClause == null ? "" : privateClause),
+          gen.getEndLoopDirective());
+    }
+    insertPragmas(xcodeml, loops.getInnerStatement(),
+        loops.getInnerStatement(), simdStart,
+        gen.getEndSimdDirective(combined));
+  }
+
   /**
    * Generate directive directive for a data region. Some clauses can be ignored
    * depending on the configuration, if this results to discard all variables
@@ -393,8 +557,8 @@ public final class Directive {
    * @param ref        Reference node used to insert the newly created pragma.
    * @return Newly created pragma statement as an Xnode object.
    */
-  private static Xnode addPragmaAfter(XcodeProgram xcodeml, String[] directives,
-                                      Xnode ref)
+  static Xnode addPragmaAfter(XcodeProgram xcodeml, String[] directives,
+                              Xnode ref)
   {
     return insertPragmas(xcodeml, directives, ref, true);
   }
@@ -0,0 +1,253 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.directive.common;
+
+import java.util.List;
+
+/**
+ * Mapping of a group of nested do statements onto the accelerator execution
+ * hierarchy. The outer levels are distributed across gangs (OpenACC) or teams
+ * (OpenMP) and optional inner levels are mapped to vector lanes (OpenACC) or
+ * threads (OpenMP). The mapping also holds launch hints. A value of 0 means
+ * the information is not defined and nothing is generated for it.
+ *
+ * @author clementval
+ */
+public class LoopMapping {
+
+  private static final int MIN_VECTOR_LENGTH = 32;
+
+  private int _collapse;
+  private int _innerCollapse = 0;
+  private int _numGangs = 0;
+  private int _numWorkers = 0;
+  private int _vectorLength = 0;
+  private int _threadLimit = 0;
+
+  /**
+   * Constructs a mapping where all the levels are collapsed in a single
+   * construct without any hint.
+   *
+   * @param collapse Number of levels collapsed in the outer construct.
+   */
+  public LoopMapping(int collapse) {
+    _collapse = collapse;
+  }
+
+  /**
+   * Compute the mapping of a group of nested do statements from their trip
+   * counts. The smallest number of outer levels providing enough gangs is
+   * distributed. The remaining inner levels are mapped to vector lanes if they
+   * provide at least a full warp of iterations. Otherwise, all levels are
+   * collapsed together. If one trip count is unknown, all levels are collapsed
+   * and no hint is computed.
+   *
+   * @param tripCounts      Trip count of each level from outer to inner. 0 if
+   *                        unknown.
+   * @param extraCollapse   Number of additional levels nested in the inner
+   *                        level that are collapsed with it.
+   * @param minGangs        Minimal number of gangs to distribute.
+   * @param maxVectorLength Maximal vector length.
+   * @return Computed mapping.
+   */
+  public static LoopMapping compute(List<Integer> tripCounts,
+                                    int extraCollapse, int minGangs,
+                                    int maxVectorLength)
+  {
+    int levels = tripCounts.size();
+    LoopMapping mapping = new LoopMapping(levels + extraCollapse);
+    if(levels == 0 || tripCounts.contains(0) || maxVectorLength <= 0) {
+      return mapping;
+    }
+
+    long total = 1;
+    for(int tripCount : tripCounts) {
+      total *= tripCount;
+    }
+
+    long outer = 1;
+    int outerLevels = levels;
+    for(int i = 0; i < levels - 1; ++i) {
+      outer *= tripCounts.get(i);
+      if(outer >= minGangs && total / outer >= MIN_VECTOR_LENGTH) {
+        outerLevels = i + 1;
+        break;
+      }
+    }
+
+    if(outerLevels < levels) {
+      long inner = total / outer;
+      mapping._collapse = outerLevels;
+      mapping._innerCollapse = levels - outerLevels + extraCollapse;
+      mapping._vectorLength = getVectorLength(inner, maxVectorLength);
+      mapping._numGangs = (int) Math.min(outer, Integer.MAX_VALUE);
+    } else {
+      mapping._vectorLength = getVectorLength(total, maxVectorLength);
+      mapping._numGangs = (int) Math.min(
+          (total + mapping._vectorLength - 1) / mapping._vectorLength,
+          Integer.MAX_VALUE);
+    }
+    mapping._threadLimit = mapping._vectorLength;
+    return mapping;
+  }
+
+  /**
+   * Compute the vector length for a given number of iterations. The vector
+   * length is the next power of two bounded by a warp size and the maximal
+   * vector length.
+   *
+   * @param iterations      Number of iterations mapped to vector lanes.
+   * @param maxVectorLength Maximal vector length.
+   * @return Vector length.
+   */
+  private static int getVectorLength(long iterations, int maxVectorLength) {
+    int length = MIN_VECTOR_LENGTH;
+    while(length < iterations && length < maxVectorLength) {
+      length *= 2;
+    }
+    return Math.min(length, maxVectorLength);
+  }
+
+  /**
+   * Apply the defined values of another mapping on this one.
+   *
+   * @param override Mapping with the values to apply. Values set to 0 are
+   *                 ignored.
+   */
+  public void override(LoopMapping override) {
+    if(override == null) {
+      return;
+    }
+    if(override._collapse > 0) {
+      // Levels not collapsed in the outer construct stay in the inner one
+      int levels = _collapse + _innerCollapse;
+      _collapse = Math.min(override._collapse, levels);
+      _innerCollapse = override._innerCollapse > 0
+          ? Math.min(override._innerCollapse, levels - _collapse)
+          : levels - _collapse;
+    } else if(override._innerCollapse > 0) {
+      _innerCollapse = override._innerCollapse;
+    }
+    if(override._numGangs > 0) {
+      _numGangs = override._numGangs;
+    }
+    if(override._numWorkers > 0) {
+      _numWorkers = override._numWorkers;
+    }
+    if(override._vectorLength > 0) {
+      _vectorLength = override._vectorLength;
+    }
+    if(override._threadLimit > 0) {
+      _threadLimit = override._threadLimit;
+    }
+  }
+
+  /**
+   * Get the number of levels collapsed in the outer construct.
+   *
+   * @return Collapse value of the outer construct.
+   */
+  public int getCollapse() {
+    return _collapse;
+  }
+
+  /**
+   * Get the number of levels collapsed in the inner construct.
+   *
+   * @return Collapse value of the inner construct. 0 if there is no inner
+   * construct.
+   */
+  public int getInnerCollapse() {
+    return _innerCollapse;
+  }
+
+  /**
+   * Set the number of levels collapsed in the inner construct.
+   *
+   * @param value Collapse value of the inner construct.
+   */
+  public void setInnerCollapse(int value) {
+    _innerCollapse = value;
+  }
+
+  /**
+   * Get the number of gangs (OpenACC) or teams (OpenMP).
+   *
+   * @return Number of gangs. 0 if not defined.
+   */
+  public int getNumGangs() {
+    return _numGangs;
+  }
+
+  /**
+   * Set the number of gangs (OpenACC) or teams (OpenMP).
+   *
+   * @param value Number of gangs.
+   */
+  public void setNumGangs(int value) {
+    _numGangs = value;
+  }
+
+  /**
+   * Get the number of workers (OpenACC).
+   *
+   * @return Number of workers. 0 if not defined.
+   */
+  public int getNumWorkers() {
+    return _numWorkers;
+  }
+
+  /**
+   * Set the number of workers (OpenACC).
+   *
+   * @param value Number of workers.
+   */
+  public void setNumWorkers(int value) {
+    _numWorkers = value;
+  }
+
+  /**
+   * Get the vector length (OpenACC).
+   *
+   * @return Vector length. 0 if not defined.
+   */
+  public int getVectorLength() {
+    return _vectorLength;
+  }
+
+  /**
+   * Set the vector length (OpenACC).
+   *
+   * @param value Vector length.
+   */
+  public void setVectorLength(int value) {
+    _vectorLength = value;
+  }
+
+  /**
+   * Get the thread limit (OpenMP).
+   *
+   * @return Thread limit. 0 if not defined.
+   */
+  public int getThreadLimit() {
+    return _threadLimit;
+  }
+
+  /**
+   * Set the thread limit (OpenMP).
+   *
+   * @param value Thread limit.
+   */
+  public void setThreadLimit(int value) {
+    _threadLimit = value;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("collapse(%d) inner(%d) gangs(%d) workers(%d) " +
+            "vector_length(%d) thread_limit(%d)", _collapse, _innerCollapse,
+        _numGangs, _numWorkers, _vectorLength, _threadLimit);
+  }
+}
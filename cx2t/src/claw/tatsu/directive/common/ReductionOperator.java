@@ -0,0 +1,46 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.directive.common;
+
+/**
+ * ReductionOperator enumeration represents the reduction operators shared by
+ * the reduction clause of the supported directive languages.
+ *
+ * @author clementval
+ */
+public enum ReductionOperator {
+  SUM("+"),
+  PRODUCT("*"),
+  MAX("max"),
+  MIN("min"),
+  AND(".and."),
+  OR(".or.");
+
+  private final String _fortran;
+
+  ReductionOperator(String fortran) {
+    _fortran = fortran;
+  }
+
+  /**
+   * Get the Fortran representation of the operator used in the reduction
+   * clause.
+   *
+   * @return Operator as it appears in the reduction clause.
+   */
+  public String fortran() {
+    return _fortran;
+  }
+
+  /**
+   * Check whether the result of the reduction depends on the order in which
+   * the values are combined when applied on floating-point values.
+   *
+   * @return True for the sum and product operators. False otherwise.
+   */
+  public boolean isOrderSensitive() {
+    return this == SUM || this == PRODUCT;
+  }
+}
@@ -0,0 +1,505 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.directive.common;
+
+import claw.tatsu.analysis.dependency.LoopFusionAnalysis;
+import claw.tatsu.common.Context;
+import claw.tatsu.directive.generator.DirectiveGenerator;
+import claw.tatsu.primitive.Loop;
+import claw.tatsu.xcodeml.abstraction.NestedDoStatement;
+import claw.tatsu.xcodeml.exception.IllegalTransformationException;
+import claw.tatsu.xcodeml.xnode.common.Xcode;
+import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
+import claw.tatsu.xcodeml.xnode.common.Xnode;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Fusion of adjacent parallel regions. A parallel region is recognized as the
+ * start parallel directives, the loop directives, a group of nested do
+ * statements and the end directives, optionally wrapped in a data region.
+ * Two regions are fused when they follow each other directly, use identical
+ * directives besides their private and present clauses, iterate over the same
+ * perfectly nested iteration space and the fusion of their loops is free of
+ * dependence as proven by {@link LoopFusionAnalysis}.
+ *
+ * The loops are fused together as the iterations of a single parallel loop
+ * construct are not synchronized. The fused region keeps the directives of the
+ * first region with the union of the private and present lists.
+ *
+ * @author clementval
+ */
+public class RegionFusion {
+
+  private static final String MARKER = "\u0001";
+
+  private final XcodeProgram _xcodeml;
+  private final String[] _startParallel;
+  private final String[] _endParallel;
+  private final String _startData;
+  private final String[] _endData;
+  private final String _privateClause;
+  private final String _presentClause;
+  private final List<String> _fusedRegions;
+
+  /**
+   * Constructs a new region fusion for the directive language of the current
+   * context.
+   *
+   * @param xcodeml Current translation unit.
+   */
+  public RegionFusion(XcodeProgram xcodeml) {
+    DirectiveGenerator dg = Context.get().getGenerator();
+    _xcodeml = xcodeml;
+    _fusedRegions = new ArrayList<>();
+    _startParallel = normalize(dg.getStartParallelDirective(null));
+    if(_startParallel.length > 0) {
+      // Last start directive might carry launch hints
+      _startParallel[_startParallel.length - 1] =
+          normalize(dg.getPrefix() + dg.getParallelKeyword());
+    }
+    _endParallel = normalize(dg.getEndParallelDirective());
+    String[] startData = dg.getStartDataRegion(Collections.emptyList());
+    _startData = startData.length == 1 ? normalize(startData[0]) : null;
+    _endData = normalize(dg.getEndDataRegion());
+    _privateClause = getClauseName(dg.getPrivateClause(MARKER));
+    _presentClause = getClauseName(
+        dg.getPresentClause(Collections.singletonList(MARKER)));
+  }
+
+  /**
+   * Get a description of the fused regions so far. Each entry gives the
+   * starting lines of the two fused regions.
+   *
+   * @return List of fused regions.
+   */
+  public List<String> getFusedRegions() {
+    return _fusedRegions;
+  }
+
+  /**
+   * Fuse the adjacent parallel regions in the given block and all its nested
+   * blocks.
+   *
+   * @param body Body node in which regions are fused.
+   * @return Number of fusions applied.
+   * @throws IllegalTransformationException If the fusion of the loops fails.
+   */
+  public int fuse(Xnode body) throws IllegalTransformationException {
+    int before = _fusedRegions.size();
+    if(_startParallel.length == 0 || _endParallel.length == 0) {
+      return 0;
+    }
+    fuseInBlock(body);
+    for(Xnode nested : body.matchAll(Xcode.BODY)) {
+      fuseInBlock(nested);
+    }
+    return _fusedRegions.size() - before;
+  }
+
+  /**
+   * Fuse the adjacent parallel regions found in the direct children of a
+   * body.
+   *
+   * @param body Body node.
+   * @throws IllegalTransformationException If the fusion of the loops fails.
+   */
+  private void fuseInBlock(Xnode body) throws IllegalTransformationException {
+    Region previous = null;
+    Xnode crt = body.firstChild();
+    while(crt != null) {
+      Region region = Xnode.isOfCode(crt, Xcode.F_PRAGMA_STATEMENT)
+          ? parseRegion(crt) : null;
+      if(region == null) {
+        previous = null;
+        crt = Xnode.isOfCode(crt, Xcode.F_PRAGMA_STATEMENT)
+            ? after(DataCoherence.getChunks(crt)) : crt.nextSibling();
+        continue;
+      }
+      Xnode next = region.last().nextSibling();
+      if(previous == null || !tryFusion(previous, region)) {
+        previous = region;
+      }
+      crt = next;
+    }
+  }
+
+  /**
+   * Recognize a parallel region starting at the given pragma statement.
+   *
+   * @param pragma First pragma statement of the potential region.
+   * @return Region description. Null if no region starts at this position.
+   */
+  private Region parseRegion(Xnode pragma) {
+    Region region = new Region();
+    List<Xnode> directive = DataCoherence.getChunks(pragma);
+    if(_startData != null && _endData.length > 0
+        && normalize(DataCoherence.join(directive)).startsWith(_startData))
+    {
+      region._dataStart = directive;
+      directive = getDirective(after(directive));
+    }
+
+    for(int i = 0; i < _startParallel.length; ++i) {
+      if(directive == null) {
+        return null;
+      }
+      String value = normalize(DataCoherence.join(directive));
+      if(i == _startParallel.length - 1
+          ? !value.startsWith(_startParallel[i])
+          : !value.equals(_startParallel[i]))
+      {
+        return null;
+      }
+      region._start.add(directive);
+      directive = getDirective(after(directive));
+    }
+
+    while(directive != null) {
+      region._loop.add(directive);
+      directive = getDirective(after(directive));
+    }
+    if(region._loop.isEmpty()) {
+      return null;
+    }
+    region._doStmt = after(region._loop.get(region._loop.size() - 1));
+    if(!Xnode.isOfCode(region._doStmt, Xcode.F_DO_STATEMENT)) {
+      return null;
+    }
+
+    directive = getDirective(region._doStmt.nextSibling());
+    while(!endsWith(region._end, _endParallel)) {
+      if(directive == null) {
+        return null;
+      }
+      region._end.add(directive);
+      directive = getDirective(after(directive));
+    }
+
+    if(region._dataStart != null) {
+      for(String end : _endData) {
+        if(directive == null
+            || !normalize(DataCoherence.join(directive)).equals(end))
+        {
+          return null;
+        }
+        region._dataEnd.add(directive);
+        directive = getDirective(after(directive));
+      }
+    }
+    return region;
+  }
+
+  /**
+   * Fuse two regions if the fusion is legal.
+   *
+   * @param first  Region executed first.
+   * @param second Region directly following the first one.
+   * @return True if the regions are fused. False otherwise.
+   * @throws IllegalTransformationException If the fusion of the loops fails.
+   */
+  private boolean tryFusion(Region first, Region second)
+      throws IllegalTransformationException
+  {
+    if(!second.first().equals(first.last().nextSibling())
+        || (first._dataStart == null) != (second._dataStart == null)
+        || !sameDirectives(first._start, second._start)
+        || !sameDirectives(first._end, second._end)
+        || first._loop.size() != second._loop.size())
+    {
+      return false;
+    }
+
+    // Directives carrying a private or present clause are rebuilt
+    Map<List<Xnode>, String> rebuilt = new HashMap<>();
+    for(int i = 0; i < first._loop.size(); ++i) {
+      if(!mergeClause(first._loop.get(i), second._loop.get(i),
+          _privateClause, rebuilt))
+      {
+        return false;
+      }
+    }
+    if(first._dataStart != null && !mergeClause(first._dataStart,
+        second._dataStart, _presentClause, rebuilt))
+    {
+      return false;
+    }
+
+    int depth = getNestDepth(first._doStmt);
+    if(depth != getNestDepth(second._doStmt)
+        || Loop.getFusionDepth(first._doStmt, second._doStmt) != depth)
+    {
+      return false;
+    }
+    NestedDoStatement master = new NestedDoStatement(first._doStmt, depth);
+    NestedDoStatement slave = new NestedDoStatement(second._doStmt, depth);
+    if(!new LoopFusionAnalysis(master, slave).isLegal()) {
+      return false;
+    }
+
+    _fusedRegions.add(String.format("lines %d and %d",
+        first._doStmt.lineNo(), second._doStmt.lineNo()));
+    for(Map.Entry<List<Xnode>, String> entry : rebuilt.entrySet()) {
+      replace(entry.getKey(), entry.getValue());
+    }
+    for(List<Xnode> directive : second.getDirectives()) {
+      for(Xnode chunk : directive) {
+        chunk.delete();
+      }
+    }
+    Loop.merge(master, slave);
+    return true;
+  }
+
+  /**
+   * Check whether two directives are identical besides the variables list of
+   * the given clause. If the lists differ, the directive with the union of
+   * both lists is recorded to replace the first directive.
+   *
+   * @param d1      Directive of the first region.
+   * @param d2      Directive of the second region.
+   * @param clause  Clause name. Null if the language has no such clause.
+   * @param rebuilt Map of directives to be replaced.
+   * @return True if the directives can be fused. False otherwise.
+   */
+  private boolean mergeClause(List<Xnode> d1, List<Xnode> d2, String clause,
+                              Map<List<Xnode>, String> rebuilt)
+  {
+    String raw1 = DataCoherence.join(d1).trim();
+    String raw2 = DataCoherence.join(d2).trim();
+    if(normalize(raw1).equals(normalize(raw2))) {
+      return true;
+    }
+    if(clause == null) {
+      return false;
+    }
+    Set<String> vars = new LinkedHashSet<>();
+    String rest1 = extractClause(raw1, clause, vars);
+    String rest2 = extractClause(raw2, clause, vars);
+    if(rest1 == null || rest2 == null
+        || !normalize(rest1).equals(normalize(rest2)))
+    {
+      return false;
+    }
+    rebuilt.put(d1, String.format("%s %s(%s)",
+        rest1.trim().replaceAll("\\s+", " "), clause, String.join(",", vars)));
+    return true;
+  }
+
+  /**
+   * Remove a clause from a directive and gather its variables.
+   *
+   * @param directive Directive as written in the code.
+   * @param clause    Clause name.
+   * @param vars      Set in which the variables are added.
+   * @return Directive without the clause. Null if the clause is not well
+   * formed.
+   */
+  private String extractClause(String directive, String clause,
+                               Set<String> vars)
+  {
+    Matcher matcher = Pattern.compile("(?i)\\b" + Pattern.quote(clause)
+        + "\\s*\\(").matcher(directive);
+    if(!matcher.find()) {
+      return directive;
+    }
+    int depth = 1;
+    int start = matcher.end();
+    for(int i = start; i < directive.length(); ++i) {
+      char c = directive.charAt(i);
+      if(c == '(') {
+        ++depth;
+      } else if(c == ')' && --depth == 0) {
+        for(String var : directive.substring(start, i).split(",")) {
+          vars.add(var.trim().toLowerCase());
+        }
+        return directive.substring(0, matcher.start())
+            + directive.substring(i + 1);
+      } else if(c == ',' && depth > 1) {
+        return null; // Array sections are not merged
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Replace a directive by a new one at the same position.
+   *
+   * @param chunks    Pragma statements forming the directive.
+   * @param directive New directive.
+   */
+  private void replace(List<Xnode> chunks, String directive) {
+    for(Xnode pragma : _xcodeml.createPragma(directive,
+        Context.get().getMaxColumns()))
+    {
+      chunks.get(0).insertBefore(pragma);
+    }
+    for(Xnode chunk : chunks) {
+      chunk.delete();
+    }
+  }
+
+  /**
+   * Compute the number of perfectly nested do statements of a group.
+   *
+   * @param doStmt Outer do statement of the group.
+   * @return Number of perfectly nested levels.
+   */
+  private int getNestDepth(Xnode doStmt) {
+    int depth = 0;
+    Xnode crt = doStmt;
+    while(crt != null) {
+      ++depth;
+      crt = Loop.getPerfectlyNestedDoStmt(crt);
+    }
+    return depth;
+  }
+
+  /**
+   * Check whether two lists of directives are identical.
+   *
+   * @param l1 First list of directives.
+   * @param l2 Second list of directives.
+   * @return True if the normalized directives are identical.
+   */
+  private boolean sameDirectives(List<List<Xnode>> l1, List<List<Xnode>> l2) {
+    if(l1.size() != l2.size()) {
+      return false;
+    }
+    for(int i = 0; i < l1.size(); ++i) {
+      if(!normalize(DataCoherence.join(l1.get(i)))
+          .equals(normalize(DataCoherence.join(l2.get(i)))))
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Check whether a list of directives ends with the given directives.
+   *
+   * @param directives List of directives.
+   * @param expected   Normalized expected directives.
+   * @return True if the last directives match the expected ones.
+   */
+  private boolean endsWith(List<List<Xnode>> directives, String[] expected) {
+    int offset = directives.size() - expected.length;
+    if(offset < 0) {
+      return false;
+    }
+    for(int i = 0; i < expected.length; ++i) {
+      if(!normalize(DataCoherence.join(directives.get(offset + i)))
+          .equals(expected[i]))
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Get the directive starting at the given node.
+   *
+   * @param node Node to be checked.
+   * @return Pragma statements forming the directive. Null if the node is not
+   * a pragma statement.
+   */
+  private List<Xnode> getDirective(Xnode node) {
+    return Xnode.isOfCode(node, Xcode.F_PRAGMA_STATEMENT)
+        ? DataCoherence.getChunks(node) : null;
+  }
+
+  /**
+   * Get the node following a directive.
+   *
+   * @param chunks Pragma statements forming the directive.
+   * @return Next sibling of the last chunk.
+   */
+  private static Xnode after(List<Xnode> chunks) {
+    return chunks.get(chunks.size() - 1).nextSibling();
+  }
+
+  /**
+   * Get the name of a clause from its generated form.
+   *
+   * @param clause Generated clause with a single marker variable.
+   * @return Lower case name of the clause. Null if no clause is generated.
+   */
+  private static String getClauseName(String clause) {
+    int idx = clause == null ? -1 : clause.indexOf('(');
+    return idx > 0 ? clause.substring(0, idx).trim().toLowerCase() : null;
+  }
+
+  /**
+   * Normalize an array of directives.
+   *
+   * @param directives Directives to be normalized.
+   * @return Array of normalized directives.
+   */
+  private static String[] normalize(String[] directives) {
+    String[] normalized = new String[directives.length];
+    for(int i = 0; i < directives.length; ++i) {
+      normalized[i] = normalize(directives[i]);
+    }
+    return normalized;
+  }
+
+  /**
+   * Normalize a directive.
+   *
+   * @param directive Directive to be normalized.
+   * @return Normalized directive.
+   * @see DataCoherence#normalize(String)
+   */
+  private static String normalize(String directive) {
+    return DataCoherence.normalize(directive);
+  }
+
+  /**
+   * Directives and loops forming a parallel region.
+   */
+  private static class Region {
+    private List<Xnode> _dataStart = null;
+    private final List<List<Xnode>> _start = new ArrayList<>();
+    private final List<List<Xnode>> _loop = new ArrayList<>();
+    private Xnode _doStmt = null;
+    private final List<List<Xnode>> _end = new ArrayList<>();
+    private final List<List<Xnode>> _dataEnd = new ArrayList<>();
+
+    /**
+     * @return First pragma statement of the region.
+     */
+    Xnode first() {
+      return _dataStart != null ? _dataStart.get(0) : _start.get(0).get(0);
+    }
+
+    /**
+     * @return Last pragma statement of the region.
+     */
+    Xnode last() {
+      List<List<Xnode>> end = _dataEnd.isEmpty() ? _end : _dataEnd;
+      List<Xnode> directive = end.get(end.size() - 1);
+      return directive.get(directive.size() - 1);
+    }
+
+    /**
+     * @return All the directives of the region.
+     */
+    List<List<Xnode>> getDirectives() {
+      List<List<Xnode>> directives = new ArrayList<>();
+      if(_dataStart != null) {
+        directives.add(_dataStart);
+      }
+      directives.addAll(_start);
+      directives.addAll(_loop);
+      directives.addAll(_end);
+      directives.addAll(_dataEnd);
+      return directives;
+    }
+  }
+}
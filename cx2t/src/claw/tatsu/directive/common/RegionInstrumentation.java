@@ -0,0 +1,247 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.directive.common;
+
+import claw.tatsu.common.Context;
+import claw.tatsu.directive.generator.DirectiveGenerator;
+import claw.tatsu.xcodeml.abstraction.FunctionCall;
+import claw.tatsu.xcodeml.xnode.common.Xcode;
+import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
+import claw.tatsu.xcodeml.xnode.common.Xnode;
+import claw.tatsu.xcodeml.xnode.fortran.FfunctionDefinition;
+import claw.tatsu.xcodeml.xnode.fortran.FfunctionType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Timing instrumentation of the parallel regions. Each parallel region opened
+ * with the start parallel directive of the current directive language and
+ * closed by the matching end directive is surrounded by calls to the timing
+ * module bundled with the compiler:
+ *
+ * {@code
+ * CALL claw_timing_start("file.f90:17:kernel")
+ * !$acc parallel
+ * ...
+ * !$acc end parallel
+ * CALL claw_timing_stop("file.f90:17:kernel")
+ * }
+ *
+ * The region identifier gives the source file, the line of the first
+ * statement of the region and the enclosing function/subroutine. Combined
+ * constructs such as {@code acc parallel loop} are not matched as their end
+ * directive is optional. PURE and ELEMENTAL function/subroutine are left
+ * untouched as they cannot call the timing routines.
+ *
+ * @author clementval
+ */
+public class RegionInstrumentation {
+
+  public static final String MODULE_NAME = "claw_timing";
+  public static final String START_ROUTINE = "claw_timing_start";
+  public static final String STOP_ROUTINE = "claw_timing_stop";
+  public static final String REPORT_ROUTINE = "claw_timing_report";
+
+  // Clause with arguments following the start keywords
+  private static final Pattern CLAUSE = Pattern.compile("^[a-z_]+\\s*\\(.*");
+
+  private final XcodeProgram _xcodeml;
+  private final List<String> _startTokens;
+  private final String _endParallel;
+  private final List<String> _regions;
+
+  /**
+   * Constructs a new region instrumentation for the directive language of the
+   * current context.
+   *
+   * @param xcodeml Current translation unit.
+   */
+  public RegionInstrumentation(XcodeProgram xcodeml) {
+    DirectiveGenerator dg = Context.get().getGenerator();
+    _xcodeml = xcodeml;
+    _regions = new ArrayList<>();
+    String[] start = dg.getStartParallelDirective(null);
+    String[] end = dg.getEndParallelDirective();
+    _startTokens = new ArrayList<>();
+    if(start.length > 0 && end.length > 0) {
+      for(String token : tokenize(start[0])) {
+        if(CLAUSE.matcher(token).matches()) {
+          break;
+        }
+        _startTokens.add(token);
+      }
+    }
+    _endParallel = end.length > 0
+        ? DataCoherence.normalize(end[end.length - 1]) : null;
+  }
+
+  /**
+   * Get the identifiers of the instrumented regions so far.
+   *
+   * @return List of region identifiers in the form file:line:procedure.
+   */
+  public List<String> getRegions() {
+    return _regions;
+  }
+
+  /**
+   * Instrument the parallel regions of a function/subroutine. The timing
+   * module is added to the use declarations if at least one region is
+   * instrumented.
+   *
+   * @param fctDef Function definition to be instrumented.
+   * @return Number of instrumented regions.
+   */
+  public int instrument(FfunctionDefinition fctDef) {
+    if(_startTokens.isEmpty() || _endParallel == null) {
+      return 0;
+    }
+    FfunctionType fctType = _xcodeml.getTypeTable().getFunctionType(fctDef);
+    if(fctType != null && (fctType.isPure() || fctType.isElemental())) {
+      return 0;
+    }
+
+    int before = _regions.size();
+    for(Xnode pragma : fctDef.body().matchAll(Xcode.F_PRAGMA_STATEMENT)) {
+      // Regions of the contained function/subroutine are handled separately
+      if(!fctDef.equals(pragma.matchAncestor(Xcode.F_FUNCTION_DEFINITION))
+          || !isStart(DataCoherence.getChunks(pragma)))
+      {
+        continue;
+      }
+      Xnode end = findEnd(pragma);
+      if(end == null) {
+        continue;
+      }
+      String id = String.format("%s:%d:%s", _xcodeml.getSourceFileOnly(),
+          getLineNo(pragma, fctDef), fctDef.getName());
+      pragma.insertBefore(createCall(START_ROUTINE, id));
+      end.insertAfter(createCall(STOP_ROUTINE, id));
+      _regions.add(id);
+    }
+    if(_regions.size() > before) {
+      fctDef.getDeclarationTable().insertUseDecl(_xcodeml, MODULE_NAME);
+    }
+    return _regions.size() - before;
+  }
+
+  /**
+   * Add the call printing the timing report at the end of a main program.
+   *
+   * @param fctDef Function definition of the main program.
+   * @return True if the call is added. False if the function definition is not
+   * a main program.
+   */
+  public boolean insertReport(FfunctionDefinition fctDef) {
+    FfunctionType fctType = _xcodeml.getTypeTable().getFunctionType(fctDef);
+    if(fctType == null || !fctType.isProgram()) {
+      return false;
+    }
+    Xnode call = createCall(REPORT_ROUTINE, null);
+    Xnode contains = fctDef.body().matchDirectDescendant(
+        Xcode.F_CONTAINS_STATEMENT);
+    if(contains != null) {
+      contains.insertBefore(call);
+    } else {
+      fctDef.body().append(call);
+    }
+    fctDef.getDeclarationTable().insertUseDecl(_xcodeml, MODULE_NAME);
+    return true;
+  }
+
+  /**
+   * Check whether a directive opens a parallel region.
+   *
+   * @param chunks Pragma statements forming the directive.
+   * @return True if the directive starts with the start keywords and is only
+   * followed by clauses with arguments.
+   */
+  private boolean isStart(List<Xnode> chunks) {
+    List<String> tokens = tokenize(DataCoherence.join(chunks));
+    if(tokens.size() < _startTokens.size()
+        || !tokens.subList(0, _startTokens.size()).equals(_startTokens))
+    {
+      return false;
+    }
+    String clauses = String.join(" ",
+        tokens.subList(_startTokens.size(), tokens.size()));
+    return clauses.isEmpty() || CLAUSE.matcher(clauses).matches();
+  }
+
+  /**
+   * Find the end directive of the parallel region opened by a directive.
+   *
+   * @param start First pragma statement of the start directive.
+   * @return Last pragma statement of the matching end directive. Null if not
+   * found in the same block.
+   */
+  private Xnode findEnd(Xnode start) {
+    int depth = 0;
+    Xnode crt = start;
+    while(crt != null) {
+      if(Xnode.isOfCode(crt, Xcode.F_PRAGMA_STATEMENT)) {
+        List<Xnode> chunks = DataCoherence.getChunks(crt);
+        if(isStart(chunks)) {
+          ++depth;
+        } else if(DataCoherence.normalize(DataCoherence.join(chunks))
+            .equals(_endParallel) && --depth == 0)
+        {
+          return chunks.get(chunks.size() - 1);
+        }
+        crt = chunks.get(chunks.size() - 1);
+      }
+      crt = crt.nextSibling();
+    }
+    return null;
+  }
+
+  /**
+   * Get the line of the first statement following the start directive.
+   *
+   * @param start  First pragma statement of the start directive.
+   * @param fctDef Enclosing function definition.
+   * @return Line number of the first statement in the region or of the
+   * function definition if not available.
+   */
+  private int getLineNo(Xnode start, FfunctionDefinition fctDef) {
+    Xnode crt = start;
+    while(Xnode.isOfCode(crt, Xcode.F_PRAGMA_STATEMENT)) {
+      crt = crt.nextSibling();
+    }
+    return crt != null && crt.lineNo() > 0 ? crt.lineNo() : fctDef.lineNo();
+  }
+
+  /**
+   * Create a call statement to a routine of the timing module.
+   *
+   * @param routine Name of the routine.
+   * @param id      Region identifier passed as argument. Null for no
+   *                argument.
+   * @return Newly created exprStatement node.
+   */
+  private Xnode createCall(String routine, String id) {
+    FunctionCall call = _xcodeml.createFctCall(
+        _xcodeml.createSubroutineType(), routine);
+    if(id != null) {
+      call.addArguments(_xcodeml.createCharConstant(id));
+    }
+    return _xcodeml.createNode(Xcode.EXPR_STATEMENT).insert(call);
+  }
+
+  /**
+   * Split a directive in lower case tokens.
+   *
+   * @param directive Directive to be split.
+   * @return List of tokens.
+   */
+  private static List<String> tokenize(String directive) {
+    String trimmed = directive.trim().toLowerCase();
+    return trimmed.isEmpty() ? new ArrayList<>()
+        : Arrays.asList(trimmed.split("\\s+"));
+  }
+}
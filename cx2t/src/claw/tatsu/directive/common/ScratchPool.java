@@ -0,0 +1,959 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.directive.common;
+
+import claw.tatsu.common.CompilerDirective;
+import claw.tatsu.common.Context;
+import claw.tatsu.common.Message;
+import claw.tatsu.directive.generator.DirectiveGenerator;
+import claw.tatsu.directive.generator.OpenMp;
+import claw.tatsu.xcodeml.abstraction.FunctionCall;
+import claw.tatsu.xcodeml.xnode.common.*;
+import claw.tatsu.xcodeml.xnode.fortran.*;
+
+import java.util.*;
+
+/**
+ * Pool of persistent device buffers replacing the promoted local arrays of
+ * accelerated functions/subroutines.
+ *
+ * Each pooled array is no longer declared locally but use-associated from an
+ * allocatable array, called slot, of a module generated for the translation
+ * unit. The slot is allocated and its device copy created on the first call.
+ * It is only reallocated when the bounds requested by a call differ from the
+ * current ones. Repeated calls do not allocate device memory anymore.
+ *
+ * Arrays with the same element type and bounds of functions/subroutines never
+ * active at the same time share a slot. Two functions/subroutines can be
+ * active at the same time when one calls the other, directly or through other
+ * functions/subroutines of the translation unit, or when one of them calls a
+ * function/subroutine defined elsewhere.
+ *
+ * The slots are thread private so the functions/subroutines can be called
+ * concurrently by several host OpenMP threads. Each thread allocates its own
+ * slots and their device copies. As a thread private variable cannot be
+ * mapped by OpenMP target directives, the pool is only available with
+ * OpenACC.
+ *
+ * @author clementval
+ */
+public class ScratchPool {
+
+  private static final String DEBUG_PREFIX = "SCRATCH-POOL:";
+  private static final String MODULE_PREFIX = "claw_scratch";
+  private static final String MOVE_ALLOC = "move_alloc";
+  private static final String THREAD_PRIVATE = "threadprivate";
+  private static final int MAX_MODULE_NAME_LENGTH = 48;
+
+  private final String _moduleName;
+  private final List<Request> _requests;
+  private final Map<String, Set<String>> _conflicts;
+  private final List<Slot> _slots;
+  private final Map<String, Xnode> _uses;
+
+  /**
+   * Constructs an empty scratch pool.
+   *
+   * @param moduleName Name of the module holding the slots.
+   */
+  public ScratchPool(String moduleName) {
+    _moduleName = moduleName;
+    _requests = new ArrayList<>();
+    _conflicts = new HashMap<>();
+    _slots = new ArrayList<>();
+    _uses = new LinkedHashMap<>();
+  }
+
+  /**
+   * Get the name of the module holding the slots of a translation unit. The
+   * name is derived from the source file name so the modules generated for
+   * different files do not clash.
+   *
+   * @param xcodeml Current translation unit.
+   * @return Lower case module name.
+   */
+  public static String getModuleName(XcodeProgram xcodeml) {
+    String source = xcodeml.getSourceFileOnly();
+    int extension = source.lastIndexOf('.');
+    if(extension > 0) {
+      source = source.substring(0, extension);
+    }
+    source = source.toLowerCase().replaceAll("[^a-z0-9_]", "_");
+    String name = source.isEmpty()
+        ? MODULE_PREFIX : MODULE_PREFIX + "_" + source;
+    return name.length() > MAX_MODULE_NAME_LENGTH
+        ? name.substring(0, MAX_MODULE_NAME_LENGTH) : name;
+  }
+
+  /**
+   * Get the name of the module holding the slots.
+   *
+   * @return Module name.
+   */
+  public String getModuleName() {
+    return _moduleName;
+  }
+
+  /**
+   * Get the number of pooled arrays.
+   *
+   * @return Number of arrays added to the pool.
+   */
+  public int getNbRequests() {
+    return _requests.size();
+  }
+
+  /**
+   * Get the number of slots. Only meaningful once the slots are assigned.
+   *
+   * @return Number of slots.
+   */
+  public int getNbSlots() {
+    return _slots.size();
+  }
+
+  /**
+   * Get the pooled arrays of each function/subroutine.
+   *
+   * @return Map of lower case function/subroutine names and the names of
+   * their pooled arrays in the order they were added.
+   */
+  public Map<String, List<String>> getPooledArrays() {
+    Map<String, List<String>> pooled = new LinkedHashMap<>();
+    for(Request request : _requests) {
+      pooled.computeIfAbsent(request._routine, k -> new ArrayList<>())
+          .add(request._name);
+    }
+    return pooled;
+  }
+
+  /**
+   * Get the slot assigned to an array.
+   *
+   * @param routine Lower case name of the function/subroutine.
+   * @param name    Name of the array.
+   * @return Slot name. Null if the array is not pooled or the slots are not
+   * assigned yet.
+   */
+  public String getSlot(String routine, String name) {
+    for(Slot slot : _slots) {
+      for(Request request : slot._requests) {
+        if(request._routine.equals(routine) && request._name.equals(name)) {
+          return slot._name;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Replace a local array of a function/subroutine by a slot of the pool. The
+   * local declaration is replaced by a use-association of the module and the
+   * allocation of the slot is guarded so it only happens when the slot is not
+   * allocated yet or when its bounds differ. Arrays that cannot be pooled are
+   * left untouched.
+   *
+   * @param xcodeml Current translation unit.
+   * @param fctDef  Function/subroutine declaring the array.
+   * @param name    Name of the local array.
+   * @return True if the array is pooled. False otherwise.
+   */
+  public boolean add(XcodeProgram xcodeml, FfunctionDefinition fctDef,
+                     String name)
+  {
+    Xnode decl = fctDef.getDeclarationTable().get(name);
+    if(decl == null || !xcodeml.getTypeTable().isBasicType(decl)) {
+      return false;
+    }
+    FbasicType type = xcodeml.getTypeTable().getBasicType(decl);
+    FbasicType element = getElementType(xcodeml, type);
+    String reason = null;
+    List<Xnode[]> bounds = null;
+    Xnode allocate = null;
+    if(Context.get().getCompilerDirective() == CompilerDirective.OPENMP) {
+      reason = "thread private slots cannot be mapped with OpenMP";
+    } else if(decl.matchDirectDescendant(Xcode.VALUE) != null
+        || type.isPointer() || type.isTarget() || type.isSave()
+        || type.isParameter() || type.hasIntent())
+    {
+      reason = "not a plain local array";
+    } else if(element == null) {
+      reason = "unsupported element type";
+    } else if(isRecursive(xcodeml, fctDef)) {
+      reason = "recursive function/subroutine";
+    } else if(!isKindAvailable(xcodeml, fctDef, element)) {
+      reason = "kind not available in the pool module";
+    } else if(isReferencedInDeclarations(fctDef, name)) {
+      reason = "referenced by other declarations";
+    } else if(type.isAllocatable()) {
+      allocate = findAllocate(fctDef, name);
+      if(allocate == null) {
+        reason = "allocation not unique or allocation status queried";
+      } else {
+        bounds = getBounds(allocate.matchDescendant(Xcode.ALLOC), name);
+      }
+    } else {
+      bounds = getBounds(type, name);
+    }
+    if(reason == null && bounds == null) {
+      reason = "unsupported bounds";
+    }
+    if(reason != null) {
+      Message.debug(String.format("%s %s in %s not pooled: %s", DEBUG_PREFIX,
+          name, fctDef.getName(), reason));
+      return false;
+    }
+
+    copyUses(xcodeml, fctDef);
+    Request request = new Request(fctDef.getName().toLowerCase(), name,
+        getTypeKey(element), getShapeKey(bounds));
+    request._element = element;
+    request._rank = bounds.size();
+    request._renamable = rewriteDeclaration(xcodeml, fctDef, name);
+    insertAllocation(xcodeml, fctDef, type, name, bounds, allocate);
+    _requests.add(request);
+    return true;
+  }
+
+  /**
+   * Add a pooled array without rewriting any code.
+   *
+   * @param routine  Lower case name of the function/subroutine.
+   * @param name     Name of the array.
+   * @param typeKey  Representation of the element type and kind.
+   * @param shapeKey Representation of the bounds.
+   */
+  void addRequest(String routine, String name, String typeKey,
+                  String shapeKey)
+  {
+    _requests.add(new Request(routine, name, typeKey, shapeKey));
+  }
+
+  /**
+   * Record that two functions/subroutines can be active at the same time.
+   *
+   * @param routine1 Lower case name of the first function/subroutine.
+   * @param routine2 Lower case name of the second function/subroutine.
+   */
+  void addConflict(String routine1, String routine2) {
+    _conflicts.computeIfAbsent(routine1, k -> new HashSet<>()).add(routine2);
+    _conflicts.computeIfAbsent(routine2, k -> new HashSet<>()).add(routine1);
+  }
+
+  /**
+   * Assign the pooled arrays to slots. Each array goes to the first slot
+   * with the same element type and shape whose users can never be active at
+   * the same time as its function/subroutine. A new slot is created if there
+   * is none.
+   */
+  void assignSlots() {
+    _slots.clear();
+    for(Request request : _requests) {
+      Slot slot = null;
+      for(Slot candidate : _slots) {
+        if(canShare(candidate, request)) {
+          slot = candidate;
+          break;
+        }
+      }
+      if(slot == null) {
+        slot = new Slot(String.format("%s_%d", _moduleName,
+            _slots.size() + 1));
+        _slots.add(slot);
+      }
+      slot._requests.add(request);
+    }
+  }
+
+  /**
+   * Generate the module holding the thread private slots at the beginning of
+   * the translation unit and bind every pooled array to its slot.
+   *
+   * @param xcodeml Current translation unit.
+   * @return Number of generated slots.
+   */
+  public int generate(XcodeProgram xcodeml) {
+    if(_requests.isEmpty()) {
+      return 0;
+    }
+    computeConflicts(xcodeml);
+    assignSlots();
+
+    FmoduleDefinition moduleDef = xcodeml.createModuleDefinition(_moduleName);
+    for(Xnode use : _uses.values()) {
+      moduleDef.getDeclarationTable().append(use);
+    }
+    for(Slot slot : _slots) {
+      Request first = slot._requests.get(0);
+      FbasicType slotType = createSlotType(xcodeml, first);
+      moduleDef.getSymbolTable().add(xcodeml.createId(slotType.getType(),
+          XstorageClass.F_LOCAL, slot._name));
+      moduleDef.getDeclarationTable().add(
+          xcodeml.createVarDecl(slotType.getType(), slot._name));
+      for(Request request : slot._requests) {
+        request._renamable.setAttribute(Xattr.USE_NAME, slot._name);
+      }
+      Message.debug(String.format("%s slot %s shared by %d array(s)",
+          DEBUG_PREFIX, slot._name, slot._requests.size()));
+    }
+    // Each host thread gets its own slots
+    List<String> slotNames = new ArrayList<>();
+    _slots.forEach(slot -> slotNames.add(slot._name));
+    for(Xnode pragma : xcodeml.createPragma(String.format("%s %s(%s)",
+        OpenMp.OPENMP_PREFIX, THREAD_PRIVATE, String.join(",", slotNames)),
+        Context.get().getMaxColumns()))
+    {
+      moduleDef.getDeclarationTable().append(pragma);
+    }
+    xcodeml.getGlobalDeclarationsTable().addFirst(moduleDef);
+    xcodeml.getGlobalSymbolsTable().add(
+        xcodeml.createId("", XstorageClass.F_FUNC, _moduleName));
+    return _slots.size();
+  }
+
+  /**
+   * Check whether a pooled array can be assigned to a slot.
+   *
+   * @param slot    Slot with at least one user.
+   * @param request Pooled array.
+   * @return True if the slot has the same element type and shape and none of
+   * its users can be active at the same time.
+   */
+  private boolean canShare(Slot slot, Request request) {
+    Request first = slot._requests.get(0);
+    if(!first._typeKey.equals(request._typeKey)
+        || !first._shapeKey.equals(request._shapeKey))
+    {
+      return false;
+    }
+    Set<String> conflicts = _conflicts.getOrDefault(request._routine,
+        Collections.emptySet());
+    for(Request user : slot._requests) {
+      if(user._routine.equals(request._routine)
+          || conflicts.contains(user._routine))
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Compute the pairs of functions/subroutines with pooled arrays that can be
+   * active at the same time from the call graph of the translation unit.
+   *
+   * @param xcodeml Current translation unit.
+   */
+  private void computeConflicts(XcodeProgram xcodeml) {
+    Map<String, Set<String>> calls = new HashMap<>();
+    for(FfunctionDefinition fctDef : xcodeml.getAllFctDef()) {
+      Set<String> callees = new HashSet<>();
+      for(Xnode node : fctDef.body().matchAll(Xcode.FUNCTION_CALL)) {
+        if(!node.getBooleanAttribute(Xattr.IS_INTRINSIC)) {
+          FunctionCall fctCall = new FunctionCall(node);
+          // Type-bound calls cannot be resolved statically
+          callees.add(fctCall.isTbpCall()
+              ? "" : fctCall.getFctName().toLowerCase());
+        }
+      }
+      calls.computeIfAbsent(fctDef.getName().toLowerCase(),
+          k -> new HashSet<>()).addAll(callees);
+    }
+
+    List<String> routines = new ArrayList<>(getPooledArrays().keySet());
+    Map<String, Set<String>> reachable = new HashMap<>();
+    Set<String> external = new HashSet<>();
+    for(String routine : routines) {
+      Set<String> reached = new HashSet<>();
+      Deque<String> toVisit = new ArrayDeque<>(
+          calls.getOrDefault(routine, Collections.emptySet()));
+      while(!toVisit.isEmpty()) {
+        String callee = toVisit.pop();
+        if(!reached.add(callee)) {
+          continue;
+        }
+        if(calls.containsKey(callee)) {
+          toVisit.addAll(calls.get(callee));
+        } else {
+          external.add(routine);
+        }
+      }
+      reachable.put(routine, reached);
+    }
+
+    for(int i = 0; i < routines.size(); ++i) {
+      for(int j = i + 1; j < routines.size(); ++j) {
+        String r1 = routines.get(i);
+        String r2 = routines.get(j);
+        if(external.contains(r1) || external.contains(r2)
+            || reachable.get(r1).contains(r2)
+            || reachable.get(r2).contains(r1))
+        {
+          addConflict(r1, r2);
+        }
+      }
+    }
+  }
+
+  /**
+   * Get the type holding the element type and kind of an array.
+   *
+   * @param xcodeml Current translation unit.
+   * @param type    Array type.
+   * @return The array type itself if it refers directly to an intrinsic type,
+   * the referenced type otherwise. Null if the element type is not an
+   * integer, real, complex or logical type.
+   */
+  private FbasicType getElementType(XcodeProgram xcodeml, FbasicType type) {
+    FbasicType element = type;
+    if(!FortranType.isBuiltInType(type.getRef())) {
+      if(!xcodeml.getTypeTable().isBasicType(type.getRef())) {
+        return null;
+      }
+      element = xcodeml.getTypeTable().getBasicType(type.getRef());
+      if(element.isArray() || element.hasLength()
+          || !FortranType.isBuiltInType(element.getRef()))
+      {
+        return null;
+      }
+    }
+    switch(FortranType.fromString(element.getRef())) {
+      case INTEGER:
+      case REAL:
+      case COMPLEX:
+      case LOGICAL:
+        return element;
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Check whether a function/subroutine is recursive.
+   *
+   * @param xcodeml Current translation unit.
+   * @param fctDef  Function/subroutine definition.
+   * @return True if the function/subroutine is recursive.
+   */
+  private boolean isRecursive(XcodeProgram xcodeml,
+                              FfunctionDefinition fctDef)
+  {
+    FfunctionType fctType = xcodeml.getTypeTable().getFunctionType(fctDef);
+    return fctType == null || fctType.isRecursive();
+  }
+
+  /**
+   * Check whether the kind of the element type can be used in the pool
+   * module. Literal kinds always can. Named kinds must come from a module
+   * defined in another file as the use statements of the function/subroutine
+   * and its parent module are copied in the pool module.
+   *
+   * @param xcodeml Current translation unit.
+   * @param fctDef  Function/subroutine definition.
+   * @param element Element type of the array.
+   * @return True if the kind is available in the pool module.
+   */
+  private boolean isKindAvailable(XcodeProgram xcodeml,
+                                  FfunctionDefinition fctDef,
+                                  FbasicType element)
+  {
+    Xnode kind = element.getKind();
+    if(kind == null || kind.firstChild() == null
+        || kind.firstChild().is(Xcode.F_INT_CONSTANT))
+    {
+      return true;
+    }
+    if(!kind.firstChild().is(Xcode.VAR)) {
+      return false;
+    }
+    String kindName = kind.firstChild().value();
+    for(XdeclTable decls : getDeclarationTables(fctDef)) {
+      if(decls.contains(kindName)) {
+        return false;
+      }
+      for(Xnode use : decls.uses()) {
+        if(xcodeml.getGlobalDeclarationsTable()
+            .hasModuleDefinition(use.getAttribute(Xattr.NAME)))
+        {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Copy the use statements of the function/subroutine and its parent module
+   * to the pool module so the kinds of the slots are available.
+   *
+   * @param xcodeml Current translation unit.
+   * @param fctDef  Function/subroutine definition.
+   */
+  private void copyUses(XcodeProgram xcodeml, FfunctionDefinition fctDef) {
+    for(XdeclTable decls : getDeclarationTables(fctDef)) {
+      for(Xnode use : decls.uses()) {
+        String module = use.getAttribute(Xattr.NAME).toLowerCase();
+        if(!module.equals(_moduleName) && !_uses.containsKey(module)) {
+          _uses.put(module, use.cloneNode());
+        }
+      }
+    }
+  }
+
+  /**
+   * Get the declaration tables in the scope of a function/subroutine.
+   *
+   * @param fctDef Function/subroutine definition.
+   * @return Declaration tables of the function/subroutine and of its parent
+   * module if any.
+   */
+  private List<XdeclTable> getDeclarationTables(FfunctionDefinition fctDef) {
+    List<XdeclTable> tables = new ArrayList<>();
+    tables.add(fctDef.getDeclarationTable());
+    FmoduleDefinition parent = fctDef.findParentModule();
+    if(parent != null) {
+      tables.add(parent.getDeclarationTable());
+    }
+    return tables;
+  }
+
+  /**
+   * Check whether an array is referenced by the other declarations of the
+   * function/subroutine (e.g. in the bounds of another array).
+   *
+   * @param fctDef Function/subroutine definition.
+   * @param name   Name of the array.
+   * @return True if a Var node in the declarations references the array.
+   */
+  private boolean isReferencedInDeclarations(FfunctionDefinition fctDef,
+                                             String name)
+  {
+    return fctDef.getDeclarationTable().matchAll(Xcode.VAR).stream()
+        .anyMatch(v -> v.value().equalsIgnoreCase(name));
+  }
+
+  /**
+   * Find the unique allocation of an allocatable array. The allocation must
+   * allocate only this array without stat or source specifier and the
+   * allocation status must not be queried.
+   *
+   * @param fctDef Function/subroutine definition.
+   * @param name   Name of the array.
+   * @return The allocate statement. Null if not found or not unique.
+   */
+  private Xnode findAllocate(FfunctionDefinition fctDef, String name) {
+    Xnode allocate = null;
+    for(Xnode stmt : fctDef.body().matchAll(Xcode.F_ALLOCATE_STATEMENT)) {
+      if(!isAllocationOf(stmt, name)) {
+        continue;
+      }
+      if(allocate != null || stmt.children().size() != 1) {
+        return null;
+      }
+      allocate = stmt;
+    }
+    for(Xnode stmt : fctDef.body().matchAll(Xcode.F_DEALLOCATE_STATEMENT)) {
+      if(isAllocationOf(stmt, name) && stmt.children().size() != 1) {
+        return null;
+      }
+    }
+    for(Xnode node : fctDef.body().matchAll(Xcode.FUNCTION_CALL)) {
+      FunctionCall fctCall = new FunctionCall(node);
+      if(fctCall.isIntrinsicCall(Xintrinsic.ALLOCATED)
+          || fctCall.getFctName().equalsIgnoreCase(MOVE_ALLOC))
+      {
+        for(Xnode arg : fctCall.arguments()) {
+          if(Xnode.isOfCode(arg, Xcode.VAR) && arg.value().equals(name)) {
+            return null;
+          }
+        }
+      }
+    }
+    return allocate;
+  }
+
+  /**
+   * Check whether an allocate or deallocate statement applies to an array.
+   *
+   * @param stmt Allocate or deallocate statement.
+   * @param name Name of the array.
+   * @return True if one of the alloc nodes refers to the array.
+   */
+  private boolean isAllocationOf(Xnode stmt, String name) {
+    for(Xnode alloc : stmt.matchAll(Xcode.ALLOC)) {
+      Xnode var = alloc.matchDirectDescendant(Xcode.VAR);
+      if(var != null && var.value().equals(name)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Get the bounds of an array from an alloc node.
+   *
+   * @param alloc Alloc node of the array.
+   * @param name  Name of the array.
+   * @return List of lower and upper bound expressions. Null if a bound is not
+   * supported.
+   */
+  private List<Xnode[]> getBounds(Xnode alloc, String name) {
+    List<Xnode> dimensions = new ArrayList<>(alloc.children());
+    dimensions.remove(0);
+    return getBounds(dimensions, name);
+  }
+
+  /**
+   * Get the bounds of an explicit shape array from its type.
+   *
+   * @param type Array type.
+   * @param name Name of the array.
+   * @return List of lower and upper bound expressions. Null if a bound is not
+   * supported.
+   */
+  private List<Xnode[]> getBounds(FbasicType type, String name) {
+    List<Xnode> dimensions = new ArrayList<>();
+    for(int i = 0; i < type.getDimensions(); ++i) {
+      dimensions.add(type.getDimensions(i));
+    }
+    return getBounds(dimensions, name);
+  }
+
+  /**
+   * Get the bounds of a list of arrayIndex or indexRange nodes. An arrayIndex
+   * node has an implicit lower bound of 1 represented by a null value.
+   *
+   * @param dimensions Dimension nodes.
+   * @param name       Name of the array.
+   * @return List of lower and upper bound expressions. Null if a bound is not
+   * supported.
+   */
+  private List<Xnode[]> getBounds(List<Xnode> dimensions, String name) {
+    List<Xnode[]> bounds = new ArrayList<>();
+    for(Xnode dimension : dimensions) {
+      Xnode lower = null;
+      Xnode upper;
+      if(dimension.is(Xcode.ARRAY_INDEX)) {
+        upper = dimension.firstChild();
+      } else if(dimension.is(Xcode.INDEX_RANGE)
+          && !dimension.getBooleanAttribute(Xattr.IS_ASSUMED_SHAPE)
+          && !dimension.getBooleanAttribute(Xattr.IS_ASSUMED_SIZE))
+      {
+        Xnode lowerBound = dimension.matchDirectDescendant(Xcode.LOWER_BOUND);
+        Xnode upperBound = dimension.matchDirectDescendant(Xcode.UPPER_BOUND);
+        lower = lowerBound == null ? null : lowerBound.firstChild();
+        upper = upperBound == null ? null : upperBound.firstChild();
+        if(lowerBound != null && !isSupportedBound(lower, name)) {
+          return null;
+        }
+      } else {
+        return null;
+      }
+      if(!isSupportedBound(upper, name)) {
+        return null;
+      }
+      bounds.add(new Xnode[]{lower, upper});
+    }
+    return bounds.isEmpty() ? null : bounds;
+  }
+
+  /**
+   * Check whether a bound expression can be reproduced in the allocation
+   * guard.
+   *
+   * @param bound Bound expression.
+   * @param name  Name of the array.
+   * @return True if the expression has a representation and does not
+   * reference the array itself.
+   */
+  private boolean isSupportedBound(Xnode bound, String name) {
+    return bound != null
+        && !bound.constructRepresentation(false, false).isEmpty()
+        && bound.matchAll(Xcode.VAR).stream()
+        .noneMatch(v -> v.value().equalsIgnoreCase(name))
+        && !(bound.is(Xcode.VAR) && bound.value().equalsIgnoreCase(name));
+  }
+
+  /**
+   * Get the key of the element type used to group the slots.
+   *
+   * @param element Element type.
+   * @return Intrinsic type and kind representation.
+   */
+  private String getTypeKey(FbasicType element) {
+    Xnode kind = element.getKind();
+    return kind == null || kind.firstChild() == null ? element.getRef()
+        : element.getRef() + "(" + kind.firstChild().value() + ")";
+  }
+
+  /**
+   * Get the key of the shape used to group the slots.
+   *
+   * @param bounds Lower and upper bound expressions.
+   * @return Representation of the bounds.
+   */
+  private String getShapeKey(List<Xnode[]> bounds) {
+    List<String> dimensions = new ArrayList<>();
+    for(Xnode[] bound : bounds) {
+      dimensions.add(String.format("%s:%s", bound[0] == null ? "1"
+              : bound[0].constructRepresentation(false, false),
+          bound[1].constructRepresentation(false, false)));
+    }
+    return String.join(",", dimensions);
+  }
+
+  /**
+   * Remove the local declaration of an array and use-associate it from the
+   * pool module instead. The slot is not known yet so the use name is set by
+   * {@link #generate(XcodeProgram)}.
+   *
+   * @param xcodeml Current translation unit.
+   * @param fctDef  Function/subroutine definition.
+   * @param name    Name of the array.
+   * @return Renamable node binding the array to its slot.
+   */
+  private Xnode rewriteDeclaration(XcodeProgram xcodeml,
+                                   FfunctionDefinition fctDef, String name)
+  {
+    XdeclTable decls = fctDef.getDeclarationTable();
+    decls.remove(name);
+    fctDef.getSymbolTable().remove(name);
+    Xnode renamable;
+    Xnode useDecl = decls.get(_moduleName);
+    if(useDecl == null) {
+      decls.insertUseOnlyDecl(xcodeml, _moduleName,
+          Collections.singletonList(name));
+      renamable = decls.get(_moduleName).firstChild();
+    } else {
+      renamable = xcodeml.createNode(Xcode.RENAMABLE);
+      useDecl.append(renamable);
+    }
+    renamable.setAttribute(Xattr.LOCAL_NAME, name);
+    renamable.setAttribute(Xattr.USE_NAME, name);
+    return renamable;
+  }
+
+  /**
+   * Insert the guarded allocation of the slot bound to an array. For an
+   * allocatable array, the guard replaces its allocation and its
+   * deallocations are removed. Otherwise, the guard is inserted at the
+   * beginning of the body.
+   *
+   * <pre>
+   * {@code
+   * if(allocated(t)) then
+   *   if(lbound(t,1) /= l .or. ubound(t,1) /= u ...) then
+   *     exit data directive
+   *     deallocate(t)
+   *   end if
+   * end if
+   * if(.not. allocated(t)) then
+   *   allocate(t(l:u, ...))
+   *   enter data directive
+   * end if
+   * }
+   * </pre>
+   *
+   * @param xcodeml  Current translation unit.
+   * @param fctDef   Function/subroutine definition.
+   * @param type     Array type.
+   * @param name     Name of the array.
+   * @param bounds   Lower and upper bound expressions.
+   * @param allocate Allocate statement of an allocatable array. Null
+   *                 otherwise.
+   */
+  private void insertAllocation(XcodeProgram xcodeml,
+                                FfunctionDefinition fctDef, FbasicType type,
+                                String name, List<Xnode[]> bounds,
+                                Xnode allocate)
+  {
+    DirectiveGenerator dg = Context.get().getGenerator();
+    List<String> vars = Collections.singletonList(name);
+
+    // Deallocate the slot if its bounds differ
+    Xnode boundsIf = xcodeml.createIfThen();
+    Xnode condition = null;
+    for(int i = 0; i < bounds.size(); ++i) {
+      Xnode lower = bounds.get(i)[0] == null
+          ? xcodeml.createIntConstant(1) : bounds.get(i)[0];
+      condition = createOr(xcodeml, condition, createBoundCheck(xcodeml,
+          type, name, Xintrinsic.LBOUND, i + 1, lower));
+      condition = createOr(xcodeml, condition, createBoundCheck(xcodeml,
+          type, name, Xintrinsic.UBOUND, i + 1, bounds.get(i)[1]));
+    }
+    boundsIf.matchDirectDescendant(Xcode.CONDITION).append(condition);
+    Xnode deallocate = xcodeml.createNode(Xcode.F_DEALLOCATE_STATEMENT)
+        .append(xcodeml.createNode(Xcode.ALLOC)
+            .append(xcodeml.createVar(type.getType(), name, Xscope.LOCAL)));
+    boundsIf.matchDirectDescendant(Xcode.THEN).body().append(deallocate);
+    Directive.addPragmasBefore(xcodeml, dg.getExitDataDirective(vars),
+        deallocate);
+    Xnode allocatedIf = xcodeml.createIfThen();
+    allocatedIf.matchDirectDescendant(Xcode.CONDITION)
+        .append(createAllocated(xcodeml, type, name));
+    allocatedIf.matchDirectDescendant(Xcode.THEN).body().append(boundsIf);
+
+    // Allocate the slot if needed
+    Xnode alloc = xcodeml.createNode(Xcode.ALLOC)
+        .append(xcodeml.createVar(type.getType(), name, Xscope.LOCAL));
+    for(Xnode[] bound : bounds) {
+      Xnode range = xcodeml.createNode(Xcode.INDEX_RANGE);
+      range.append(xcodeml.createNode(Xcode.LOWER_BOUND).append(
+          bound[0] == null
+              ? xcodeml.createIntConstant(1) : bound[0].cloneNode()));
+      range.append(xcodeml.createNode(Xcode.UPPER_BOUND)
+          .append(bound[1].cloneNode()));
+      alloc.append(range);
+    }
+    Xnode newAllocate = xcodeml.createNode(Xcode.F_ALLOCATE_STATEMENT)
+        .append(alloc);
+    Xnode notAllocatedIf = xcodeml.createIfThen();
+    notAllocatedIf.matchDirectDescendant(Xcode.CONDITION).append(
+        xcodeml.createNode(Xcode.LOG_NOT_EXPR)
+            .setType(FortranType.LOGICAL.toString())
+            .append(createAllocated(xcodeml, type, name)));
+    notAllocatedIf.matchDirectDescendant(Xcode.THEN).body()
+        .append(newAllocate);
+    Directive.addPragmaAfter(xcodeml, dg.getEnterDataDirective(vars),
+        newAllocate);
+
+    if(allocate != null) {
+      // Removed before the guard is inserted as it deallocates the slot too
+      for(Xnode stmt : fctDef.body().matchAll(Xcode.F_DEALLOCATE_STATEMENT)) {
+        if(isAllocationOf(stmt, name)) {
+          stmt.delete();
+        }
+      }
+      allocate.insertBefore(allocatedIf);
+      allocate.insertBefore(notAllocatedIf);
+      allocate.delete();
+    } else {
+      fctDef.body().insert(notAllocatedIf);
+      fctDef.body().insert(allocatedIf);
+    }
+  }
+
+  /**
+   * Create a call to the allocated intrinsic function.
+   *
+   * @param xcodeml Current translation unit.
+   * @param type    Array type.
+   * @param name    Name of the array.
+   * @return The newly created node detached in the current XcodeML unit.
+   */
+  private Xnode createAllocated(XcodeProgram xcodeml, FbasicType type,
+                                String name)
+  {
+    FunctionCall allocated = xcodeml.createIntrinsicFctCall(
+        FortranType.LOGICAL, Xintrinsic.ALLOCATED);
+    allocated.addArguments(
+        xcodeml.createVar(type.getType(), name, Xscope.LOCAL));
+    return allocated;
+  }
+
+  /**
+   * Create the comparison of a bound of the slot with the requested bound.
+   *
+   * @param xcodeml   Current translation unit.
+   * @param type      Array type.
+   * @param name      Name of the array.
+   * @param intrinsic LBOUND or UBOUND.
+   * @param dimension Dimension index starting at 1.
+   * @param bound     Requested bound expression.
+   * @return The newly created node detached in the current XcodeML unit.
+   */
+  private Xnode createBoundCheck(XcodeProgram xcodeml, FbasicType type,
+                                 String name, Xintrinsic intrinsic,
+                                 int dimension, Xnode bound)
+  {
+    FunctionCall fctCall =
+        xcodeml.createIntrinsicFctCall(FortranType.INTEGER, intrinsic);
+    fctCall.addArguments(
+        xcodeml.createVar(type.getType(), name, Xscope.LOCAL));
+    fctCall.addArguments(xcodeml.createIntConstant(dimension));
+    return xcodeml.createNode(Xcode.LOG_NEQ_EXPR)
+        .setType(FortranType.LOGICAL.toString())
+        .append(fctCall).append(bound.cloneNode());
+  }
+
+  /**
+   * Combine two conditions with a logical or.
+   *
+   * @param xcodeml Current translation unit.
+   * @param lhs     First condition. Can be null.
+   * @param rhs     Second condition.
+   * @return The second condition if the first one is null. The logical or of
+   * both conditions otherwise.
+   */
+  private Xnode createOr(XcodeProgram xcodeml, Xnode lhs, Xnode rhs) {
+    if(lhs == null) {
+      return rhs;
+    }
+    return xcodeml.createNode(Xcode.LOG_OR_EXPR)
+        .setType(FortranType.LOGICAL.toString()).append(lhs).append(rhs);
+  }
+
+  /**
+   * Create the allocatable deferred shape type of a slot and add it to the
+   * type table.
+   *
+   * @param xcodeml Current translation unit.
+   * @param request First pooled array assigned to the slot.
+   * @return The newly created type.
+   */
+  private FbasicType createSlotType(XcodeProgram xcodeml, Request request) {
+    FbasicType element = request._element;
+    // The element type is the array type itself when it refers directly to
+    // an intrinsic type. Otherwise, the scalar type is shared.
+    boolean intrinsicRef = element.isArray();
+    String ref = intrinsicRef ? element.getRef() : element.getType();
+    FbasicType slotType = xcodeml.createBasicType(
+        xcodeml.getTypeTable().generateHash(FortranType.fromString(
+            element.getRef())), ref, Intent.NONE);
+    if(intrinsicRef && element.getKind() != null) {
+      slotType.append(element.getKind().cloneNode());
+    }
+    slotType.setBooleanAttribute(Xattr.IS_ALLOCATABLE, true);
+    for(int i = 0; i < request._rank; ++i) {
+      slotType.addDimension(xcodeml.createEmptyAssumedShaped());
+    }
+    xcodeml.getTypeTable().add(slotType);
+    return slotType;
+  }
+
+  /**
+   * Array added to the pool.
+   */
+  private static class Request {
+    private final String _routine;
+    private final String _name;
+    private final String _typeKey;
+    private final String _shapeKey;
+    private FbasicType _element;
+    private int _rank;
+    private Xnode _renamable;
+
+    private Request(String routine, String name, String typeKey,
+                    String shapeKey)
+    {
+      _routine = routine;
+      _name = name;
+      _typeKey = typeKey;
+      _shapeKey = shapeKey;
+    }
+  }
+
+  /**
+   * Module variable shared by pooled arrays.
+   */
+  private static class Slot {
+    private final String _name;
+    private final List<Request> _requests = new ArrayList<>();
+
+    private Slot(String name) {
+      _name = name;
+    }
+  }
+}
@@ -6,6 +6,8 @@ package claw.tatsu.directive.generator;
 
 import claw.tatsu.common.CompilerDirective;
 import claw.tatsu.directive.common.DataMovement;
+import claw.tatsu.directive.common.LoopMapping;
+import claw.tatsu.directive.common.ReductionOperator;
 import claw.tatsu.xcodeml.xnode.common.Xcode;
 
 import java.util.Collections;
@@ -51,6 +53,22 @@ public abstract class DirectiveGenerator {
    */
   public abstract String[] getStartParallelDirective(String clauses);
 
+  /**
+   * Get the start pragma to define a parallel accelerated region with data
+   * clauses. By default, the data clauses are appended to the other clauses.
+   *
+   * @param clauses     Additional clauses append at the start directive.
+   * @param dataClauses Data clauses of the compute construct.
+   * @return String value that represents the pragma.
+   */
+  public String[] getStartParallelDirective(String clauses,
+                                            String dataClauses)
+  {
+    return getStartParallelDirective(String.format(FORMAT2,
+        clauses == null ? EMPTY : clauses.trim(),
+        dataClauses == null ? EMPTY : dataClauses.trim()).trim());
+  }
+
   /**
    * Get the end pragma to define a parallel accelerated region.
    *
@@ -114,6 +132,55 @@ public abstract class DirectiveGenerator {
    */
   public abstract String getPrivateClause(List<String> vars);
 
+  /**
+   * Return construction of the clause for a list of reduction variables
+   * sharing the same operator.
+   *
+   * @param operator Reduction operator.
+   * @param vars     List of variables name that will be inserted in the
+   *                 generated clause.
+   * @return An directive language specific reduction clause with the list of
+   * variables. If the list is null or empty, the implementation returns an
+   * empty string.
+   */
+  public abstract String getReductionClause(ReductionOperator operator,
+                                            List<String> vars);
+
+  /**
+   * Return construction of the data clause copying a list of reduction
+   * variables to the device before the compute construct and back to the host
+   * after it.
+   *
+   * @param vars List of variables name that will be inserted in the generated
+   *             clause.
+   * @return An directive language specific data clause with the list of
+   * variables. Empty if the reduction variables are not copied.
+   */
+  public String getReductionDataClause(List<String> vars) {
+    return EMPTY;
+  }
+
+  /**
+   * Check whether the reduction clauses are set on the parallel construct.
+   * Partial results of the gangs or teams are then combined by the parallel
+   * construct.
+   *
+   * @return True if the parallel construct holds the reduction clauses.
+   */
+  public boolean hasParallelReduction() {
+    return false;
+  }
+
+  /**
+   * Check whether the reduction clauses are set on the outer loop construct
+   * of a group of do statements.
+   *
+   * @return True if the outer loop construct accepts reduction clauses.
+   */
+  public boolean hasOuterLoopReduction() {
+    return true;
+  }
+
   /**
    * Return construction of the clause for a list of present variables.
    *
@@ -223,4 +290,133 @@ public abstract class DirectiveGenerator {
   public String[] getUpdateClause(DataMovement direction, List<String> vars) {
     return new String[0];
   }
+
+  /**
+   * Get directive for allocating the device copy of the given variables
+   * until the corresponding exit data directive.
+   *
+   * @param vars List of variables allocated on the host.
+   * @return String value that represents the directive. Empty if no directive
+   * generated.
+   */
+  public String[] getEnterDataDirective(List<String> vars) {
+    return new String[0];
+  }
+
+  /**
+   * Get directive for releasing the device copy of the given variables
+   * allocated by the enter data directive.
+   *
+   * @param vars List of variables about to be deallocated on the host.
+   * @return String value that represents the directive. Empty if no directive
+   * generated.
+   */
+  public String[] getExitDataDirective(List<String> vars) {
+    return new String[0];
+  }
+
+  /**
+   * Get directive for caching data in the software-managed cache of the
+   * accelerator.
+   *
+   * @param vars List of variables or array sections to be cached.
+   * @return String value that represents the directive. Empty if no directive
+   * generated.
+   */
+  public String[] getCacheDirective(List<String> vars) {
+    return new String[0];
+  }
+
+  /**
+   * Get formatted directive to start a SIMD loop construct.
+   *
+   * @param combined If true, the SIMD construct is combined with the loop
+   *                 worksharing construct.
+   * @param clauses  Clauses to be added to the directive.
+   * @return String value that represents the directive. Empty if no directive
+   * generated.
+   */
+  public String[] getStartSimdDirective(boolean combined, String clauses) {
+    return new String[0];
+  }
+
+  /**
+   * Get formatted directive to end a SIMD loop construct.
+   *
+   * @param combined If true, the SIMD construct is combined with the loop
+   *                 worksharing construct.
+   * @return String value that represents the directive. Empty if no directive
+   * generated.
+   */
+  public String[] getEndSimdDirective(boolean combined) {
+    return new String[0];
+  }
+
+  /**
+   * Get formatted clause for the maximum safe vector length.
+   *
+   * @param length Number of iterations that can be executed concurrently.
+   * @return Formatted clause. Empty if length is not positive.
+   */
+  public String getSafelenClause(int length) {
+    return EMPTY;
+  }
+
+  /**
+   * Get formatted clause asserting the alignment of the given variables.
+   *
+   * @param vars      List of variables.
+   * @param alignment Alignment in bytes.
+   * @return Formatted clause. Empty if no variables or alignment is not
+   * positive.
+   */
+  public String getAlignedClause(List<String> vars, int alignment) {
+    return EMPTY;
+  }
+
+  /**
+   * Get formatted launch hint clauses for the parallel construct.
+   *
+   * @param mapping Loop mapping holding the hints.
+   * @return Formatted clauses. Empty if no hint is defined.
+   */
+  public String getParallelHintClauses(LoopMapping mapping) {
+    return EMPTY;
+  }
+
+  /**
+   * Get formatted directive to start the outer loop construct of a mapped
+   * group of do statements. By default, the standard loop directive is used.
+   *
+   * @param collapse Number of levels collapsed in the construct.
+   * @param clauses  Clauses to be added to the directive.
+   * @return String value that represents the directive.
+   */
+  public String[] getStartOuterLoopDirective(int collapse, String clauses) {
+    return getStartLoopDirective(collapse, false, false, clauses);
+  }
+
+  /**
+   * Get formatted directive to start the inner loop construct of a mapped
+   * group of do statements.
+   *
+   * @param collapse Number of levels collapsed in the construct.
+   * @param clauses  Clauses to be added to the directive.
+   * @return String value that represents the directive. Empty if the directive
+   * language does not support an inner level.
+   */
+  public String[] getStartInnerLoopDirective(int collapse, String clauses) {
+    return new String[0];
+  }
+
+  /**
+   * Get formatted directive to end the inner loop construct of a mapped group
+   * of do statements.
+   *
+   * @return String value that represents the directive. Empty if no directive
+   * generated.
+   */
+  public String[] getEndInnerLoopDirective() {
+    return new String[0];
+  }
 }
@@ -5,6 +5,7 @@
 package claw.tatsu.directive.generator;
 
 import claw.tatsu.common.CompilerDirective;
+import claw.tatsu.directive.common.ReductionOperator;
 
 import java.util.List;
 
@@ -67,6 +68,13 @@ public class DirectiveNone extends DirectiveGenerator {
     return DirectiveGenerator.EMPTY;
   }
 
+  @Override
+  public String getReductionClause(ReductionOperator operator,
+                                   List<String> vars)
+  {
+    return DirectiveGenerator.EMPTY;
+  }
+
   @Override
   public String getPresentClause(List<String> vars) {
     return null;
@@ -7,8 +7,11 @@ package claw.tatsu.directive.generator;
 import claw.tatsu.common.CompilerDirective;
 import claw.tatsu.common.Message;
 import claw.tatsu.directive.common.DataMovement;
+import claw.tatsu.directive.common.LoopMapping;
+import claw.tatsu.directive.common.ReductionOperator;
 import claw.tatsu.xcodeml.xnode.common.Xcode;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -24,12 +27,19 @@ public class OpenAcc extends DirectiveGenerator {
   public static final String OPENACC_NAME = "openacc";
 
   private static final String OPENACC_DEBUG_PREFIX = "CLAW-OpenACC:";
+  private static final String OPENACC_CACHE = "cache";
   private static final String OPENACC_COLLAPSE = "collapse";
+  private static final String OPENACC_COPY = "copy";
   private static final String OPENACC_DATA = "data";
+  private static final String OPENACC_DELETE = "delete";
+  private static final String OPENACC_ENTER = "enter";
+  private static final String OPENACC_EXIT = "exit";
   private static final String OPENACC_END = "end";
+  private static final String OPENACC_GANG = "gang";
   private static final String OPENACC_LOOP = "loop";
   private static final String OPENACC_PARALLEL = "parallel";
   private static final String OPENACC_PRIVATE = "private";
+  private static final String OPENACC_REDUCTION = "reduction";
   private static final String OPENACC_PRESENT = "present";
   private static final String OPENACC_PCREATE = "pcreate";
   private static final String OPENACC_ROUTINE = "routine";
@@ -37,6 +47,10 @@ public class OpenAcc extends DirectiveGenerator {
   private static final String OPENACC_UPDATE = "update";
   private static final String OPENACC_DEVICE = "device";
   private static final String OPENACC_HOST = "host";
+  private static final String OPENACC_NUM_GANGS = "num_gangs";
+  private static final String OPENACC_NUM_WORKERS = "num_workers";
+  private static final String OPENACC_VECTOR = "vector";
+  private static final String OPENACC_VECTOR_LENGTH = "vector_length";
 
   private OpenAccExecutionMode _mode;
 
@@ -112,6 +126,34 @@ public class OpenAcc extends DirectiveGenerator {
     return String.format(FORMATPAR, OPENACC_PRIVATE, String.join(",", vars));
   }
 
+  @Override
+  public String getReductionClause(ReductionOperator operator,
+                                   List<String> vars)
+  {
+    if(vars == null || vars.isEmpty()) {
+      return DirectiveGenerator.EMPTY;
+    }
+    Message.debug(String.format(
+        "%s generate reduction(%s) clause for (%d variables): %s",
+        OPENACC_DEBUG_PREFIX, operator.fortran(), vars.size(),
+        String.join(",", vars)));
+    return String.format(FORMATPAR, OPENACC_REDUCTION,
+        operator.fortran() + ":" + String.join(",", vars));
+  }
+
+  @Override
+  public String getReductionDataClause(List<String> vars) {
+    if(vars == null || vars.isEmpty()) {
+      return DirectiveGenerator.EMPTY;
+    }
+    return String.format(FORMATPAR, OPENACC_COPY, String.join(",", vars));
+  }
+
+  @Override
+  public boolean hasParallelReduction() {
+    return true;
+  }
+
   @Override
   public String getPresentClause(List<String> vars) {
     if(vars == null || vars.isEmpty()) {
@@ -225,6 +267,61 @@ public class OpenAcc extends DirectiveGenerator {
     return new String[0];
   }
 
+  @Override
+  public String getParallelHintClauses(LoopMapping mapping) {
+    if(mapping == null) {
+      return DirectiveGenerator.EMPTY;
+    }
+    List<String> clauses = new ArrayList<>();
+    if(mapping.getNumGangs() > 0) {
+      clauses.add(String.format("%s(%d)", OPENACC_NUM_GANGS,
+          mapping.getNumGangs()));
+    }
+    if(mapping.getNumWorkers() > 0) {
+      clauses.add(String.format("%s(%d)", OPENACC_NUM_WORKERS,
+          mapping.getNumWorkers()));
+    }
+    if(mapping.getVectorLength() > 0) {
+      clauses.add(String.format("%s(%d)", OPENACC_VECTOR_LENGTH,
+          mapping.getVectorLength()));
+    }
+    return String.join(" ", clauses);
+  }
+
+  @Override
+  public String[] getStartOuterLoopDirective(int collapse, String clauses) {
+    //!$acc loop gang [collapse(<value>)] [clauses]
+    return new String[]{
+        String.format(FORMAT4, OPENACC_PREFIX, OPENACC_LOOP, OPENACC_GANG,
+            formatCollapse(collapse, clauses)).trim()
+    };
+  }
+
+  @Override
+  public String[] getStartInnerLoopDirective(int collapse, String clauses) {
+    //!$acc loop vector [collapse(<value>)] [clauses]
+    return new String[]{
+        String.format(FORMAT4, OPENACC_PREFIX, OPENACC_LOOP, OPENACC_VECTOR,
+            formatCollapse(collapse, clauses)).trim()
+    };
+  }
+
+  /**
+   * Format the collapse clause followed by additional clauses.
+   *
+   * @param collapse Collapse value. Not generated if smaller than 2.
+   * @param clauses  Additional clauses.
+   * @return Formatted clauses.
+   */
+  private String formatCollapse(int collapse, String clauses) {
+    String extra = clauses == null ? "" : clauses.trim();
+    if(collapse > 1) {
+      return String.format(FORMAT2, String.format("%s(%d)", OPENACC_COLLAPSE,
+          collapse), extra).trim();
+    }
+    return extra;
+  }
+
   @Override
   public List<Xcode> getUnsupportedStatements() {
     return Arrays.asList(
@@ -265,4 +362,42 @@ public class OpenAcc extends DirectiveGenerator {
         String.format(FORMAT3, OPENACC_PREFIX, OPENACC_UPDATE, updates)
     };
   }
+
+  @Override
+  public String[] getEnterDataDirective(List<String> vars) {
+    //!$acc enter data create(<vars>)
+    if(vars == null || vars.isEmpty()) {
+      return new String[0];
+    }
+    return new String[]{
+        String.format(FORMAT4, OPENACC_PREFIX, OPENACC_ENTER, OPENACC_DATA,
+            getCreateClause(vars))
+    };
+  }
+
+  @Override
+  public String[] getExitDataDirective(List<String> vars) {
+    //!$acc exit data delete(<vars>)
+    if(vars == null || vars.isEmpty()) {
+      return new String[0];
+    }
+    return new String[]{
+        String.format(FORMAT4, OPENACC_PREFIX, OPENACC_EXIT, OPENACC_DATA,
+            String.format(FORMATPAR, OPENACC_DELETE, String.join(",", vars)))
+    };
+  }
+
+  @Override
+  public String[] getCacheDirective(List<String> vars) {
+    //!$acc cache(<vars>)
+    if(vars == null || vars.isEmpty()) {
+      return new String[0];
+    }
+    Message.debug(OPENACC_DEBUG_PREFIX + "generate cache directive for: "
+        + String.join(",", vars));
+    return new String[]{
+        String.format(FORMAT2, OPENACC_PREFIX,
+            String.format(FORMATPAR, OPENACC_CACHE, String.join(",", vars)))
+    };
+  }
 }
@@ -6,9 +6,12 @@ package claw.tatsu.directive.generator;
 
 import claw.tatsu.common.*;
 import claw.tatsu.directive.common.DataMovement;
+import claw.tatsu.directive.common.LoopMapping;
+import claw.tatsu.directive.common.ReductionOperator;
 import claw.tatsu.xcodeml.xnode.common.Xcode;
 import claw.tatsu.directive.configuration.OpenMpConfiguration;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -28,6 +31,9 @@ public class OpenMp extends DirectiveGenerator {
   private static final String OPENMP_DECLARE = "declare";
   private static final String OPENMP_TARGET = "target";
   private static final String OPENMP_DATA = "data";
+  private static final String OPENMP_DELETE = "delete";
+  private static final String OPENMP_ENTER = "enter";
+  private static final String OPENMP_EXIT = "exit";
   private static final String OPENMP_TEAMS = "teams";
   private static final String OPENMP_THREADS_LIMIT = "thread_limit";
   private static final String OPENMP_NUM_TEAMS = "num_teams";
@@ -40,11 +46,16 @@ public class OpenMp extends DirectiveGenerator {
   private static final String OPENMP_MAP = "map";
   private static final String OPENMP_FROM = "from";
   private static final String OPENMP_TO = "to";
+  private static final String OPENMP_TOFROM = "tofrom";
   private static final String OPENMP_UPDATE = "update";
   private static final String OPENMP_PRIVATE = "private";
+  private static final String OPENMP_REDUCTION = "reduction";
   private static final String OPENMP_ALLOC = "alloc";
   private static final String OPENMP_DO = "do";
   private static final String OPENMP_END = "end";
+  private static final String OPENMP_SIMD = "simd";
+  private static final String OPENMP_SAFELEN = "safelen";
+  private static final String OPENMP_ALIGNED = "aligned";
 
   private OpenMpExecutionMode _mode;
 
@@ -98,13 +109,16 @@ public class OpenMp extends DirectiveGenerator {
       OpenMpConfiguration ompConfig =
           (OpenMpConfiguration) Context.get().getAcceleratorConfig();
 
+      // Hints given in the clauses take precedence over the configuration
       int numThreads = ompConfig.getNumThreads();
       int numTeams = ompConfig.getNumTeams();
-      if(numThreads > 0) {
-        clauses += String.format("%s(%d)", OPENMP_THREADS_LIMIT, numThreads);
+      if(numThreads > 0 && !clauses.contains(OPENMP_THREADS_LIMIT)) {
+        clauses = String.format(FORMAT2, clauses, String.format("%s(%d)",
+            OPENMP_THREADS_LIMIT, numThreads)).trim();
       }
-      if(numTeams > 0) {
-        clauses += String.format(" %s(%d)", OPENMP_NUM_TEAMS, numTeams);
+      if(numTeams > 0 && !clauses.contains(OPENMP_NUM_TEAMS)) {
+        clauses = String.format(FORMAT2, clauses, String.format("%s(%d)",
+            OPENMP_NUM_TEAMS, numTeams)).trim();
       }
 
       if(clauses.isEmpty()) {
@@ -126,6 +140,19 @@ public class OpenMp extends DirectiveGenerator {
     }
   }
 
+  @Override
+  public String[] getStartParallelDirective(String clauses,
+                                            String dataClauses)
+  {
+    String[] directives = getStartParallelDirective(clauses);
+    if(dataClauses != null && !dataClauses.trim().isEmpty()) {
+      // Data clauses belong to the target construct
+      directives[0] = String.format(FORMAT2, directives[0],
+          dataClauses.trim());
+    }
+    return directives;
+  }
+
   @Override
   public String[] getEndParallelDirective() {
     if(Context.isTarget(Target.GPU)) {
@@ -176,6 +203,44 @@ public class OpenMp extends DirectiveGenerator {
     return String.format(FORMATPAR, OPENMP_PRIVATE, String.join(",", vars));
   }
 
+  @Override
+  public String getReductionClause(ReductionOperator operator,
+                                   List<String> vars)
+  {
+    if(vars == null || vars.isEmpty()) {
+      return DirectiveGenerator.EMPTY;
+    }
+    Message.debug(String.format(
+        "%s generate reduction(%s) clause for (%d variables): %s",
+        OPENMP_DEBUG_PREFIX, operator.fortran(), vars.size(),
+        String.join(",", vars)));
+    return String.format(FORMATPAR, OPENMP_REDUCTION,
+        operator.fortran() + ":" + String.join(",", vars));
+  }
+
+  @Override
+  public String getReductionDataClause(List<String> vars) {
+    if(vars == null || vars.isEmpty() || !Context.isTarget(Target.GPU)) {
+      return DirectiveGenerator.EMPTY;
+    }
+    //map(tofrom:<vars>)
+    return String.format(FORMATPAR, OPENMP_MAP,
+        String.format("%s:%s", OPENMP_TOFROM, String.join(",", vars)));
+  }
+
+  @Override
+  public boolean hasParallelReduction() {
+    // Reduction of a worksharing construct must be shared in the parallel
+    // region on CPU. On GPU, the teams combine their partial results.
+    return Context.isTarget(Target.GPU);
+  }
+
+  @Override
+  public boolean hasOuterLoopReduction() {
+    // The distribute construct does not accept the reduction clause
+    return !Context.isTarget(Target.GPU);
+  }
+
   @Override
   public String getPresentClause(List<String> vars) {
     return DirectiveGenerator.EMPTY;
@@ -330,6 +395,90 @@ public class OpenMp extends DirectiveGenerator {
     }
   }
 
+  @Override
+  public String getParallelHintClauses(LoopMapping mapping) {
+    if(mapping == null || !Context.isTarget(Target.GPU)) {
+      return DirectiveGenerator.EMPTY;
+    }
+    List<String> clauses = new ArrayList<>();
+    if(mapping.getNumGangs() > 0) {
+      clauses.add(String.format("%s(%d)", OPENMP_NUM_TEAMS,
+          mapping.getNumGangs()));
+    }
+    if(mapping.getThreadLimit() > 0) {
+      clauses.add(String.format("%s(%d)", OPENMP_THREADS_LIMIT,
+          mapping.getThreadLimit()));
+    }
+    return String.join(" ", clauses);
+  }
+
+  @Override
+  public String[] getStartInnerLoopDirective(int collapse, String clauses) {
+    if(!Context.isTarget(Target.GPU)) {
+      return new String[0];
+    }
+    //!$omp parallel do simd [collapse(#)] [clauses]
+    String directive = String.format(FORMAT5, OPENMP_PREFIX, OPENMP_PARALLEL,
+        OPENMP_DO, OPENMP_SIMD, collapse > 1
+            ? String.format("%s(%d)", OPENMP_COLLAPSE, collapse) : "").trim();
+    if(clauses != null && !clauses.trim().isEmpty()) {
+      directive = String.format(FORMAT2, directive, clauses.trim());
+    }
+    return new String[]{directive};
+  }
+
+  @Override
+  public String[] getEndInnerLoopDirective() {
+    if(!Context.isTarget(Target.GPU)) {
+      return new String[0];
+    }
+    //!$omp end parallel do simd
+    return new String[]{
+        String.format(FORMAT5, OPENMP_PREFIX, OPENMP_END, OPENMP_PARALLEL,
+            OPENMP_DO, OPENMP_SIMD)
+    };
+  }
+
+  @Override
+  public String[] getStartSimdDirective(boolean combined, String clauses) {
+    //!$omp [do] simd [clauses]
+    String directive = combined
+        ? String.format(FORMAT3, OPENMP_PREFIX, OPENMP_DO, OPENMP_SIMD)
+        : String.format(FORMAT2, OPENMP_PREFIX, OPENMP_SIMD);
+    if(clauses == null || clauses.trim().isEmpty()) {
+      return new String[]{directive};
+    }
+    return new String[]{String.format(FORMAT2, directive, clauses.trim())};
+  }
+
+  @Override
+  public String[] getEndSimdDirective(boolean combined) {
+    //!$omp end [do] simd
+    return new String[]{
+        combined
+            ? String.format(FORMAT4, OPENMP_PREFIX, OPENMP_END, OPENMP_DO,
+            OPENMP_SIMD)
+            : String.format(FORMAT3, OPENMP_PREFIX, OPENMP_END, OPENMP_SIMD)
+    };
+  }
+
+  @Override
+  public String getSafelenClause(int length) {
+    if(length <= 0) {
+      return DirectiveGenerator.EMPTY;
+    }
+    return String.format("%s(%d)", OPENMP_SAFELEN, length);
+  }
+
+  @Override
+  public String getAlignedClause(List<String> vars, int alignment) {
+    if(vars == null || vars.isEmpty() || alignment <= 0) {
+      return DirectiveGenerator.EMPTY;
+    }
+    return String.format("%s(%s:%d)", OPENMP_ALIGNED, String.join(",", vars),
+        alignment);
+  }
+
   @Override
   public List<Xcode> getUnsupportedStatements() {
     return Arrays.asList(
@@ -352,6 +501,31 @@ public class OpenMp extends DirectiveGenerator {
     );
   }
 
+  @Override
+  public String[] getEnterDataDirective(List<String> vars) {
+    //!$omp target enter data map(alloc:<vars>)
+    if(vars == null || vars.isEmpty()) {
+      return new String[0];
+    }
+    return new String[]{
+        String.format(FORMAT5, OPENMP_PREFIX, OPENMP_TARGET, OPENMP_ENTER,
+            OPENMP_DATA, getCreateClause(vars))
+    };
+  }
+
+  @Override
+  public String[] getExitDataDirective(List<String> vars) {
+    //!$omp target exit data map(delete:<vars>)
+    if(vars == null || vars.isEmpty()) {
+      return new String[0];
+    }
+    return new String[]{
+        String.format(FORMAT5, OPENMP_PREFIX, OPENMP_TARGET, OPENMP_EXIT,
+            OPENMP_DATA, String.format(FORMATPAR, OPENMP_MAP,
+                String.format("%s:%s", OPENMP_DELETE, String.join(",", vars))))
+    };
+  }
+
   @Override
   public String[] getUpdateClause(DataMovement direction, List<String> vars) {
     //!$omp target update from/to(<vars>)
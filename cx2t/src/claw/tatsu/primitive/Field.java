@@ -14,6 +14,8 @@ import claw.tatsu.xcodeml.xnode.common.*;
 import claw.tatsu.xcodeml.xnode.fortran.*;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -158,10 +160,11 @@ public final class Field {
       }
     }
 
-    // Set type hash to id and declaration node
+    // Set type hash to id and declaration node. The new type might be merged
+    // with an identical existing type.
+    type = xcodeml.getTypeTable().add(newType);
     id.setType(type);
     decl.matchSeq(Xcode.NAME).setType(type);
-    xcodeml.getTypeTable().add(newType);
 
     if(returnTypePromotion) {
       fctType.setAttribute(Xattr.RETURN_TYPE, type);
@@ -199,35 +202,65 @@ public final class Field {
    *                      generation.
    * @param xcodeml       Current XcodeML program unit in which the element
    *                      will be created.
+   * @return Number of references adapted.
    */
-  public static void adaptScalarRefToArrayRef(PromotionInfo promotionInfo,
-                                              FfunctionDefinition fctDef,
-                                              List<DimensionDefinition> dims,
-                                              XcodeML xcodeml)
+  public static int adaptScalarRefToArrayRef(PromotionInfo promotionInfo,
+                                             FfunctionDefinition fctDef,
+                                             List<DimensionDefinition> dims,
+                                             XcodeML xcodeml)
   {
-    if(promotionInfo.isRefAdapted()) {
-      return;
+    return adaptScalarRefsToArrayRefs(
+        Collections.singletonList(promotionInfo), fctDef, dims, xcodeml);
+  }
+
+  /**
+   * Adapt all the references of several promoted scalars in the current
+   * function/subroutine definition. The references are collected in a single
+   * traversal and each reference is replaced by a copy of an array reference
+   * prototype built once per variable.
+   *
+   * @param promotions Promotion information of the variables.
+   * @param fctDef     Function definition in which reference are changed.
+   * @param dims       Dimension definition to use for array index generation.
+   * @param xcodeml    Current XcodeML program unit in which the element will
+   *                   be created.
+   * @return Number of references adapted.
+   */
+  public static int adaptScalarRefsToArrayRefs(
+      Collection<PromotionInfo> promotions, FfunctionDefinition fctDef,
+      List<DimensionDefinition> dims, XcodeML xcodeml)
+  {
+    List<PromotionInfo> pending = getNotAdapted(promotions);
+    if(pending.isEmpty()) {
+      return 0;
     }
 
-    List<Xnode> vars = XnodeUtil.findAllReferences(fctDef.body(),
-        promotionInfo.getIdentifier());
-    Xid sId = fctDef.getSymbolTable().get(promotionInfo.getIdentifier());
-    FbasicType type = xcodeml.getTypeTable().getBasicType(sId);
+    Map<String, List<Xnode>> references =
+        XnodeUtil.getAllVarReferences(fctDef.body(), getIdentifiers(pending));
 
-    List<Xnode> arrayIndexes = new ArrayList<>();
-    for(DimensionDefinition d : dims) {
-      arrayIndexes.add(d.generateArrayIndex(xcodeml));
-    }
+    int adapted = 0;
+    for(PromotionInfo promotionInfo : pending) {
+      Xid sId = fctDef.getSymbolTable().get(promotionInfo.getIdentifier());
+      FbasicType type = xcodeml.getTypeTable().getBasicType(sId);
+
+      Xnode prototype = xcodeml.createNode(Xcode.F_ARRAY_REF)
+          .setType(type.getRef())
+          .append(xcodeml.createNode(Xcode.VAR_REF).setType(type.getType()));
+      for(DimensionDefinition d : dims) {
+        prototype.append(d.generateArrayIndex(xcodeml));
+      }
 
-    for(Xnode var : vars) {
-      Xnode ref = xcodeml.createArrayRef(type, var.cloneNode());
-      for(Xnode ai : arrayIndexes) {
-        ref.append(ai, true);
+      for(Xnode var : getReferences(references, promotionInfo)) {
+        if(var.isNotArrayIndex()) {
+          Xnode ref = prototype.cloneNode();
+          var.insertAfter(ref);
+          ref.firstChild().append(var);
+          ++adapted;
+        }
       }
-      var.insertAfter(ref);
-      var.delete();
+      promotionInfo.setRefAdapted();
     }
-    promotionInfo.setRefAdapted();
+    return adapted;
   }
 
   /**
@@ -410,83 +443,175 @@ public final class Field {
    * @param parent          Root node of the tree in which the adaptation is done.
    * @param adaptNakedArray Adapt arrayRef with no index (e.g. p instead of p(:))
    * @param xcodeml         Current XcodeML translation unit.
+   * @return Number of references adapted.
    */
-  public static void adaptArrayRef(PromotionInfo promotionInfo, Xnode parent,
-                                   boolean adaptNakedArray,
+  public static int adaptArrayRef(PromotionInfo promotionInfo, Xnode parent,
+                                  boolean adaptNakedArray,
+                                  XcodeProgram xcodeml)
+  {
+    return adaptArrayRefs(Collections.singletonList(promotionInfo), parent,
+        adaptNakedArray, xcodeml);
+  }
+
+  /**
+   * Adapt all the array references of several promoted fields in a tree. The
+   * references are collected in a single traversal and the new nodes are
+   * copies of prototypes built once per field.
+   *
+   * @param promotions      Promotion information used for the promotion of the
+   *                        fields.
+   * @param parent          Root node of the tree in which the adaptation is
+   *                        done.
+   * @param adaptNakedArray Adapt arrayRef with no index (e.g. p instead of
+   *                        p(:))
+   * @param xcodeml         Current XcodeML translation unit.
+   * @return Number of references adapted.
+   */
+  public static int adaptArrayRefs(Collection<PromotionInfo> promotions,
+                                   Xnode parent, boolean adaptNakedArray,
                                    XcodeProgram xcodeml)
   {
-    if(promotionInfo.isRefAdapted()) {
-      return;
+    List<PromotionInfo> pending = getNotAdapted(promotions);
+    if(pending.isEmpty()) {
+      return 0;
     }
 
-    // Scalar to array reference
-    if(promotionInfo.wasScalar()) {
-      List<Xnode> refs =
-          XnodeUtil.getAllVarReferences(parent, promotionInfo.getIdentifier());
-      for(Xnode ref : refs) {
+    Map<String, List<Xnode>> references =
+        XnodeUtil.getAllVarReferences(parent, getIdentifiers(pending));
 
-        if(Function.isArgOfFunction(ref, Xintrinsic.PRESENT)) {
-          continue;
-        }
-
-        Xnode arrayRef = convertVarToArrayRef(promotionInfo, ref, xcodeml);
+    int adapted = 0;
+    for(PromotionInfo promotionInfo : pending) {
+      List<Xnode> vars = getReferences(references, promotionInfo);
+      List<Xnode> indexes = new ArrayList<>();
+      for(DimensionDefinition dim : promotionInfo.getDimensions()) {
+        indexes.add(dim.generateArrayIndex(xcodeml));
+      }
 
+      if(promotionInfo.wasScalar()) { // Scalar to array reference
         // Simply generate all arrayIndex in order
-        for(DimensionDefinition dim : promotionInfo.getDimensions()) {
-          arrayRef.append(dim.generateArrayIndex(xcodeml));
+        Xnode prototype = createArrayRefPrototype(promotionInfo, xcodeml);
+        for(Xnode index : indexes) {
+          prototype.append(index);
         }
-      }
-    } else { // Array reference to array reference
-      List<Xnode> refs = XnodeUtil.getAllArrayReferences(parent,
-          promotionInfo.getIdentifier());
-      for(Xnode ref : refs) {
-        if(ref.matchAncestor(Xcode.F_ALLOCATE_STATEMENT) != null) {
-          continue;
+        for(Xnode var : vars) {
+          if(!Function.isArgOfFunction(var, Xintrinsic.PRESENT)) {
+            convertVarToArrayRef(promotionInfo, var, prototype);
+            ++adapted;
+          }
+        }
+      } else { // Array reference to array reference
+        for(Xnode var : vars) {
+          Xnode ref = XnodeUtil.getArrayReference(var);
+          if(ref != null
+              && ref.matchAncestor(Xcode.F_ALLOCATE_STATEMENT) == null)
+          {
+            insertPromotionDimensions(promotionInfo, ref, indexes);
+            ++adapted;
+          }
         }
-        insertPromotionDimensions(promotionInfo, ref, xcodeml);
-      }
 
-      if(adaptNakedArray) {
-        List<Xnode> assumedRefs = XnodeUtil.getAllVarReferences(parent,
-            promotionInfo.getIdentifier());
-        for(Xnode ref : assumedRefs) {
-          // Fortran array passed without assumed dimensions
-          if(ref.isNotArrayRef()) {
-            Xnode arrayRef = convertVarToArrayRef(promotionInfo, ref, xcodeml);
-            for(int i = 0; i < promotionInfo.getBaseDimension(); ++i) {
-              arrayRef.append(xcodeml.createEmptyAssumedShaped());
+        if(adaptNakedArray) {
+          Xnode prototype = null;
+          for(Xnode var : vars) {
+            // Fortran array passed without assumed dimensions
+            if(var.isNotArrayRef()) {
+              if(prototype == null) {
+                prototype = createArrayRefPrototype(promotionInfo, xcodeml);
+                for(int i = 0; i < promotionInfo.getBaseDimension(); ++i) {
+                  prototype.append(xcodeml.createEmptyAssumedShaped());
+                }
+                insertPromotionDimensions(promotionInfo, prototype, indexes);
+              }
+              convertVarToArrayRef(promotionInfo, var, prototype);
+              ++adapted;
             }
-            insertPromotionDimensions(promotionInfo, arrayRef, xcodeml);
           }
         }
       }
+      promotionInfo.setRefAdapted();
+    }
+    return adapted;
+  }
+
+  /**
+   * Get the promotion information whose references are not adapted yet.
+   *
+   * @param promotions Promotion information.
+   * @return Promotion information to be adapted in the given order.
+   */
+  private static List<PromotionInfo> getNotAdapted(
+      Collection<PromotionInfo> promotions)
+  {
+    List<PromotionInfo> pending = new ArrayList<>();
+    for(PromotionInfo promotionInfo : promotions) {
+      if(!promotionInfo.isRefAdapted()) {
+        pending.add(promotionInfo);
+      }
     }
+    return pending;
+  }
 
-    promotionInfo.setRefAdapted();
+  /**
+   * Get the identifiers of promoted fields.
+   *
+   * @param promotions Promotion information.
+   * @return Identifiers of the fields.
+   */
+  private static List<String> getIdentifiers(List<PromotionInfo> promotions) {
+    List<String> identifiers = new ArrayList<>();
+    for(PromotionInfo promotionInfo : promotions) {
+      identifiers.add(promotionInfo.getIdentifier());
+    }
+    return identifiers;
   }
 
   /**
-   * Convert a var to an arry reference with dimensions from promotion
-   * information.
+   * Get the references of a promoted field among collected references.
+   *
+   * @param references    References collected by lower-cased name.
+   * @param promotionInfo Promotion information of the field.
+   * @return References of the field. Empty list if there is none.
+   */
+  private static List<Xnode> getReferences(Map<String, List<Xnode>> references,
+                                           PromotionInfo promotionInfo)
+  {
+    return references.getOrDefault(
+        promotionInfo.getIdentifier().toLowerCase(), Collections.emptyList());
+  }
+
+  /**
+   * Create an array reference without index to be copied when var elements
+   * are converted to array references.
    *
    * @param promotionInfo Promotion information used for the promotion of the
    *                      field.
-   * @param ref           Var node to be converted.
    * @param xcodeml       Current XcodeML translation unit.
-   * @return FarrayRef node created.
+   * @return FarrayRef node created with its varRef child.
    */
-  private static Xnode convertVarToArrayRef(PromotionInfo promotionInfo,
-                                            Xnode ref, XcodeML xcodeml)
+  private static Xnode createArrayRefPrototype(PromotionInfo promotionInfo,
+                                               XcodeML xcodeml)
   {
-    Xnode arrayRef = xcodeml.createNode(Xcode.F_ARRAY_REF);
     Xnode varRef = xcodeml.createNode(Xcode.VAR_REF);
-    arrayRef.setType(ref.getType());
     varRef.setType(promotionInfo.getTargetType());
+    return xcodeml.createNode(Xcode.F_ARRAY_REF).append(varRef);
+  }
+
+  /**
+   * Convert a var to an array reference copied from a prototype.
+   *
+   * @param promotionInfo Promotion information used for the promotion of the
+   *                      field.
+   * @param ref           Var node to be converted.
+   * @param prototype     Array reference to be copied.
+   */
+  private static void convertVarToArrayRef(PromotionInfo promotionInfo,
+                                           Xnode ref, Xnode prototype)
+  {
+    Xnode arrayRef = prototype.cloneNode();
+    arrayRef.setType(ref.getType());
     ref.setType(promotionInfo.getTargetType());
     ref.insertAfter(arrayRef);
-    arrayRef.append(varRef);
-    varRef.append(ref);
-    return arrayRef;
+    arrayRef.firstChild().append(ref);
   }
 
   /**
@@ -495,28 +620,29 @@ public final class Field {
    * @param promotionInfo Promotion information used for the promotion of the
    *                      field.
    * @param ref           Current array reference.
-   * @param xcodeml       Current XcodeML translation unit.
+   * @param indexes       arrayIndex nodes of the dimensions in the promotion
+   *                      information order. Copies are inserted.
    */
   private static void insertPromotionDimensions(PromotionInfo promotionInfo,
-                                                Xnode ref, XcodeML xcodeml)
+                                                Xnode ref, List<Xnode> indexes)
   {
     int beforePositionIndex = 0; // First arrayIndex after varRef at pos 0
     int inMiddlePositionIndex = 1;
-    for(DimensionDefinition dim : promotionInfo.getDimensions()) {
-      switch(dim.getInsertionPosition()) {
+    List<DimensionDefinition> dims = promotionInfo.getDimensions();
+    for(int i = 0; i < dims.size(); ++i) {
+      Xnode index = indexes.get(i).cloneNode();
+      switch(dims.get(i).getInsertionPosition()) {
         case BEFORE:
-          ref.child(beforePositionIndex).
-              insertAfter(dim.generateArrayIndex(xcodeml));
+          ref.child(beforePositionIndex).insertAfter(index);
           ++beforePositionIndex;
           ++inMiddlePositionIndex;
           break;
         case IN_MIDDLE:
-          ref.child(inMiddlePositionIndex).
-              insertAfter(dim.generateArrayIndex(xcodeml));
+          ref.child(inMiddlePositionIndex).insertAfter(index);
           ++inMiddlePositionIndex;
           break;
         case AFTER:
-          ref.append(dim.generateArrayIndex(xcodeml));
+          ref.append(index);
           break;
       }
     }
@@ -4,14 +4,16 @@
  */
 package claw.tatsu.primitive;
 
+import claw.tatsu.analysis.dependency.DefUseAnalysis;
+import claw.tatsu.analysis.topology.CallGraph;
 import claw.tatsu.xcodeml.abstraction.DimensionDefinition;
 import claw.tatsu.xcodeml.abstraction.FunctionCall;
 import claw.tatsu.xcodeml.abstraction.InsertionPosition;
 import claw.tatsu.xcodeml.abstraction.PromotionInfo;
+import claw.tatsu.xcodeml.exception.IllegalTransformationException;
+import claw.tatsu.xcodeml.xnode.Xname;
 import claw.tatsu.xcodeml.xnode.common.*;
-import claw.tatsu.xcodeml.xnode.fortran.FfunctionDefinition;
-import claw.tatsu.xcodeml.xnode.fortran.FfunctionType;
-import claw.tatsu.xcodeml.xnode.fortran.Xintrinsic;
+import claw.tatsu.xcodeml.xnode.fortran.*;
 
 import java.util.*;
 
@@ -20,11 +22,28 @@ import java.util.*;
  * This includes:
  * - Find arguments in function call.
  * - Find id in function definition or in ancestor.
+ * - Inline a function/subroutine at its call site.
+ * - Specialize a subroutine for constant argument values.
  *
  * @author clementval
  */
 public final class Function {
 
+  private static final List<Xcode> NOT_INLINABLE = Arrays.asList(
+      Xcode.F_CONTAINS_STATEMENT, Xcode.F_ENTRY_DECL, Xcode.F_STOP_STATEMENT,
+      Xcode.GOTO_STATEMENT, Xcode.STATEMENT_LABEL
+  );
+  private static final List<Xcode> DESIGNATORS = Arrays.asList(
+      Xcode.VAR, Xcode.F_ARRAY_REF, Xcode.F_MEMBER_REF
+  );
+  private static final List<Xcode> CONSTANTS = Arrays.asList(
+      Xcode.F_INT_CONSTANT, Xcode.F_REAL_CONSTANT, Xcode.F_COMPLEX_CONSTANT,
+      Xcode.F_CHARACTER_CONSTANT, Xcode.F_LOGICAL_CONSTANT
+  );
+  private static final List<String> ROUTINE_PRAGMAS = Arrays.asList(
+      "acc routine", "omp declare target"
+  );
+
   // Avoid instantiation of this class
   private Function() {
   }
@@ -110,7 +129,16 @@ public final class Function {
     FfunctionDefinition calledFctDef = xcodeml.getGlobalDeclarationsTable()
         .getFunctionDefinition(fctCall.getFctName());
     if(calledFctDef == null) {
-      Xnode meaningfulParentNode = fctDef.findParentModule();
+      FmoduleDefinition mod = fctDef.findParentModule();
+      Optional<FfunctionDefinition> indexedFctDef = xcodeml.getCallGraph()
+          .findDefinition(mod == null ? null : mod.getName(),
+              fctCall.getFctName());
+      if(indexedFctDef.isPresent()) {
+        return indexedFctDef;
+      }
+
+      // Definitions created after the call graph was built are not indexed
+      Xnode meaningfulParentNode = mod;
       if(meaningfulParentNode == null) { // fct is not a module child
         meaningfulParentNode = fctDef.matchAncestor(Xcode.GLOBAL_DECLARATIONS);
       }
@@ -123,4 +151,869 @@ public final class Function {
     return Optional.empty();
   }
 
+  /**
+   * Find the definition of the function/subroutine called by a function call
+   * in the current translation unit. The call graph of the translation unit
+   * is searched first with the renames of the use statements resolved and
+   * the definitions of the caller's module preferred. The global declarations
+   * and the modules are searched then, followed by the module or global
+   * declarations enclosing the caller.
+   *
+   * @param xcodeml Current XcodeML translation unit.
+   * @param fctDef  Function definition encapsulating the function call.
+   * @param fctCall Function call to find the definition.
+   * @return The function definition if found. Empty otherwise.
+   */
+  public static Optional<FfunctionDefinition> findFunctionDefinition(
+      XcodeProgram xcodeml, FfunctionDefinition fctDef, FunctionCall fctCall)
+  {
+    if(!fctCall.isTbpCall()) {
+      CallGraph callGraph = xcodeml.getCallGraph();
+      String name = callGraph.resolve(fctDef.getName(), fctCall);
+      FmoduleDefinition mod = fctDef.findParentModule();
+      Optional<FfunctionDefinition> indexedFctDef = callGraph
+          .findDefinition(mod == null ? null : mod.getName(), name);
+      if(!indexedFctDef.isPresent() && mod != null) {
+        indexedFctDef = callGraph.findDefinition(null, name);
+      }
+      if(indexedFctDef.isPresent()) {
+        return indexedFctDef;
+      }
+    }
+
+    FfunctionDefinition calledFctDef = xcodeml.getGlobalDeclarationsTable()
+        .getFunctionDefinition(fctCall.getFctName());
+    if(calledFctDef != null) {
+      return Optional.of(calledFctDef);
+    }
+    return findFunctionDefinitionFromFctCall(xcodeml, fctDef, fctCall);
+  }
+
+  /**
+   * Count the statements of a function/subroutine including the statements
+   * of the nested blocks.
+   *
+   * @param fctDef Function/subroutine definition.
+   * @return Number of statements.
+   */
+  public static int countStatements(FfunctionDefinition fctDef) {
+    int count = 0;
+    for(Xnode body : fctDef.matchAll(Xcode.BODY)) {
+      count += body.children().size();
+    }
+    return count;
+  }
+
+  /**
+   * Inline a function/subroutine at its call site. The call must be the
+   * subroutine call of a call statement or a function call in the right hand
+   * side of an assignment. The body of the callee is copied before the
+   * statement with:<ul>
+   * <li> The dummy arguments replaced by the actual arguments. Actual
+   * arguments being expressions are first assigned to a temporary.
+   * <li> The local variables and the function result renamed with the callee
+   * name as prefix and declared in the caller.
+   * <li> The use declarations of the callee added to the caller.
+   * </ul>
+   * The call statement is then removed or the function call is replaced by
+   * the function result. The callee is kept unchanged for its other callers.
+   *
+   * @param xcodeml Current XcodeML translation unit.
+   * @param caller  Function/subroutine definition in which the call is.
+   * @param fctCall Function call to be inlined.
+   * @param callee  Definition of the called function/subroutine.
+   * @return Number of statements inserted in the caller.
+   * @throws IllegalTransformationException If the call cannot be inlined. The
+   *                                        caller is not modified in this case.
+   */
+  public static int inline(XcodeProgram xcodeml, FfunctionDefinition caller,
+                           FunctionCall fctCall, FfunctionDefinition callee)
+      throws IllegalTransformationException
+  {
+    Xnode stmt = getInliningStatement(fctCall);
+    FfunctionType calleeType = checkCallee(xcodeml, caller, fctCall, callee,
+        stmt.lineNo());
+    DefUseAnalysis defUse = new DefUseAnalysis(callee.body());
+
+    // Classify the declarations of the callee
+    List<String> dummies = new ArrayList<>();
+    for(String param : calleeType.getParamsNames()) {
+      dummies.add(param.toLowerCase());
+    }
+    String result = calleeType.isFunction()
+        ? getResultName(callee, calleeType).toLowerCase() : null;
+    List<Xnode> locals = new ArrayList<>();
+    List<Xnode> uses = new ArrayList<>();
+    Set<String> freeNames = DefUseAnalysis.getUsedNames(callee.body());
+    freeNames.removeAll(dummies);
+    for(Xnode decl : callee.getDeclarationTable().values()) {
+      if(decl.is(Xcode.F_USE_DECL) || decl.is(Xcode.F_USE_ONLY_DECL)) {
+        uses.add(decl);
+      } else if(!decl.is(Xcode.VAR_DECL)) {
+        throw new IllegalTransformationException(String.format(
+            "Cannot inline %s: unsupported %s declaration.", callee.getName(),
+            decl.opcode().code()), stmt.lineNo());
+      } else {
+        String name = decl.matchSeq(Xcode.NAME).value().toLowerCase();
+        if(!dummies.contains(name)) {
+          checkLocal(xcodeml, callee, decl, name.equals(result), defUse,
+              stmt.lineNo());
+          if(!name.equals(result)) {
+            locals.add(decl);
+          }
+          FbasicType bt = xcodeml.getTypeTable().getBasicType(decl);
+          if(bt != null) {
+            freeNames.addAll(DefUseAnalysis.getUsedNames(bt));
+          }
+        }
+      }
+    }
+    freeNames.remove(result);
+    for(Xnode local : locals) {
+      freeNames.remove(local.matchSeq(Xcode.NAME).value().toLowerCase());
+    }
+    checkFreeNames(caller, callee, freeNames, stmt.lineNo());
+    checkUseDeclarations(caller, callee, uses, stmt.lineNo());
+    checkArguments(xcodeml, fctCall, callee, calleeType, defUse,
+        stmt.lineNo());
+
+    // The caller is only modified once all the checks are done
+    for(Xnode use : uses) {
+      if(!caller.getDeclarationTable().contains(use.getAttribute(Xattr.NAME)))
+      {
+        caller.getDeclarationTable().insertUseOnlyDecl(xcodeml,
+            use.getAttribute(Xattr.NAME), getUseNames(use));
+      }
+    }
+    Set<String> reserved = new HashSet<>(freeNames);
+    Map<String, String> renaming = new HashMap<>();
+    for(Xnode local : locals) {
+      String name = local.matchSeq(Xcode.NAME).value();
+      String newName = getUniqueName(caller, reserved,
+          callee.getName() + "_" + name);
+      renaming.put(name.toLowerCase(), newName);
+    }
+    for(Xnode local : locals) {
+      Xnode decl = local.cloneNode();
+      decl.matchSeq(Xcode.NAME).setValue(
+          renaming.get(local.matchSeq(Xcode.NAME).value().toLowerCase()));
+      renameVariables(decl, renaming, Collections.emptyMap());
+      caller.getDeclarationTable().add(decl);
+      caller.getSymbolTable().add(xcodeml.createId(
+          decl.matchSeq(Xcode.NAME).getType(), XstorageClass.F_LOCAL,
+          decl.matchSeq(Xcode.NAME).value()));
+    }
+    if(result != null) {
+      String newName = getUniqueName(caller, reserved,
+          callee.getName() + "_" + result);
+      xcodeml.createIdAndDecl(newName, calleeType.getReturnType(),
+          XstorageClass.F_LOCAL, caller, DeclarationPosition.LAST);
+      renaming.put(result, newName);
+    }
+
+    int inserted = 0;
+    Map<String, Xnode> substitutions = new HashMap<>();
+    for(int i = 0; i < dummies.size(); ++i) {
+      Xnode actual = fctCall.arguments().get(i);
+      if(isOfCode(actual, DESIGNATORS) || isOfCode(actual, CONSTANTS)) {
+        substitutions.put(dummies.get(i), actual);
+      } else {
+        String tmp = getUniqueName(caller, reserved,
+            callee.getName() + "_" + dummies.get(i));
+        xcodeml.createIdAndDecl(tmp, actual.getType(), XstorageClass.F_LOCAL,
+            caller, DeclarationPosition.LAST);
+        Xnode assign = xcodeml.createNode(Xcode.F_ASSIGN_STATEMENT);
+        assign.append(xcodeml.createVar(actual.getType(), tmp, Xscope.LOCAL));
+        assign.append(actual.cloneNode());
+        stmt.insertBefore(assign);
+        substitutions.put(dummies.get(i),
+            xcodeml.createVar(actual.getType(), tmp, Xscope.LOCAL));
+        ++inserted;
+      }
+    }
+
+    List<Xnode> statements = callee.body().children();
+    for(int i = 0; i < statements.size(); ++i) {
+      Xnode calleeStmt = statements.get(i);
+      if(isRoutinePragma(calleeStmt) || (i == statements.size() - 1
+          && calleeStmt.is(Xcode.F_RETURN_STATEMENT)))
+      {
+        continue;
+      }
+      Xnode inlined = calleeStmt.cloneNode();
+      renameVariables(inlined, renaming, substitutions);
+      stmt.insertBefore(inlined);
+      ++inserted;
+    }
+
+    if(stmt.is(Xcode.EXPR_STATEMENT)) {
+      stmt.delete();
+    } else {
+      fctCall.insertAfter(xcodeml.createVar(calleeType.getReturnType(),
+          renaming.get(result), Xscope.LOCAL));
+      fctCall.delete();
+    }
+    return inserted;
+  }
+
+  /**
+   * Specialize a subroutine for constant values of some of its dummy
+   * arguments. A copy of the subroutine is inserted after it in which the
+   * references to these dummy arguments are replaced by their constant value,
+   * so the loop bounds depending on them become constant. A dispatch is
+   * inserted at the beginning of the subroutine: when all the dummy arguments
+   * have their constant value, the copy is called and the subroutine returns.
+   * Otherwise, the generic code is executed.
+   *
+   * The copy of an external subroutine is another external subroutine called
+   * without explicit interface. External subroutines with dummy arguments
+   * requiring an explicit interface, e.g. assumed-shape, optional, pointer or
+   * target arguments, are therefore not specialized. The copy of a module
+   * subroutine is a module subroutine as well.
+   *
+   * @param xcodeml Current XcodeML translation unit.
+   * @param fctDef  Definition of the subroutine.
+   * @param values  Constant values of the dummy arguments by lower case name.
+   * @param name    Name of the specialized copy.
+   * @return Definition of the specialized copy.
+   * @throws IllegalTransformationException If the subroutine cannot be
+   *                                        specialized. The subroutine is not
+   *                                        modified in this case.
+   */
+  public static FfunctionDefinition specialize(XcodeProgram xcodeml,
+                                               FfunctionDefinition fctDef,
+                                               Map<String, Integer> values,
+                                               String name)
+      throws IllegalTransformationException
+  {
+    FfunctionType fctType = xcodeml.getTypeTable().getFunctionType(fctDef);
+    String reason = null;
+    if(fctType == null) {
+      reason = "function type not found";
+    } else if(!fctType.isSubroutine()) {
+      reason = "not a subroutine";
+    } else if(fctType.isRecursive()) {
+      reason = "recursive subroutine";
+    } else if(values.isEmpty()) {
+      reason = "no specialized argument";
+    } else if(fctDef.body().matchDescendant(Xcode.F_CONTAINS_STATEMENT) != null
+        || fctDef.body().matchDescendant(Xcode.F_ENTRY_DECL) != null)
+    {
+      reason = "contains or entry statement";
+    } else if(fctDef.findParentModule() == null
+        && needsExplicitInterface(xcodeml, fctType))
+    {
+      reason = "external subroutine with dummy arguments requiring an " +
+          "explicit interface";
+    } else if(isNameUsed(xcodeml, fctDef, name)) {
+      reason = String.format("name %s already used", name);
+    } else {
+      for(String param : values.keySet()) {
+        if(!isScalarIntegerInput(xcodeml, fctDef, fctType, param)) {
+          reason = String.format("%s is not a scalar integer intent(in) " +
+              "argument", param);
+          break;
+        }
+      }
+    }
+    if(reason != null) {
+      throw new IllegalTransformationException(String.format(
+          "Cannot specialize %s: %s.", fctDef.getName(), reason),
+          fctDef.lineNo());
+    }
+
+    // Specialized copy with its own function type
+    FfunctionDefinition copy = fctDef.cloneNode();
+    FfunctionType copyType = fctType.cloneNode();
+    copyType.setType(xcodeml.getTypeTable().generateHash(FortranType.FUNCTION));
+    xcodeml.getTypeTable().add(copyType);
+    copy.name().setValue(name).setType(copyType.getType());
+    Map<String, Xnode> substitutions = new HashMap<>();
+    for(Map.Entry<String, Integer> value : values.entrySet()) {
+      substitutions.put(value.getKey().toLowerCase(),
+          xcodeml.createIntConstant(value.getValue()));
+    }
+    renameVariables(copy.body(), Collections.emptyMap(), substitutions);
+    fctDef.insertAfter(copy);
+    FmoduleDefinition module = fctDef.findParentModule();
+    XsymbolTable symbols = module == null
+        ? xcodeml.getGlobalSymbolsTable() : module.getSymbolTable();
+    if(symbols.contains(fctDef.getName())) {
+      symbols.add(xcodeml.createId(copyType.getType(), XstorageClass.F_FUNC,
+          name));
+    }
+
+    // Dispatch to the specialized copy
+    Xnode condition = null;
+    FunctionCall call = xcodeml.createFctCall(copyType, name);
+    for(Xnode param : fctType.getParameters()) {
+      call.addArguments(xcodeml.createVar(param.getType(), param.value(),
+          Xscope.PARAM));
+      Integer value = values.get(param.value().toLowerCase());
+      if(value == null) {
+        continue;
+      }
+      Xnode equal = xcodeml.createNode(Xcode.LOG_EQ_EXPR)
+          .setType(Xname.TYPE_F_LOGICAL);
+      equal.append(xcodeml.createVar(param.getType(), param.value(),
+          Xscope.PARAM));
+      equal.append(xcodeml.createIntConstant(value));
+      condition = condition == null ? equal
+          : xcodeml.createNode(Xcode.LOG_AND_EXPR)
+          .setType(Xname.TYPE_F_LOGICAL).append(condition).append(equal);
+    }
+    Xnode dispatch = xcodeml.createIfThen();
+    dispatch.matchDirectDescendant(Xcode.CONDITION).append(condition);
+    Xnode thenBody = dispatch.matchDirectDescendant(Xcode.THEN).body();
+    thenBody.append(xcodeml.createNode(Xcode.EXPR_STATEMENT).append(call));
+    thenBody.append(xcodeml.createNode(Xcode.F_RETURN_STATEMENT));
+
+    // Routine directives must stay first
+    Xnode hook = fctDef.body().firstChild();
+    while(isRoutinePragma(hook)) {
+      hook = hook.nextSibling();
+    }
+    if(hook == null) {
+      fctDef.body().append(dispatch);
+    } else {
+      hook.insertBefore(dispatch);
+    }
+    return copy;
+  }
+
+  /**
+   * Get the statement in which the function call is inlined.
+   *
+   * @param fctCall Function call to be inlined.
+   * @return Call statement or assignment statement.
+   * @throws IllegalTransformationException If the function call is not part of
+   *                                        a supported statement.
+   */
+  private static Xnode getInliningStatement(FunctionCall fctCall)
+      throws IllegalTransformationException
+  {
+    Xnode parent = fctCall.ancestor();
+    if(Xnode.isOfCode(parent, Xcode.EXPR_STATEMENT)) {
+      return parent;
+    }
+    Xnode crt = fctCall;
+    while(parent != null && !parent.is(Xcode.F_ASSIGN_STATEMENT)
+        && !parent.is(Xcode.BODY))
+    {
+      crt = parent;
+      parent = parent.ancestor();
+    }
+    if(parent == null || parent.is(Xcode.BODY)
+        || crt.equals(parent.firstChild()))
+    {
+      throw new IllegalTransformationException(String.format(
+          "Cannot inline %s: the call must be a call statement or in the " +
+              "right hand side of an assignment.", fctCall.getFctName()),
+          fctCall.lineNo());
+    }
+    return parent;
+  }
+
+  /**
+   * Check that the callee can be inlined. The callee must be a leaf
+   * function/subroutine without internal procedures, entries, labels, branches
+   * or stop statements and without directives other than the routine
+   * directives.
+   *
+   * @param xcodeml Current XcodeML translation unit.
+   * @param caller  Function/subroutine definition in which the call is.
+   * @param fctCall Function call to be inlined.
+   * @param callee  Definition of the called function/subroutine.
+   * @param lineno  Line number of the call for error reporting.
+   * @return Function type of the callee.
+   * @throws IllegalTransformationException If the callee cannot be inlined.
+   */
+  private static FfunctionType checkCallee(XcodeProgram xcodeml,
+                                           FfunctionDefinition caller,
+                                           FunctionCall fctCall,
+                                           FfunctionDefinition callee,
+                                           int lineno)
+      throws IllegalTransformationException
+  {
+    String reason = null;
+    FfunctionType calleeType = xcodeml.getTypeTable().getFunctionType(callee);
+    if(calleeType == null) {
+      reason = "function type not found";
+    } else if(callee.equals(caller) || calleeType.isRecursive()) {
+      reason = "recursive function/subroutine";
+    } else if(fctCall.isTbpCall()) {
+      reason = "type-bound procedure call";
+    } else if(NOT_INLINABLE.stream()
+        .anyMatch(opcode -> callee.matchDescendant(opcode) != null))
+    {
+      reason = "unsupported statement or internal procedure";
+    } else if(callee.body().matchAll(Xcode.F_RETURN_STATEMENT).stream()
+        .anyMatch(r -> !r.equals(callee.body().lastChild())))
+    {
+      reason = "return statement not at the end";
+    } else if(callee.body().matchAll(Xcode.FUNCTION_CALL).stream()
+        .anyMatch(f -> !f.getBooleanAttribute(Xattr.IS_INTRINSIC)))
+    {
+      reason = "not a leaf function/subroutine";
+    } else if(callee.body().matchAll(Xcode.F_PRAGMA_STATEMENT).stream()
+        .anyMatch(p -> !isRoutinePragma(p)
+            || !p.ancestor().equals(callee.body())))
+    {
+      reason = "directives in the body";
+    }
+    if(reason != null) {
+      throw new IllegalTransformationException(String.format(
+          "Cannot inline %s: %s.", fctCall.getFctName(), reason),
+          lineno);
+    }
+    return calleeType;
+  }
+
+  /**
+   * Check that a local variable or the function result of the callee can be
+   * declared in the caller. Saved, allocatable and pointer variables keep
+   * their state between calls and arrays must have constant dimensions.
+   * Initialized variables are implicitly saved and are only accepted if they
+   * are not defined in the callee.
+   *
+   * @param xcodeml  Current XcodeML translation unit.
+   * @param callee   Definition of the called function/subroutine.
+   * @param decl     Declaration of the variable.
+   * @param isResult True if the variable is the function result.
+   * @param defUse   Definitions and uses of the callee body.
+   * @param lineno   Line number of the call for error reporting.
+   * @throws IllegalTransformationException If the variable is not supported.
+   */
+  private static void checkLocal(XcodeProgram xcodeml,
+                                 FfunctionDefinition callee, Xnode decl,
+                                 boolean isResult, DefUseAnalysis defUse,
+                                 int lineno)
+      throws IllegalTransformationException
+  {
+    String name = decl.matchSeq(Xcode.NAME).value();
+    FbasicType bt = xcodeml.getTypeTable().getBasicType(decl);
+    String reason = null;
+    if(bt != null && (bt.isSave() || bt.isAllocatable() || bt.isPointer())) {
+      reason = "saved, allocatable or pointer variable";
+    } else if(bt != null && bt.isArray() && hasVariableDimension(bt)) {
+      reason = "array with non constant dimensions";
+    } else if(decl.matchDirectDescendant(Xcode.VALUE) != null
+        && (bt == null || !bt.isParameter()) && (isResult
+        || defUse.isDefined(name)))
+    {
+      reason = "initialized variable is defined";
+    }
+    if(reason != null) {
+      throw new IllegalTransformationException(String.format(
+          "Cannot inline %s: %s %s.", callee.getName(), reason, name), lineno);
+    }
+  }
+
+  /**
+   * Check whether an array type has dimensions depending on variables.
+   *
+   * @param bt Array type.
+   * @return True if a variable is used in the dimensions.
+   */
+  private static boolean hasVariableDimension(FbasicType bt) {
+    for(int i = 0; i < bt.getDimensions(); ++i) {
+      if(bt.getDimensions(i).matchDescendant(Xcode.VAR) != null
+          || bt.getDimensions(i).getBooleanAttribute(Xattr.IS_ASSUMED_SHAPE))
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Check that the variables used by the callee and not declared in it are
+   * visible from the caller. They must come from the use declarations of the
+   * callee or from a module shared by the caller and the callee and must not
+   * be hidden by a declaration of the caller.
+   *
+   * @param caller    Function/subroutine definition in which the call is.
+   * @param callee    Definition of the called function/subroutine.
+   * @param freeNames Variables used but not declared in the callee.
+   * @param lineno    Line number of the call for error reporting.
+   * @throws IllegalTransformationException If a variable is not visible.
+   */
+  private static void checkFreeNames(FfunctionDefinition caller,
+                                     FfunctionDefinition callee,
+                                     Set<String> freeNames, int lineno)
+      throws IllegalTransformationException
+  {
+    FmoduleDefinition calleeModule = callee.findParentModule();
+    FmoduleDefinition callerModule = caller.findParentModule();
+    for(String name : freeNames) {
+      if(caller.getDeclarationTable().contains(name)) {
+        throw new IllegalTransformationException(String.format(
+            "Cannot inline %s: %s is hidden by a declaration of %s.",
+            callee.getName(), name, caller.getName()), lineno);
+      }
+      if(calleeModule != null && !calleeModule.equals(callerModule)
+          && (callee.getDeclarationTable().uses().isEmpty()
+          || calleeModule.getDeclarationTable().contains(name)))
+      {
+        throw new IllegalTransformationException(String.format(
+            "Cannot inline %s: %s is a variable of module %s.",
+            callee.getName(), name, calleeModule.getName()), lineno);
+      }
+    }
+  }
+
+  /**
+   * Check that the use declarations of the callee can be added to the caller.
+   * Renamed entities are not supported and a use declaration of the same
+   * module in the caller must give access to the same entities.
+   *
+   * @param caller Function/subroutine definition in which the call is.
+   * @param callee Definition of the called function/subroutine.
+   * @param uses   Use declarations of the callee.
+   * @param lineno Line number of the call for error reporting.
+   * @throws IllegalTransformationException If a use declaration cannot be
+   *                                        added.
+   */
+  private static void checkUseDeclarations(FfunctionDefinition caller,
+                                           FfunctionDefinition callee,
+                                           List<Xnode> uses, int lineno)
+      throws IllegalTransformationException
+  {
+    for(Xnode use : uses) {
+      String module = use.getAttribute(Xattr.NAME);
+      Xnode callerUse = caller.getDeclarationTable().get(module);
+      boolean renamed = use.matchAll(Xcode.RENAMABLE).stream()
+          .anyMatch(r -> r.hasAttribute(Xattr.LOCAL_NAME));
+      boolean visible = callerUse == null && use.is(Xcode.F_USE_ONLY_DECL)
+          && getUseNames(use).stream()
+          .noneMatch(caller.getDeclarationTable()::contains);
+      if(callerUse != null && callerUse.is(Xcode.F_USE_DECL)) {
+        visible = callerUse.matchAll(Xcode.RENAMABLE).isEmpty();
+      } else if(callerUse != null && callerUse.is(Xcode.F_USE_ONLY_DECL)) {
+        visible = use.is(Xcode.F_USE_ONLY_DECL)
+            && getUseNames(callerUse).containsAll(getUseNames(use));
+      }
+      if(renamed || !visible) {
+        throw new IllegalTransformationException(String.format(
+            "Cannot inline %s: use of module %s cannot be added to %s.",
+            callee.getName(), module, caller.getName()), lineno);
+      }
+    }
+  }
+
+  /**
+   * Get the names of the entities imported by a use only declaration.
+   *
+   * @param use Use declaration.
+   * @return List of names. Empty for a use declaration without only list.
+   */
+  private static List<String> getUseNames(Xnode use) {
+    List<String> names = new ArrayList<>();
+    for(Xnode renamable : use.matchAll(Xcode.RENAMABLE)) {
+      names.add(renamable.getAttribute(Xattr.USE_NAME));
+    }
+    return names;
+  }
+
+  /**
+   * Check that the actual arguments can be substituted to the dummy
+   * arguments. Optional and keyword arguments are not supported. An array
+   * dummy argument requires a whole array of the same shape with lower bounds
+   * equal to 1. A defined scalar dummy argument requires a variable and a do
+   * statement induction variable requires a scalar variable.
+   *
+   * @param xcodeml    Current XcodeML translation unit.
+   * @param fctCall    Function call to be inlined.
+   * @param callee     Definition of the called function/subroutine.
+   * @param calleeType Function type of the callee.
+   * @param defUse     Definitions and uses of the callee body.
+   * @param lineno     Line number of the call for error reporting.
+   * @throws IllegalTransformationException If an argument cannot be
+   *                                        substituted.
+   */
+  private static void checkArguments(XcodeProgram xcodeml,
+                                     FunctionCall fctCall,
+                                     FfunctionDefinition callee,
+                                     FfunctionType calleeType,
+                                     DefUseAnalysis defUse, int lineno)
+      throws IllegalTransformationException
+  {
+    List<Xnode> dummies = calleeType.getParameters();
+    List<Xnode> actuals = fctCall.arguments();
+    if(dummies.size() != actuals.size() || actuals.stream()
+        .anyMatch(a -> a.is(Xcode.NAMED_VALUE)))
+    {
+      throw new IllegalTransformationException(String.format(
+          "Cannot inline %s: keyword or optional arguments.",
+          fctCall.getFctName()), lineno);
+    }
+    Set<String> inductions = callee.detectInductionVariables();
+    for(int i = 0; i < dummies.size(); ++i) {
+      String name = dummies.get(i).value();
+      Xnode actual = actuals.get(i);
+      FbasicType dummyType = xcodeml.getTypeTable()
+          .getBasicType(dummies.get(i));
+      // Type of the element for array references, not of the array
+      FbasicType actualType = xcodeml.getTypeTable().getBasicType(
+          actual.is(Xcode.F_ARRAY_REF)
+              ? actual.getAttribute(Xattr.TYPE) : actual.getType());
+      String reason = null;
+      if(dummyType != null && dummyType.isOptional()) {
+        reason = "optional argument";
+      } else if(dummyType != null && dummyType.isArray()) {
+        if(!actual.is(Xcode.VAR) || actualType == null
+            || !hasSameShape(dummyType, actualType))
+        {
+          reason = "array argument is not a whole array of the same shape";
+        }
+      } else if(actualType != null && actualType.isArray()) {
+        reason = "array passed to a scalar argument";
+      } else if(inductions.contains(name.toLowerCase())
+          && !actual.is(Xcode.VAR))
+      {
+        reason = "induction variable is not a variable";
+      } else if(defUse.isDefined(name) && !isOfCode(actual, DESIGNATORS)) {
+        reason = "defined argument is not a variable";
+      } else if(!isOfCode(actual, DESIGNATORS)
+          && !isOfCode(actual, CONSTANTS) && (actual.getType() == null
+          || actual.getType().isEmpty()
+          || xcodeml.getTypeTable().isFunctionType(actual.getType())
+          || (actualType != null && actualType.hasIntent())))
+      {
+        reason = "type of the expression cannot be used for a temporary";
+      }
+      if(reason != null) {
+        throw new IllegalTransformationException(String.format(
+            "Cannot inline %s: %s %s.", fctCall.getFctName(), reason, name),
+            lineno);
+      }
+    }
+  }
+
+  /**
+   * Check whether an actual array argument has the same shape as the dummy
+   * array argument with lower bounds equal to 1. Assumed shape dimensions of
+   * the dummy argument match any extent.
+   *
+   * @param dummy  Type of the dummy argument.
+   * @param actual Type of the actual argument.
+   * @return True if the shapes match.
+   */
+  private static boolean hasSameShape(FbasicType dummy, FbasicType actual) {
+    if(!actual.isArray() || dummy.getDimensions() != actual.getDimensions()
+        || dummy.isAllocatable() || dummy.isPointer()
+        || actual.isAllocatable() || actual.isPointer())
+    {
+      return false;
+    }
+    for(int i = 0; i < dummy.getDimensions(); ++i) {
+      Xnode dummyDim = dummy.getDimensions(i);
+      Xnode actualDim = actual.getDimensions(i);
+      if(!"1".equals(getConstantBound(dummyDim, Xcode.LOWER_BOUND))
+          || !"1".equals(getConstantBound(actualDim, Xcode.LOWER_BOUND)))
+      {
+        return false;
+      }
+      if(!dummyDim.getBooleanAttribute(Xattr.IS_ASSUMED_SHAPE)) {
+        String upper = getConstantBound(dummyDim, Xcode.UPPER_BOUND);
+        if(upper == null
+            || !upper.equals(getConstantBound(actualDim, Xcode.UPPER_BOUND)))
+        {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Get the value of a constant bound of a dimension. A missing lower bound
+   * is equal to 1.
+   *
+   * @param dimension Dimension as indexRange or arrayIndex node.
+   * @param bound     Opcode of the bound: lowerBound or upperBound.
+   * @return Value of the bound. Null if the bound is not constant.
+   */
+  private static String getConstantBound(Xnode dimension, Xcode bound) {
+    Xnode value;
+    if(dimension.is(Xcode.ARRAY_INDEX)) {
+      value = bound == Xcode.LOWER_BOUND ? null : dimension.firstChild();
+    } else {
+      Xnode boundNode = dimension.matchDirectDescendant(bound);
+      value = boundNode == null ? null : boundNode.firstChild();
+    }
+    if(value == null) {
+      return bound == Xcode.LOWER_BOUND ? "1" : null;
+    }
+    return value.is(Xcode.F_INT_CONSTANT) ? value.value() : null;
+  }
+
+  /**
+   * Get the name of the result variable of a function.
+   *
+   * @param fctDef  Function definition.
+   * @param fctType Function type.
+   * @return Result name if specified. Function name otherwise.
+   */
+  private static String getResultName(FfunctionDefinition fctDef,
+                                      FfunctionType fctType)
+  {
+    String result = fctType.getResultName();
+    return result == null || result.isEmpty() ? fctDef.getName() : result;
+  }
+
+  /**
+   * Generate a name not used in the function/subroutine. A numbered suffix is
+   * added to the base name if needed.
+   *
+   * @param fctDef   Function/subroutine definition.
+   * @param reserved Names already reserved. The generated name is added.
+   * @param base     Base name.
+   * @return Unique name.
+   */
+  private static String getUniqueName(FfunctionDefinition fctDef,
+                                      Set<String> reserved, String base)
+  {
+    int counter = 0;
+    String name = base;
+    while(fctDef.getSymbolTable().contains(name)
+        || fctDef.getDeclarationTable().contains(name)
+        || reserved.contains(name.toLowerCase()))
+    {
+      name = base + "_" + ++counter;
+    }
+    reserved.add(name.toLowerCase());
+    return name;
+  }
+
+  /**
+   * Check whether a name is already used by a function/subroutine of the
+   * translation unit or by a symbol of the enclosing scope.
+   *
+   * @param xcodeml Current XcodeML translation unit.
+   * @param fctDef  Function/subroutine definition giving the scope.
+   * @param name    Name to be checked.
+   * @return True if the name is already used.
+   */
+  private static boolean isNameUsed(XcodeProgram xcodeml,
+                                    FfunctionDefinition fctDef, String name)
+  {
+    FmoduleDefinition module = fctDef.findParentModule();
+    return xcodeml.getAllFctDef().stream()
+        .anyMatch(f -> f.getName().equalsIgnoreCase(name))
+        || xcodeml.getGlobalSymbolsTable().contains(name)
+        || (module != null && module.getSymbolTable().contains(name));
+  }
+
+  /**
+   * Check whether a dummy argument is a scalar integer with intent(in).
+   *
+   * @param xcodeml Current XcodeML translation unit.
+   * @param fctDef  Function/subroutine definition.
+   * @param fctType Function/subroutine type.
+   * @param name    Lower case name of the dummy argument.
+   * @return True if the dummy argument cannot be modified by the
+   * function/subroutine and is a scalar integer.
+   */
+  private static boolean isScalarIntegerInput(XcodeProgram xcodeml,
+                                              FfunctionDefinition fctDef,
+                                              FfunctionType fctType,
+                                              String name)
+  {
+    Xnode decl = fctDef.getDeclarationTable().get(name);
+    if(!fctType.hasParam(name) || decl == null
+        || !xcodeml.getTypeTable().isBasicType(decl))
+    {
+      return false;
+    }
+    FbasicType bt = xcodeml.getTypeTable().getBasicType(decl);
+    if(bt.isArray() || bt.isOptional() || bt.getIntent() != Intent.IN) {
+      return false;
+    }
+    String ref = bt.getRef();
+    while(ref != null && !FortranType.isBuiltInType(ref)
+        && xcodeml.getTypeTable().isBasicType(ref))
+    {
+      ref = xcodeml.getTypeTable().getBasicType(ref).getRef();
+    }
+    return FortranType.INTEGER.isOfType(ref);
+  }
+
+  /**
+   * Check whether a procedure can only be called through an explicit
+   * interface because of the attributes of its dummy arguments.
+   *
+   * @param xcodeml Current XcodeML translation unit.
+   * @param fctType Function type of the procedure.
+   * @return True if a dummy argument is assumed-shape, optional, pointer,
+   * target, allocatable, value, volatile, asynchronous or polymorphic.
+   */
+  private static boolean needsExplicitInterface(XcodeProgram xcodeml,
+                                                FfunctionType fctType)
+  {
+    for(Xnode param : fctType.getParameters()) {
+      if(!xcodeml.getTypeTable().isBasicType(param)) {
+        continue;
+      }
+      FbasicType bt = xcodeml.getTypeTable().getBasicType(param);
+      if(bt.isOptional() || bt.isPointer() || bt.isTarget()
+          || bt.isAllocatable() || bt.getBooleanAttribute(Xattr.IS_VALUE)
+          || bt.getBooleanAttribute(Xattr.IS_VOLATILE)
+          || bt.getBooleanAttribute(Xattr.IS_ASYNCHRONOUS)
+          || bt.getBooleanAttribute(Xattr.IS_CLASS))
+      {
+        return true;
+      }
+      for(int i = 0; i < bt.getDimensions(); ++i) {
+        if(bt.getDimensions(i).getBooleanAttribute(Xattr.IS_ASSUMED_SHAPE)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Rename and substitute the variables of an inlined node.
+   *
+   * @param node          Root node of the inlined code.
+   * @param renaming      New names of the renamed variables.
+   * @param substitutions Nodes substituted to the variables.
+   */
+  private static void renameVariables(Xnode node, Map<String, String> renaming,
+                                      Map<String, Xnode> substitutions)
+  {
+    for(Xnode var : node.matchAll(Xcode.VAR)) {
+      String name = var.value().toLowerCase();
+      if(substitutions.containsKey(name)) {
+        var.insertAfter(substitutions.get(name).cloneNode());
+        var.delete();
+      } else if(renaming.containsKey(name)) {
+        var.setValue(renaming.get(name));
+      }
+    }
+  }
+
+  /**
+   * Check whether a node is a routine directive generated for accelerators.
+   *
+   * @param node Node to be checked.
+   * @return True if the node is a routine directive.
+   */
+  private static boolean isRoutinePragma(Xnode node) {
+    return Xnode.isOfCode(node, Xcode.F_PRAGMA_STATEMENT)
+        && ROUTINE_PRAGMAS.stream()
+        .anyMatch(node.value().toLowerCase()::startsWith);
+  }
+
+  /**
+   * Check whether a node has one of the given opcodes.
+   *
+   * @param node    Node to be checked.
+   * @param opcodes Accepted opcodes.
+   * @return True if the node has one of the opcodes.
+   */
+  private static boolean isOfCode(Xnode node, List<Xcode> opcodes) {
+    return node != null && opcodes.contains(node.opcode());
+  }
 }
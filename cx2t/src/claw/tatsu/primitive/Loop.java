@@ -5,28 +5,41 @@
 package claw.tatsu.primitive;
 
 import claw.tatsu.TatsuConstant;
+import claw.tatsu.analysis.dependency.DefUseAnalysis;
 import claw.tatsu.common.CompilerDirective;
 import claw.tatsu.common.Message;
 import claw.tatsu.xcodeml.abstraction.FunctionCall;
 import claw.tatsu.xcodeml.abstraction.HoistedNestedDoStatement;
 import claw.tatsu.xcodeml.abstraction.NestedDoStatement;
 import claw.tatsu.xcodeml.exception.IllegalTransformationException;
+import claw.tatsu.xcodeml.xnode.Xname;
 import claw.tatsu.xcodeml.xnode.XnodeUtil;
+import claw.tatsu.xcodeml.xnode.common.Xattr;
 import claw.tatsu.xcodeml.xnode.common.Xcode;
 import claw.tatsu.xcodeml.xnode.common.XcodeML;
 import claw.tatsu.xcodeml.xnode.common.Xnode;
 import claw.tatsu.xcodeml.xnode.common.Xscope;
+import claw.tatsu.xcodeml.xnode.common.XstorageClass;
+import claw.tatsu.xcodeml.xnode.fortran.DeclarationPosition;
 import claw.tatsu.xcodeml.xnode.fortran.FbasicType;
+import claw.tatsu.xcodeml.xnode.fortran.FfunctionDefinition;
 import claw.tatsu.xcodeml.xnode.fortran.FortranType;
 import claw.tatsu.xcodeml.xnode.fortran.Xintrinsic;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Primitive transformation and test applied on FdoStatement. This included:
  * - loop fusion (merge)
  * - loop reorder (reorder)
  * - loop hoisting (hoist)
+ * - loop invariant code motion (hoistInvariants)
+ * - loop unswitching (unswitch)
  * - extract body of a loop
  * - check iteration range
  *
@@ -36,6 +49,14 @@ public final class Loop {
 
   private static final String[] prevToDelete = {"acc loop", "omp do"};
   private static final String[] nextToDelete = {"omp end do"};
+  private static final String INVARIANT_CONDITION_PREFIX = "claw_licm_cond";
+  private static final List<Xcode> NON_SCALAR_REFS = Arrays.asList(
+      Xcode.F_ARRAY_REF, Xcode.F_MEMBER_REF, Xcode.F_COARRAY_REF);
+  private static final List<Xcode> UNSAFE_CONTROL_FLOW = Arrays.asList(
+      Xcode.F_CYCLE_STATEMENT, Xcode.F_EXIT_STATEMENT,
+      Xcode.F_RETURN_STATEMENT, Xcode.F_STOP_STATEMENT, Xcode.GOTO_STATEMENT,
+      Xcode.STATEMENT_LABEL
+  );
 
   // Avoid potential instantiation of this class
   private Loop() {
@@ -455,6 +476,39 @@ public final class Loop {
     return compareIndexRanges(l1, l2, false);
   }
 
+  /**
+   * Compute the number of nested levels that can be fused together. Only
+   * perfectly nested levels with identical iteration ranges are considered.
+   *
+   * @param l1 Outer do statement of the first group.
+   * @param l2 Outer do statement of the second group.
+   * @return Number of levels. 0 if the groups cannot be fused.
+   */
+  public static int getFusionDepth(Xnode l1, Xnode l2) {
+    int depth = 0;
+    Xnode crt1 = l1;
+    Xnode crt2 = l2;
+    while(hasSameIndexRange(crt1, crt2)) {
+      ++depth;
+      crt1 = getPerfectlyNestedDoStmt(crt1);
+      crt2 = getPerfectlyNestedDoStmt(crt2);
+    }
+    return depth;
+  }
+
+  /**
+   * Get the do statement perfectly nested in the given one.
+   *
+   * @param doStmt Do statement.
+   * @return The nested do statement if it is the only statement of the body.
+   * Null otherwise.
+   */
+  public static Xnode getPerfectlyNestedDoStmt(Xnode doStmt) {
+    Xnode inner = doStmt.body().firstChild();
+    return Xnode.isOfCode(inner, Xcode.F_DO_STATEMENT)
+        && inner.nextSibling() == null ? inner : null;
+  }
+
   /**
    * Create a do statement to iterate over an array from 1 to size.
    *
@@ -499,4 +553,543 @@ public final class Loop {
     return xcodeml.createDoStmt(induction, range);
   }
 
+  /**
+   * Move the loop invariant statements and conditions of the inner body of a
+   * group of nested do statements in front of the group. Only the statements
+   * executed at each iteration, i.e. direct children of the inner body, are
+   * considered.
+   *
+   * A scalar assignment is invariant if its variable is only defined by this
+   * statement in the group, is not used before it in the body and if its right
+   * hand side only uses variables not defined in the group and intrinsic
+   * functions. An if statement is invariant if its condition is invariant and
+   * its branches only contain invariant statements. The condition of a
+   * variant if statement is computed once in a new logical variable if it is
+   * invariant and not a single variable or constant.
+   *
+   * Hoisted statements are guarded by an if statement checking that every do
+   * statement of the group has at least one iteration. They are not executed
+   * when the group is not, so the values of the variables after the group and
+   * the evaluated expressions are unchanged. Groups with statements altering
+   * the control flow or with iteration ranges the guard cannot be computed
+   * for are left unchanged.
+   *
+   * @param xcodeml  Current XcodeML translation unit.
+   * @param fctDef   Function/subroutine in which the group is defined.
+   * @param loops    Group of nested do statements.
+   * @param variants Variables varying with the iterations of the group such as
+   *                 promoted fields. Induction variables are added
+   *                 automatically.
+   * @return Number of hoisted statements and conditions.
+   * @see #hoistInvariants(XcodeML, FfunctionDefinition, NestedDoStatement,
+   * Set, boolean)
+   */
+  public static int hoistInvariants(XcodeML xcodeml, FfunctionDefinition fctDef,
+                                    NestedDoStatement loops,
+                                    Set<String> variants)
+  {
+    return hoistInvariants(xcodeml, fctDef, loops, variants, false);
+  }
+
+  /**
+   * Move the loop invariant statements and conditions of the inner body of a
+   * group of nested do statements in front of the group.
+   *
+   * When the group is offloaded to an accelerator, the hoisted statements are
+   * executed on the host, outside of the data region of the group. Array
+   * elements read there might not be up to date. In scalar only mode, the
+   * statements and conditions reading arrays or derived type components are
+   * therefore kept in the group.
+   *
+   * @param xcodeml    Current XcodeML translation unit.
+   * @param fctDef     Function/subroutine in which the group is defined.
+   * @param loops      Group of nested do statements.
+   * @param variants   Variables varying with the iterations of the group such
+   *                   as promoted fields. Induction variables are added
+   *                   automatically.
+   * @param scalarOnly If true, only statements and conditions reading scalars
+   *                   and constants are hoisted.
+   * @return Number of hoisted statements and conditions.
+   */
+  public static int hoistInvariants(XcodeML xcodeml, FfunctionDefinition fctDef,
+                                    NestedDoStatement loops,
+                                    Set<String> variants, boolean scalarOnly)
+  {
+    if(loops == null || loops.size() == 0) {
+      return 0;
+    }
+    Xnode outer = loops.getOuterStatement();
+    for(Xcode opcode : UNSAFE_CONTROL_FLOW) {
+      if(outer.matchDescendant(opcode) != null) {
+        return 0;
+      }
+    }
+    Xnode guard = createTripCountGuard(xcodeml, loops);
+    if(guard == null) {
+      return 0;
+    }
+    Xnode hoistBody = guard.matchDirectDescendant(Xcode.THEN).body();
+
+    DefUseAnalysis defUse = new DefUseAnalysis(outer);
+    Set<String> excluded = new HashSet<>();
+    variants.forEach(v -> excluded.add(v.toLowerCase()));
+    loops.getInductionVariables().forEach(v -> excluded.add(v.toLowerCase()));
+
+    // Iteration ranges are evaluated before the hoisted statements
+    Set<String> usedBefore = new HashSet<>();
+    for(int i = 0; i < loops.size(); ++i) {
+      usedBefore.addAll(DefUseAnalysis.getUsedNames(
+          loops.get(i).matchDirectDescendant(Xcode.INDEX_RANGE)));
+    }
+    int hoisted = 0;
+    for(Xnode stmt : loops.getInnerStatement().body().children()) {
+      if(isInvariantStatement(xcodeml, fctDef, stmt, defUse, excluded,
+          usedBefore, scalarOnly))
+      {
+        for(Xnode assign : stmt.is(Xcode.F_ASSIGN_STATEMENT)
+            ? Arrays.asList(stmt) : stmt.matchAll(Xcode.F_ASSIGN_STATEMENT))
+        {
+          defUse.removeDefinition(assign.firstChild().value());
+        }
+        hoistBody.append(stmt);
+        ++hoisted;
+        continue;
+      }
+      if(stmt.is(Xcode.F_IF_STATEMENT)
+          && hoistCondition(xcodeml, fctDef, stmt, hoistBody, defUse,
+          excluded, scalarOnly))
+      {
+        ++hoisted;
+      }
+      usedBefore.addAll(DefUseAnalysis.getUsedNames(stmt));
+    }
+    if(hoisted > 0) {
+      outer.copyEnhancedInfo(guard);
+      outer.insertBefore(guard);
+    }
+    return hoisted;
+  }
+
+  /**
+   * Create the if statement guarding the statements hoisted out of a group of
+   * nested do statements. Its condition is true if every do statement of the
+   * group has at least one iteration.
+   *
+   * @param xcodeml Current XcodeML translation unit.
+   * @param loops   Group of nested do statements.
+   * @return Detached if statement with an empty then body. Null if a step is
+   * not an integer constant or if an iteration range depends on an induction
+   * variable of the group.
+   */
+  private static Xnode createTripCountGuard(XcodeML xcodeml,
+                                            NestedDoStatement loops)
+  {
+    Set<String> inductionVars = new HashSet<>();
+    loops.getInductionVariables()
+        .forEach(v -> inductionVars.add(v.toLowerCase()));
+    Xnode condition = null;
+    for(int i = 0; i < loops.size(); ++i) {
+      Xnode range = loops.get(i).matchDirectDescendant(Xcode.INDEX_RANGE);
+      if(range == null || Condition.dependsOn(range, inductionVars)) {
+        return null;
+      }
+      Xnode lower = range.matchDirectDescendant(Xcode.LOWER_BOUND);
+      Xnode upper = range.matchDirectDescendant(Xcode.UPPER_BOUND);
+      Xnode step = range.matchDirectDescendant(Xcode.STEP);
+      if(lower == null || lower.child(0) == null
+          || upper == null || upper.child(0) == null)
+      {
+        return null;
+      }
+      int stepValue = 1;
+      if(step != null && step.child(0) != null) {
+        if(!step.child(0).is(Xcode.F_INT_CONSTANT)) {
+          return null;
+        }
+        try {
+          stepValue = Integer.parseInt(step.child(0).value());
+        } catch(NumberFormatException e) {
+          return null;
+        }
+      }
+      if(stepValue == 0) {
+        return null;
+      }
+      Xnode nonEmpty = xcodeml.createNode(Xcode.LOG_GE_EXPR)
+          .setType(Xname.TYPE_F_LOGICAL);
+      nonEmpty.append((stepValue > 0 ? upper : lower).child(0), true);
+      nonEmpty.append((stepValue > 0 ? lower : upper).child(0), true);
+      condition = condition == null ? nonEmpty
+          : xcodeml.createNode(Xcode.LOG_AND_EXPR)
+          .setType(Xname.TYPE_F_LOGICAL).append(condition).append(nonEmpty);
+    }
+    if(condition == null) {
+      return null;
+    }
+    Xnode guard = xcodeml.createIfThen();
+    guard.matchDirectDescendant(Xcode.CONDITION).append(condition);
+    return guard;
+  }
+
+  /**
+   * Check whether a statement is loop invariant.
+   *
+   * @param xcodeml    Current XcodeML translation unit.
+   * @param fctDef     Function/subroutine in which the statement is defined.
+   * @param stmt       Statement to be checked.
+   * @param defUse     Definitions and uses of the group.
+   * @param excluded   Variables varying with the iterations.
+   * @param usedBefore Variables used before the statement in the body.
+   * @param scalarOnly If true, the statement must only read scalars.
+   * @return True if the statement can be hoisted.
+   */
+  private static boolean isInvariantStatement(XcodeML xcodeml,
+                                              FfunctionDefinition fctDef,
+                                              Xnode stmt,
+                                              DefUseAnalysis defUse,
+                                              Set<String> excluded,
+                                              Set<String> usedBefore,
+                                              boolean scalarOnly)
+  {
+    if(stmt.is(Xcode.F_ASSIGN_STATEMENT)) {
+      Xnode lhs = stmt.firstChild();
+      if(!Xnode.isOfCode(lhs, Xcode.VAR)) {
+        return false;
+      }
+      String name = lhs.value().toLowerCase();
+      return !excluded.contains(name) && !usedBefore.contains(name)
+          && defUse.getDefinitionCount(name) == 1 && isScalar(xcodeml, lhs)
+          && (!defUse.hasUnknownSideEffect()
+          || fctDef.getSymbolTable().contains(name))
+          && isInvariantExpression(fctDef, lhs.nextSibling(), defUse,
+          excluded)
+          && (!scalarOnly || readsOnlyScalars(xcodeml, lhs.nextSibling()));
+    }
+    if(stmt.is(Xcode.F_IF_STATEMENT)) {
+      Xnode condition = stmt.matchDirectDescendant(Xcode.CONDITION);
+      if(!isInvariantExpression(fctDef, condition, defUse, excluded)
+          || (scalarOnly && !readsOnlyScalars(xcodeml, condition)))
+      {
+        return false;
+      }
+      Set<String> used = new HashSet<>(usedBefore);
+      for(Xcode branch : Arrays.asList(Xcode.THEN, Xcode.ELSE)) {
+        Xnode body = stmt.matchSeq(branch, Xcode.BODY);
+        if(body == null) {
+          continue;
+        }
+        for(Xnode nested : body.children()) {
+          if(!isInvariantStatement(xcodeml, fctDef, nested, defUse, excluded,
+              used, scalarOnly))
+          {
+            return false;
+          }
+          used.addAll(DefUseAnalysis.getUsedNames(nested));
+        }
+      }
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Compute the invariant condition of an if statement in a new logical
+   * variable in the body receiving the hoisted statements.
+   *
+   * @param xcodeml    Current XcodeML translation unit.
+   * @param fctDef     Function/subroutine in which the statement is defined.
+   * @param ifStmt     If statement.
+   * @param hoistBody  Body receiving the hoisted statements.
+   * @param defUse     Definitions and uses of the group.
+   * @param excluded   Variables varying with the iterations.
+   * @param scalarOnly If true, the condition must only read scalars.
+   * @return True if the condition is hoisted.
+   */
+  private static boolean hoistCondition(XcodeML xcodeml,
+                                        FfunctionDefinition fctDef,
+                                        Xnode ifStmt, Xnode hoistBody,
+                                        DefUseAnalysis defUse,
+                                        Set<String> excluded,
+                                        boolean scalarOnly)
+  {
+    Xnode condition = ifStmt.matchDirectDescendant(Xcode.CONDITION);
+    if(condition == null || condition.firstChild() == null
+        || condition.firstChild().is(Xcode.VAR)
+        || condition.firstChild().is(Xcode.F_LOGICAL_CONSTANT)
+        || !isInvariantExpression(fctDef, condition, defUse, excluded)
+        || (scalarOnly && !readsOnlyScalars(xcodeml, condition)))
+    {
+      return false;
+    }
+    int counter = 0;
+    String name = INVARIANT_CONDITION_PREFIX;
+    while(fctDef.getSymbolTable().contains(name)) {
+      name = INVARIANT_CONDITION_PREFIX + "_" + ++counter;
+    }
+    xcodeml.createIdAndDecl(name, FortranType.LOGICAL, XstorageClass.F_LOCAL,
+        fctDef, DeclarationPosition.LAST);
+    Xnode assign = xcodeml.createNode(Xcode.F_ASSIGN_STATEMENT);
+    assign.append(xcodeml.createVar(FortranType.LOGICAL, name, Xscope.LOCAL));
+    assign.append(condition.firstChild());
+    hoistBody.append(assign);
+    condition.append(
+        xcodeml.createVar(FortranType.LOGICAL, name, Xscope.LOCAL));
+    return true;
+  }
+
+  /**
+   * Check whether an expression is loop invariant. The condition is checked
+   * against the varying variables with {@link Condition#dependsOn(Xnode, Set)}
+   * and all its variables, including the array subscripts, must not be
+   * defined in the group.
+   *
+   * @param fctDef   Function/subroutine in which the expression is defined.
+   * @param expr     Expression to be checked.
+   * @param defUse   Definitions and uses of the group.
+   * @param excluded Variables varying with the iterations.
+   * @return True if the expression always has the same value in the group.
+   */
+  private static boolean isInvariantExpression(FfunctionDefinition fctDef,
+                                               Xnode expr,
+                                               DefUseAnalysis defUse,
+                                               Set<String> excluded)
+  {
+    if(expr == null || Condition.dependsOn(expr, excluded)) {
+      return false;
+    }
+    for(Xnode fctCall : expr.matchAll(Xcode.FUNCTION_CALL)) {
+      if(!fctCall.getBooleanAttribute(Xattr.IS_INTRINSIC)) {
+        return false;
+      }
+    }
+    for(String name : DefUseAnalysis.getUsedNames(expr)) {
+      if(excluded.contains(name) || defUse.isDefined(name)
+          || (defUse.hasUnknownSideEffect()
+          && !fctDef.getSymbolTable().contains(name)))
+      {
+        return false;
+      }
+    }
+    return !expr.is(Xcode.FUNCTION_CALL)
+        || expr.getBooleanAttribute(Xattr.IS_INTRINSIC);
+  }
+
+  /**
+   * Check whether an expression only reads scalar variables and constants.
+   *
+   * @param xcodeml Current XcodeML translation unit.
+   * @param expr    Expression to be checked.
+   * @return True if no array, array element or derived type component is read
+   * by the expression.
+   */
+  private static boolean readsOnlyScalars(XcodeML xcodeml, Xnode expr) {
+    for(Xcode opcode : NON_SCALAR_REFS) {
+      if(expr.is(opcode) || expr.matchDescendant(opcode) != null) {
+        return false;
+      }
+    }
+    List<Xnode> vars = expr.is(Xcode.VAR) ? Collections.singletonList(expr)
+        : expr.matchAll(Xcode.VAR);
+    for(Xnode var : vars) {
+      if(!isScalar(xcodeml, var)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Check whether a variable is a scalar of an intrinsic type.
+   *
+   * @param xcodeml Current XcodeML translation unit.
+   * @param var     Var node.
+   * @return True if the variable is a plain scalar.
+   */
+  private static boolean isScalar(XcodeML xcodeml, Xnode var) {
+    String type = var.getType();
+    if(type == null) {
+      return false;
+    }
+    if(xcodeml.getTypeTable().isBasicType(type)) {
+      FbasicType bt = xcodeml.getTypeTable().getBasicType(type);
+      return !bt.isArray() && !bt.isPointer() && !bt.isAllocatable()
+          && FortranType.isBuiltInType(bt.getRef());
+    }
+    return FortranType.isBuiltInType(type);
+  }
+
+  /**
+   * Find an if statement that can be used to unswitch a group of nested do
+   * statements. The if statement must be executed at each iteration of the
+   * inner most do statement enclosing it, i.e. only do statements are found
+   * between the given do statement and the if statement. Its condition must
+   * not depend on the induction variables of the group, must only use
+   * variables not defined in the group and intrinsic functions and must not
+   * reference array elements.
+   *
+   * @param fctDef Function/subroutine in which the group is defined.
+   * @param doStmt Outer do statement of the group.
+   * @return First if statement in document order that can be used for
+   * unswitching. Null if there is none or if the group has labels.
+   */
+  public static Xnode findUnswitchCandidate(FfunctionDefinition fctDef,
+                                            Xnode doStmt)
+  {
+    if(!Xnode.isOfCode(doStmt, Xcode.F_DO_STATEMENT)
+        || doStmt.matchDescendant(Xcode.STATEMENT_LABEL) != null)
+    {
+      return null;
+    }
+    DefUseAnalysis defUse = null;
+    Set<String> inductionVars = new HashSet<>();
+    for(Xnode ifStmt : doStmt.matchAll(Xcode.F_IF_STATEMENT)) {
+      if(!isDirectlyNested(doStmt, ifStmt)) {
+        continue;
+      }
+      Xnode condition = ifStmt.matchDirectDescendant(Xcode.CONDITION);
+      if(condition == null
+          || condition.matchDescendant(Xcode.F_ARRAY_REF) != null)
+      {
+        continue;
+      }
+      if(defUse == null) {
+        defUse = new DefUseAnalysis(doStmt);
+        inductionVars.add(extractInductionVariable(doStmt).toLowerCase());
+        for(Xnode nested : doStmt.matchAll(Xcode.F_DO_STATEMENT)) {
+          inductionVars.add(extractInductionVariable(nested).toLowerCase());
+        }
+      }
+      if(isInvariantExpression(fctDef, condition, defUse, inductionVars)) {
+        return ifStmt;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Unswitch a group of nested do statements on the condition of an if
+   * statement. The group is replaced by an if statement with the original
+   * condition. Its then branch contains a copy of the group in which the if
+   * statement is replaced by its then body. Its else branch contains a copy
+   * of the group in which the if statement is replaced by its else body, if
+   * any.
+   *
+   * @param xcodeml Current XcodeML translation unit.
+   * @param doStmt  Outer do statement of the group.
+   * @param ifStmt  If statement nested in the group.
+   * @return The newly inserted if statement.
+   * @throws IllegalTransformationException If the if statement is not nested
+   *                                        in the do statement.
+   */
+  public static Xnode unswitch(XcodeML xcodeml, Xnode doStmt, Xnode ifStmt)
+      throws IllegalTransformationException
+  {
+    if(!Xnode.isOfCode(doStmt, Xcode.F_DO_STATEMENT)
+        || !Xnode.isOfCode(ifStmt, Xcode.F_IF_STATEMENT))
+    {
+      throw new IllegalTransformationException(
+          TatsuConstant.ERROR_INCOMPATIBLE + " for loop unswitching");
+    }
+    List<Integer> path = new ArrayList<>();
+    Xnode crt = ifStmt;
+    while(crt != null && !crt.equals(doStmt)) {
+      Xnode parent = crt.ancestor();
+      if(parent == null) {
+        throw new IllegalTransformationException(
+            "If statement is not nested in the do statement.",
+            ifStmt.lineNo());
+      }
+      path.add(0, parent.children().indexOf(crt));
+      crt = parent;
+    }
+
+    Xnode newIf = xcodeml.createIfThen();
+    newIf.setLine(ifStmt.lineNo());
+    newIf.matchDirectDescendant(Xcode.CONDITION).append(
+        ifStmt.matchDirectDescendant(Xcode.CONDITION).firstChild(), true);
+
+    Xnode thenCopy = doStmt.cloneNode();
+    replaceByBranch(followPath(thenCopy, path), Xcode.THEN);
+    newIf.matchSeq(Xcode.THEN, Xcode.BODY).append(thenCopy);
+
+    Xnode elseCopy = doStmt.cloneNode();
+    replaceByBranch(followPath(elseCopy, path), Xcode.ELSE);
+    Xnode elseNode = xcodeml.createElse();
+    elseNode.body().append(elseCopy);
+    newIf.append(elseNode);
+
+    doStmt.insertAfter(newIf);
+    doStmt.delete();
+    return newIf;
+  }
+
+  /**
+   * Count the statements of a group of do statements including the outer do
+   * statement itself.
+   *
+   * @param doStmt Outer do statement of the group.
+   * @return Number of statements.
+   */
+  public static int countStatements(Xnode doStmt) {
+    int count = 1;
+    for(Xnode body : doStmt.matchAll(Xcode.BODY)) {
+      count += body.children().size();
+    }
+    return count;
+  }
+
+  /**
+   * Check whether only do statements are found between a do statement and a
+   * nested statement.
+   *
+   * @param doStmt Outer do statement.
+   * @param stmt   Nested statement.
+   * @return True if the statement is executed at each iteration of its inner
+   * most enclosing do statement.
+   */
+  private static boolean isDirectlyNested(Xnode doStmt, Xnode stmt) {
+    Xnode crt = stmt.ancestor();
+    while(crt != null && crt.is(Xcode.BODY)) {
+      Xnode owner = crt.ancestor();
+      if(!Xnode.isOfCode(owner, Xcode.F_DO_STATEMENT)) {
+        return false;
+      }
+      if(owner.equals(doStmt)) {
+        return true;
+      }
+      crt = owner.ancestor();
+    }
+    return false;
+  }
+
+  /**
+   * Get the node at the end of a path of children indexes.
+   *
+   * @param root Root node of the path.
+   * @param path Index of the child at each level.
+   * @return Node at the end of the path.
+   */
+  private static Xnode followPath(Xnode root, List<Integer> path) {
+    Xnode crt = root;
+    for(int idx : path) {
+      crt = crt.children().get(idx);
+    }
+    return crt;
+  }
+
+  /**
+   * Replace an if statement by the statements of one of its branches.
+   *
+   * @param ifStmt If statement.
+   * @param branch THEN or ELSE.
+   */
+  private static void replaceByBranch(Xnode ifStmt, Xcode branch) {
+    Xnode body = ifStmt.matchSeq(branch, Xcode.BODY);
+    if(body != null) {
+      for(Xnode stmt : body.children()) {
+        ifStmt.insertBefore(stmt);
+      }
+    }
+    ifStmt.delete();
+  }
 }
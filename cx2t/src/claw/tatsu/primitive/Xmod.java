@@ -162,18 +162,22 @@ public final class Xmod {
     if(importFctType) {
       // TODO should be part of XcodeML
       Xnode importedNode = mod.importNode(fctType);
-      mod.getTypeTable().append(importedNode);
       FfunctionType importedFctType = new FfunctionType(importedNode);
-      Xid importedFctTypeId = mod.createId(importedFctType.getType(),
-          XstorageClass.F_FUNC, fctDef.getName());
-      mod.getIdentifiers().add(importedFctTypeId);
+      if(mod.getTypeTable().hasType(importedFctType.getType())) {
+        // Hash already used by another type of the module
+        importedFctType.setType(
+            mod.getTypeTable().generateHash(FortranType.FUNCTION));
+      }
 
       // check if params need to be imported as well
-      if(!importedFctType.getParameters().isEmpty()) {
-        for(Xnode param : importedFctType.getParameters()) {
-          mod.importType(xcodeml, param.getType());
-        }
+      for(Xnode param : importedFctType.getParameters()) {
+        param.setType(mod.importType(xcodeml, param.getType()));
       }
+
+      mod.getTypeTable().addDistinct(importedNode);
+      Xid importedFctTypeId = mod.createId(importedFctType.getType(),
+          XstorageClass.F_FUNC, fctDef.getName());
+      mod.getIdentifiers().add(importedFctTypeId);
       return;
     } else {
       fctTypeMod = mod.findFunctionType(fctDef.getName());
@@ -4,6 +4,7 @@
  */
 package claw.tatsu.xcodeml.abstraction;
 
+import claw.tatsu.xcodeml.xnode.Xname;
 import claw.tatsu.xcodeml.xnode.common.*;
 import claw.tatsu.xcodeml.xnode.fortran.FbasicType;
 import claw.tatsu.xcodeml.xnode.fortran.FortranType;
@@ -18,6 +19,7 @@ public class BoundDefinition {
 
   private String _strBoundValue;
   private int _intBoundValue;
+  private int _padding = 0;
   private final BoundType _boundType;
 
   /**
@@ -37,6 +39,36 @@ public class BoundDefinition {
     }
   }
 
+  /**
+   * Create a copy of this bound rounded up to the next multiple of the given
+   * value. Integer bounds are rounded directly. Var bounds are rounded when the
+   * value node is generated.
+   *
+   * @param multiple Value to round up to. No padding if smaller than 2.
+   * @return New padded bound definition.
+   */
+  BoundDefinition pad(int multiple) {
+    if(multiple < 2) {
+      return this;
+    }
+    if(isVar()) {
+      BoundDefinition padded = new BoundDefinition(_strBoundValue, _boundType);
+      padded._padding = multiple;
+      return padded;
+    }
+    int value = ((_intBoundValue + multiple - 1) / multiple) * multiple;
+    return new BoundDefinition(String.valueOf(value), _boundType);
+  }
+
+  /**
+   * Get the padding applied to a var bound.
+   *
+   * @return Padding multiple. 0 if the bound is not padded.
+   */
+  public int getPadding() {
+    return _padding;
+  }
+
   /**
    * Check whether the bound is a var.
    *
@@ -88,7 +120,23 @@ public class BoundDefinition {
     if(isVar()) {
       FbasicType bt = xcodeml.createBasicType(FortranType.INTEGER, Intent.IN);
       xcodeml.getTypeTable().add(bt);
-      return xcodeml.createVar(bt.getType(), _strBoundValue, Xscope.LOCAL);
+      Xnode var = xcodeml.createVar(bt.getType(), _strBoundValue,
+          Xscope.LOCAL);
+      if(_padding < 2) {
+        return var;
+      }
+      // ((var + padding - 1) / padding) * padding
+      Xnode plus = xcodeml.createNode(Xcode.PLUS_EXPR).
+          setType(Xname.TYPE_F_INT);
+      plus.append(var);
+      plus.append(xcodeml.createIntConstant(_padding - 1));
+      Xnode div = xcodeml.createNode(Xcode.DIV_EXPR).setType(Xname.TYPE_F_INT);
+      div.append(plus);
+      div.append(xcodeml.createIntConstant(_padding));
+      Xnode mul = xcodeml.createNode(Xcode.MUL_EXPR).setType(Xname.TYPE_F_INT);
+      mul.append(div);
+      mul.append(xcodeml.createIntConstant(_padding));
+      return mul;
     } else {
       return xcodeml.createIntConstant(_intBoundValue);
     }
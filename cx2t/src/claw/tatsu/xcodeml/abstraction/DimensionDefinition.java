@@ -34,6 +34,8 @@ public class DimensionDefinition {
 
   private final String _identifier; // Used as array index
   private InsertionPosition _insertionPosition = InsertionPosition.BEFORE;
+  private int _tripCountHint = 0;
+  private int _specializedSize = 0;
 
   /**
    * Create the special dimension definition used as place holder for
@@ -68,6 +70,30 @@ public class DimensionDefinition {
         BoundDefinition.BoundType.STEP);
   }
 
+  /**
+   * Internal constructor with all bound objects.
+   *
+   * @param id           Identifier of the defined dimension.
+   * @param lowerBound   Lower bound of the dimension.
+   * @param upperBound   Upper bound of the dimension.
+   * @param itLowerBound Iteration lower bound.
+   * @param itUpperBound Iteration upper bound.
+   * @param step         Iteration step.
+   */
+  private DimensionDefinition(String id, BoundDefinition lowerBound,
+                              BoundDefinition upperBound,
+                              BoundDefinition itLowerBound,
+                              BoundDefinition itUpperBound,
+                              BoundDefinition step)
+  {
+    _identifier = id;
+    _lowerBound = lowerBound;
+    _upperBound = upperBound;
+    _iterationLowerBound = itLowerBound;
+    _iterationUpperBound = itUpperBound;
+    _iterationStep = step;
+  }
+
   /**
    * Constructs a new dimension object from the extracted information.
    *
@@ -207,6 +233,55 @@ public class DimensionDefinition {
     _insertionPosition = position;
   }
 
+  /**
+   * Get the number of iterations of this dimension. The trip count is computed
+   * from the iteration bounds when they are all integer constants. Otherwise,
+   * the trip count hint is returned.
+   *
+   * @return Number of iterations. 0 if unknown.
+   */
+  public int getTripCount() {
+    if(!_iterationLowerBound.isVar() && !_iterationUpperBound.isVar()
+        && !_iterationStep.isVar() && _iterationStep.getIntValue() > 0)
+    {
+      return Math.max(0, (_iterationUpperBound.getIntValue()
+          - _iterationLowerBound.getIntValue())
+          / _iterationStep.getIntValue() + 1);
+    }
+    return _tripCountHint;
+  }
+
+  /**
+   * Set the expected number of iterations of this dimension. Only used when
+   * the bounds are not integer constants.
+   *
+   * @param value Expected number of iterations.
+   */
+  public void setTripCountHint(int value) {
+    _tripCountHint = value;
+  }
+
+  /**
+   * Get the constant value declared for the size upper bound variable of this
+   * dimension. Used to specialize the functions/subroutines iterating over
+   * this dimension.
+   *
+   * @return Constant size upper bound. 0 if not declared.
+   */
+  public int getSpecializedSize() {
+    return _specializedSize;
+  }
+
+  /**
+   * Set the constant value declared for the size upper bound variable of
+   * this dimension.
+   *
+   * @param value Constant size upper bound.
+   */
+  public void setSpecializedSize(int value) {
+    _specializedSize = value;
+  }
+
   /**
    * Generate the correct indexRange element with lowerBound, upperBound and
    * step from the current dimension.
@@ -266,6 +341,30 @@ public class DimensionDefinition {
     return new DimensionDefinition(_identifier, _lowerBound, _upperBound);
   }
 
+  /**
+   * Create a copy of the current dimension definition with an upper bound
+   * padded to a multiple of the given value. Iteration bounds and insertion
+   * position are kept so only the allocated size changes. Padding is only
+   * applied when the lower bound is 1 so that the extent is a multiple of the
+   * given value.
+   *
+   * @param multiple Value to round the upper bound up to.
+   * @return A newly created padded copy of this dimension definition.
+   */
+  public DimensionDefinition pad(int multiple) {
+    BoundDefinition upperBound = _upperBound;
+    if(!_lowerBound.isVar() && _lowerBound.getIntValue() == 1) {
+      upperBound = _upperBound.pad(multiple);
+    }
+    DimensionDefinition padded = new DimensionDefinition(_identifier,
+        _lowerBound, upperBound, _iterationLowerBound, _iterationUpperBound,
+        _iterationStep);
+    padded.setInsertionPosition(_insertionPosition);
+    padded.setTripCountHint(_tripCountHint);
+    padded.setSpecializedSize(_specializedSize);
+    return padded;
+  }
+
   @Override
   public String toString() {
     return String.format("%s(%s:%s)", _identifier,
@@ -4,6 +4,7 @@
  */
 package claw.tatsu.xcodeml.backend;
 
+import claw.tatsu.xcodeml.xnode.common.BinaryXcodeML;
 import claw.tatsu.xcodeml.xnode.common.XcodeML;
 import org.w3c.dom.Document;
 import org.xml.sax.SAXException;
@@ -13,6 +14,8 @@ import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import java.io.*;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 /**
  * Wrapper class to call the Fortran decompiler of OMNI Compiler directly
@@ -135,7 +138,8 @@ public class OmniBackendDriver {
   }
 
   /**
-   * Decompile the XcodeML file into Fortran code.
+   * Decompile the XcodeML file into Fortran code. The file can be in the
+   * textual or in the binary XcodeML format.
    *
    * @param outputFilepath Fortran output file path.
    * @param inputFilepath  XcodeML input file path.
@@ -151,6 +155,11 @@ public class OmniBackendDriver {
     }
 
     try {
+      Path input = Paths.get(inputFilepath);
+      if(BinaryXcodeML.isBinary(input)) {
+        return decompile(outputFilepath, BinaryXcodeML.read(input), maxColumns,
+            lineDirectives);
+      }
       DocumentBuilderFactory docFactory = DocumentBuilderFactory.newInstance();
       DocumentBuilder builder = docFactory.newDocumentBuilder();
       Document xcodeml = builder.parse(inputFilepath);
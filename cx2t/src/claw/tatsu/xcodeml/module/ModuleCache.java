@@ -6,10 +6,14 @@ package claw.tatsu.xcodeml.module;
 
 import claw.tatsu.primitive.Xmod;
 import claw.tatsu.xcodeml.exception.IllegalTransformationException;
+import claw.tatsu.xcodeml.xnode.XnodeUtil;
 import claw.tatsu.xcodeml.xnode.fortran.FortranModule;
+import org.w3c.dom.Document;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -22,17 +26,39 @@ import java.util.Map;
  */
 public class ModuleCache {
 
+  // Modules in least recently used order
   private final Map<String, FortranModule> _moduleCache;
+  // Evicted modules written to file
+  private final Map<String, EvictedModule> _evicted;
   private final List<String> _searchPaths;
+  private boolean _eviction = false;
+  private int _evictionIndent;
+  private double _evictionThreshold;
 
   /**
    * Constructs a new empty module cache.
    */
   public ModuleCache() {
-    _moduleCache = new HashMap<>();
+    _moduleCache = new LinkedHashMap<>(16, 0.75f, true);
+    _evicted = new HashMap<>();
     _searchPaths = new ArrayList<>();
   }
 
+  /**
+   * Evict the least recently used modules from the cache when the used heap
+   * exceeds the given fraction of the maximum heap. Evicted modules are
+   * written to their file and read again when requested.
+   *
+   * @param indent    Number of spaces used to indent the evicted modules.
+   * @param threshold Fraction of the maximum heap above which modules are
+   *                  evicted.
+   */
+  public void enableEviction(int indent, double threshold) {
+    _eviction = true;
+    _evictionIndent = indent;
+    _evictionThreshold = threshold;
+  }
+
   /**
    * Check whether a module is in the cache.
    *
@@ -40,33 +66,90 @@ public class ModuleCache {
    * @return True if the module is in the cache. False otherwise.
    */
   public boolean isModuleLoaded(String moduleName) {
-    return _moduleCache.containsKey(moduleName.toLowerCase());
+    return _moduleCache.containsKey(moduleName.toLowerCase())
+        || _evicted.containsKey(moduleName.toLowerCase());
   }
 
   /**
    * Add a module in the cache by its name. If already present, the module is
-   * overwritten.
+   * overwritten. If eviction is enabled, other modules might be evicted.
    *
    * @param moduleName Name of the module.
    * @param module     Xmod object.
+   * @throws IllegalTransformationException If an evicted module cannot be
+   *                                        written.
    */
-  public void add(String moduleName, FortranModule module) {
+  public void add(String moduleName, FortranModule module)
+      throws IllegalTransformationException
+  {
+    _evicted.remove(moduleName.toLowerCase());
     _moduleCache.remove(moduleName.toLowerCase());
     _moduleCache.put(moduleName.toLowerCase(), module);
+    if(_eviction) {
+      evict(moduleName.toLowerCase());
+    }
   }
 
   /**
-   * Get a module in the cache by its name.
+   * Get a module in the cache by its name. An evicted module is read again
+   * from its file.
    *
    * @param moduleName Name of the module.
-   * @return The cached module.
+   * @return The cached module. Null if not in the cache or if an evicted
+   * module cannot be read.
    */
   public FortranModule get(String moduleName) {
-    return _moduleCache.get(moduleName.toLowerCase());
+    String key = moduleName.toLowerCase();
+    FortranModule module = _moduleCache.get(key);
+    if(module == null && _evicted.containsKey(key)) {
+      EvictedModule evicted = _evicted.get(key);
+      Document doc = XnodeUtil.readXmlFile(evicted.getFile());
+      if(doc == null) {
+        return null;
+      }
+      module = new FortranModule(doc, evicted._name, evicted._path);
+      _evicted.remove(key);
+      _moduleCache.put(key, module);
+    }
+    return module;
+  }
+
+  /**
+   * Write and drop the least recently used modules while the used heap
+   * exceeds the eviction threshold.
+   *
+   * @param kept Name of a module not to be evicted.
+   * @throws IllegalTransformationException If a module cannot be written.
+   */
+  private void evict(String kept) throws IllegalTransformationException {
+    Iterator<Map.Entry<String, FortranModule>> it =
+        _moduleCache.entrySet().iterator();
+    while(it.hasNext() && isUnderPressure()) {
+      Map.Entry<String, FortranModule> entry = it.next();
+      if(entry.getKey().equals(kept)) {
+        continue;
+      }
+      EvictedModule evicted = new EvictedModule(entry.getValue());
+      entry.getValue().write(evicted.getFile(), _evictionIndent);
+      _evicted.put(entry.getKey(), evicted);
+      it.remove();
+    }
   }
 
   /**
-   * Write all modules in the cache to files.
+   * Check whether the used heap exceeds the eviction threshold.
+   *
+   * @return True if modules should be evicted.
+   */
+  private boolean isUnderPressure() {
+    Runtime runtime = Runtime.getRuntime();
+    long used = runtime.totalMemory() - runtime.freeMemory();
+    return used > _evictionThreshold * runtime.maxMemory();
+  }
+
+  /**
+   * Write all modules in the cache to files. Evicted modules are already
+   * written.
    *
    * @param ident Number of spaces used to indent the XML file.
    * @throws IllegalTransformationException If module cannot be written.
@@ -99,4 +182,22 @@ public class ModuleCache {
   public List<String> getSearchPaths() {
     return _searchPaths;
   }
+
+  /**
+   * Module written to file and dropped from the cache.
+   */
+  private static final class EvictedModule {
+
+    private final String _name;
+    private final String _path;
+
+    EvictedModule(FortranModule module) {
+      _name = module.getName();
+      _path = module.getPath();
+    }
+
+    String getFile() {
+      return _path + _name + Xmod.getSuffix();
+    }
+  }
 }
@@ -83,6 +83,58 @@ public class XnodeUtil {
     return references;
   }
 
+  /**
+   * Find all var references elements of several variables in a given body in
+   * a single traversal.
+   *
+   * @param parent   The body element to search for the references.
+   * @param varNames Names of the var for the references to be found.
+   * @return Map of the lower-cased names to the references found in document
+   * order. Names without reference are not in the map.
+   */
+  public static Map<String, List<Xnode>> getAllVarReferences(
+      Xnode parent, Collection<String> varNames)
+  {
+    Set<String> names = new HashSet<>();
+    for(String varName : varNames) {
+      names.add(varName.toLowerCase());
+    }
+    Map<String, List<Xnode>> references = new HashMap<>();
+    NodeList nList = parent.element().getElementsByTagName(Xname.VAR);
+    for(int i = 0; i < nList.getLength(); i++) {
+      Node n = nList.item(i);
+      if(n.getNodeType() == Node.ELEMENT_NODE) {
+        Xnode var = new Xnode((Element) n);
+        String name = var.value().toLowerCase();
+        if(names.contains(name)) {
+          references.computeIfAbsent(name, k -> new ArrayList<>()).add(var);
+        }
+      }
+    }
+    return references;
+  }
+
+  /**
+   * Get the array reference of which the var element is the array.
+   *
+   * @param var Var element.
+   * @return The FarrayRef element if the var is its array. Null otherwise.
+   */
+  public static Xnode getArrayReference(Xnode var) {
+    Xnode varRef = var.ancestor();
+    if(!Xnode.isOfCode(varRef, Xcode.VAR_REF)) {
+      return null;
+    }
+    Xnode arrayRef = varRef.ancestor();
+    if(!Xnode.isOfCode(arrayRef, Xcode.F_ARRAY_REF)
+        || !varRef.equals(arrayRef.matchDirectDescendant(Xcode.VAR_REF))
+        || !var.equals(varRef.matchDirectDescendant(Xcode.VAR)))
+    {
+      return null;
+    }
+    return arrayRef;
+  }
+
   /**
    * Retrieve the index ranges of an array notation.
    *
@@ -511,6 +563,9 @@ public class XnodeUtil {
       if(!fXmlFile.exists()) {
         return null;
       }
+      if(BinaryXcodeML.isBinary(fXmlFile.toPath())) {
+        return BinaryXcodeML.read(fXmlFile.toPath());
+      }
       DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
       DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
       Document doc = dBuilder.parse(fXmlFile);
@@ -584,6 +639,19 @@ public class XnodeUtil {
     return siblingsInRegion;
   }
 
+  /**
+   * Gather the first level nodes of a region. If no end node is given, the
+   * region is the single node following the start node.
+   *
+   * @param from Node from which the block starts.
+   * @param to   Node to which the block ends. Null for a single node region.
+   * @return List of nodes in the block.
+   */
+  private static List<Xnode> getNodesInRegion(Xnode from, Xnode to) {
+    return to == null ? Collections.singletonList(from.nextSibling())
+        : getSiblingsBetween(from, to);
+  }
+
   /**
    * Gather all array identifiers written in the given block.
    *
@@ -592,13 +660,19 @@ public class XnodeUtil {
    * @return List of array identifiers written to in the block.
    */
   public static List<String> getWrittenArraysInRegion(Xnode from, Xnode to) {
+    return getWrittenArrays(getNodesInRegion(from, to));
+  }
+
+  /**
+   * Gather all array identifiers written in the given nodes.
+   *
+   * @param firstLevelNodesInRegion Nodes to be inspected.
+   * @return List of array identifiers written to in the nodes.
+   */
+  public static List<String> getWrittenArrays(
+      List<Xnode> firstLevelNodesInRegion)
+  {
     Set<String> writtenArraysIds = new HashSet<>();
-    List<Xnode> firstLevelNodesInRegion;
-    if(to == null) {
-      firstLevelNodesInRegion = Collections.singletonList(from.nextSibling());
-    } else {
-      firstLevelNodesInRegion = getSiblingsBetween(from, to);
-    }
     for(Xnode node : firstLevelNodesInRegion) {
       List<AssignStatement> assignements;
       if(node.is(Xcode.F_ASSIGN_STATEMENT)) {
@@ -627,13 +701,19 @@ public class XnodeUtil {
    * @return List of array identifiers read to in the block.
    */
   public static List<String> getReadArraysInRegion(Xnode from, Xnode to) {
+    return getReadArrays(getNodesInRegion(from, to));
+  }
+
+  /**
+   * Gather all array identifiers read in the given nodes.
+   *
+   * @param firstLevelNodesInRegion Nodes to be inspected.
+   * @return List of array identifiers read to in the nodes.
+   */
+  public static List<String> getReadArrays(
+      List<Xnode> firstLevelNodesInRegion)
+  {
     Set<String> readArrayIds = new HashSet<>();
-    List<Xnode> firstLevelNodesInRegion;
-    if(to == null) {
-      firstLevelNodesInRegion = Collections.singletonList(from.nextSibling());
-    } else {
-      firstLevelNodesInRegion = getSiblingsBetween(from, to);
-    }
     for(Xnode node : firstLevelNodesInRegion) {
       List<Xnode> arrayRefs = node.matchAll(Xcode.F_ARRAY_REF);
       for(Xnode arrayRef : arrayRefs) {
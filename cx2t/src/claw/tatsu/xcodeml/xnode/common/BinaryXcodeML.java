@@ -0,0 +1,494 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.xcodeml.xnode.common;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary encoding of XcodeML documents. A binary XcodeML file is smaller than
+ * its textual form and is read without XML parsing from a memory mapped file.
+ *
+ * Layout of a file. Integers are unsigned LEB128 varints and strings are
+ * their UTF-8 length followed by their UTF-8 bytes:
+ * - Magic "CLAWXBIN" and format version.
+ * - Tag table: number of element names followed by the names.
+ * - Attribute table: number of attribute names followed by the names.
+ * - String pool: number of strings followed by the attribute values and texts.
+ * - Root element.
+ *
+ * A node is encoded as its kind followed by its content. Kind 0 is a text
+ * node and kind 1 a comment, both followed by their index in the string pool.
+ * Kind n &gt;= 2 is an element whose name is the entry n-2 of the tag table,
+ * followed by the number of attributes, the attribute name and value indexes
+ * and the number of children followed by the children.
+ *
+ * Indentation text nodes are not encoded. The converters to and from the
+ * textual XcodeML are available through ClawXcodeMLConverter.
+ *
+ * @author clementval
+ */
+public final class BinaryXcodeML {
+
+  private static final byte[] MAGIC =
+      "CLAWXBIN".getBytes(StandardCharsets.US_ASCII);
+  static final int MAGIC_LENGTH = MAGIC.length;
+  private static final int VERSION = 1;
+  private static final int KIND_TEXT = 0;
+  private static final int KIND_COMMENT = 1;
+  private static final int KIND_ELEMENT = 2;
+
+  // Avoid potential instantiation of this class
+  private BinaryXcodeML() {
+  }
+
+  /**
+   * Check whether a file is a binary XcodeML file.
+   *
+   * @param file Path of the file.
+   * @return True if the file starts with the binary XcodeML magic. False
+   * otherwise or if the file cannot be read.
+   */
+  public static boolean isBinary(Path file) {
+    if(!Files.isRegularFile(file)) {
+      return false;
+    }
+    try(InputStream input = Files.newInputStream(file)) {
+      return isBinary(input);
+    } catch(IOException ignored) {
+      return false;
+    }
+  }
+
+  /**
+   * Check whether a stream starts with the binary XcodeML magic. The magic
+   * bytes are consumed.
+   *
+   * @param input Input stream.
+   * @return True if the stream starts with the magic.
+   * @throws IOException If the stream cannot be read.
+   */
+  public static boolean isBinary(InputStream input) throws IOException {
+    byte[] header = new byte[MAGIC.length];
+    int read = 0;
+    while(read < header.length) {
+      int n = input.read(header, read, header.length - read);
+      if(n < 0) {
+        return false;
+      }
+      read += n;
+    }
+    return Arrays.equals(MAGIC, header);
+  }
+
+  /**
+   * Read a binary XcodeML file mapped in memory.
+   *
+   * @param file Path of the file.
+   * @return Decoded document.
+   * @throws IOException If the file cannot be read or is not a valid binary
+   *                     XcodeML file.
+   */
+  public static Document read(Path file) throws IOException {
+    try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      return read(channel.map(FileChannel.MapMode.READ_ONLY, 0,
+          channel.size()));
+    }
+  }
+
+  /**
+   * Read a binary XcodeML document from a stream.
+   *
+   * @param input Input stream positioned at the beginning of the document.
+   * @return Decoded document.
+   * @throws IOException If the stream cannot be read or is not a valid binary
+   *                     XcodeML document.
+   */
+  public static Document read(InputStream input) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    byte[] chunk = new byte[1 << 16];
+    int n;
+    while((n = input.read(chunk)) > 0) {
+      bytes.write(chunk, 0, n);
+    }
+    return read(ByteBuffer.wrap(bytes.toByteArray()));
+  }
+
+  /**
+   * Read a binary XcodeML document from a buffer.
+   *
+   * @param buffer Buffer positioned at the beginning of the document.
+   * @return Decoded document.
+   * @throws IOException If the buffer does not hold a valid binary XcodeML
+   *                     document.
+   */
+  public static Document read(ByteBuffer buffer) throws IOException {
+    try {
+      byte[] magic = new byte[MAGIC.length];
+      buffer.get(magic);
+      if(!Arrays.equals(MAGIC, magic)) {
+        throw new IOException("Not a binary XcodeML document");
+      }
+      int version = readVarint(buffer);
+      if(version != VERSION) {
+        throw new IOException("Unsupported binary XcodeML version " + version);
+      }
+      Decoder decoder = new Decoder(buffer);
+      Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+          .newDocument();
+      Node root = decoder.readNode(doc);
+      if(!(root instanceof Element)) {
+        throw new IOException("Binary XcodeML root is not an element");
+      }
+      doc.appendChild(root);
+      return doc;
+    } catch(BufferUnderflowException | IndexOutOfBoundsException
+        | NegativeArraySizeException e)
+    {
+      throw new IOException("Corrupted binary XcodeML document", e);
+    } catch(ParserConfigurationException e) {
+      throw new IOException(e);
+    }
+  }
+
+  /**
+   * Write a document to a binary XcodeML file.
+   *
+   * @param doc  Document to be written.
+   * @param file Path of the file.
+   * @throws IOException If the file cannot be written.
+   */
+  public static void write(Document doc, Path file) throws IOException {
+    try(OutputStream output = Files.newOutputStream(file)) {
+      write(doc, output);
+    }
+  }
+
+  /**
+   * Write a document in the binary XcodeML format to a stream.
+   *
+   * @param doc    Document to be written.
+   * @param output Output stream. Not closed.
+   * @throws IOException If the stream cannot be written.
+   */
+  public static void write(Document doc, OutputStream output)
+      throws IOException
+  {
+    Encoder encoder = new Encoder();
+    encoder.intern(doc.getDocumentElement());
+    OutputStream out = new BufferedOutputStream(output, 1 << 16);
+    out.write(MAGIC);
+    writeVarint(out, VERSION);
+    writeTable(out, encoder._tags);
+    writeTable(out, encoder._attributes);
+    writeTable(out, encoder._strings);
+    encoder.writeNode(out, doc.getDocumentElement());
+    out.flush();
+  }
+
+  /**
+   * Write a document in the textual XcodeML format. The document must not
+   * hold indentation text nodes, as the documents read from binary XcodeML.
+   *
+   * @param doc    Document to be written.
+   * @param output Output stream. Not closed.
+   * @param indent Number of spaces used for the indentation.
+   * @throws IOException If the stream cannot be written.
+   */
+  public static void writeXml(Document doc, OutputStream output, int indent)
+      throws IOException
+  {
+    try {
+      Transformer transformer = SpillStore.createTransformer(indent);
+      transformer.transform(new DOMSource(doc), new StreamResult(output));
+    } catch(TransformerException e) {
+      throw new IOException("Cannot write textual XcodeML", e);
+    }
+  }
+
+  /**
+   * Check whether a text node only holds indentation.
+   *
+   * @param node Text node.
+   * @return True if the node is blank and has siblings.
+   */
+  private static boolean isIndentation(Node node) {
+    return node.getNodeValue().trim().isEmpty()
+        && (node.getPreviousSibling() != null || node.getNextSibling() != null);
+  }
+
+  /**
+   * Write a table of strings.
+   *
+   * @param out   Output stream.
+   * @param table Strings mapped to their index.
+   * @throws IOException If the stream cannot be written.
+   */
+  private static void writeTable(OutputStream out, Map<String, Integer> table)
+      throws IOException
+  {
+    String[] entries = new String[table.size()];
+    for(Map.Entry<String, Integer> entry : table.entrySet()) {
+      entries[entry.getValue()] = entry.getKey();
+    }
+    writeVarint(out, entries.length);
+    for(String entry : entries) {
+      byte[] bytes = entry.getBytes(StandardCharsets.UTF_8);
+      writeVarint(out, bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  /**
+   * Write an unsigned LEB128 varint.
+   *
+   * @param out   Output stream.
+   * @param value Positive value.
+   * @throws IOException If the stream cannot be written.
+   */
+  private static void writeVarint(OutputStream out, int value)
+      throws IOException
+  {
+    while((value & ~0x7F) != 0) {
+      out.write((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+
+  /**
+   * Read an unsigned LEB128 varint.
+   *
+   * @param buffer Input buffer.
+   * @return Decoded value.
+   * @throws IOException If the varint is too long.
+   */
+  private static int readVarint(ByteBuffer buffer) throws IOException {
+    int value = 0;
+    for(int shift = 0; shift < 32; shift += 7) {
+      byte b = buffer.get();
+      value |= (b & 0x7F) << shift;
+      if((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Corrupted binary XcodeML varint");
+  }
+
+  /**
+   * Interned tables of a document being encoded.
+   */
+  private static final class Encoder {
+
+    private final Map<String, Integer> _tags = new HashMap<>();
+    private final Map<String, Integer> _attributes = new HashMap<>();
+    private final Map<String, Integer> _strings = new HashMap<>();
+
+    /**
+     * Intern the names, values and texts of a subtree.
+     *
+     * @param node Root of the subtree.
+     */
+    private void intern(Node node) {
+      switch(node.getNodeType()) {
+        case Node.ELEMENT_NODE:
+          intern(_tags, node.getNodeName());
+          NamedNodeMap attributes = node.getAttributes();
+          for(int i = 0; i < attributes.getLength(); ++i) {
+            Node attribute = attributes.item(i);
+            intern(_attributes, attribute.getNodeName());
+            intern(_strings, attribute.getNodeValue());
+          }
+          for(Node child = node.getFirstChild(); child != null;
+              child = child.getNextSibling())
+          {
+            intern(child);
+          }
+          break;
+        case Node.TEXT_NODE:
+        case Node.CDATA_SECTION_NODE:
+          if(!isIndentation(node)) {
+            intern(_strings, node.getNodeValue());
+          }
+          break;
+        case Node.COMMENT_NODE:
+          intern(_strings, node.getNodeValue());
+          break;
+        default:
+          break;
+      }
+    }
+
+    /**
+     * Add a string to a table if not present.
+     *
+     * @param table Table of strings mapped to their index.
+     * @param value String to be added.
+     */
+    private static void intern(Map<String, Integer> table, String value) {
+      table.putIfAbsent(value, table.size());
+    }
+
+    /**
+     * Write a subtree.
+     *
+     * @param out  Output stream.
+     * @param node Root of the subtree.
+     * @throws IOException If the stream cannot be written.
+     */
+    private void writeNode(OutputStream out, Node node) throws IOException {
+      switch(node.getNodeType()) {
+        case Node.ELEMENT_NODE:
+          writeVarint(out, KIND_ELEMENT + _tags.get(node.getNodeName()));
+          NamedNodeMap attributes = node.getAttributes();
+          writeVarint(out, attributes.getLength());
+          for(int i = 0; i < attributes.getLength(); ++i) {
+            Node attribute = attributes.item(i);
+            writeVarint(out, _attributes.get(attribute.getNodeName()));
+            writeVarint(out, _strings.get(attribute.getNodeValue()));
+          }
+          List<Node> children = new ArrayList<>();
+          for(Node child = node.getFirstChild(); child != null;
+              child = child.getNextSibling())
+          {
+            if(isEncoded(child)) {
+              children.add(child);
+            }
+          }
+          writeVarint(out, children.size());
+          for(Node child : children) {
+            writeNode(out, child);
+          }
+          break;
+        case Node.COMMENT_NODE:
+          writeVarint(out, KIND_COMMENT);
+          writeVarint(out, _strings.get(node.getNodeValue()));
+          break;
+        default:
+          writeVarint(out, KIND_TEXT);
+          writeVarint(out, _strings.get(node.getNodeValue()));
+          break;
+      }
+    }
+
+    /**
+     * Check whether a node is part of the binary encoding.
+     *
+     * @param node Node to check.
+     * @return True if the node is encoded.
+     */
+    private static boolean isEncoded(Node node) {
+      switch(node.getNodeType()) {
+        case Node.ELEMENT_NODE:
+        case Node.COMMENT_NODE:
+          return true;
+        case Node.TEXT_NODE:
+        case Node.CDATA_SECTION_NODE:
+          return !isIndentation(node);
+        default:
+          return false;
+      }
+    }
+  }
+
+  /**
+   * Tables and position of a document being decoded.
+   */
+  private static final class Decoder {
+
+    private final ByteBuffer _buffer;
+    private final String[] _tags;
+    private final String[] _attributes;
+    private final String[] _strings;
+
+    /**
+     * Read the tables of a document.
+     *
+     * @param buffer Buffer positioned after the version.
+     * @throws IOException If a table is not valid.
+     */
+    private Decoder(ByteBuffer buffer) throws IOException {
+      _buffer = buffer;
+      _tags = readTable();
+      _attributes = readTable();
+      _strings = readTable();
+    }
+
+    /**
+     * Read a table of strings.
+     *
+     * @return Strings in index order.
+     * @throws IOException If the table is not valid.
+     */
+    private String[] readTable() throws IOException {
+      String[] table = new String[readVarint(_buffer)];
+      byte[] bytes = new byte[256];
+      for(int i = 0; i < table.length; ++i) {
+        int length = readVarint(_buffer);
+        if(length > bytes.length) {
+          bytes = new byte[Math.max(length, bytes.length * 2)];
+        }
+        _buffer.get(bytes, 0, length);
+        table[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+      }
+      return table;
+    }
+
+    /**
+     * Read a subtree.
+     *
+     * @param doc Document owning the nodes.
+     * @return Root of the subtree.
+     * @throws IOException If the subtree is not valid.
+     */
+    private Node readNode(Document doc) throws IOException {
+      int kind = readVarint(_buffer);
+      switch(kind) {
+        case KIND_TEXT:
+          return doc.createTextNode(_strings[readVarint(_buffer)]);
+        case KIND_COMMENT:
+          return doc.createComment(_strings[readVarint(_buffer)]);
+        default:
+          Element element = doc.createElement(_tags[kind - KIND_ELEMENT]);
+          int nbAttributes = readVarint(_buffer);
+          for(int i = 0; i < nbAttributes; ++i) {
+            String name = _attributes[readVarint(_buffer)];
+            element.setAttribute(name, _strings[readVarint(_buffer)]);
+          }
+          int nbChildren = readVarint(_buffer);
+          for(int i = 0; i < nbChildren; ++i) {
+            element.appendChild(readNode(doc));
+          }
+          return element;
+      }
+    }
+  }
+}
@@ -0,0 +1,261 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.xcodeml.xnode.common;
+
+import org.w3c.dom.Comment;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Subtrees of a document serialized to spill files and detached from the
+ * document. A comment holds the place of each spilled subtree until the
+ * subtree is restored in the document or spliced back in the serialized
+ * document.
+ *
+ * @author clementval
+ */
+public class SpillStore {
+
+  private static final String PLACEHOLDER_PREFIX = "claw-spill:";
+
+  private final Path _directory;
+  private final int _indent;
+  private final Map<String, Spill> _spills;
+  private int _nextId = 0;
+
+  /**
+   * Constructs a new empty spill store.
+   *
+   * @param directory Directory of the spill files. Created if it does not
+   *                  exist.
+   * @param indent    Number of spaces used to indent the spill files.
+   */
+  public SpillStore(Path directory, int indent) {
+    _directory = directory;
+    _indent = indent;
+    _spills = new LinkedHashMap<>();
+  }
+
+  /**
+   * Get the number of subtrees currently spilled.
+   *
+   * @return Number of spilled subtrees.
+   */
+  public int size() {
+    return _spills.size();
+  }
+
+  /**
+   * Serialize a subtree to a spill file and replace it in the document by a
+   * placeholder.
+   *
+   * @param node Root of the subtree. Must be attached to a document.
+   * @throws IOException If the spill file cannot be written.
+   */
+  public void spill(Xnode node) throws IOException {
+    Element element = node.element();
+    Node parent = element.getParentNode();
+    if(parent == null) {
+      throw new IOException("Cannot spill a detached node");
+    }
+    Files.createDirectories(_directory);
+    String id = String.valueOf(_nextId++);
+    Path file = _directory.resolve("spill-" + id + ".xml");
+    try {
+      Transformer transformer = createTransformer(_indent);
+      transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+      transformer.transform(new DOMSource(element),
+          new StreamResult(file.toFile()));
+    } catch(TransformerException e) {
+      throw new IOException("Cannot write spill file " + file, e);
+    }
+    file.toFile().deleteOnExit();
+    Comment placeholder = element.getOwnerDocument().createComment(
+        PLACEHOLDER_PREFIX + id);
+    parent.replaceChild(placeholder, element);
+    _spills.put(id, new Spill(placeholder, file));
+  }
+
+  /**
+   * Restore all the spilled subtrees in their document and delete the spill
+   * files.
+   *
+   * @throws IOException If a spill file cannot be read.
+   */
+  public void restore() throws IOException {
+    Iterator<Spill> it = _spills.values().iterator();
+    while(it.hasNext()) {
+      Spill spill = it.next();
+      Node parent = spill._placeholder.getParentNode();
+      if(parent != null) {
+        Document doc = spill._placeholder.getOwnerDocument();
+        Node restored = doc.importNode(read(spill._file), true);
+        parent.replaceChild(restored, spill._placeholder);
+      }
+      Files.deleteIfExists(spill._file);
+      it.remove();
+    }
+  }
+
+  /**
+   * Copy a serialized document and replace the placeholders by the content of
+   * their spill files. The spilled subtrees are indented as their placeholder.
+   *
+   * @param source Serialized document with placeholders.
+   * @param target File to be written.
+   * @throws IOException If a file cannot be read or written.
+   */
+  public void splice(Path source, Path target) throws IOException {
+    try(BufferedReader reader =
+            Files.newBufferedReader(source, StandardCharsets.UTF_8);
+        BufferedWriter writer =
+            Files.newBufferedWriter(target, StandardCharsets.UTF_8))
+    {
+      String line;
+      while((line = reader.readLine()) != null) {
+        spliceLine(line, writer);
+      }
+    }
+  }
+
+  /**
+   * Write a line of the serialized document and the spill files of the
+   * placeholders it contains.
+   *
+   * @param line   Line of the serialized document.
+   * @param writer Writer of the target file.
+   * @throws IOException If a file cannot be read or written.
+   */
+  private void spliceLine(String line, BufferedWriter writer)
+      throws IOException
+  {
+    int start = line.indexOf("<!--" + PLACEHOLDER_PREFIX);
+    if(start < 0) {
+      writer.write(line);
+      writer.newLine();
+      return;
+    }
+    int end = line.indexOf("-->", start);
+    String id = line.substring(start + PLACEHOLDER_PREFIX.length() + 4, end);
+    Spill spill = _spills.get(id);
+    if(spill == null) {
+      throw new IOException("Unknown spill placeholder " + id);
+    }
+    String prefix = line.substring(0, start);
+    String indent = prefix.trim().isEmpty() ? prefix : "";
+    if(!indent.equals(prefix)) {
+      writer.write(prefix);
+      writer.newLine();
+    }
+    try(BufferedReader reader =
+            Files.newBufferedReader(spill._file, StandardCharsets.UTF_8))
+    {
+      String spilled;
+      while((spilled = reader.readLine()) != null) {
+        if(!spilled.trim().isEmpty()) {
+          writer.write(indent);
+          writer.write(spilled);
+          writer.newLine();
+        }
+      }
+    }
+    String suffix = line.substring(end + 3);
+    if(!suffix.trim().isEmpty()) {
+      spliceLine(indent + suffix.trim(), writer);
+    }
+  }
+
+  /**
+   * Read the root element of a spill file.
+   *
+   * @param file Spill file.
+   * @return Root element.
+   * @throws IOException If the file cannot be read or parsed.
+   */
+  private static Element read(Path file) throws IOException {
+    try {
+      DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+      Document doc = factory.newDocumentBuilder().parse(file.toFile());
+      removeEmptyTextNodes(doc.getDocumentElement());
+      return doc.getDocumentElement();
+    } catch(Exception e) {
+      throw new IOException("Cannot read spill file " + file, e);
+    }
+  }
+
+  /**
+   * Remove the indentation text nodes added when the spill file was written.
+   *
+   * @param node Root of the subtree to clean.
+   */
+  private static void removeEmptyTextNodes(Node node) {
+    Node child = node.getFirstChild();
+    while(child != null) {
+      Node next = child.getNextSibling();
+      if(child.getNodeType() == Node.TEXT_NODE
+          && child.getTextContent().trim().isEmpty()
+          && node.getChildNodes().getLength() > 1)
+      {
+        node.removeChild(child);
+      } else if(child.getNodeType() == Node.ELEMENT_NODE) {
+        removeEmptyTextNodes(child);
+      }
+      child = next;
+    }
+  }
+
+  /**
+   * Create an XML transformer with the output options used for XcodeML files.
+   *
+   * @param indent Number of spaces used to indent.
+   * @return New transformer.
+   * @throws TransformerException If the transformer cannot be created.
+   */
+  static Transformer createTransformer(int indent)
+      throws TransformerException
+  {
+    TransformerFactory factory = TransformerFactory.newInstance();
+    factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+    factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_STYLESHEET, "");
+    Transformer transformer = factory.newTransformer();
+    transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+    transformer.setOutputProperty(
+        "{http://xml.apache.org/xslt}indent-amount", Integer.toString(indent));
+    return transformer;
+  }
+
+  /**
+   * Spilled subtree: its placeholder in the document and its spill file.
+   */
+  private static final class Spill {
+
+    private final Comment _placeholder;
+    private final Path _file;
+
+    Spill(Comment placeholder, Path file) {
+      _placeholder = placeholder;
+      _file = file;
+    }
+  }
+}
@@ -15,16 +15,18 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
-import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -40,6 +42,7 @@ public class XcodeML extends Xnode {
 
   private final XtypeTable _typeTable;
   private Document _xcodemlDoc;
+  private SpillStore _spillStore = null;
 
   /**
    * Default ctor used for unvalid XcodeML.
@@ -62,7 +65,7 @@ public class XcodeML extends Xnode {
   }
 
   /**
-   * Read XML from stream.
+   * Read XML from stream. Binary XcodeML is detected and decoded.
    *
    * @param input Xml file path.
    * @return Document if the XML stream could be read. Null otherwise.
@@ -72,9 +75,17 @@ public class XcodeML extends Xnode {
       if(input == null) {
         return null;
       }
+      InputStream stream = input.markSupported()
+          ? input : new BufferedInputStream(input);
+      stream.mark(BinaryXcodeML.MAGIC_LENGTH);
+      boolean binary = BinaryXcodeML.isBinary(stream);
+      stream.reset();
+      if(binary) {
+        return BinaryXcodeML.read(stream);
+      }
       DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
       DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-      Document doc = dBuilder.parse(input);
+      Document doc = dBuilder.parse(stream);
       doc.getDocumentElement().normalize();
       return doc;
     } catch(Exception ignored) {
@@ -241,34 +252,50 @@ public class XcodeML extends Xnode {
   }
 
   /**
-   * Import a type description from one XcodeML unit to the current one. If the
-   * type id is not present in the source XcodeML unit, nothing is done.
+   * Import a type description from one XcodeML unit to the current one. The
+   * type and the types it references keep their hash unless the current unit
+   * already has a different type under the same hash. Such a type is imported
+   * under a new hash and the references of the imported types are rewritten.
+   * The caller must rewrite its own references with the returned hash.
    *
    * @param src    Source XcodeML unit.
    * @param typeId Type id to be imported.
+   * @return Hash of the type in the current unit. The given type id if it is
+   * not present in the source XcodeML unit.
    */
-  public void importType(XcodeML src, String typeId) {
-    if(typeId == null || getTypeTable().hasType(typeId)) {
-      return;
+  public String importType(XcodeML src, String typeId) {
+    if(typeId == null) {
+      return null;
     }
     Xnode type = src.getTypeTable().get(typeId);
     if(type == null) {
-      return;
+      return typeId;
     }
 
     Xnode importedType = importNode(type);
-    getTypeTable().add(importedType);
     if(importedType.hasAttribute(Xattr.REF)
         && !FortranType.isBuiltInType(importedType.getAttribute(Xattr.REF)))
     {
-      importType(src, importedType.getAttribute(Xattr.REF));
+      importedType.setAttribute(Xattr.REF,
+          importType(src, importedType.getAttribute(Xattr.REF)));
     }
 
     // Handle possible type ref in indexRange element
     List<Xnode> vars = importedType.matchAll(Xcode.VAR);
     for(Xnode var : vars) {
-      importType(src, var.getType());
+      var.setType(importType(src, var.getType()));
     }
+
+    Xnode existing = getTypeTable().get(typeId);
+    if(existing != null) {
+      if(existing.element().isEqualNode(importedType.element())) {
+        return typeId;
+      }
+      importedType.setType(getTypeTable().generateHash(
+          FortranType.fromHash(typeId)));
+    }
+    getTypeTable().addDistinct(importedType);
+    return importedType.getType();
   }
 
   /**
@@ -292,20 +319,27 @@ public class XcodeML extends Xnode {
       throws IllegalTransformationException
   {
     try {
+      if(getSpilledCount() > 0 && outputFile == null) {
+        restoreSpilled();
+      }
       cleanEmptyTextNodes(this.getDocument());
-      TransformerFactory factory = TransformerFactory.newInstance();
-      factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
-      factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_STYLESHEET, "");
-      Transformer transformer = factory.newTransformer();
-      transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-      transformer.setOutputProperty(
-          "{http://xml.apache.org/xslt}indent-amount",
-          Integer.toString(indent));
+      Transformer transformer = SpillStore.createTransformer(indent);
       DOMSource source = new DOMSource(this.getDocument());
       if(outputFile == null) {
         // Output to console
         StreamResult console = new StreamResult(System.out);
         transformer.transform(source, console);
+      } else if(getSpilledCount() > 0) {
+        // Output to file with the spilled subtrees spliced back
+        Path output = Paths.get(outputFile);
+        Path tmp = Files.createTempFile(output.toAbsolutePath().getParent(),
+            ".claw-", ".xml");
+        try {
+          transformer.transform(source, new StreamResult(tmp.toFile()));
+          _spillStore.splice(tmp, output);
+        } finally {
+          Files.deleteIfExists(tmp);
+        }
       } else {
         // Output to file
         StreamResult console = new StreamResult(new File(outputFile));
@@ -317,6 +351,69 @@ public class XcodeML extends Xnode {
     }
   }
 
+  /**
+   * Write the XcodeML in the binary format. Spilled subtrees are restored
+   * before writing.
+   *
+   * @param outputFile Path of the output file or null to output on std out.
+   * @throws IllegalTransformationException If the file cannot be written.
+   * @see BinaryXcodeML
+   */
+  public void writeBinary(String outputFile)
+      throws IllegalTransformationException
+  {
+    try {
+      restoreSpilled();
+      if(outputFile == null) {
+        BinaryXcodeML.write(getDocument(), System.out);
+      } else {
+        BinaryXcodeML.write(getDocument(), Paths.get(outputFile));
+      }
+    } catch(IOException ignored) {
+      throw new IllegalTransformationException("Cannot output file: " +
+          outputFile, 0);
+    }
+  }
+
+  /**
+   * Serialize a subtree to a spill file and detach it from the document to
+   * release its memory. The subtree is spliced back when the document is
+   * written to a file or restored by restoreSpilled.
+   *
+   * @param node      Root of the subtree to spill.
+   * @param directory Directory of the spill files.
+   * @param indent    Number of spaces used for the indentation.
+   * @throws IOException If the spill file cannot be written.
+   */
+  public void spill(Xnode node, Path directory, int indent)
+      throws IOException
+  {
+    if(_spillStore == null) {
+      _spillStore = new SpillStore(directory, indent);
+    }
+    _spillStore.spill(node);
+  }
+
+  /**
+   * Get the number of subtrees currently spilled.
+   *
+   * @return Number of spilled subtrees.
+   */
+  public int getSpilledCount() {
+    return _spillStore == null ? 0 : _spillStore.size();
+  }
+
+  /**
+   * Restore all the spilled subtrees in the document.
+   *
+   * @throws IOException If a spill file cannot be read.
+   */
+  public void restoreSpilled() throws IOException {
+    if(_spillStore != null) {
+      _spillStore.restore();
+    }
+  }
+
   /**
    * Removes text nodes that only contains whitespace. The conditions for
    * removing text nodes, besides only containing whitespace, are: If the
@@ -1041,6 +1138,29 @@ public class XcodeML extends Xnode {
     return pragmas;
   }
 
+  /**
+   * Create a new FmoduleDefinition node with empty symbols and declarations.
+   *
+   * <pre>
+   * {@code
+   * <FmoduleDefinition name="">
+   * <symbols></symbols>
+   * <declarations></declarations>
+   * </FmoduleDefinition>
+   * }
+   * </pre>
+   *
+   * @param name Module name.
+   * @return The newly created node detached in the current XcodeML unit.
+   */
+  public FmoduleDefinition createModuleDefinition(String name) {
+    Xnode moduleDef = createNode(Xcode.F_MODULE_DEFINITION)
+        .setAttribute(Xattr.NAME, name);
+    moduleDef.append(createNode(Xcode.SYMBOLS));
+    moduleDef.append(createNode(Xcode.DECLARATIONS));
+    return new FmoduleDefinition(moduleDef);
+  }
+
   /**
    * Create a FuseDecl node with the module name.
    *
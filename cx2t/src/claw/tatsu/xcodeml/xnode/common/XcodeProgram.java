@@ -4,6 +4,7 @@
  */
 package claw.tatsu.xcodeml.xnode.common;
 
+import claw.tatsu.analysis.topology.CallGraph;
 import claw.tatsu.xcodeml.error.XanalysisError;
 import claw.tatsu.xcodeml.xnode.Xname;
 import claw.tatsu.xcodeml.xnode.XnodeUtil;
@@ -38,6 +39,7 @@ public class XcodeProgram extends XcodeML {
   // XcodeProgram inner elements
   private XsymbolTable _globalSymbolsTable = null;
   private XglobalDeclTable _globalDeclarationsTable = null;
+  private CallGraph _callGraph = null;
 
   /**
    * Default ctor used just to carry errors.
@@ -271,6 +273,19 @@ public class XcodeProgram extends XcodeML {
     return _globalDeclarationsTable;
   }
 
+  /**
+   * Get the call graph of the XcodeML program. The call graph is built on
+   * first access.
+   *
+   * @return The call graph.
+   */
+  public CallGraph getCallGraph() {
+    if(_callGraph == null) {
+      _callGraph = CallGraph.build(this);
+    }
+    return _callGraph;
+  }
+
   /**
    * Check whether the XcodeML input file match the requirements.
    *
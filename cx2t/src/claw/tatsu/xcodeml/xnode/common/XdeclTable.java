@@ -131,6 +131,18 @@ public class XdeclTable extends Xnode {
     }
   }
 
+  /**
+   * Remove a declaration from the table.
+   *
+   * @param key The name of the declaration to be removed.
+   */
+  public void remove(String key) {
+    Xnode decl = _table.remove(key);
+    if(decl != null) {
+      decl.delete();
+    }
+  }
+
   /**
    * Get a specific declaration based on its name.
    *
@@ -114,6 +114,17 @@ public class XglobalDeclTable extends Xnode {
     return null;
   }
 
+  /**
+   * Add a module definition at the beginning of the table so it precedes the
+   * program units using it.
+   *
+   * @param moduleDef Module definition to be added.
+   */
+  public void addFirst(FmoduleDefinition moduleDef) {
+    insert(moduleDef);
+    _table.put(moduleDef.getName(), moduleDef);
+  }
+
   /**
    * Check if there is a module definition for the given name.
    *
@@ -89,6 +89,18 @@ public class XsymbolTable extends Xnode {
     return null;
   }
 
+  /**
+   * Remove an Xid object from the symbols table.
+   *
+   * @param key Name of the Xid to be removed.
+   */
+  public void remove(String key) {
+    Xid id = _table.remove(key);
+    if(id != null) {
+      id.delete();
+    }
+  }
+
   /**
    * Check if an id is already present in the symbols table.
    *
@@ -9,10 +9,19 @@ import claw.tatsu.xcodeml.xnode.fortran.FfunctionType;
 import claw.tatsu.xcodeml.xnode.fortran.FortranType;
 import claw.tatsu.xcodeml.xnode.fortran.FstructType;
 
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.CRC32;
 
 /**
  * The XtypeTable represents the typeTable (3.1) element in XcodeML intermediate
@@ -24,11 +33,30 @@ import java.util.Map;
  * - FfunctionType (FfunctionType)
  * - FstructType (FstructType)
  *
+ * FbasicType elements are hash-consed: a basic type added to the table that is
+ * structurally identical to an existing one (same ref, kind, intent, attributes
+ * and dimensions) is not inserted and takes the type hash of the existing one.
+ *
+ * New type hashes are numbered by a counter per type prefix, starting at a
+ * seed derived from the hashes read from the table and skipping the hashes
+ * present in the table. The generated hashes are deterministic, never
+ * collide with the types of the table and are unlikely to collide with the
+ * ones generated for another file.
+ *
  * @author clementval
  */
 public class XtypeTable extends Xnode {
 
+  // Bits of the seed, the seeded hash numbers keep 12 hexadecimal digits
+  private static final int SEED_BITS = 24;
+
   private final Map<String, Xnode> _table;
+  // Structural signature of the FbasicType elements that can be shared
+  private final Map<String, String> _basicTypes;
+  private int _mergedTypes;
+  // Last generated hash number per type prefix
+  private final Map<FortranType, Long> _hashCounters;
+  private long _hashSeed;
 
   /**
    * Element standard ctor. Pass the base element to the base class and read
@@ -39,6 +67,9 @@ public class XtypeTable extends Xnode {
   public XtypeTable(Xnode node) {
     super(node == null ? null : node.element());
     _table = new LinkedHashMap<>();
+    _basicTypes = new HashMap<>();
+    _mergedTypes = 0;
+    _hashCounters = new EnumMap<>(FortranType.class);
     readTable();
   }
 
@@ -46,12 +77,15 @@ public class XtypeTable extends Xnode {
    * Read the type table.
    */
   private void readTable() {
+    CRC32 seed = new CRC32();
     List<Xnode> elements = children();
     for(Xnode n : elements) {
+      seed.update(n.getType().getBytes(StandardCharsets.UTF_8));
       switch(n.opcode()) {
         case F_BASIC_TYPE:
           FbasicType bt = new FbasicType(n);
           _table.put(bt.getType(), bt);
+          _basicTypes.putIfAbsent(getSignature(bt), bt.getType());
           break;
         case F_FUNCTION_TYPE:
           FfunctionType ft = new FfunctionType(n);
@@ -63,6 +97,7 @@ public class XtypeTable extends Xnode {
           break;
       }
     }
+    _hashSeed = (seed.getValue() & ((1L << SEED_BITS) - 1)) << SEED_BITS;
   }
 
   /**
@@ -151,18 +186,86 @@ public class XtypeTable extends Xnode {
   }
 
   /**
-   * Add a new element in the type table.
+   * Add a new element in the type table. If the new element is a FbasicType
+   * structurally identical to an existing one, it is not inserted and its type
+   * hash is replaced by the hash of the existing one. The type must therefore
+   * be complete when added and must not be modified afterwards. Use
+   * addDistinct if the type hash must be preserved.
+   *
+   * @param type The new type to be added.
+   * @return Type hash under which the type is available in the table.
+   */
+  public String add(Xnode type) {
+    if(type.getType().isEmpty()) {
+      return "";
+    }
+    if(!Xnode.isOfCode(type, Xcode.F_BASIC_TYPE)) {
+      addDistinct(type);
+      return type.getType();
+    }
+    String signature = getSignature(type);
+    String existing = _basicTypes.get(signature);
+    if(existing != null && !existing.equals(type.getType())) {
+      type.setType(existing);
+      ++_mergedTypes;
+      return existing;
+    }
+    addDistinct(type);
+    _basicTypes.putIfAbsent(signature, type.getType());
+    return type.getType();
+  }
+
+  /**
+   * Add a new element in the type table with its own type hash even if a
+   * structurally identical type exists. The element is not shared with
+   * the types added later.
    *
    * @param type The new type to be added.
    */
-  public void add(Xnode type) {
+  public void addDistinct(Xnode type) {
     if(!type.getType().isEmpty()) {
       // TODO should be cloned?
       _baseElement.appendChild(type.cloneRawNode());
-      _table.put(type.getType(), type);
+      _table.put(type.getType(), asTypedNode(type));
     }
   }
 
+  /**
+   * Get the type element as an instance of the class of its kind of type so
+   * it can be retrieved as such from the table.
+   *
+   * @param type Type element.
+   * @return The given node if it is already typed or not a type element. New
+   * typed node on the same element otherwise.
+   */
+  private static Xnode asTypedNode(Xnode type) {
+    if(type instanceof FbasicType || type instanceof FfunctionType
+        || type instanceof FstructType)
+    {
+      return type;
+    }
+    switch(type.opcode()) {
+      case F_BASIC_TYPE:
+        return new FbasicType(type);
+      case F_FUNCTION_TYPE:
+        return new FfunctionType(type);
+      case F_STRUCT_TYPE:
+        return new FstructType(type);
+      default:
+        return type;
+    }
+  }
+
+  /**
+   * Get the number of FbasicType that were not inserted because a structurally
+   * identical type was already in the table.
+   *
+   * @return Number of merged types.
+   */
+  public int getMergedTypes() {
+    return _mergedTypes;
+  }
+
   /**
    * Get the FbasicType associated with the node if any.
    *
@@ -256,7 +359,8 @@ public class XtypeTable extends Xnode {
   }
 
   /**
-   * Generate a unique hash in the current type table.
+   * Generate a unique hash in the current type table. Hashes are numbered
+   * after the seed of the table and after the hashes previously generated.
    *
    * @param type Type to generate the hash.
    * @return New unique hash.
@@ -265,10 +369,12 @@ public class XtypeTable extends Xnode {
     if(type == null) {
       return "";
     }
+    long number = _hashCounters.getOrDefault(type, _hashSeed);
     String hash;
     do {
-      hash = type.generateHash();
-    } while(hasType(hash));
+      hash = type.generateHash(++number);
+    } while(_table.containsKey(hash));
+    _hashCounters.put(type, number);
     return hash;
   }
 
@@ -281,6 +387,63 @@ public class XtypeTable extends Xnode {
     return _table.values();
   }
 
+  /**
+   * Compute the structural signature of a type. The signature covers the
+   * attributes except the type hash and the complete subtree of the type.
+   *
+   * @param type Type node.
+   * @return Signature of the type.
+   */
+  private static String getSignature(Xnode type) {
+    StringBuilder signature = new StringBuilder();
+    appendSignature(type.element(), true, signature);
+    return signature.toString();
+  }
+
+  /**
+   * Append the signature of a DOM node and its children.
+   *
+   * @param node      DOM node.
+   * @param root      True if the node is the type itself.
+   * @param signature Signature to be completed.
+   */
+  private static void appendSignature(Node node, boolean root,
+                                      StringBuilder signature)
+  {
+    if(node.getNodeType() == Node.TEXT_NODE) {
+      String text = node.getNodeValue().trim();
+      if(!text.isEmpty()) {
+        signature.append(text.length()).append(':').append(text);
+      }
+      return;
+    }
+    if(node.getNodeType() != Node.ELEMENT_NODE) {
+      return;
+    }
+    signature.append('<').append(node.getNodeName());
+    NamedNodeMap attributes = node.getAttributes();
+    List<String> names = new ArrayList<>();
+    for(int i = 0; i < attributes.getLength(); ++i) {
+      String name = attributes.item(i).getNodeName();
+      if(!root || !name.equals(Xattr.TYPE.toString())) {
+        names.add(name);
+      }
+    }
+    Collections.sort(names);
+    for(String name : names) {
+      String value = attributes.getNamedItem(name).getNodeValue();
+      signature.append(' ').append(name).append('=').append(value.length())
+          .append(':').append(value);
+    }
+    signature.append('>');
+    for(Node child = node.getFirstChild(); child != null;
+        child = child.getNextSibling())
+    {
+      appendSignature(child, false, signature);
+    }
+    signature.append("</>");
+  }
+
   @Override
   public XtypeTable cloneNode() {
     return new XtypeTable(super.cloneNode());
@@ -6,8 +6,6 @@ package claw.tatsu.xcodeml.xnode.fortran;
 
 import claw.tatsu.xcodeml.xnode.Xname;
 
-import java.util.Random;
-
 /**
  * Enum representing the type coming from OMNI Compiler.
  *
@@ -27,10 +25,9 @@ public enum FortranType {
   VOID('V', Xname.TYPE_F_VOID),
   NONE('N', "");
 
-  // Java 1.8 should use SecureRandom
-  private final Random rand = new Random();
-
   private static final int HASH_LENGTH = 12;
+  // Hex digits of the greatest hash number that fits in a long
+  private static final int MAX_HASH_DIGITS = 15;
   private final char _prefix;
   private final String _irValue;
 
@@ -92,16 +89,60 @@ public enum FortranType {
   }
 
   /**
-   * Get a new unique hash with the current FortranType prefix.
+   * Get the type of a hash from its prefix.
+   *
+   * @param hash Hash made of a type prefix followed by hexadecimal digits.
+   * @return Corresponding enum value. NONE if the hash is not well formed.
+   */
+  public static FortranType fromHash(String hash) {
+    for(FortranType type : values()) {
+      if(type.getHashNumber(hash) >= 0) {
+        return type;
+      }
+    }
+    return NONE;
+  }
+
+  /**
+   * Get the hash with the current FortranType prefix and the given number.
+   * The number is formatted as OMNI Compiler does: 12 hexadecimal digits at
+   * least. Use XtypeTable.generateHash to generate a new hash for a type
+   * table.
    *
-   * @return The new unique hash.
+   * @param number Number of the hash. Must be positive.
+   * @return The hash.
    */
-  public String generateHash() {
-    StringBuilder sb = new StringBuilder();
-    while(sb.length() < HASH_LENGTH) {
-      sb.append(Integer.toHexString(this.rand.nextInt()));
+  public String generateHash(long number) {
+    String digits = Long.toHexString(number);
+    StringBuilder sb = new StringBuilder(HASH_LENGTH + 1).append(_prefix);
+    for(int i = digits.length(); i < HASH_LENGTH; ++i) {
+      sb.append('0');
+    }
+    return sb.append(digits).toString();
+  }
+
+  /**
+   * Get the number of a hash of the current type.
+   *
+   * @param hash Hash to be read.
+   * @return Number of the hash. -1 if the hash is not of the current type or
+   * is not made of the type prefix followed by hexadecimal digits.
+   */
+  public long getHashNumber(String hash) {
+    if(hash == null || hash.length() < 2 || hash.charAt(0) != _prefix
+        || hash.length() > MAX_HASH_DIGITS + 1)
+    {
+      return -1;
+    }
+    long number = 0;
+    for(int i = 1; i < hash.length(); ++i) {
+      int digit = Character.digit(hash.charAt(i), 16);
+      if(digit < 0) {
+        return -1;
+      }
+      number = (number << 4) | digit;
     }
-    return _prefix + sb.toString().substring(0, HASH_LENGTH);
+    return number;
   }
 
   /**
@@ -16,6 +16,7 @@ public enum ClawDirective {
   EXPAND,
   IGNORE,
   IF_EXTRACT,
+  INLINE,
   KCACHE,
   LOOP_FUSION,
   LOOP_INTERCHANGE,
@@ -199,6 +199,10 @@ directive[ClawPragma l]
      IF_EXTRACT EOF
      { $l.setDirective(ClawDirective.IF_EXTRACT); }
 
+   // inline directive
+   | INLINE (target_clause[$l])? EOF
+     { $l.setDirective(ClawDirective.INLINE); }
+
    | NODEP
      { $l.setDirective(ClawDirective.NO_DEP); }
 
@@ -658,6 +662,7 @@ END              : 'end';
 EXPAND           : 'expand';
 IF_EXTRACT       : 'if-extract';
 IGNORE           : 'ignore';
+INLINE           : 'inline';
 KCACHE           : 'kcache';
 LOOP_EXTRACT     : 'loop-extract';
 LOOP_FUSION      : 'loop-fusion';
@@ -5,7 +5,10 @@
 package claw.wani.report;
 
 import claw.ClawVersion;
+import claw.shenron.analysis.AnalysisManager;
 import claw.shenron.transformation.TransformationGroup;
+import claw.tatsu.analysis.cost.KernelCost;
+import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
 import claw.wani.x2t.configuration.Configuration;
 import claw.wani.x2t.translator.ClawTranslator;
 import claw.wani.x2t.translator.ClawTranslatorDriver;
@@ -14,6 +17,7 @@ import java.io.FileWriter;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -28,6 +32,7 @@ import java.util.Map;
 public class ClawTransformationReport {
 
   private static final int MAX_COL = 80;
+  private static final int DEFAULT_MACHINE_BALANCE = 8;
   private FileWriter _report;
 
   /**
@@ -53,7 +58,9 @@ public class ClawTransformationReport {
     printHeader("CLAW Transformation Report");
     printMainInfo(translator, args);
     printTransformationOrderInfo(translator.getTranslator());
-    printTransformationInfo();
+    printTransformationInfo(translator.getTranslator());
+    printAnalysisCacheInfo(translator.getTranslator());
+    printKernelCostInfo(translator.getTranslationUnit());
     _report.flush();
   }
 
@@ -103,6 +110,8 @@ public class ClawTransformationReport {
         Configuration.get().getCurrentTarget().toString()});
     infos.add(new String[]{"Directive",
         Configuration.get().getCurrentDirective().toString()});
+    infos.add(new String[]{"Merged types", String.valueOf(
+        translator.getTranslationUnit().getTypeTable().getMergedTypes())});
     infos.add(new String[]{"Driver command", ""}); // TODO
     infos.add(new String[]{"Translator command", String.join(" ", args)});
 
@@ -145,9 +154,90 @@ public class ClawTransformationReport {
     }
   }
 
-  private void printTransformationInfo() throws Exception {
+  /**
+   * Print the information reported by the transformations.
+   *
+   * @param translator Current translator used during the transformation.
+   * @throws Exception If file cannot be created or cannot be written.
+   */
+  private void printTransformationInfo(ClawTranslator translator)
+      throws Exception
+  {
     printTitle("Transformation");
-    // TODO
+    for(Map.Entry<String, List<String>> entry :
+        translator.getReportInfo().entrySet())
+    {
+      printLine(entry.getKey());
+      for(String info : entry.getValue()) {
+        printLine("  " + info);
+      }
+      printLine("");
+    }
+  }
+
+  /**
+   * Print the number of cache hits and misses of the analyses registered in
+   * the analysis manager.
+   *
+   * @param translator Current translator used during the transformation.
+   * @throws Exception If file cannot be created or cannot be written.
+   */
+  private void printAnalysisCacheInfo(ClawTranslator translator)
+      throws Exception
+  {
+    printTitle("Analysis cache");
+
+    AnalysisManager manager = translator.getAnalysisManager();
+    String format = "%-40s %-10s %-10s";
+    printLine(String.format(format, "Analysis", "Hits", "Misses"));
+    printLine(String.format(format, "--------", "----", "------"));
+    for(Class<?> analysis : manager.getAnalyses()) {
+      printLine(String.format(format, analysis.getSimpleName(),
+          manager.getHits(analysis), manager.getMisses(analysis)));
+    }
+  }
+
+  /**
+   * Print the static cost model of the kernels of the translation unit. Values
+   * are given per iteration. Kernels with a known number of iterations come
+   * first, sorted by decreasing estimated cost of all their iterations. The
+   * other ones follow, sorted by decreasing estimated cost of an iteration.
+   *
+   * @param xcodeml Current translation unit.
+   * @throws Exception If file cannot be created or cannot be written.
+   */
+  private void printKernelCostInfo(XcodeProgram xcodeml) throws Exception {
+    printTitle("Kernel cost model");
+
+    int machineBalance = Configuration.get().getIntParameter(
+        Configuration.REPORT_MACHINE_BALANCE);
+    if(machineBalance <= 0) {
+      machineBalance = DEFAULT_MACHINE_BALANCE;
+    }
+    final double balance = machineBalance;
+    List<KernelCost> costs = KernelCost.analyze(xcodeml,
+        Configuration.get().getModelConfig().getTripCounts());
+    costs.sort(Comparator.comparing((KernelCost c) -> c.getIterations() == 0)
+        .thenComparing(Comparator.comparingDouble((KernelCost c) ->
+            c.getIterations() > 0 ? c.getTotalCost(balance)
+                : c.getCost(balance)).reversed()));
+
+    printLine(String.format("Per iteration, machine balance: %d flop/B",
+        machineBalance));
+    printLine("Sorted by the cost of all iterations when known");
+    printLine("");
+    String format = "%-24s %5s %10s %7s %7s %6s %6s %-7s";
+    printLine(String.format(format, "Kernel", "Line", "Iterations",
+        "Load B", "Store B", "Flop", "AI", "Bound"));
+    printLine(String.format(format, "------", "----", "----------",
+        "------", "-------", "----", "--", "-----"));
+    for(KernelCost cost : costs) {
+      printLine(String.format(format, cost.getName(), cost.getLineNo(),
+          cost.getIterations() > 0 ? String.valueOf(cost.getIterations()) : "?",
+          cost.getLoadedBytes(), cost.getStoredBytes(), cost.getFlops(),
+          String.format("%.2f", cost.getArithmeticIntensity()),
+          cost.isMemoryBound(balance) ? "memory" : "compute"));
+    }
   }
 
   /**
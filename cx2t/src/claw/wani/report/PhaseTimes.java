@@ -0,0 +1,84 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.wani.report;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Wall time of the phases of a translation (analysis, transformation, output
+ * and decompilation). Times are appended to a file, one line per phase with
+ * the input file, the phase name and the time in milliseconds separated by
+ * tabs, so the times of several translations can be gathered in the same file
+ * by the build-throughput tests.
+ *
+ * @author clementval
+ */
+public class PhaseTimes {
+
+  private final Map<String, Long> _times;
+  private String _current;
+  private long _start;
+
+  /**
+   * Constructs an empty set of phase times.
+   */
+  public PhaseTimes() {
+    _times = new LinkedHashMap<>();
+  }
+
+  /**
+   * Start timing a phase. The phase currently timed, if any, is stopped.
+   *
+   * @param phase Name of the phase.
+   */
+  public void start(String phase) {
+    stop();
+    _current = phase;
+    _start = System.nanoTime();
+  }
+
+  /**
+   * Stop timing the current phase. Time of a phase timed several times is
+   * accumulated.
+   */
+  public void stop() {
+    if(_current == null) {
+      return;
+    }
+    long elapsed = (System.nanoTime() - _start) / 1000000L;
+    _times.merge(_current, elapsed, Long::sum);
+    _current = null;
+  }
+
+  /**
+   * Get the time of the stopped phases.
+   *
+   * @return Map of phase name to time in milliseconds in phase order.
+   */
+  public Map<String, Long> getTimes() {
+    return Collections.unmodifiableMap(_times);
+  }
+
+  /**
+   * Stop the current phase and append the phase times to a file.
+   *
+   * @param path  Path of the file.
+   * @param input Name of the translated file. Null if read from stdin.
+   * @throws IOException If the file cannot be written.
+   */
+  public void write(String path, String input) throws IOException {
+    stop();
+    try(FileWriter writer = new FileWriter(path, true)) {
+      for(Map.Entry<String, Long> entry : _times.entrySet()) {
+        writer.write(String.format("%s\t%s\t%d%n",
+            input == null ? "-" : input, entry.getKey(), entry.getValue()));
+      }
+    }
+  }
+}
@@ -4,9 +4,15 @@
  */
 package claw.wani.transformation;
 
+import claw.shenron.analysis.*;
 import claw.shenron.transformation.Transformation;
 import claw.wani.language.ClawPragma;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
 /**
  * A Transformation is an object capable of analyzing a possible code
  * transformation to be applied and the steps to apply it to the intermediate
@@ -18,6 +24,16 @@ import claw.wani.language.ClawPragma;
 
 public abstract class ClawTransformation extends Transformation {
 
+  /**
+   * Analyses of the function definitions registered by the CLAW translator.
+   * Transformations that only modify their pragma preserve all of them.
+   */
+  public static final Set<Class<? extends Analysis<?>>> FUNCTION_ANALYSES =
+      Collections.unmodifiableSet(new HashSet<>(
+          Arrays.<Class<? extends Analysis<?>>>asList(AssignStatements.class,
+              InductionVariables.class, LocalArrays.class,
+              PresentVariables.class)));
+
   protected final ClawPragma _claw;
 
   /**
@@ -0,0 +1,185 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.wani.transformation.internal;
+
+import claw.shenron.transformation.Transformation;
+import claw.shenron.translator.Translator;
+import claw.tatsu.common.Message;
+import claw.tatsu.primitive.Function;
+import claw.tatsu.primitive.Loop;
+import claw.tatsu.xcodeml.exception.IllegalTransformationException;
+import claw.tatsu.xcodeml.xnode.common.Xcode;
+import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
+import claw.tatsu.xcodeml.xnode.fortran.FfunctionDefinition;
+import claw.tatsu.xcodeml.xnode.fortran.FfunctionType;
+import claw.wani.transformation.ClawTransformation;
+import claw.wani.x2t.configuration.Configuration;
+import claw.wani.x2t.configuration.ModelConfig;
+import claw.wani.x2t.translator.ClawTranslator;
+
+import java.util.*;
+
+/**
+ * Specialization of the loop bounds for the constant dimension sizes declared
+ * in the model configuration. This transformation is triggered for each
+ * translation unit when the sca_specialization parameter is enabled in the
+ * configuration. It is applied after the SCA transformations.
+ *
+ * Each subroutine with a do statement iterating over a model dimension and
+ * with dummy arguments named after specialized size variables is copied with
+ * these arguments replaced by their constant value. The original subroutine
+ * dispatches to the copy when the actual values match and keeps its generic
+ * code otherwise. The specialized subroutines are added to the transformation
+ * report.
+ *
+ * @author clementval
+ */
+public class LoopBoundSpecialization extends ClawTransformation {
+
+  private static final String DEBUG_PREFIX = "SPECIALIZATION:";
+  private static final String REPORT_SECTION = "sca-specialization";
+  private static final int MAX_NAME_LENGTH = 63;
+
+  /**
+   * Constructs a new loop bound specialization transformation triggered for a
+   * translation unit.
+   */
+  public LoopBoundSpecialization() {
+    super();
+  }
+
+  /**
+   * Specialization is only applied if enabled in the configuration and if
+   * constant sizes are declared in the model configuration.
+   *
+   * @param xcodeml    The XcodeML on which the transformations are applied.
+   * @param translator The translator used to applied the transformations.
+   * @return True if the specialization is enabled. False otherwise.
+   */
+  @Override
+  public boolean analyze(XcodeProgram xcodeml, Translator translator) {
+    return Configuration.get().getBooleanParameter(
+        Configuration.SCA_SPECIALIZATION)
+        && !Configuration.get().getModelConfig().getSpecializations().isEmpty();
+  }
+
+  /**
+   * @return Always false as a disabled specialization is not an error.
+   */
+  @Override
+  public boolean abortOnFailedAnalysis() {
+    return false;
+  }
+
+  /**
+   * @return Always false as independent transformation are applied one by one.
+   * @see Transformation#canBeTransformedWith(XcodeProgram, Transformation)
+   */
+  @Override
+  public boolean canBeTransformedWith(XcodeProgram xcodeml,
+                                      Transformation other)
+  {
+    // independent transformation
+    return false;
+  }
+
+  /**
+   * Specialize the eligible subroutines of the translation unit and report
+   * them.
+   *
+   * @param xcodeml        The XcodeML on which the transformations are applied.
+   * @param translator     The translator used to applied the transformations.
+   * @param transformation Not used in this transformation
+   */
+  @Override
+  public void transform(XcodeProgram xcodeml, Translator translator,
+                        Transformation transformation)
+  {
+    ClawTranslator ct = (ClawTranslator) translator;
+    ModelConfig model = Configuration.get().getModelConfig();
+    Map<String, Integer> sizes = model.getSpecializations();
+    Set<String> dimensions = model.getDimensionIdentifiers();
+    int specialized = 0;
+    for(FfunctionDefinition fctDef : xcodeml.getAllFctDef()) {
+      FfunctionType fctType = xcodeml.getTypeTable().getFunctionType(fctDef);
+      if(fctType == null || !iteratesOverDimension(fctDef, dimensions)) {
+        continue;
+      }
+      Map<String, Integer> values = new LinkedHashMap<>();
+      for(Map.Entry<String, Integer> size : sizes.entrySet()) {
+        if(fctType.hasParam(size.getKey())) {
+          values.put(size.getKey(), size.getValue());
+        }
+      }
+      if(values.isEmpty()) {
+        continue;
+      }
+      String name = getSpecializedName(fctDef.getName(), values);
+      try {
+        Function.specialize(xcodeml, fctDef, values, name);
+        ++specialized;
+        ct.addReportInfo(REPORT_SECTION, String.format("%s: specialized as " +
+            "%s (%s)", fctDef.getName(), name, formatValues(values)));
+      } catch(IllegalTransformationException itex) {
+        Message.debug(String.format("%s %s", DEBUG_PREFIX,
+            itex.getMessage()));
+        ct.addReportInfo(REPORT_SECTION, String.format("%s: not specialized " +
+            "(%s)", fctDef.getName(), itex.getMessage()));
+      }
+    }
+    if(specialized > 0) {
+      ct.addReportInfo(REPORT_SECTION, String.format("Total: %d " +
+          "subroutine(s) specialized", specialized));
+    }
+    transformed();
+  }
+
+  /**
+   * Check whether a function/subroutine has a do statement whose induction
+   * variable is a model dimension, as generated by the SCA transformation.
+   *
+   * @param fctDef     Function/subroutine definition.
+   * @param dimensions Lower case identifiers of the model dimensions.
+   * @return True if such a do statement is found.
+   */
+  private boolean iteratesOverDimension(FfunctionDefinition fctDef,
+                                        Set<String> dimensions)
+  {
+    return fctDef.body().matchAll(Xcode.F_DO_STATEMENT).stream()
+        .map(Loop::extractInductionVariable)
+        .anyMatch(v -> dimensions.contains(v.toLowerCase()));
+  }
+
+  /**
+   * Get the name of the specialized copy of a subroutine.
+   *
+   * @param name   Name of the subroutine.
+   * @param values Constant values of the dummy arguments.
+   * @return Subroutine name followed by the constant values. Truncated to the
+   * maximum length of a Fortran name.
+   */
+  private String getSpecializedName(String name,
+                                    Map<String, Integer> values)
+  {
+    StringBuilder specialized = new StringBuilder(name);
+    for(Map.Entry<String, Integer> value : values.entrySet()) {
+      specialized.append('_').append(value.getKey()).append(value.getValue());
+    }
+    return specialized.length() > MAX_NAME_LENGTH
+        ? specialized.substring(0, MAX_NAME_LENGTH) : specialized.toString();
+  }
+
+  /**
+   * Format the constant values for the report.
+   *
+   * @param values Constant values of the dummy arguments.
+   * @return Comma separated list of name=value.
+   */
+  private String formatValues(Map<String, Integer> values) {
+    List<String> formatted = new ArrayList<>();
+    values.forEach((k, v) -> formatted.add(k + "=" + v));
+    return String.join(", ", formatted);
+  }
+}
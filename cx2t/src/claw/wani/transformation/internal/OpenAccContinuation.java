@@ -4,6 +4,7 @@
  */
 package claw.wani.transformation.internal;
 
+import claw.shenron.analysis.Analysis;
 import claw.shenron.transformation.Transformation;
 import claw.shenron.translator.Translator;
 import claw.tatsu.common.CompilerDirective;
@@ -14,6 +15,8 @@ import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
 import claw.wani.language.ClawPragma;
 import claw.wani.transformation.ClawTransformation;
 
+import java.util.Set;
+
 /**
  * <pre>
  * OpenACC line continuation transformation. The XcodeML/F pragma statement
@@ -105,4 +108,9 @@ public class OpenAccContinuation extends ClawTransformation {
   public boolean abortOnFailedAnalysis() {
     return false;
   }
+
+  @Override
+  public Set<Class<? extends Analysis<?>>> getPreservedAnalyses() {
+    return FUNCTION_ANALYSES; // Only the pragma is modified
+  }
 }
@@ -0,0 +1,111 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.wani.transformation.internal;
+
+import claw.shenron.transformation.Transformation;
+import claw.shenron.translator.Translator;
+import claw.tatsu.common.Context;
+import claw.tatsu.common.Message;
+import claw.tatsu.common.Target;
+import claw.tatsu.directive.common.RegionFusion;
+import claw.tatsu.xcodeml.exception.IllegalTransformationException;
+import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
+import claw.tatsu.xcodeml.xnode.fortran.FfunctionDefinition;
+import claw.wani.transformation.ClawTransformation;
+import claw.wani.x2t.configuration.Configuration;
+import claw.wani.x2t.translator.ClawTranslator;
+
+/**
+ * Fusion of adjacent parallel regions. This transformation is triggered for
+ * each translation unit when the parallel_region_fusion parameter is enabled in
+ * the configuration. It is applied after the transformations generating
+ * parallel regions and fuses the adjacent ones proven compatible by
+ * {@link RegionFusion} in each function/subroutine. Each fusion saves a kernel
+ * launch and is added to the transformation report.
+ *
+ * @author clementval
+ */
+public class ParallelRegionFusion extends ClawTransformation {
+
+  private static final String DEBUG_PREFIX = "REGION-FUSION:";
+  private static final String REPORT_SECTION = "parallel-region-fusion";
+
+  /**
+   * Constructs a new parallel region fusion transformation triggered for a
+   * translation unit.
+   */
+  public ParallelRegionFusion() {
+    super();
+  }
+
+  /**
+   * Fusion is only applied if enabled in the configuration and if the target
+   * is an accelerator.
+   *
+   * @param xcodeml    The XcodeML on which the transformations are applied.
+   * @param translator The translator used to applied the transformations.
+   * @return True if the fusion is enabled. False otherwise.
+   */
+  @Override
+  public boolean analyze(XcodeProgram xcodeml, Translator translator) {
+    return Context.isTarget(Target.GPU) && Configuration.get()
+        .getBooleanParameter(Configuration.PARALLEL_REGION_FUSION);
+  }
+
+  /**
+   * @return Always false as a disabled fusion is not an error.
+   */
+  @Override
+  public boolean abortOnFailedAnalysis() {
+    return false;
+  }
+
+  /**
+   * @return Always false as independent transformation are applied one by one.
+   * @see Transformation#canBeTransformedWith(XcodeProgram, Transformation)
+   */
+  @Override
+  public boolean canBeTransformedWith(XcodeProgram xcodeml,
+                                      Transformation other)
+  {
+    // independent transformation
+    return false;
+  }
+
+  /**
+   * Fuse the adjacent parallel regions in every function/subroutine of the
+   * translation unit and report the fusions.
+   *
+   * @param xcodeml        The XcodeML on which the transformations are applied.
+   * @param translator     The translator used to applied the transformations.
+   * @param transformation Not used in this transformation
+   * @throws IllegalTransformationException If the fusion of loops fails.
+   */
+  @Override
+  public void transform(XcodeProgram xcodeml, Translator translator,
+                        Transformation transformation)
+      throws IllegalTransformationException
+  {
+    ClawTranslator ct = (ClawTranslator) translator;
+    int fused = 0;
+    for(FfunctionDefinition fctDef : xcodeml.getAllFctDef()) {
+      RegionFusion fusion = new RegionFusion(xcodeml);
+      if(fusion.fuse(fctDef.body()) == 0) {
+        continue;
+      }
+      fused += fusion.getFusedRegions().size();
+      ct.addReportInfo(REPORT_SECTION, String.format("%s: %d region(s) fused " +
+              "(%s)", fctDef.getName(), fusion.getFusedRegions().size(),
+          String.join(", ", fusion.getFusedRegions())));
+      Message.debug(String.format("%s %s: fused %s", DEBUG_PREFIX,
+          fctDef.getName(), fusion.getFusedRegions()));
+    }
+    if(fused > 0) {
+      ct.addReportInfo(REPORT_SECTION, String.format("Total: %d kernel " +
+          "launch(es) saved", fused));
+    }
+    transformed();
+  }
+}
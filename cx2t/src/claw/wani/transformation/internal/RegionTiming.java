@@ -0,0 +1,102 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.wani.transformation.internal;
+
+import claw.shenron.transformation.Transformation;
+import claw.shenron.translator.Translator;
+import claw.tatsu.common.Message;
+import claw.tatsu.directive.common.RegionInstrumentation;
+import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
+import claw.tatsu.xcodeml.xnode.fortran.FfunctionDefinition;
+import claw.wani.transformation.ClawTransformation;
+import claw.wani.x2t.configuration.Configuration;
+import claw.wani.x2t.translator.ClawTranslator;
+
+/**
+ * Timing instrumentation of the parallel regions. This transformation is
+ * triggered for each translation unit when the instrumentation parameter is
+ * enabled in the configuration (--instrument option of the translator). It is
+ * applied after all the transformations generating or fusing parallel regions
+ * so the final regions are timed. The instrumented regions are listed in the
+ * transformation report with their identifier.
+ *
+ * @author clementval
+ */
+public class RegionTiming extends ClawTransformation {
+
+  private static final String DEBUG_PREFIX = "INSTRUMENTATION:";
+  private static final String REPORT_SECTION = "instrumentation";
+
+  /**
+   * Constructs a new region timing transformation triggered for a translation
+   * unit.
+   */
+  public RegionTiming() {
+    super();
+  }
+
+  /**
+   * Instrumentation is only applied if enabled in the configuration.
+   *
+   * @param xcodeml    The XcodeML on which the transformations are applied.
+   * @param translator The translator used to applied the transformations.
+   * @return True if the instrumentation is enabled. False otherwise.
+   */
+  @Override
+  public boolean analyze(XcodeProgram xcodeml, Translator translator) {
+    return Configuration.get().getBooleanParameter(
+        Configuration.INSTRUMENTATION);
+  }
+
+  /**
+   * @return Always false as a disabled instrumentation is not an error.
+   */
+  @Override
+  public boolean abortOnFailedAnalysis() {
+    return false;
+  }
+
+  /**
+   * @return Always false as independent transformation are applied one by one.
+   * @see Transformation#canBeTransformedWith(XcodeProgram, Transformation)
+   */
+  @Override
+  public boolean canBeTransformedWith(XcodeProgram xcodeml,
+                                      Transformation other)
+  {
+    // independent transformation
+    return false;
+  }
+
+  /**
+   * Instrument the parallel regions of every function/subroutine of the
+   * translation unit and add the report call at the end of the main program.
+   *
+   * @param xcodeml        The XcodeML on which the transformations are applied.
+   * @param translator     The translator used to applied the transformations.
+   * @param transformation Not used in this transformation
+   */
+  @Override
+  public void transform(XcodeProgram xcodeml, Translator translator,
+                        Transformation transformation)
+  {
+    ClawTranslator ct = (ClawTranslator) translator;
+    RegionInstrumentation instrumentation =
+        new RegionInstrumentation(xcodeml);
+    for(FfunctionDefinition fctDef : xcodeml.getAllFctDef()) {
+      instrumentation.instrument(fctDef);
+      if(instrumentation.insertReport(fctDef)) {
+        ct.addReportInfo(REPORT_SECTION, String.format("%s: timing report " +
+            "printed at the end of the program", fctDef.getName()));
+      }
+    }
+    for(String region : instrumentation.getRegions()) {
+      ct.addReportInfo(REPORT_SECTION, region);
+    }
+    Message.debug(String.format("%s %d region(s) instrumented", DEBUG_PREFIX,
+        instrumentation.getRegions().size()));
+    transformed();
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.wani.transformation.internal;
+
+import claw.shenron.transformation.Transformation;
+import claw.shenron.translator.Translator;
+import claw.tatsu.common.Context;
+import claw.tatsu.common.Message;
+import claw.tatsu.common.Target;
+import claw.tatsu.directive.common.ScratchPool;
+import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
+import claw.wani.transformation.ClawTransformation;
+import claw.wani.x2t.configuration.Configuration;
+import claw.wani.x2t.translator.ClawTranslator;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Generation of the scratch pool module. This transformation is triggered for
+ * each translation unit when the sca_scratch_pool parameter is enabled in the
+ * configuration. It is applied after the SCA transformations that replaced
+ * promoted local arrays by slots of the {@link ScratchPool}. It assigns the
+ * slots, generates the module holding them and adds the pooled arrays to the
+ * transformation report.
+ *
+ * @author clementval
+ */
+public class ScratchPoolGeneration extends ClawTransformation {
+
+  private static final String DEBUG_PREFIX = "SCRATCH-POOL:";
+  private static final String REPORT_SECTION = "scratch-pool";
+
+  /**
+   * Constructs a new scratch pool generation transformation triggered for a
+   * translation unit.
+   */
+  public ScratchPoolGeneration() {
+    super();
+  }
+
+  /**
+   * Generation is only applied if enabled in the configuration, if the target
+   * is an accelerator and if arrays were added to the pool.
+   *
+   * @param xcodeml    The XcodeML on which the transformations are applied.
+   * @param translator The translator used to applied the transformations.
+   * @return True if a scratch pool must be generated. False otherwise.
+   */
+  @Override
+  public boolean analyze(XcodeProgram xcodeml, Translator translator) {
+    return Context.isTarget(Target.GPU)
+        && Configuration.get().getBooleanParameter(
+        Configuration.SCA_SCRATCH_POOL)
+        && ((ClawTranslator) translator).hasElement(xcodeml)
+        instanceof ScratchPool;
+  }
+
+  /**
+   * @return Always false as a translation unit without pooled arrays is not an
+   * error.
+   */
+  @Override
+  public boolean abortOnFailedAnalysis() {
+    return false;
+  }
+
+  /**
+   * @return Always false as independent transformation are applied one by one.
+   * @see Transformation#canBeTransformedWith(XcodeProgram, Transformation)
+   */
+  @Override
+  public boolean canBeTransformedWith(XcodeProgram xcodeml,
+                                      Transformation other)
+  {
+    // independent transformation
+    return false;
+  }
+
+  /**
+   * Generate the scratch pool module and report the pooled arrays.
+   *
+   * @param xcodeml        The XcodeML on which the transformations are applied.
+   * @param translator     The translator used to applied the transformations.
+   * @param transformation Not used in this transformation
+   */
+  @Override
+  public void transform(XcodeProgram xcodeml, Translator translator,
+                        Transformation transformation)
+  {
+    ClawTranslator ct = (ClawTranslator) translator;
+    ScratchPool pool = (ScratchPool) ct.hasElement(xcodeml);
+    int slots = pool.generate(xcodeml);
+    for(Map.Entry<String, List<String>> pooled :
+        pool.getPooledArrays().entrySet())
+    {
+      ct.addReportInfo(REPORT_SECTION, String.format("%s: %d array(s) " +
+              "pooled (%s)", pooled.getKey(), pooled.getValue().size(),
+          String.join(", ", pooled.getValue())));
+    }
+    if(slots > 0) {
+      ct.addReportInfo(REPORT_SECTION, String.format("Total: %d array(s) in " +
+              "%d slot(s) of module %s", pool.getNbRequests(), slots,
+          pool.getModuleName()));
+    }
+    Message.debug(String.format("%s %d slot(s) generated in %s",
+        DEBUG_PREFIX, slots, pool.getModuleName()));
+    transformed();
+  }
+}
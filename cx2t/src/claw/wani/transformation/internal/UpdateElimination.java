@@ -0,0 +1,216 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.wani.transformation.internal;
+
+import claw.shenron.transformation.Transformation;
+import claw.shenron.translator.Translator;
+import claw.tatsu.common.Context;
+import claw.tatsu.common.Message;
+import claw.tatsu.common.Target;
+import claw.tatsu.directive.common.DataCoherence;
+import claw.tatsu.xcodeml.xnode.Xname;
+import claw.tatsu.xcodeml.xnode.common.*;
+import claw.tatsu.xcodeml.xnode.fortran.FbasicType;
+import claw.tatsu.xcodeml.xnode.fortran.FfunctionDefinition;
+import claw.wani.transformation.ClawTransformation;
+import claw.wani.x2t.configuration.Configuration;
+import claw.wani.x2t.translator.ClawTranslator;
+
+import java.util.List;
+
+/**
+ * Elimination of redundant update directives. This transformation is
+ * triggered for each translation unit when the update_elimination parameter is
+ * enabled in the configuration. It is applied after the transformations
+ * generating update directives (expand, sca forward) and removes the updates
+ * proven redundant by the {@link DataCoherence} dataflow in each
+ * function/subroutine. The number of removed transfers and their size, when
+ * known statically, are added to the transformation report.
+ *
+ * @author clementval
+ */
+public class UpdateElimination extends ClawTransformation {
+
+  private static final String DEBUG_PREFIX = "UPDATE-ELIMINATION:";
+  private static final String REPORT_SECTION = "update-elimination";
+
+  /**
+   * Constructs a new update elimination transformation triggered for a
+   * translation unit.
+   */
+  public UpdateElimination() {
+    super();
+  }
+
+  /**
+   * Elimination is only applied if enabled in the configuration and if the
+   * target is an accelerator.
+   *
+   * @param xcodeml    The XcodeML on which the transformations are applied.
+   * @param translator The translator used to applied the transformations.
+   * @return True if the elimination is enabled. False otherwise.
+   */
+  @Override
+  public boolean analyze(XcodeProgram xcodeml, Translator translator) {
+    return Context.isTarget(Target.GPU) && Configuration.get()
+        .getBooleanParameter(Configuration.UPDATE_ELIMINATION);
+  }
+
+  /**
+   * @return Always false as a disabled elimination is not an error.
+   */
+  @Override
+  public boolean abortOnFailedAnalysis() {
+    return false;
+  }
+
+  /**
+   * @return Always false as independent transformation are applied one by one.
+   * @see Transformation#canBeTransformedWith(XcodeProgram, Transformation)
+   */
+  @Override
+  public boolean canBeTransformedWith(XcodeProgram xcodeml,
+                                      Transformation other)
+  {
+    // independent transformation
+    return false;
+  }
+
+  /**
+   * Remove the redundant updates in every function/subroutine of the
+   * translation unit and report the saved transfers.
+   *
+   * @param xcodeml        The XcodeML on which the transformations are applied.
+   * @param translator     The translator used to applied the transformations.
+   * @param transformation Not used in this transformation
+   */
+  @Override
+  public void transform(XcodeProgram xcodeml, Translator translator,
+                        Transformation transformation)
+  {
+    ClawTranslator ct = (ClawTranslator) translator;
+    int removed = 0;
+    long bytes = 0;
+    int unknown = 0;
+    for(FfunctionDefinition fctDef : xcodeml.getAllFctDef()) {
+      DataCoherence coherence = new DataCoherence(xcodeml);
+      if(coherence.optimize(fctDef.body()) == 0) {
+        continue;
+      }
+      List<String> vars = coherence.getRemovedTransfers();
+      for(String var : vars) {
+        long size = getStaticSize(xcodeml, fctDef, var);
+        if(size < 0) {
+          ++unknown;
+        } else {
+          bytes += size;
+        }
+      }
+      removed += vars.size();
+      ct.addReportInfo(REPORT_SECTION, String.format("%s: %d transfer(s) " +
+          "removed (%s)", fctDef.getName(), vars.size(), String.join(",", vars)));
+      Message.debug(String.format("%s %s: removed %s", DEBUG_PREFIX,
+          fctDef.getName(), vars));
+    }
+    if(removed > 0) {
+      ct.addReportInfo(REPORT_SECTION, String.format("Total: %d transfer(s) " +
+          "removed, %d bytes saved, %d transfer(s) of unknown size", removed,
+          bytes, unknown));
+    }
+    transformed();
+  }
+
+  /**
+   * Compute the size in bytes of a variable when it is statically known.
+   *
+   * @param xcodeml Current translation unit.
+   * @param fctDef  Function/subroutine in which the variable is used.
+   * @param var     Variable name as written in the update directive.
+   * @return Size in bytes. -1 if the size is not known at compile time.
+   */
+  private long getStaticSize(XcodeProgram xcodeml, FfunctionDefinition fctDef,
+                             String var)
+  {
+    Xid id = fctDef.findId(var);
+    if(id == null) {
+      return -1;
+    }
+    XtypeTable typeTable = xcodeml.getTypeTable();
+    long elements = 1;
+    String type = id.getType();
+    int kind = 0;
+    while(typeTable.isBasicType(type)) {
+      FbasicType bt = typeTable.getBasicType(type);
+      for(int i = 0; i < bt.getDimensions(); ++i) {
+        long extent = getExtent(bt.getDimensions(i));
+        if(extent < 0) {
+          return -1;
+        }
+        elements *= extent;
+      }
+      if(kind == 0 && bt.hasKind()) {
+        kind = getIntValue(bt.getKind().firstChild());
+        if(kind < 0) {
+          return -1;
+        }
+      }
+      type = bt.getRef();
+    }
+    if(kind == 0) {
+      kind = 4;
+    }
+    switch(type) {
+      case Xname.TYPE_F_REAL:
+      case Xname.TYPE_F_INT:
+      case Xname.TYPE_F_LOGICAL:
+        return elements * kind;
+      case Xname.TYPE_F_COMPLEX:
+        return elements * kind * 2;
+      default:
+        return -1;
+    }
+  }
+
+  /**
+   * Compute the extent of an array dimension with constant bounds.
+   *
+   * @param range indexRange or arrayIndex node of the dimension.
+   * @return Extent of the dimension. -1 if not constant.
+   */
+  private long getExtent(Xnode range) {
+    if(range.is(Xcode.ARRAY_INDEX)) {
+      return getIntValue(range.firstChild());
+    }
+    Xnode lower = range.matchDirectDescendant(Xcode.LOWER_BOUND);
+    Xnode upper = range.matchDirectDescendant(Xcode.UPPER_BOUND);
+    if(lower == null || upper == null) {
+      return -1;
+    }
+    int lowerValue = getIntValue(lower.firstChild());
+    int upperValue = getIntValue(upper.firstChild());
+    if(lowerValue < 0 || upperValue < 0) {
+      return -1;
+    }
+    return Math.max(0, upperValue - lowerValue + 1);
+  }
+
+  /**
+   * Get the value of an integer constant node.
+   *
+   * @param node Node to be read.
+   * @return Value of the constant. -1 if the node is not a positive integer
+   * constant.
+   */
+  private int getIntValue(Xnode node) {
+    if(!Xnode.isOfCode(node, Xcode.F_INT_CONSTANT)) {
+      return -1;
+    }
+    try {
+      return Integer.parseInt(node.value().trim());
+    } catch(NumberFormatException ignored) {
+      return -1;
+    }
+  }
+}
@@ -6,6 +6,8 @@ package claw.wani.transformation.ll.caching;
 
 import claw.shenron.transformation.Transformation;
 import claw.shenron.translator.Translator;
+import claw.tatsu.common.Context;
+import claw.tatsu.common.Target;
 import claw.tatsu.directive.common.Directive;
 import claw.tatsu.xcodeml.exception.IllegalTransformationException;
 import claw.tatsu.xcodeml.xnode.XnodeUtil;
@@ -16,6 +18,7 @@ import claw.tatsu.xcodeml.xnode.fortran.FortranType;
 import claw.wani.language.ClawPragma;
 import claw.wani.language.ClawClause;
 import claw.wani.transformation.ClawTransformation;
+import claw.wani.x2t.configuration.Configuration;
 import claw.wani.x2t.translator.ClawTranslator;
 
 import java.util.ArrayList;
@@ -26,6 +29,9 @@ import java.util.List;
  * transformation consists of placing an assignment in a scalar variable and
  * use this variable in a loop body before updating it.
  *
+ * On GPU target with the cache strategy, the accessed stencil window of each
+ * array is placed in the software-managed cache of the accelerator instead.
+ *
  * @author clementval
  */
 public class Kcaching extends ClawTransformation {
@@ -83,6 +89,11 @@ public class Kcaching extends ClawTransformation {
     // 1. Find the function/module declaration
     FfunctionDefinition fctDef = _claw.getPragma().findParentFunction();
 
+    if(useSoftwareManagedCache() && generateCacheDirective(xcodeml, fctDef)) {
+      removePragma();
+      return;
+    }
+
     for(String data : _claw.values(ClawClause.DATA)) {
       Xnode stmt = XnodeUtil.getFirstArrayAssign(_claw.getPragma(), data);
 
@@ -110,6 +121,146 @@ public class Kcaching extends ClawTransformation {
     removePragma();
   }
 
+  /**
+   * Check whether the software-managed cache strategy should be used.
+   *
+   * @return True if the cache strategy is set in the configuration and the
+   * target is GPU. False otherwise.
+   */
+  private boolean useSoftwareManagedCache() {
+    return Context.get().getTarget() == Target.GPU
+        && Configuration.KCACHE_STRATEGY_CACHE.equalsIgnoreCase(
+        Configuration.get().getParameter(Configuration.KCACHE_STRATEGY));
+  }
+
+  /**
+   * Generate a cache directive with the stencil window of each array of the
+   * data clause.
+   *
+   * @param xcodeml The XcodeML on which the transformations are applied.
+   * @param fctDef  Function/module definition in which the data are nested.
+   * @return True if the directive has been generated. False if the scalar
+   * caching must be applied instead.
+   * @throws IllegalTransformationException If an array is not found.
+   */
+  private boolean generateCacheDirective(XcodeProgram xcodeml,
+                                         FfunctionDefinition fctDef)
+      throws IllegalTransformationException
+  {
+    List<String> windows = new ArrayList<>();
+    for(String data : _claw.values(ClawClause.DATA)) {
+      // References matching the offsets must exist and are part of the window
+      checkOffsetAndGetArrayRefs(xcodeml, fctDef, data);
+      String window = computeCacheWindow(data,
+          XnodeUtil.getAllArrayReferences(_doStmt.body(), data));
+      if(window == null) {
+        xcodeml.addWarning("Stencil window of " + data + " cannot be " +
+            "computed. Scalar caching is applied.", _claw.getPragma().lineNo());
+        return false;
+      }
+      windows.add(window);
+    }
+    return Directive.generateCacheDirective(xcodeml, _doStmt, windows) != null;
+  }
+
+  /**
+   * Compute the array section covering all the given array references. Each
+   * subscript must be an integer constant or a variable with an optional
+   * integer offset. The variable must be the same for a given dimension in all
+   * references.
+   *
+   * @param data      Array identifier.
+   * @param arrayRefs Array references to be covered by the window.
+   * @return String representation of the array section. Null if the window
+   * cannot be computed.
+   */
+  static String computeCacheWindow(String data, List<Xnode> arrayRefs) {
+    List<String> bases = new ArrayList<>();
+    List<Integer> lower = new ArrayList<>();
+    List<Integer> upper = new ArrayList<>();
+    int rank = -1; // Set by the first reference
+    for(Xnode arrayRef : arrayRefs) {
+      int dim = 0;
+      for(Xnode index : arrayRef.children()) {
+        if(index.is(Xcode.VAR_REF)) {
+          continue;
+        }
+        if(!index.is(Xcode.ARRAY_INDEX)) {
+          return null;
+        }
+        Xnode subscript = index.firstChild();
+        String base;
+        int offset;
+        if(Xnode.isOfCode(subscript, Xcode.F_INT_CONSTANT)) {
+          base = "";
+          offset = Integer.parseInt(subscript.value());
+        } else if(Xnode.isOfCode(subscript, Xcode.VAR)) {
+          base = subscript.value();
+          offset = 0;
+        } else if((Xnode.isOfCode(subscript, Xcode.PLUS_EXPR)
+            || Xnode.isOfCode(subscript, Xcode.MINUS_EXPR))
+            && Xnode.isOfCode(subscript.firstChild(), Xcode.VAR)
+            && Xnode.isOfCode(subscript.lastChild(), Xcode.F_INT_CONSTANT))
+        {
+          base = subscript.firstChild().value();
+          offset = Integer.parseInt(subscript.lastChild().value());
+          if(subscript.is(Xcode.MINUS_EXPR)) {
+            offset = -offset;
+          }
+        } else {
+          return null;
+        }
+
+        if(rank < 0 && dim == bases.size()) {
+          bases.add(base);
+          lower.add(offset);
+          upper.add(offset);
+        } else if(dim >= bases.size()
+            || !bases.get(dim).equalsIgnoreCase(base))
+        {
+          return null;
+        } else {
+          lower.set(dim, Math.min(lower.get(dim), offset));
+          upper.set(dim, Math.max(upper.get(dim), offset));
+        }
+        ++dim;
+      }
+      if(dim != bases.size()) {
+        return null;
+      }
+      rank = dim;
+    }
+
+    if(bases.isEmpty()) {
+      return null;
+    }
+    List<String> sections = new ArrayList<>();
+    for(int i = 0; i < bases.size(); ++i) {
+      String lb = formatSubscript(bases.get(i), lower.get(i));
+      sections.add(lower.get(i).equals(upper.get(i)) ? lb
+          : lb + ":" + formatSubscript(bases.get(i), upper.get(i)));
+    }
+    return data + "(" + String.join(",", sections) + ")";
+  }
+
+  /**
+   * Format a subscript composed of a variable and an offset.
+   *
+   * @param base   Variable name. Empty for a constant subscript.
+   * @param offset Offset applied to the variable.
+   * @return String representation of the subscript.
+   */
+  private static String formatSubscript(String base, int offset) {
+    if(base.isEmpty()) {
+      return String.valueOf(offset);
+    } else if(offset > 0) {
+      return base + "+" + offset;
+    } else if(offset < 0) {
+      return base + offset;
+    }
+    return base;
+  }
+
   /**
    * Apply the transformation for the data list.
    *
@@ -309,10 +460,9 @@ public class Kcaching extends ClawTransformation {
         newRef.setType(refType);
         newRef.removeAttribute(Xattr.INTENT);
         newRef.removeAttribute(Xattr.IS_ALLOCATABLE);
-        newType.setRef(refType);
-        xcodeml.getTypeTable().add(newRef);
+        newType.setRef(xcodeml.getTypeTable().add(newRef));
       }
-      xcodeml.getTypeTable().add(newType);
+      type = xcodeml.getTypeTable().add(newType);
     }
 
     String cacheName =
@@ -4,6 +4,7 @@
  */
 package claw.wani.transformation.ll.directive;
 
+import claw.shenron.analysis.Analysis;
 import claw.shenron.transformation.Transformation;
 import claw.shenron.translator.Translator;
 import claw.tatsu.common.Context;
@@ -14,6 +15,8 @@ import claw.wani.language.ClawPragma;
 import claw.wani.transformation.ClawTransformation;
 import claw.wani.transformation.internal.OpenAccContinuation;
 
+import java.util.Set;
+
 /**
  * Directive primitive transformation allows to enable specific directive
  * primitive specified by the --directive option.
@@ -91,4 +94,9 @@ public class DirectivePrimitive extends ClawTransformation {
     translator.addTransformation(xcodeml,
         new OpenAccContinuation((ClawPragma) getDirective()));
   }
+
+  @Override
+  public Set<Class<? extends Analysis<?>>> getPreservedAnalyses() {
+    return FUNCTION_ANALYSES; // Only the pragma is modified
+  }
 }
@@ -0,0 +1,154 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.wani.transformation.ll.loop;
+
+import claw.shenron.transformation.Transformation;
+import claw.shenron.translator.Translator;
+import claw.tatsu.analysis.dependency.LoopFusionAnalysis;
+import claw.tatsu.common.Message;
+import claw.tatsu.primitive.Loop;
+import claw.tatsu.xcodeml.abstraction.NestedDoStatement;
+import claw.tatsu.xcodeml.exception.IllegalTransformationException;
+import claw.tatsu.xcodeml.xnode.common.Xcode;
+import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
+import claw.tatsu.xcodeml.xnode.common.Xnode;
+import claw.tatsu.xcodeml.xnode.fortran.FfunctionDefinition;
+import claw.wani.transformation.ClawTransformation;
+import claw.wani.x2t.configuration.Configuration;
+
+/**
+ * Automatic loop fusion transformation. This transformation is triggered for
+ * each translation unit when the loop_fusion_auto parameter is enabled in the
+ * configuration. It does not require any directive.
+ *
+ * In each block of each function/subroutine, adjacent groups of perfectly
+ * nested do statements with identical iteration ranges are considered for
+ * fusion. Legality and profitability are computed by the
+ * {@link LoopFusionAnalysis}. The fusion sharing the most arrays is applied
+ * first and the process is repeated until no profitable candidate is left.
+ *
+ * @author clementval
+ */
+public class AutoLoopFusion extends ClawTransformation {
+
+  private static final String DEBUG_PREFIX = "AUTO-FUSION:";
+
+  private int _fusionCounter = 0;
+
+  /**
+   * Constructs a new automatic loop fusion transformation triggered for a
+   * translation unit.
+   */
+  public AutoLoopFusion() {
+    super();
+  }
+
+  /**
+   * Automatic fusion is only applied if enabled in the configuration.
+   *
+   * @param xcodeml    The XcodeML on which the transformations are applied.
+   * @param translator The translator used to applied the transformations.
+   * @return True if the automatic fusion is enabled. False otherwise.
+   */
+  @Override
+  public boolean analyze(XcodeProgram xcodeml, Translator translator) {
+    return Configuration.get().getBooleanParameter(
+        Configuration.LOOP_FUSION_AUTO);
+  }
+
+  /**
+   * @return Always false as a disabled automatic fusion is not an error.
+   */
+  @Override
+  public boolean abortOnFailedAnalysis() {
+    return false;
+  }
+
+  /**
+   * @return Always false as independent transformation are applied one by one.
+   * @see Transformation#canBeTransformedWith(XcodeProgram, Transformation)
+   */
+  @Override
+  public boolean canBeTransformedWith(XcodeProgram xcodeml,
+                                      Transformation other)
+  {
+    // independent transformation
+    return false;
+  }
+
+  /**
+   * Apply the automatic fusion on every block of every function/subroutine of
+   * the translation unit.
+   *
+   * @param xcodeml        The XcodeML on which the transformations are applied.
+   * @param translator     The translator used to applied the transformations.
+   * @param transformation Not used in this transformation
+   * @throws IllegalTransformationException If the fusion fails.
+   */
+  @Override
+  public void transform(XcodeProgram xcodeml, Translator translator,
+                        Transformation transformation)
+      throws IllegalTransformationException
+  {
+    for(FfunctionDefinition fctDef : xcodeml.getAllFctDef()) {
+      for(Xnode body : fctDef.matchAll(Xcode.BODY)) {
+        fuseInBlock(body);
+      }
+    }
+    Message.debug(String.format("%s %d fusion(s) applied", DEBUG_PREFIX,
+        _fusionCounter));
+    transformed();
+  }
+
+  /**
+   * Greedily fuse the adjacent groups of do statements of a block. At each
+   * step, the legal candidate with the highest score is fused.
+   *
+   * @param body Block in which the fusion are applied.
+   * @throws IllegalTransformationException If the fusion fails.
+   */
+  private void fuseInBlock(Xnode body) throws IllegalTransformationException {
+    while(true) {
+      NestedDoStatement bestMaster = null;
+      NestedDoStatement bestSlave = null;
+      LoopFusionAnalysis bestAnalysis = null;
+
+      for(Xnode doStmt : body.children()) {
+        Xnode next = doStmt.nextSibling();
+        if(!doStmt.is(Xcode.F_DO_STATEMENT)
+            || !Xnode.isOfCode(next, Xcode.F_DO_STATEMENT))
+        {
+          continue;
+        }
+        int depth = Loop.getFusionDepth(doStmt, next);
+        if(depth == 0) {
+          continue;
+        }
+        NestedDoStatement master = new NestedDoStatement(doStmt, depth);
+        NestedDoStatement slave = new NestedDoStatement(next, depth);
+        LoopFusionAnalysis analysis = new LoopFusionAnalysis(master, slave);
+        if(analysis.isLegal() && analysis.getScore() > 0
+            && (bestAnalysis == null
+            || analysis.getScore() > bestAnalysis.getScore()))
+        {
+          bestMaster = master;
+          bestSlave = slave;
+          bestAnalysis = analysis;
+        }
+      }
+
+      if(bestAnalysis == null) {
+        return;
+      }
+
+      Message.debug(String.format("%s fuse loops at line %d and %d sharing %s",
+          DEBUG_PREFIX, bestMaster.getOuterStatement().lineNo(),
+          bestSlave.getOuterStatement().lineNo(),
+          bestAnalysis.getSharedArrays()));
+      Loop.merge(bestMaster, bestSlave);
+      ++_fusionCounter;
+    }
+  }
+}
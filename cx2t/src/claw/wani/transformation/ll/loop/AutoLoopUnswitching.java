@@ -0,0 +1,147 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.wani.transformation.ll.loop;
+
+import claw.shenron.transformation.Transformation;
+import claw.shenron.translator.Translator;
+import claw.tatsu.common.Message;
+import claw.tatsu.primitive.Loop;
+import claw.tatsu.xcodeml.exception.IllegalTransformationException;
+import claw.tatsu.xcodeml.xnode.common.Xcode;
+import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
+import claw.tatsu.xcodeml.xnode.common.Xnode;
+import claw.tatsu.xcodeml.xnode.fortran.FfunctionDefinition;
+import claw.wani.transformation.ClawTransformation;
+import claw.wani.x2t.configuration.Configuration;
+import claw.wani.x2t.translator.ClawTranslator;
+
+/**
+ * Automatic loop unswitching transformation. This transformation is triggered
+ * for each translation unit when the loop_unswitching_auto parameter is
+ * enabled in the configuration. It does not require any directive and
+ * generalizes the if-extract transformation.
+ *
+ * In each function/subroutine, the groups of nested do statements are searched
+ * for if statements with a loop invariant condition (see
+ * {@link Loop#findUnswitchCandidate(FfunctionDefinition, Xnode)}). Each group
+ * is replaced by an if statement selecting a specialized copy of the group per
+ * branch. The process is repeated on the copies until no candidate is left or
+ * until the number of duplicated statements reaches the
+ * loop_unswitching_budget parameter.
+ *
+ * @author clementval
+ */
+public class AutoLoopUnswitching extends ClawTransformation {
+
+  private static final String DEBUG_PREFIX = "AUTO-UNSWITCHING:";
+  private static final String REPORT_SECTION = "loop-unswitching";
+
+  /**
+   * Constructs a new automatic loop unswitching transformation triggered for
+   * a translation unit.
+   */
+  public AutoLoopUnswitching() {
+    super();
+  }
+
+  /**
+   * Automatic unswitching is only applied if enabled in the configuration.
+   *
+   * @param xcodeml    The XcodeML on which the transformations are applied.
+   * @param translator The translator used to applied the transformations.
+   * @return True if the automatic unswitching is enabled. False otherwise.
+   */
+  @Override
+  public boolean analyze(XcodeProgram xcodeml, Translator translator) {
+    return Configuration.get().getBooleanParameter(
+        Configuration.LOOP_UNSWITCHING_AUTO);
+  }
+
+  /**
+   * @return Always false as a disabled automatic unswitching is not an error.
+   */
+  @Override
+  public boolean abortOnFailedAnalysis() {
+    return false;
+  }
+
+  /**
+   * @return Always false as independent transformation are applied one by one.
+   * @see Transformation#canBeTransformedWith(XcodeProgram, Transformation)
+   */
+  @Override
+  public boolean canBeTransformedWith(XcodeProgram xcodeml,
+                                      Transformation other)
+  {
+    // independent transformation
+    return false;
+  }
+
+  /**
+   * Apply the automatic unswitching on every function/subroutine of the
+   * translation unit.
+   *
+   * @param xcodeml        The XcodeML on which the transformations are applied.
+   * @param translator     The translator used to applied the transformations.
+   * @param transformation Not used in this transformation
+   * @throws IllegalTransformationException If the unswitching fails.
+   */
+  @Override
+  public void transform(XcodeProgram xcodeml, Translator translator,
+                        Transformation transformation)
+      throws IllegalTransformationException
+  {
+    ClawTranslator ct = (ClawTranslator) translator;
+    int budget = Configuration.get().getIntParameter(
+        Configuration.LOOP_UNSWITCHING_BUDGET);
+    for(FfunctionDefinition fctDef : xcodeml.getAllFctDef()) {
+      int remaining = budget;
+      int unswitched = 0;
+      Xnode doStmt;
+      while((doStmt = nextCandidate(fctDef, remaining)) != null) {
+        Xnode ifStmt = Loop.findUnswitchCandidate(fctDef, doStmt);
+        remaining -= Loop.countStatements(doStmt);
+        Message.debug(String.format("%s unswitch loop at line %d on if " +
+                "statement at line %d", DEBUG_PREFIX, doStmt.lineNo(),
+            ifStmt.lineNo()));
+        Loop.unswitch(xcodeml, doStmt, ifStmt);
+        ++unswitched;
+      }
+      if(unswitched > 0) {
+        ct.addReportInfo(REPORT_SECTION, String.format("%s: %d loop(s) " +
+                "unswitched, %d statement(s) added", fctDef.getName(),
+            unswitched, budget - remaining));
+      }
+    }
+    transformed();
+  }
+
+  /**
+   * Find the next group of do statements to be unswitched within the budget.
+   * Only outer do statements of a group are considered and groups surrounded
+   * by directives are skipped as the directives cannot be duplicated.
+   *
+   * @param fctDef Function/subroutine definition.
+   * @param budget Remaining number of statements that can be duplicated.
+   * @return Outer do statement of the group. Null if no candidate is left.
+   */
+  private Xnode nextCandidate(FfunctionDefinition fctDef, int budget) {
+    for(Xnode doStmt : fctDef.body().matchAll(Xcode.F_DO_STATEMENT)) {
+      Xnode owner = doStmt.ancestor().ancestor();
+      if(Xnode.isOfCode(owner, Xcode.F_DO_STATEMENT)
+          || Xnode.isOfCode(doStmt.prevSibling(), Xcode.F_PRAGMA_STATEMENT)
+          || Xnode.isOfCode(doStmt.nextSibling(), Xcode.F_PRAGMA_STATEMENT))
+      {
+        continue;
+      }
+      if(Loop.countStatements(doStmt) <= budget
+          && Loop.findUnswitchCandidate(fctDef, doStmt) != null)
+      {
+        return doStmt;
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,188 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.wani.transformation.ll.utility;
+
+import claw.shenron.transformation.Transformation;
+import claw.shenron.translator.Translator;
+import claw.tatsu.common.Message;
+import claw.tatsu.primitive.Function;
+import claw.tatsu.xcodeml.abstraction.FunctionCall;
+import claw.tatsu.xcodeml.exception.IllegalTransformationException;
+import claw.tatsu.xcodeml.xnode.common.Xattr;
+import claw.tatsu.xcodeml.xnode.common.Xcode;
+import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
+import claw.tatsu.xcodeml.xnode.common.Xnode;
+import claw.tatsu.xcodeml.xnode.fortran.FfunctionDefinition;
+import claw.wani.transformation.ClawTransformation;
+import claw.wani.x2t.configuration.Configuration;
+import claw.wani.x2t.translator.ClawTranslator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Automatic inlining transformation. This transformation is triggered for
+ * each translation unit when the inline_auto parameter is enabled in the
+ * configuration. It does not require any directive.
+ *
+ * In each function/subroutine with a sca directive, the calls to leaf
+ * functions/subroutines defined in the same file and having at most
+ * inline_max_statements statements are inlined. The calls that cannot be
+ * inlined are left unchanged and get a routine directive from the SCA
+ * transformation as before. Calls preceded by a CLAW directive are skipped as
+ * the directive applies to the call itself (e.g. sca forward).
+ *
+ * @author clementval
+ */
+public class AutoInlining extends ClawTransformation {
+
+  private static final String DEBUG_PREFIX = "AUTO-INLINING:";
+  private static final String CLAW_PREFIX = "claw";
+  private static final String SCA_PREFIX = "claw sca";
+  private static final String SCA_FORWARD = "forward";
+
+  /**
+   * Constructs a new automatic inlining transformation triggered for a
+   * translation unit.
+   */
+  public AutoInlining() {
+    super();
+  }
+
+  /**
+   * Automatic inlining is only applied if enabled in the configuration.
+   *
+   * @param xcodeml    The XcodeML on which the transformations are applied.
+   * @param translator The translator used to applied the transformations.
+   * @return True if the automatic inlining is enabled. False otherwise.
+   */
+  @Override
+  public boolean analyze(XcodeProgram xcodeml, Translator translator) {
+    return Configuration.get().getBooleanParameter(Configuration.INLINE_AUTO);
+  }
+
+  /**
+   * @return Always false as a disabled automatic inlining is not an error.
+   */
+  @Override
+  public boolean abortOnFailedAnalysis() {
+    return false;
+  }
+
+  /**
+   * @return Always false as independent transformation are applied one by one.
+   * @see Transformation#canBeTransformedWith(XcodeProgram, Transformation)
+   */
+  @Override
+  public boolean canBeTransformedWith(XcodeProgram xcodeml,
+                                      Transformation other)
+  {
+    // independent transformation
+    return false;
+  }
+
+  /**
+   * Only the functions/subroutines with a sca directive and the ones they
+   * call are touched.
+   *
+   * @param xcodeml The XcodeML on which the transformations are applied.
+   * @return Function definitions with a sca directive.
+   */
+  @Override
+  public List<FfunctionDefinition> getTouchedFunctions(XcodeProgram xcodeml) {
+    List<FfunctionDefinition> touched = new ArrayList<>();
+    for(FfunctionDefinition fctDef : xcodeml.getAllFctDef()) {
+      if(hasScaDirective(fctDef)) {
+        touched.add(fctDef);
+      }
+    }
+    return touched;
+  }
+
+  /**
+   * Inline the eligible calls of every function/subroutine with a sca
+   * directive and report them.
+   *
+   * @param xcodeml        The XcodeML on which the transformations are applied.
+   * @param translator     The translator used to applied the transformations.
+   * @param transformation Not used in this transformation
+   */
+  @Override
+  public void transform(XcodeProgram xcodeml, Translator translator,
+                        Transformation transformation)
+  {
+    ClawTranslator ct = (ClawTranslator) translator;
+    int maxStatements = Configuration.get().getIntParameter(
+        Configuration.INLINE_MAX_STATEMENTS);
+    for(FfunctionDefinition fctDef : xcodeml.getAllFctDef()) {
+      if(!hasScaDirective(fctDef)) {
+        continue;
+      }
+      List<String> inlined = new ArrayList<>();
+      int statements = 0;
+      for(Xnode node : fctDef.body().matchAll(Xcode.FUNCTION_CALL)) {
+        if(node.getBooleanAttribute(Xattr.IS_INTRINSIC)
+            || isPrecededByClawDirective(node))
+        {
+          continue;
+        }
+        FunctionCall fctCall = new FunctionCall(node);
+        Optional<FfunctionDefinition> callee =
+            Function.findFunctionDefinition(xcodeml, fctDef, fctCall);
+        if(!callee.isPresent()
+            || Function.countStatements(callee.get()) > maxStatements)
+        {
+          continue;
+        }
+        try {
+          statements += Function.inline(xcodeml, fctDef, fctCall,
+              callee.get());
+          inlined.add(callee.get().getName());
+        } catch(IllegalTransformationException itex) {
+          Message.debug(String.format("%s %s", DEBUG_PREFIX,
+              itex.getMessage()));
+        }
+      }
+      if(!inlined.isEmpty()) {
+        ct.addReportInfo(Inlining.REPORT_SECTION, String.format("%s: %d " +
+                "call(s) inlined (%s), %d statement(s) inserted",
+            fctDef.getName(), inlined.size(), String.join(", ", inlined),
+            statements));
+      }
+    }
+    transformed();
+  }
+
+  /**
+   * Check whether a function/subroutine has a sca directive other than a sca
+   * forward directive.
+   *
+   * @param fctDef Function/subroutine definition.
+   * @return True if a sca directive is found.
+   */
+  private boolean hasScaDirective(FfunctionDefinition fctDef) {
+    return fctDef.body().matchAll(Xcode.F_PRAGMA_STATEMENT).stream()
+        .map(p -> p.value().toLowerCase())
+        .anyMatch(p -> p.startsWith(SCA_PREFIX) && !p.contains(SCA_FORWARD));
+  }
+
+  /**
+   * Check whether the statement of a function call is preceded by a CLAW
+   * directive.
+   *
+   * @param fctCall Function call node.
+   * @return True if the previous statement is a CLAW directive.
+   */
+  private boolean isPrecededByClawDirective(Xnode fctCall) {
+    Xnode stmt = fctCall;
+    while(stmt.ancestor() != null && !stmt.ancestor().is(Xcode.BODY)) {
+      stmt = stmt.ancestor();
+    }
+    Xnode prev = stmt.prevSibling();
+    return Xnode.isOfCode(prev, Xcode.F_PRAGMA_STATEMENT)
+        && prev.value().toLowerCase().startsWith(CLAW_PREFIX);
+  }
+}
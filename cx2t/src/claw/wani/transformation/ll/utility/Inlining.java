@@ -0,0 +1,132 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.wani.transformation.ll.utility;
+
+import claw.shenron.transformation.Transformation;
+import claw.shenron.translator.Translator;
+import claw.tatsu.primitive.Function;
+import claw.tatsu.xcodeml.abstraction.FunctionCall;
+import claw.tatsu.xcodeml.exception.IllegalTransformationException;
+import claw.tatsu.xcodeml.xnode.common.Xattr;
+import claw.tatsu.xcodeml.xnode.common.Xcode;
+import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
+import claw.tatsu.xcodeml.xnode.common.Xnode;
+import claw.tatsu.xcodeml.xnode.fortran.FfunctionDefinition;
+import claw.wani.language.ClawPragma;
+import claw.wani.transformation.ClawTransformation;
+import claw.wani.x2t.translator.ClawTranslator;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Inlining transformation. The call to a function/subroutine in the statement
+ * following the inline directive is replaced by the body of the callee (see
+ * {@link Function#inline(XcodeProgram, FfunctionDefinition, FunctionCall,
+ * FfunctionDefinition)}). The callee must be defined in the current
+ * translation unit and is kept for its other callers.
+ *
+ * @author clementval
+ */
+public class Inlining extends ClawTransformation {
+
+  static final String REPORT_SECTION = "inlining";
+
+  private FfunctionDefinition _caller = null;
+  private FfunctionDefinition _callee = null;
+  private FunctionCall _fctCall = null;
+
+  /**
+   * Constructs a new Inlining triggered from a specific pragma.
+   *
+   * @param directive The directive that triggered the inlining
+   *                  transformation.
+   */
+  public Inlining(ClawPragma directive) {
+    super(directive);
+  }
+
+  /**
+   * Check that the directive is followed by a call statement or an assignment
+   * with a single call to a function/subroutine defined in the current
+   * translation unit.
+   *
+   * @param xcodeml    The XcodeML on which the transformations are applied.
+   * @param translator The translator used to applied the transformations.
+   * @return True if the transformation can be applied.
+   */
+  @Override
+  public boolean analyze(XcodeProgram xcodeml, Translator translator) {
+    Xnode stmt = _claw.getPragma().nextSibling();
+    if(!Xnode.isOfCode(stmt, Xcode.EXPR_STATEMENT)
+        && !Xnode.isOfCode(stmt, Xcode.F_ASSIGN_STATEMENT))
+    {
+      xcodeml.addError("Directive inline must be followed by a call " +
+          "statement or an assignment.", _claw.getPragma().lineNo());
+      return false;
+    }
+    List<Xnode> fctCalls = stmt.matchAll(Xcode.FUNCTION_CALL).stream()
+        .filter(f -> !f.getBooleanAttribute(Xattr.IS_INTRINSIC))
+        .collect(Collectors.toList());
+    if(fctCalls.size() != 1) {
+      xcodeml.addError("Directive inline requires a single call to a " +
+          "function/subroutine in the next statement.",
+          _claw.getPragma().lineNo());
+      return false;
+    }
+    _fctCall = new FunctionCall(fctCalls.get(0));
+    _caller = _claw.getPragma().findParentFunction();
+    if(_caller == null) {
+      xcodeml.addError("Cannot locate function definition.",
+          _claw.getPragma().lineNo());
+      return false;
+    }
+    Optional<FfunctionDefinition> callee =
+        Function.findFunctionDefinition(xcodeml, _caller, _fctCall);
+    if(!callee.isPresent()) {
+      xcodeml.addError("Function/subroutine " + _fctCall.getFctName() +
+              " not found in current file.",
+          _claw.getPragma().lineNo());
+      return false;
+    }
+    _callee = callee.get();
+    return true;
+  }
+
+  /**
+   * @return Always false as independent transformation are applied one by one.
+   * @see Transformation#canBeTransformedWith(XcodeProgram, Transformation)
+   */
+  @Override
+  public boolean canBeTransformedWith(XcodeProgram xcodeml,
+                                      Transformation other)
+  {
+    // independent transformation
+    return false;
+  }
+
+  /**
+   * Inline the call and report it.
+   *
+   * @param xcodeml        The XcodeML on which the transformations are applied.
+   * @param translator     The translator used to applied the transformations.
+   * @param transformation Not used for independent transformation.
+   * @throws IllegalTransformationException If the call cannot be inlined.
+   */
+  @Override
+  public void transform(XcodeProgram xcodeml, Translator translator,
+                        Transformation transformation)
+      throws IllegalTransformationException
+  {
+    int statements = Function.inline(xcodeml, _caller, _fctCall, _callee);
+    ((ClawTranslator) translator).addReportInfo(REPORT_SECTION,
+        String.format("%s: %s inlined at line %d, %d statement(s) inserted",
+            _caller.getName(), _callee.getName(), _claw.getPragma().lineNo(),
+            statements));
+    removePragma();
+    transformed();
+  }
+}
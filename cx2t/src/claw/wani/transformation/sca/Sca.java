@@ -4,11 +4,13 @@
  */
 package claw.wani.transformation.sca;
 
+import claw.shenron.analysis.InductionVariables;
 import claw.shenron.transformation.Transformation;
 import claw.shenron.translator.Translator;
 import claw.tatsu.common.*;
 import claw.tatsu.primitive.*;
 import claw.tatsu.xcodeml.abstraction.DimensionDefinition;
+import claw.tatsu.xcodeml.abstraction.NestedDoStatement;
 import claw.tatsu.xcodeml.abstraction.PromotionInfo;
 import claw.tatsu.xcodeml.exception.IllegalTransformationException;
 import claw.tatsu.xcodeml.xnode.common.*;
@@ -135,9 +137,13 @@ public class Sca extends ClawTransformation {
 
   /**
    * Populate list of induction variables used in the function/subroutine body.
+   *
+   * @param xcodeml    Current translation unit.
+   * @param translator Current translator.
    */
-  void detectInductionVariables() {
-    _inductionVariables = _fctDef.detectInductionVariables();
+  void detectInductionVariables(XcodeProgram xcodeml, Translator translator) {
+    _inductionVariables = translator.getAnalysisManager()
+        .get(InductionVariables.class, xcodeml, _fctDef);
   }
 
   /**
@@ -322,17 +328,16 @@ public class Sca extends ClawTransformation {
     boolean adaptedNakedArrayRef = Context.get().getTarget() == Target.GPU;
 
     // Adapt array references.
-    if(_claw.hasClause(ClawClause.DATA_OVER)) {
-      for(String id : _claw.getDataOverClauseValues()) {
-        Field.adaptArrayRef(_promotions.get(id), _fctDef.body(),
-            adaptedNakedArrayRef, xcodeml);
-      }
-    } else {
-      for(String id : _arrayFieldsInOut) {
-        Field.adaptArrayRef(_promotions.get(id), _fctDef.body(),
-            adaptedNakedArrayRef, xcodeml);
-      }
+    Collection<String> ids = _claw.hasClause(ClawClause.DATA_OVER)
+        ? _claw.getDataOverClauseValues() : _arrayFieldsInOut;
+    List<PromotionInfo> adapted = new ArrayList<>();
+    for(String id : ids) {
+      adapted.add(_promotions.get(id));
     }
+    int adaptedRefs = Field.adaptArrayRefs(adapted, _fctDef.body(),
+        adaptedNakedArrayRef, xcodeml);
+    Message.debug(String.format("%s adapted %d array references",
+        SCA_DEBUG_PREFIX, adaptedRefs));
 
     removePragma();
   }
@@ -380,6 +385,36 @@ public class Sca extends ClawTransformation {
     }
   }
 
+  /**
+   * Move the loop invariant statements and conditions out of a group of do
+   * statements generated over the new dimensions. Promoted fields vary with
+   * the iterations of the group. Applied only if enabled in the configuration.
+   *
+   * @param xcodeml    Current translation unit.
+   * @param loops      Group of do statements generated by the transformation.
+   * @param scalarOnly If true, only statements reading scalars and constants
+   *                   are hoisted. Used when the group is offloaded as the
+   *                   hoisted statements are executed on the host.
+   */
+  void hoistLoopInvariants(XcodeProgram xcodeml, NestedDoStatement loops,
+                           boolean scalarOnly)
+  {
+    if(!Configuration.get().getBooleanParameter(
+        Configuration.SCA_LICM_ENABLED))
+    {
+      return;
+    }
+    Set<String> variants = new HashSet<>(_promotions.keySet());
+    variants.addAll(_arrayFieldsInOut);
+    int hoisted = Loop.hoistInvariants(xcodeml, _fctDef, loops, variants,
+        scalarOnly);
+    if(hoisted > 0) {
+      Message.debug(String.format("%s %d invariant(s) hoisted out of the " +
+              "do statements at line %d in %s", SCA_DEBUG_PREFIX, hoisted,
+          loops.getOuterStatement().lineNo(), _fctDef.getName()));
+    }
+  }
+
   /**
    * Promote all fields declared in the data clause with the additional
    * dimensions.
@@ -4,6 +4,7 @@
  */
 package claw.wani.transformation.sca;
 
+import claw.shenron.analysis.AssignStatements;
 import claw.shenron.transformation.Transformation;
 import claw.shenron.translator.Translator;
 import claw.tatsu.common.*;
@@ -11,17 +12,22 @@ import claw.tatsu.directive.common.Directive;
 import claw.tatsu.primitive.Body;
 import claw.tatsu.primitive.Condition;
 import claw.tatsu.primitive.Field;
+import claw.tatsu.directive.generator.DirectiveGenerator;
 import claw.tatsu.xcodeml.abstraction.AssignStatement;
+import claw.tatsu.xcodeml.abstraction.DimensionDefinition;
+import claw.tatsu.xcodeml.abstraction.InsertionPosition;
 import claw.tatsu.xcodeml.abstraction.NestedDoStatement;
 import claw.tatsu.xcodeml.abstraction.PromotionInfo;
 import claw.tatsu.xcodeml.exception.IllegalTransformationException;
 import claw.tatsu.xcodeml.xnode.XnodeUtil;
+import claw.tatsu.xcodeml.xnode.common.Xattr;
 import claw.tatsu.xcodeml.xnode.common.Xcode;
 import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
 import claw.tatsu.xcodeml.xnode.common.Xid;
 import claw.tatsu.xcodeml.xnode.common.Xnode;
 import claw.tatsu.xcodeml.xnode.fortran.FbasicType;
 import claw.wani.language.ClawPragma;
+import claw.wani.x2t.configuration.Configuration;
 import claw.wani.x2t.translator.ClawTranslator;
 
 import java.util.*;
@@ -32,10 +38,21 @@ import java.util.*;
  * - single: single statements are wrapped in do statements
  * - fusion: merge adjacent statements together to maximize vectorization.
  *
+ * When the cpu_simd parameter is enabled, generated do statements proven safe
+ * for vectorization are decorated with SIMD directives including private,
+ * safelen and aligned clauses. Promoted temporaries can also be padded to a
+ * multiple of the SIMD length with the cpu_simd_padding parameter.
+ *
  * @author clementval
  */
 public class ScaCPUvectorizeGroup extends Sca {
 
+  private static final List<Xcode> SIMD_UNSAFE_STATEMENTS = Arrays.asList(
+      Xcode.F_CYCLE_STATEMENT, Xcode.F_EXIT_STATEMENT,
+      Xcode.F_RETURN_STATEMENT, Xcode.F_STOP_STATEMENT, Xcode.GOTO_STATEMENT,
+      Xcode.F_PRAGMA_STATEMENT
+  );
+
   private final boolean _applyFusion;
   private final Set<String> _temporaryFieldsToPromote = new HashSet<>();
 
@@ -70,7 +87,7 @@ public class ScaCPUvectorizeGroup extends Sca {
 
     if(!_fctType.isElemental()) { // Only for non-elemental function/subroutine
       ClawTranslator trans = (ClawTranslator) translator;
-      detectInductionVariables();
+      detectInductionVariables(xcodeml, translator);
       return analyzeDimension(xcodeml) && analyzeData(xcodeml, trans);
     }
     return true;
@@ -94,7 +111,7 @@ public class ScaCPUvectorizeGroup extends Sca {
     super.transform(xcodeml, translator, other);
 
     // Apply specific steps for CPU smart fusion
-    applySpecificTransformation(xcodeml);
+    applySpecificTransformation(xcodeml, translator);
 
     // Finalize the common steps
     super.finalizeTransformation(xcodeml);
@@ -104,18 +121,24 @@ public class ScaCPUvectorizeGroup extends Sca {
    * Apply specific step of the transformation for a CPU target with naive DO
    * statement generation.
    *
-   * @param xcodeml Current translation unit.
+   * @param xcodeml    Current translation unit.
+   * @param translator Current translator.
    * @throws IllegalTransformationException If any transformation fails.
    */
-  private void applySpecificTransformation(XcodeProgram xcodeml)
+  private void applySpecificTransformation(XcodeProgram xcodeml,
+                                           Translator translator)
       throws IllegalTransformationException
   {
+    // The function definition has been modified by the common transformation
+    translator.getAnalysisManager().invalidate(_fctDef);
+
     /* Create a group of nested loop with the newly defined dimension and wrap
      * every assignment statement in the column loop or including data with it.
      * This is for the moment a really naive transformation idea but it is our
      * start point.
      * Use the first over clause to do it. */
-    List<AssignStatement> assignStatements = _fctDef.gatherAssignStatements();
+    List<AssignStatement> assignStatements = translator.getAnalysisManager()
+        .get(AssignStatements.class, xcodeml, _fctDef);
 
     detectIndirectPromotion(assignStatements);
 
@@ -124,14 +147,17 @@ public class ScaCPUvectorizeGroup extends Sca {
     List<VectorBlock> mergedBlocks = (_applyFusion) ?
         VectorBlock.mergeAdjacent(naiveBlocks) : new ArrayList<>(naiveBlocks);
 
-    checkMissingPromotion(mergedBlocks);
+    checkMissingPromotion(xcodeml, translator, mergedBlocks);
     if(_applyFusion) {
       removeUselessPromotion(mergedBlocks);
     }
 
+    List<PromotionInfo> promotedScalars = new ArrayList<>();
+    List<PromotionInfo> promotedArrays = new ArrayList<>();
     for(String temporary : _temporaryFieldsToPromote) {
-      promote(xcodeml, temporary);
+      promote(xcodeml, temporary, promotedScalars, promotedArrays);
     }
+    adaptReferences(xcodeml, promotedScalars, promotedArrays);
 
     // Generate loops around statements flagged in previous stage
     generateDoStatements(xcodeml, mergedBlocks);
@@ -169,13 +195,18 @@ public class ScaCPUvectorizeGroup extends Sca {
   /**
    * Check for potential missing promotions of scalar fields.
    *
-   * @param blocks List of blocks.
+   * @param xcodeml    Current translation unit.
+   * @param translator Current translator.
+   * @param blocks     List of blocks.
    */
-  private void checkMissingPromotion(List<VectorBlock> blocks) {
-
+  private void checkMissingPromotion(XcodeProgram xcodeml,
+                                     Translator translator,
+                                     List<VectorBlock> blocks)
+  {
     for(String var : _scalarFields) {
       // If shared by multiple block and not promoted yet.
-      if(isVarSharedByMultipleBlocks(blocks, var) && isVarNotOnlyConstant(var)
+      if(isVarSharedByMultipleBlocks(blocks, var)
+          && isVarNotOnlyConstant(xcodeml, translator, var)
           && isVarWrittenInBlocks(blocks, var)
           && !_arrayFieldsInOut.contains(var)
           && !_inductionVariables.contains(var)
@@ -185,7 +216,9 @@ public class ScaCPUvectorizeGroup extends Sca {
             SCA_DEBUG_PREFIX, var));
         _temporaryFieldsToPromote.add(var);
 
-        for(AssignStatement as : _fctDef.gatherAssignStatementsByLhsName(var)) {
+        for(AssignStatement as :
+            gatherAssignStatementsByLhsName(xcodeml, translator, var))
+        {
           // Check that assignments are contained in a vector block
           if(!VectorBlock.isContainedIn(blocks, as)) {
             blocks.add(new VectorBlock(as));
@@ -198,13 +231,17 @@ public class ScaCPUvectorizeGroup extends Sca {
   /**
    * Check is the variable is not only updated by constant values.
    *
-   * @param var Variable to check.
+   * @param xcodeml    Current translation unit.
+   * @param translator Current translator.
+   * @param var        Variable to check.
    * @return True if the variable is written with none constant value. False
    * otherwise.
    */
-  private boolean isVarNotOnlyConstant(String var) {
+  private boolean isVarNotOnlyConstant(XcodeProgram xcodeml,
+                                       Translator translator, String var)
+  {
     List<AssignStatement> assignStatements =
-        _fctDef.gatherAssignStatementsByLhsName(var);
+        gatherAssignStatementsByLhsName(xcodeml, translator, var);
     for(AssignStatement as : assignStatements) {
       if(!as.isConstantAssignement()) {
         return true;
@@ -213,6 +250,29 @@ public class ScaCPUvectorizeGroup extends Sca {
     return false;
   }
 
+  /**
+   * Gather the assignment statements of the function definition with the
+   * given variable as left hand side.
+   *
+   * @param xcodeml    Current translation unit.
+   * @param translator Current translator.
+   * @param var        Variable name.
+   * @return List of assignment statements in AST order.
+   */
+  private List<AssignStatement> gatherAssignStatementsByLhsName(
+      XcodeProgram xcodeml, Translator translator, String var)
+  {
+    List<AssignStatement> assignStatements = new ArrayList<>();
+    for(AssignStatement as : translator.getAnalysisManager()
+        .get(AssignStatements.class, xcodeml, _fctDef))
+    {
+      if(as.getLhsName().equalsIgnoreCase(var)) {
+        assignStatements.add(as);
+      }
+    }
+    return assignStatements;
+  }
+
   /**
    * Check is variable is shared by at two or more blocks.
    *
@@ -394,13 +454,19 @@ public class ScaCPUvectorizeGroup extends Sca {
   }
 
   /**
-   * Promote the given variable and adapt references.
+   * Promote the given variable. Its references are adapted afterwards with the
+   * ones of the other promoted variables.
    *
    * @param xcodeml Current translation unit.
    * @param var     Variable name to be promoted.
+   * @param scalars Promotion information of the promoted scalars. Updated with
+   *                the variable if it is a scalar.
+   * @param arrays  Promotion information of the promoted arrays. Updated with
+   *                the variable if it is an array.
    * @throws IllegalTransformationException If promotion cannot be done.
    */
-  private void promote(XcodeProgram xcodeml, String var)
+  private void promote(XcodeProgram xcodeml, String var,
+                       List<PromotionInfo> scalars, List<PromotionInfo> arrays)
       throws IllegalTransformationException
   {
     PromotionInfo promotionInfo;
@@ -408,23 +474,85 @@ public class ScaCPUvectorizeGroup extends Sca {
     if(!_promotions.containsKey(var)) {
       Message.debug(String.format("%s promote variable %s",
           SCA_DEBUG_PREFIX, var));
-      promotionInfo = new PromotionInfo(var, _claw.getLayoutForData(var));
+      promotionInfo = new PromotionInfo(var, getPaddedLayout(xcodeml, var));
       Field.promote(promotionInfo, _fctDef, xcodeml);
       _promotions.put(var, promotionInfo);
     } else {
       promotionInfo = _promotions.get(var);
     }
-    // Adapt references
     Xid id = _fctDef.getSymbolTable().get(var);
     FbasicType bType = xcodeml.getTypeTable().getBasicType(id);
     if(!bType.isArray()) {
-      Field.adaptScalarRefToArrayRef(_promotions.get(var), _fctDef,
-          _claw.getDefaultLayout(), xcodeml);
+      scalars.add(promotionInfo);
     } else {
-      Field.adaptArrayRef(_promotions.get(var), _fctDef.body(), false, xcodeml);
-      Field.adaptAllocate(_promotions.get(var), _fctDef.body(), xcodeml);
+      arrays.add(promotionInfo);
     }
-    promotionInfo.setRefAdapted();
+  }
+
+  /**
+   * Adapt the references of the promoted variables in a single traversal of
+   * the function definition per kind of variable.
+   *
+   * @param xcodeml Current translation unit.
+   * @param scalars Promotion information of the promoted scalars.
+   * @param arrays  Promotion information of the promoted arrays.
+   */
+  private void adaptReferences(XcodeProgram xcodeml,
+                               List<PromotionInfo> scalars,
+                               List<PromotionInfo> arrays)
+  {
+    int adapted = Field.adaptScalarRefsToArrayRefs(scalars, _fctDef,
+        _claw.getDefaultLayout(), xcodeml);
+    adapted += Field.adaptArrayRefs(arrays, _fctDef.body(), false, xcodeml);
+    for(PromotionInfo promotionInfo : arrays) {
+      Field.adaptAllocate(promotionInfo, _fctDef.body(), xcodeml);
+    }
+    Message.debug(String.format("%s adapted %d references",
+        SCA_DEBUG_PREFIX, adapted));
+  }
+
+  /**
+   * Get the layout used to promote a variable. When the cpu_simd_padding
+   * parameter is enabled, the leading dimension of local temporaries is padded
+   * to a multiple of the SIMD length so that every column starts at the same
+   * alignment. Dummy arguments keep their layout as their shape is defined by
+   * the caller.
+   *
+   * @param xcodeml Current translation unit.
+   * @param var     Variable name to be promoted.
+   * @return List of dimension definitions used for the promotion.
+   */
+  private List<DimensionDefinition> getPaddedLayout(XcodeProgram xcodeml,
+                                                    String var)
+  {
+    List<DimensionDefinition> layout = _claw.getLayoutForData(var);
+    int simdLength =
+        Configuration.get().getIntParameter(Configuration.CPU_SIMD_LENGTH);
+    if(!Configuration.get().getBooleanParameter(Configuration.CPU_SIMD_PADDING)
+        || simdLength < 2 || layout.isEmpty() || _fctType.hasParam(var))
+    {
+      return layout;
+    }
+
+    Xid id = _fctDef.getSymbolTable().get(var);
+    FbasicType bType = id == null ? null
+        : xcodeml.getTypeTable().getBasicType(id);
+    boolean wasScalar = bType == null || !bType.isArray();
+    DimensionDefinition leading = layout.get(0);
+    // Padding a single dimension array does not change column alignment
+    if(leading == DimensionDefinition.BASE_DIMENSION
+        || (wasScalar && layout.size() < 2)
+        || (!wasScalar
+        && leading.getInsertionPosition() != InsertionPosition.BEFORE))
+    {
+      return layout;
+    }
+
+    Message.debug(String.format("%s pad leading dimension of %s to %d",
+        SCA_DEBUG_PREFIX, var, simdLength));
+    List<DimensionDefinition> padded = new ArrayList<>(layout);
+    padded.set(0, leading.pad(simdLength));
+    return padded;
   }
 
   /**
@@ -451,12 +579,200 @@ public class ScaCPUvectorizeGroup extends Sca {
             loops.getInnerStatement().body(), true);
       }
 
+      hoistLoopInvariants(xcodeml, loops, false);
+
+      if(Configuration.get().getBooleanParameter(Configuration.CPU_SIMD)) {
+        Xnode body = loops.getInnerStatement().body();
+        String columnIndex = loops.getInnerStatement()
+            .matchDirectDescendant(Xcode.VAR).value();
+        List<String> privates = new ArrayList<>();
+        if(isSimdSafe(body, columnIndex, privates)) {
+          generateSimdDirectives(xcodeml, loops, body, privates);
+          continue;
+        }
+        Message.debug(String.format("%s block at line %d is not SIMD safe",
+            SCA_DEBUG_PREFIX, loops.getOuterStatement().lineNo()));
+      }
+
       Directive.generateLoopDirectives(xcodeml,
           loops.getOuterStatement(), loops.getOuterStatement(),
           Directive.NO_COLLAPSE);
     }
   }
 
+  /**
+   * Generate the SIMD directives with their clauses around the group of do
+   * statements.
+   *
+   * @param xcodeml  Current translation unit.
+   * @param loops    Group of do statements generated for the block.
+   * @param body     Inner body of the group.
+   * @param privates Variables to be privatized.
+   */
+  private void generateSimdDirectives(XcodeProgram xcodeml,
+                                      NestedDoStatement loops, Xnode body,
+                                      List<String> privates)
+  {
+    DirectiveGenerator gen = Context.get().getGenerator();
+    int length =
+        Configuration.get().getIntParameter(Configuration.CPU_SIMD_LENGTH);
+    int alignment =
+        Configuration.get().getIntParameter(Configuration.CPU_SIMD_ALIGNMENT);
+
+    // Fortran only accepts allocatable or pointer arrays in aligned clause
+    List<String> alignedVars = new ArrayList<>();
+    Set<String> bodyVars = XnodeUtil.findAllReferences(body);
+    for(String var : _temporaryFieldsToPromote) {
+      PromotionInfo info = _promotions.get(var);
+      if(bodyVars.contains(var) && info != null
+          && info.getTargetType() != null
+          && (info.getTargetType().isAllocatable()
+          || info.getTargetType().isPointer()))
+      {
+        alignedVars.add(var);
+      }
+    }
+    Collections.sort(alignedVars);
+    Collections.sort(privates);
+
+    String simdClauses = String.join(" ", gen.getSafelenClause(length),
+        gen.getAlignedClause(alignedVars, alignment)).trim();
+    Directive.generateSimdLoopDirectives(xcodeml, loops,
+        gen.getPrivateClause(privates), simdClauses);
+  }
+
+  /**
+   * Check whether the body of a generated do statement can be executed with
+   * SIMD instructions. The body must not alter the control flow or call non
+   * intrinsic procedures. Every written variable must be either a promoted
+   * field, accessed with the column index, or a scalar temporary that can be
+   * privatized.
+   *
+   * @param body        Inner body of the generated do statements.
+   * @param columnIndex Induction variable of the vectorized do statement.
+   * @param privates    List filled with the variables to be privatized.
+   * @return True if the body is safe for SIMD execution. False otherwise.
+   */
+  private boolean isSimdSafe(Xnode body, String columnIndex,
+                             List<String> privates)
+  {
+    for(Xcode opcode : SIMD_UNSAFE_STATEMENTS) {
+      if(body.matchDescendant(opcode) != null) {
+        return false;
+      }
+    }
+    for(Xnode fctCall : body.matchAll(Xcode.FUNCTION_CALL)) {
+      if(!fctCall.getBooleanAttribute(Xattr.IS_INTRINSIC)) {
+        return false;
+      }
+    }
+
+    // Induction variables of sequential loops in the body are private
+    for(Xnode doStmt : body.matchAll(Xcode.F_DO_STATEMENT)) {
+      Xnode inductionVar = doStmt.matchDirectDescendant(Xcode.VAR);
+      if(inductionVar != null && !privates.contains(inductionVar.value())) {
+        privates.add(inductionVar.value());
+      }
+    }
+
+    for(Xnode assign : body.matchAll(Xcode.F_ASSIGN_STATEMENT)) {
+      AssignStatement as = new AssignStatement(assign.element());
+      String lhsName = as.getLhsName();
+      if(privates.contains(lhsName)) {
+        continue;
+      }
+      if(Xnode.isOfCode(as.getLhs(), Xcode.F_ARRAY_REF)
+          && _arrayFieldsInOut.contains(lhsName)
+          && isColumnAccessed(body, lhsName, columnIndex))
+      {
+        continue;
+      }
+      if(Xnode.isOfCode(as.getLhs(), Xcode.VAR)
+          && isPrivatizable(body, lhsName))
+      {
+        privates.add(lhsName);
+        continue;
+      }
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Check whether all the references to an array in the body are accessed
+   * with the column index. Each reference must have a subscript made only of
+   * the column index so that the iterations access distinct elements.
+   *
+   * @param body        Inner body of the generated do statements.
+   * @param var         Array name.
+   * @param columnIndex Induction variable of the vectorized do statement.
+   * @return True if all the references use the column index. False otherwise.
+   */
+  private boolean isColumnAccessed(Xnode body, String var, String columnIndex)
+  {
+    for(Xnode arrayRef : XnodeUtil.getAllArrayReferences(body, var)) {
+      boolean columnAccess = false;
+      for(Xnode index : arrayRef.children()) {
+        if(index.is(Xcode.ARRAY_INDEX)
+            && Xnode.isOfCode(index.firstChild(), Xcode.VAR)
+            && index.firstChild().value().equals(columnIndex))
+        {
+          columnAccess = true;
+        }
+      }
+      if(!columnAccess) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Check whether a scalar variable written in the body can be privatized. The
+   * variable must be a local variable only referenced in the body and its first
+   * reference must be an unconditional assignment not reading it.
+   *
+   * @param body Inner body of the generated do statements.
+   * @param var  Variable name.
+   * @return True if the variable can be privatized. False otherwise.
+   */
+  private boolean isPrivatizable(Xnode body, String var) {
+    if(_fctType.hasParam(var) || _arrayFieldsInOut.contains(var)
+        || !_fctDef.getDeclarationTable().contains(var)
+        || var.equals(_fctType.getAttribute(Xattr.RESULT_NAME)))
+    {
+      return false;
+    }
+
+    List<Xnode> bodyRefs = new ArrayList<>();
+    for(Xnode ref : body.matchAll(Xcode.VAR)) {
+      if(ref.value().equals(var)) {
+        bodyRefs.add(ref);
+      }
+    }
+    int allRefs = 0;
+    for(Xnode ref : _fctDef.body().matchAll(Xcode.VAR)) {
+      if(ref.value().equals(var)) {
+        ++allRefs;
+      }
+    }
+    if(bodyRefs.isEmpty() || allRefs != bodyRefs.size()) {
+      return false;
+    }
+
+    Xnode first = bodyRefs.get(0);
+    Xnode assign = first.ancestor();
+    if(!Xnode.isOfCode(assign, Xcode.F_ASSIGN_STATEMENT)
+        || !first.equals(assign.firstChild())
+        || !body.equals(assign.ancestor()))
+    {
+      return false;
+    }
+    AssignStatement as = new AssignStatement(assign.element());
+    return as.getRhs() == null
+        || !XnodeUtil.findAllReferences(as.getRhs()).contains(var);
+  }
+
   /**
    * Check whether the LHS variable should be promoted.
    *
@@ -6,6 +6,7 @@ package claw.wani.transformation.sca;
 
 import claw.shenron.transformation.Transformation;
 import claw.shenron.translator.Translator;
+import claw.tatsu.analysis.topology.CallGraph;
 import claw.tatsu.common.Context;
 import claw.tatsu.common.Message;
 import claw.tatsu.common.Target;
@@ -179,6 +180,7 @@ public class ScaForward extends ClawTransformation {
           "function/subroutine.", _claw.getPragma());
       return false;
     }
+    _callingFctName = parentFctDef.getName();
 
     FmoduleDefinition parentModule = parentFctDef.findParentModule();
 
@@ -191,7 +193,7 @@ public class ScaForward extends ClawTransformation {
       if(id == null) {
         List<Xnode> uses = parentFctDef.getDeclarationTable().uses();
         uses.addAll(parentModule.getDeclarationTable().uses());
-        if(!findInModule(uses)) {
+        if(!findInModule(xcodeml, uses)) {
           xcodeml.addError("Function definition not found in module ",
               _claw.getPragma());
           return false;
@@ -232,7 +234,7 @@ public class ScaForward extends ClawTransformation {
         if(parentModule != null) {
           uses.addAll(parentModule.getDeclarationTable().uses());
         }
-        if(!findInModule(uses)) {
+        if(!findInModule(xcodeml, uses)) {
           xcodeml.addError(
               String.format("Function definition %s not found in module.",
                   _calledFctName), _claw.getPragma());
@@ -250,7 +252,6 @@ public class ScaForward extends ClawTransformation {
     }
     // end of workaround
 
-    _callingFctName = parentFctDef.getName();
     if(_fctType != null && fctDef != null) {
       _localFct = true;
     } else {
@@ -267,7 +268,7 @@ public class ScaForward extends ClawTransformation {
       }
 
       // Try to locate the fct in the modules defined in use statements
-      if(findInModule(uses)) {
+      if(findInModule(xcodeml, uses)) {
         return true;
       }
 
@@ -304,27 +305,56 @@ public class ScaForward extends ClawTransformation {
   }
 
   /**
-   * Find a function in modules.
+   * Find a function in modules. The module given by the call graph for the
+   * called function is searched first. It resolves the functions renamed in
+   * the use statements and avoids reading the other modules.
    *
+   * @param xcodeml  Current XcodeML file unit.
    * @param useDecls List of all USE statement declarations available for
    *                 search.
    * @return True if the function was found. False otherwise.
    */
-  private boolean findInModule(List<Xnode> useDecls) {
-    // TODO handle rename
-    for(Xnode d : useDecls) {
-      // Check whether a CLAW module file is available.
-      _mod = Xmod.findClaw(d.getAttribute(Xattr.NAME));
-      if(_mod != null) {
-        Message.debug("Reading CLAW module file: " + _mod.getFullPath());
-        if(_mod.getIdentifiers().contains(_calledFctName)) {
-          _fctType = _mod.findFunctionTypeFromCall(_fCall);
-          if(_fctType != null) {
-            return true;
-          }
+  private boolean findInModule(XcodeProgram xcodeml, List<Xnode> useDecls) {
+    CallGraph callGraph = xcodeml.getCallGraph();
+    String moduleName = callGraph.getModule(_callingFctName, _calledFctName);
+    if(moduleName != null) {
+      for(Xnode d : useDecls) {
+        if(moduleName.equalsIgnoreCase(d.getAttribute(Xattr.NAME))
+            && findInModule(moduleName,
+            callGraph.resolve(_callingFctName, _fCall)))
+        {
+          return true;
         }
       }
     }
+
+    for(Xnode d : useDecls) {
+      if(findInModule(d.getAttribute(Xattr.NAME), _calledFctName)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Find a function in a module.
+   *
+   * @param moduleName Name of the module.
+   * @param fctName    Name of the function in the module.
+   * @return True if the function was found. False otherwise.
+   */
+  private boolean findInModule(String moduleName, String fctName) {
+    // Check whether a CLAW module file is available.
+    _mod = Xmod.findClaw(moduleName);
+    if(_mod != null) {
+      Message.debug("Reading CLAW module file: " + _mod.getFullPath());
+      if(_mod.getIdentifiers().contains(fctName)) {
+        _fctType = fctName.equalsIgnoreCase(_calledFctName)
+            ? _mod.findFunctionTypeFromCall(_fCall)
+            : _mod.findFunctionType(fctName);
+        return _fctType != null;
+      }
+    }
     return false;
   }
 
@@ -784,10 +814,12 @@ public class ScaForward extends ClawTransformation {
           _promotedVar.add(varInLhs.value());
 
           // Adapt the reference in the assignment statement
+          List<PromotionInfo> promoted = new ArrayList<>();
           for(String id : _promotedVar) {
             _promotions.get(id).resetFlags();
-            Field.adaptArrayRef(_promotions.get(id), assignment, false, xcodeml);
+            promoted.add(_promotions.get(id));
           }
+          Field.adaptArrayRefs(promoted, assignment, false, xcodeml);
 
           // If the array is a target, check if we have to promote a pointer
           if(!previouslyPromoted.contains(varInLhs.value())) {
@@ -4,14 +4,23 @@
  */
 package claw.wani.transformation.sca;
 
+import claw.shenron.analysis.LocalArrays;
+import claw.shenron.analysis.PresentVariables;
 import claw.shenron.transformation.Transformation;
 import claw.shenron.translator.Translator;
+import claw.tatsu.analysis.dependency.DefUseAnalysis;
+import claw.tatsu.analysis.dependency.ReductionAnalysis;
 import claw.tatsu.common.CompilerDirective;
 import claw.tatsu.common.Context;
+import claw.tatsu.common.Message;
 import claw.tatsu.directive.common.Directive;
+import claw.tatsu.directive.common.LoopMapping;
+import claw.tatsu.directive.common.ReductionOperator;
+import claw.tatsu.directive.common.ScratchPool;
 import claw.tatsu.directive.generator.DirectiveGenerator;
 import claw.tatsu.primitive.Body;
 import claw.tatsu.primitive.Field;
+import claw.tatsu.xcodeml.abstraction.DimensionDefinition;
 import claw.tatsu.xcodeml.abstraction.NestedDoStatement;
 import claw.tatsu.xcodeml.abstraction.PromotionInfo;
 import claw.tatsu.xcodeml.abstraction.Xblock;
@@ -21,6 +30,7 @@ import claw.tatsu.xcodeml.xnode.common.Xattr;
 import claw.tatsu.xcodeml.xnode.common.Xcode;
 import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
 import claw.tatsu.xcodeml.xnode.common.Xnode;
+import claw.tatsu.xcodeml.xnode.fortran.FbasicType;
 import claw.tatsu.xcodeml.xnode.fortran.FmoduleDefinition;
 import claw.wani.language.ClawPragma;
 import claw.tatsu.directive.configuration.AcceleratorConfiguration;
@@ -28,9 +38,7 @@ import claw.tatsu.directive.configuration.AcceleratorLocalStrategy;
 import claw.wani.x2t.configuration.Configuration;
 import claw.wani.x2t.translator.ClawTranslator;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.*;
 
 /**
  * Specialized version of SCA transformation for GPU target.
@@ -51,6 +59,8 @@ import java.util.List;
  * <li> acc private clause is added to the parallel directive for all local
  * variables.
  * <li> acc loop is generated for the generated do statement.
+ * <li> acc reduction clause is added to the loop directive for the
+ * accumulations in shared scalar variables if sca_reduction_enabled is set.
  * <li> acc loop seq is generated for already existing do statements.
  * </ul>
  *
@@ -149,7 +159,7 @@ public class ScaGPU extends Sca {
       }
     }
 
-    detectInductionVariables();
+    detectInductionVariables(xcodeml, translator);
 
     return analyzeDimension(xcodeml) && analyzeData(xcodeml, translator);
   }
@@ -260,7 +270,7 @@ public class ScaGPU extends Sca {
     super.transform(xcodeml, translator, null);
 
     // Apply specific steps for GPU target
-    applySpecificTransformation(xcodeml);
+    applySpecificTransformation(xcodeml, (ClawTranslator) translator);
 
     // Finalize the common steps
     super.finalizeTransformation(xcodeml);
@@ -312,7 +322,7 @@ public class ScaGPU extends Sca {
       removeAttributesWithWaring(xcodeml, _fctType, Xattr.IS_PURE);
 
       // Apply specific steps for GPU
-      applySpecificTransformation(xcodeml);
+      applySpecificTransformation(xcodeml, (ClawTranslator) translator);
 
       // Finalize the common steps
       super.finalizeTransformation(xcodeml);
@@ -322,12 +332,17 @@ public class ScaGPU extends Sca {
   /**
    * Apply specific transformation steps for GPU target.
    *
-   * @param xcodeml Current translation unit.
+   * @param xcodeml    Current translation unit.
+   * @param translator Current translator.
    * @throws IllegalTransformationException If any transformation fails.
    */
-  private void applySpecificTransformation(XcodeProgram xcodeml)
+  private void applySpecificTransformation(XcodeProgram xcodeml,
+                                           ClawTranslator translator)
       throws IllegalTransformationException
   {
+    // The function definition has been modified by the common transformation
+    translator.getAnalysisManager().invalidate(_fctDef);
+
     AcceleratorConfiguration config = Configuration.get().accelerator();
 
     // TODO nodep passing!
@@ -395,15 +410,28 @@ public class ScaGPU extends Sca {
 
     // Prepare variables list for present/pcreate clauses and handle
     // promotion/privatize local strategy
-    List<String> presentList = _fctDef.getPresentVariables(xcodeml);
+    List<String> presentList = new ArrayList<>(translator.getAnalysisManager()
+        .get(PresentVariables.class, xcodeml, _fctDef));
     List<String> privateList = Collections.emptyList();
     List<String> createList = Collections.emptyList();
     if(config.getLocalStrategy() == AcceleratorLocalStrategy.PRIVATE) {
-      privateList = applyPrivateStrategy(xcodeml);
+      privateList = applyPrivateStrategy(xcodeml, translator);
     } else if(config.getLocalStrategy() == AcceleratorLocalStrategy.PROMOTE) {
-      createList = applyPromoteStrategy(xcodeml);
+      createList = applyPromoteStrategy(xcodeml, translator);
+      if(Configuration.get().getBooleanParameter(
+          Configuration.SCA_SCRATCH_POOL))
+      {
+        // Pooled arrays are already present on the device
+        List<String> pooled = applyScratchPool(xcodeml, translator,
+            createList);
+        createList.removeAll(pooled);
+        presentList.addAll(pooled);
+      }
     }
 
+    // Hoisted statements run on the host where array data might be stale
+    hoistLoopInvariants(xcodeml, loops, true);
+
     // Generate the data region
     Xblock doStmtBlock = new Xblock(loops.getOuterStatement());
     Directive.generateDataRegionClause(xcodeml, presentList, createList,
@@ -411,21 +439,120 @@ public class ScaGPU extends Sca {
 
     // Generate the parallel region
     Directive.generateParallelLoopClause(xcodeml, privateList,
-        loops.getOuterStatement(), loops.getOuterStatement(), null,
-        loops.size() + collapse);
+        detectReductions(xcodeml, loops, privateList), loops,
+        computeLoopMapping(loops, collapse));
 
     Directive.generateRoutineDirectives(xcodeml, _fctDef);
   }
 
+  /**
+   * Compute the mapping of the generated do statements on the accelerator.
+   * When loop_mapping_auto is enabled, the mapping is computed from the trip
+   * counts of the model dimensions. Otherwise, all levels are collapsed
+   * together. The mapping defined in the model configuration for the current
+   * function, or its default mapping, is applied on top.
+   *
+   * @param loops    Generated group of do statements.
+   * @param collapse Number of additional levels collapsed with the group.
+   * @return Loop mapping for the group.
+   */
+  private LoopMapping computeLoopMapping(NestedDoStatement loops,
+                                         int collapse)
+  {
+    List<DimensionDefinition> dimensions = _claw.getDefaultLayoutReversed();
+    LoopMapping mapping;
+    if(Configuration.get().getBooleanParameter(Configuration.LOOP_MAPPING_AUTO)
+        && dimensions.size() == loops.size())
+    {
+      List<Integer> tripCounts = new ArrayList<>();
+      for(DimensionDefinition dimension : dimensions) {
+        tripCounts.add(dimension.getTripCount());
+      }
+      mapping = LoopMapping.compute(tripCounts, collapse,
+          Configuration.get().getIntParameter(
+              Configuration.LOOP_MAPPING_MIN_GANGS),
+          Configuration.get().getIntParameter(
+              Configuration.LOOP_MAPPING_MAX_VECTOR_LENGTH));
+    } else {
+      mapping = new LoopMapping(loops.size() + collapse);
+    }
+    mapping.override(
+        Configuration.get().getModelConfig().getLoopMapping(_fctDef.getName()));
+    Message.debug(String.format("%s loop mapping for %s: %s",
+        SCA_DEBUG_PREFIX, _fctDef.getName(), mapping));
+    return mapping;
+  }
+
+  /**
+   * Detect the reductions in the generated do statements when
+   * sca_reduction_enabled is set. The candidates are the scalar variables
+   * shared by all the iterations: the scalar dummy arguments with intent out
+   * or inout that are not promoted and the variables not declared in the
+   * function/subroutine. A warning is issued for each candidate defined in
+   * the do statements that is refused by the analysis.
+   *
+   * @param xcodeml  Current translation unit.
+   * @param loops    Generated group of do statements.
+   * @param privates List of private variables.
+   * @return Reduction variables and their operator.
+   */
+  private Map<String, ReductionOperator> detectReductions(
+      XcodeProgram xcodeml, NestedDoStatement loops, List<String> privates)
+  {
+    if(!Configuration.get().getBooleanParameter(
+        Configuration.SCA_REDUCTION_ENABLED))
+    {
+      return Collections.emptyMap();
+    }
+    Set<String> candidates = new LinkedHashSet<>();
+    for(Xnode decl : _fctDef.getDeclarationTable().values()) {
+      if(!decl.is(Xcode.VAR_DECL)
+          || !xcodeml.getTypeTable().isBasicType(decl))
+      {
+        continue;
+      }
+      String name = decl.matchSeq(Xcode.NAME).value();
+      FbasicType bt = xcodeml.getTypeTable().getBasicType(decl);
+      if(!bt.isArray() && bt.getIntent().isIntentOut()
+          && !_promotions.containsKey(name))
+      {
+        candidates.add(name.toLowerCase());
+      }
+    }
+    for(String name : DefUseAnalysis.getUsedNames(loops.getOuterStatement())) {
+      if(!_fctDef.getDeclarationTable().contains(name)) {
+        candidates.add(name);
+      }
+    }
+    privates.forEach(p -> candidates.remove(p.toLowerCase()));
+
+    ReductionAnalysis analysis = new ReductionAnalysis(xcodeml,
+        loops.getOuterStatement(), candidates,
+        Configuration.get().getBooleanParameter(
+            Configuration.SCA_REDUCTION_RELAXED));
+    analysis.getRefusals().forEach((name, reason) ->
+        xcodeml.addWarning(String.format("No reduction generated for %s in " +
+            "%s: %s.", name, _fctDef.getName(), reason),
+            _claw.getPragma().lineNo()));
+    analysis.getReductions().forEach((name, operator) ->
+        Message.debug(String.format("%s reduction(%s:%s) in %s",
+            SCA_DEBUG_PREFIX, operator.fortran(), name, _fctDef.getName())));
+    return analysis.getReductions();
+  }
+
   /**
    * Apply the private local array strategy. Gather all information about
    * local array requiring a privatization.
    *
-   * @param xcodeml Current translation unit.
+   * @param xcodeml    Current translation unit.
+   * @param translator Current translator.
    * @return List of private variables.
    */
-  private List<String> applyPrivateStrategy(XcodeProgram xcodeml) {
-    List<String> privateList = _fctDef.getLocalVariables(xcodeml, true);
+  private List<String> applyPrivateStrategy(XcodeProgram xcodeml,
+                                            Translator translator)
+  {
+    List<String> privateList = new ArrayList<>(translator
+        .getAnalysisManager().get(LocalArrays.class, xcodeml, _fctDef));
     // Iterate over a copy to be able to remove items
     for(String identifier : new ArrayList<>(privateList)) {
       if(_promotions.containsKey(identifier)) {
@@ -439,14 +566,18 @@ public class ScaGPU extends Sca {
    * Apply the promotion local array strategy. Gather all information about
    * local variable requiring a promotion and apply it.
    *
-   * @param xcodeml Current translation unit.
+   * @param xcodeml    Current translation unit.
+   * @param translator Current translator.
    * @return List of promoted variable requiring an allocation.
    * @throws IllegalTransformationException If promotion of variable fails.
    */
-  private List<String> applyPromoteStrategy(XcodeProgram xcodeml)
+  private List<String> applyPromoteStrategy(XcodeProgram xcodeml,
+                                            Translator translator)
       throws IllegalTransformationException
   {
-    List<String> createList = _fctDef.getLocalVariables(xcodeml, true);
+    List<String> createList = new ArrayList<>(translator
+        .getAnalysisManager().get(LocalArrays.class, xcodeml, _fctDef));
+    List<PromotionInfo> promoted = new ArrayList<>();
     for(String arrayIdentifier : createList) {
       _arrayFieldsInOut.add(arrayIdentifier);
       PromotionInfo promotionInfo = new PromotionInfo(arrayIdentifier,
@@ -454,11 +585,45 @@ public class ScaGPU extends Sca {
 
       Field.promote(promotionInfo, _fctDef, xcodeml);
       _promotions.put(arrayIdentifier, promotionInfo);
+      promoted.add(promotionInfo);
+    }
 
-      Field.adaptArrayRef(promotionInfo, _fctDef.body(), false, xcodeml);
+    Field.adaptArrayRefs(promoted, _fctDef.body(), false, xcodeml);
+    for(PromotionInfo promotionInfo : promoted) {
       Field.adaptAllocate(promotionInfo, _fctDef.body(), xcodeml);
     }
     return createList;
   }
 
+  /**
+   * Replace the promoted local arrays by slots of the scratch pool of the
+   * translation unit. The pool is shared by all the SCA transformations of
+   * the translation unit and generated by the ScratchPoolGeneration
+   * transformation.
+   *
+   * @param xcodeml    Current translation unit.
+   * @param translator Current translator.
+   * @param promoted   List of promoted local arrays.
+   * @return List of the arrays replaced by a slot.
+   */
+  private List<String> applyScratchPool(XcodeProgram xcodeml,
+                                        ClawTranslator translator,
+                                        List<String> promoted)
+  {
+    Object stored = translator.hasElement(xcodeml);
+    ScratchPool pool;
+    if(stored instanceof ScratchPool) {
+      pool = (ScratchPool) stored;
+    } else {
+      pool = new ScratchPool(ScratchPool.getModuleName(xcodeml));
+      translator.storeElement(xcodeml, pool);
+    }
+    List<String> pooled = new ArrayList<>();
+    for(String arrayIdentifier : promoted) {
+      if(pool.add(xcodeml, _fctDef, arrayIdentifier)) {
+        pooled.add(arrayIdentifier);
+      }
+    }
+    return pooled;
+  }
 }
@@ -8,6 +8,7 @@ import claw.ClawVersion;
 import claw.shenron.transformation.BlockTransformation;
 import claw.tatsu.common.CompilerDirective;
 import claw.tatsu.common.Context;
+import claw.tatsu.common.Message;
 import claw.tatsu.common.Target;
 import claw.tatsu.directive.configuration.AcceleratorConfiguration;
 import claw.tatsu.directive.configuration.OpenAccConfiguration;
@@ -84,10 +85,31 @@ public class Configuration {
   private static final String INDEPENDENT_GR_TYPE = "independent";
   private static final String DIRECTIVE_TR_TYPE = "directive";
   private static final String TRANSLATION_UNIT_TR_TYPE = "translation_unit";
+  // Accelerator loop mapping configuration keys
+  public static final String LOOP_MAPPING_AUTO = "loop_mapping_auto";
+  public static final String LOOP_MAPPING_MIN_GANGS = "loop_mapping_min_gangs";
+  public static final String LOOP_MAPPING_MAX_VECTOR_LENGTH =
+      "loop_mapping_max_vector_length";
   // OpenMP specific values
   public static final String CPU_STRATEGY = "cpu_trans_strategy";
   public static final String CPU_STRATEGY_SINGLE = "single";
   public static final String CPU_STRATEGY_FUSION = "fusion";
+  public static final String CPU_SIMD = "cpu_simd";
+  public static final String CPU_SIMD_LENGTH = "cpu_simd_length";
+  public static final String CPU_SIMD_ALIGNMENT = "cpu_simd_alignment";
+  public static final String CPU_SIMD_PADDING = "cpu_simd_padding";
+  // Loop transformation configuration keys
+  public static final String LOOP_FUSION_AUTO = "loop_fusion_auto";
+  public static final String LOOP_UNSWITCHING_AUTO = "loop_unswitching_auto";
+  public static final String LOOP_UNSWITCHING_BUDGET =
+      "loop_unswitching_budget";
+  // Inlining configuration keys
+  public static final String INLINE_AUTO = "inline_auto";
+  public static final String INLINE_MAX_STATEMENTS = "inline_max_statements";
+  // Caching configuration keys
+  public static final String KCACHE_STRATEGY = "kcache_strategy";
+  public static final String KCACHE_STRATEGY_SCALAR = "scalar";
+  public static final String KCACHE_STRATEGY_CACHE = "cache";
   // SCA configuration keys
   public static final String SCA_ELEMENTAL_PROMOTION_ASSUMED =
       "sca_elemental_promotion_assumed";
@@ -105,7 +127,19 @@ public class Configuration {
   public static final String SCA_FORWARD_UPDATE_IN = "in";
   public static final String SCA_FORWARD_UPDATE_OUT = "out";
   public static final String SCA_FORWARD_UPDATE_INOUT = "inout";
-
+  public static final String SCA_LICM_ENABLED = "sca_licm_enabled";
+  public static final String SCA_REDUCTION_ENABLED = "sca_reduction_enabled";
+  public static final String SCA_REDUCTION_RELAXED = "sca_reduction_relaxed";
+  public static final String SCA_SCRATCH_POOL = "sca_scratch_pool";
+  public static final String SCA_SPECIALIZATION = "sca_specialization";
+  public static final String UPDATE_ELIMINATION = "update_elimination";
+  public static final String PARALLEL_REGION_FUSION = "parallel_region_fusion";
+  // Instrumentation configuration keys
+  public static final String INSTRUMENTATION = "instrumentation";
+  // Report configuration keys
+  public static final String REPORT_MACHINE_BALANCE = "report_machine_balance";
+
+  private static final String DEBUG_PREFIX = "CONFIGURATION:";
   // env var
   private static final String CLAW_TRANS_SET_PATH = "CLAW_TRANS_SET_PATH";
 
@@ -116,6 +150,8 @@ public class Configuration {
   private Map<String, GroupConfiguration> _availableGroups;
   private AcceleratorConfiguration _accelerator;
   private String[] _transSetPaths;
+  private Map<String, String> _setJars;
+  private Path _snapshotDirectory = null;
   private boolean _forcePure = false;
   private final ModelConfig _modelConfig;
 
@@ -200,36 +236,45 @@ public class Configuration {
     _parameters = new HashMap<>();
     _groups = new ArrayList<>();
     _availableGroups = new HashMap<>();
-    boolean readDefault = true;
-    Document userConf = null;
+
+    _setJars = new HashMap<>();
 
     // Read the environment variable for external transformation sets
     _transSetPaths = new String[0];
+    String transSetPath = System.getenv(CLAW_TRANS_SET_PATH);
 
-    if(System.getenv(CLAW_TRANS_SET_PATH) != null) {
-      _transSetPaths = System.getenv(CLAW_TRANS_SET_PATH).split(";");
+    if(transSetPath != null) {
+      _transSetPaths = transSetPath.split(";");
     }
 
-    // Configuration has been given by the user. Read it first.
-    if(userConfigFile != null) {
-      File userConfiguration = Paths.get(userConfigFile).toFile();
-      userConf = validateConfiguration(userConfiguration);
-      readDefault = isExtension(userConf);
+    // Look for a snapshot of the same configuration files
+    String snapshotKey = null;
+    ConfigurationSnapshot snapshot = null;
+    if(_snapshotDirectory != null) {
+      try {
+        snapshotKey = ConfigurationSnapshot.computeKey(_configuration_path,
+            userConfigFile, transSetPath);
+        snapshot = ConfigurationSnapshot.read(_snapshotDirectory, snapshotKey);
+      } catch(IOException e) {
+        Message.debug(String.format("%s %s", DEBUG_PREFIX, e.getMessage()));
+      }
     }
 
-    if(readDefault) {
-      // There is no user defined configuration or it is just an extension.
-      File defaultConfigFile =
-          Paths.get(_configuration_path, DEFAULT_CONFIG_FILE).toFile();
-      Document defaultConf = validateConfiguration(defaultConfigFile);
-      readConfiguration(defaultConf, false);
-      if(userConf != null) { // Read extension
-        readConfiguration(userConf, true);
-      }
+    if(snapshot != null) {
+      restoreSnapshot(snapshot);
+      Message.debug(String.format("%s restored snapshot %s", DEBUG_PREFIX,
+          snapshotKey));
     } else {
-      // User defined configuration is a full configuration.
-      // Then the default one is not read.
-      readConfiguration(userConf, false);
+      readConfigurationFiles(userConfigFile);
+      if(snapshotKey != null) {
+        try {
+          new ConfigurationSnapshot(_parameters, _groups, _setJars)
+              .write(_snapshotDirectory, snapshotKey);
+        } catch(IOException e) {
+          Message.debug(String.format("%s cannot write snapshot: %s",
+              DEBUG_PREFIX, e.getMessage()));
+        }
+      }
     }
 
     setUserDefinedTarget(userDefinedTarget);
@@ -254,6 +299,72 @@ public class Configuration {
     }
   }
 
+  /**
+   * Read, validate and resolve the configuration files.
+   *
+   * @param userConfigFile Path to the alternative configuration. Can be null.
+   * @throws Exception If configuration cannot be loaded properly.
+   */
+  private void readConfigurationFiles(String userConfigFile) throws Exception {
+    boolean readDefault = true;
+    Document userConf = null;
+
+    // Configuration has been given by the user. Read it first.
+    if(userConfigFile != null) {
+      File userConfiguration = Paths.get(userConfigFile).toFile();
+      userConf = validateConfiguration(userConfiguration);
+      readDefault = isExtension(userConf);
+    }
+
+    if(readDefault) {
+      // There is no user defined configuration or it is just an extension.
+      File defaultConfigFile =
+          Paths.get(_configuration_path, DEFAULT_CONFIG_FILE).toFile();
+      Document defaultConf = validateConfiguration(defaultConfigFile);
+      readConfiguration(defaultConf, false);
+      if(userConf != null) { // Read extension
+        readConfiguration(userConf, true);
+      }
+    } else {
+      // User defined configuration is a full configuration.
+      // Then the default one is not read.
+      readConfiguration(userConf, false);
+    }
+  }
+
+  /**
+   * Restore the parameters and the transformation groups from a snapshot.
+   * Only the transformation classes are resolved again.
+   *
+   * @param snapshot Snapshot of the configuration files.
+   * @throws Exception If a transformation class or an external jar is not
+   *                   available anymore.
+   */
+  private void restoreSnapshot(ConfigurationSnapshot snapshot)
+      throws Exception
+  {
+    _parameters.putAll(snapshot.getParameters());
+    Map<String, URLClassLoader> loaders = new HashMap<>();
+    for(GroupConfiguration group : snapshot.getGroups()) {
+      String jar = snapshot.getJar(group.getSetName());
+      URLClassLoader loader = null;
+      if(jar != null) {
+        _setJars.put(group.getSetName(), jar);
+        loader = loaders.get(jar);
+        if(loader == null) {
+          loader = loadExternalJar(jar);
+          loaders.put(jar, loader);
+        }
+      }
+      GroupConfiguration gc = new GroupConfiguration(group.getSetName(),
+          group.getName(), group.getType(), group.getTriggerType(),
+          group.getTransformationClassName(), group.getDirective(),
+          resolveClass(group.getTransformationClassName(), loader));
+      _availableGroups.put(gc.getName(), gc);
+      _groups.add(gc);
+    }
+  }
+
   /**
    * Check whether the configuration file is an extension of the default
    * configuration or if it is a standalone configuration.
@@ -408,6 +519,21 @@ public class Configuration {
         && _parameters.get(key).equalsIgnoreCase(Xname.TRUE);
   }
 
+  /**
+   * Get integer value of a parameter.
+   *
+   * @param key Key of the parameter.
+   * @return Value of the parameter. 0 if parameter doesn't exists or its value
+   * is not an integer.
+   */
+  public int getIntParameter(String key) {
+    try {
+      return Integer.parseInt(_parameters.getOrDefault(key, "0").trim());
+    } catch(NumberFormatException ignored) {
+      return 0;
+    }
+  }
+
   /**
    * Get the GPU specific configuration information.
    *
@@ -472,6 +598,7 @@ public class Configuration {
       // Try to locate the external jar
       if(isExternal) {
         String externalJar = root.getAttribute(JAR_ATTR);
+        _setJars.put(setName, externalJar);
         URLClassLoader loader = loadExternalJar(externalJar);
         readTransformations(setName, root, loader);
       } else {
@@ -583,18 +710,7 @@ public class Configuration {
           }
         }
         // Find actual class
-        Class transClass;
-        try {
-          // Check if class is there
-          if(loader != null) {
-            transClass = Class.forName(cPath, true, loader);
-          } else {
-            transClass = Class.forName(cPath);
-          }
-        } catch(ClassNotFoundException e) {
-          throw new Exception("Transformation class " + cPath +
-              " not available");
-        }
+        Class<?> transClass = resolveClass(cPath, loader);
 
         // Check that translation unit trigger type are not block transformation
         if(triggerType == GroupConfiguration.TriggerType.TRANSLATION_UNIT
@@ -615,6 +731,31 @@ public class Configuration {
     }
   }
 
+  /**
+   * Find the actual class of a transformation.
+   *
+   * @param cPath  Path to the transformation class.
+   * @param loader Class loader of the external jar. Null if the class is part
+   *               of the translator.
+   * @return Transformation class.
+   * @throws Exception If the class is not available.
+   */
+  private Class<?> resolveClass(String cPath, URLClassLoader loader)
+      throws Exception
+  {
+    try {
+      // Check if class is there
+      if(loader != null) {
+        return Class.forName(cPath, true, loader);
+      } else {
+        return Class.forName(cPath);
+      }
+    } catch(ClassNotFoundException e) {
+      throw new Exception("Transformation class " + cPath +
+          " not available");
+    }
+  }
+
   /**
    * Read defined transformation groups in configuration. Order determines
    * application order of transformation.
@@ -716,6 +857,17 @@ public class Configuration {
     }
   }
 
+  /**
+   * Set the directory where the snapshots of the resolved configuration are
+   * stored. Must be called before load to be used.
+   *
+   * @param directory Path to the snapshot directory. Null to disable the
+   *                  snapshots.
+   */
+  public void setSnapshotDirectory(String directory) {
+    _snapshotDirectory = directory == null ? null : Paths.get(directory);
+  }
+
   /**
    * Enable the force pure option.
    */
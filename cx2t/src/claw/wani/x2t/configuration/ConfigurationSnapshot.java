@@ -0,0 +1,256 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.wani.x2t.configuration;
+
+import claw.ClawVersion;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Binary snapshot of a resolved configuration. The snapshot holds the global
+ * parameters, the ordered transformation groups and the external jar of
+ * their transformation set as they are after reading the configuration files.
+ * It is stored in a cache directory under a key computed from the content of
+ * all the input configuration files and the CLAW_TRANS_SET_PATH value so a
+ * later load with the same inputs can skip the XML parsing and the schema
+ * validation. The transformation classes are not part of the snapshot and are
+ * resolved again when it is restored.
+ *
+ * @author clementval
+ */
+public class ConfigurationSnapshot {
+
+  private static final int MAGIC = 0x434c4157; // CLAW
+  private static final int FORMAT_VERSION = 1;
+  private static final String PREFIX = "config-";
+  private static final String EXTENSION = ".snapshot";
+  private static final String HASH_ALGORITHM = "SHA-1";
+  private static final String NO_JAR = "";
+
+  private final Map<String, String> _parameters;
+  private final List<GroupConfiguration> _groups;
+  private final Map<String, String> _setJars;
+
+  /**
+   * Constructs a new snapshot.
+   *
+   * @param parameters Global parameters.
+   * @param groups     Ordered transformation groups. The transformation class
+   *                   of the groups is not stored.
+   * @param setJars    External jar of the transformation sets. Sets without
+   *                   external jar are not present.
+   */
+  public ConfigurationSnapshot(Map<String, String> parameters,
+                               List<GroupConfiguration> groups,
+                               Map<String, String> setJars)
+  {
+    _parameters = parameters;
+    _groups = groups;
+    _setJars = setJars;
+  }
+
+  /**
+   * Get the global parameters.
+   *
+   * @return Map of the parameters.
+   */
+  public Map<String, String> getParameters() {
+    return _parameters;
+  }
+
+  /**
+   * Get the ordered transformation groups. The groups read from a snapshot
+   * file have no transformation class.
+   *
+   * @return List of group configuration.
+   */
+  public List<GroupConfiguration> getGroups() {
+    return _groups;
+  }
+
+  /**
+   * Get the external jar of a transformation set.
+   *
+   * @param setName Name of the transformation set.
+   * @return Name of the jar file. Null if the set is not external.
+   */
+  public String getJar(String setName) {
+    return _setJars.get(setName);
+  }
+
+  /**
+   * Compute the key of a snapshot from its inputs. Every XML and XSD file of
+   * the configuration directory is part of the key as the transformation sets
+   * are located there.
+   *
+   * @param configPath     Path to the configuration files and XSD schemas.
+   * @param userConfigFile Path to the user configuration. Can be null.
+   * @param transSetPath   Value of CLAW_TRANS_SET_PATH. Can be null.
+   * @return Hexadecimal key.
+   * @throws IOException If one of the files cannot be read.
+   */
+  public static String computeKey(String configPath, String userConfigFile,
+                                  String transSetPath)
+      throws IOException
+  {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance(HASH_ALGORITHM);
+    } catch(NoSuchAlgorithmException e) {
+      throw new IOException(e.getMessage());
+    }
+    update(digest, ClawVersion.VERSION);
+    update(digest, transSetPath == null ? "" : transSetPath);
+    File[] files = Paths.get(configPath).toFile().listFiles((dir, name) ->
+        name.endsWith(".xml") || name.endsWith(".xsd"));
+    if(files == null) {
+      throw new IOException("Cannot list configuration directory "
+          + configPath);
+    }
+    Arrays.sort(files);
+    for(File file : files) {
+      update(digest, file.getName());
+      digest.update(Files.readAllBytes(file.toPath()));
+    }
+    if(userConfigFile != null) {
+      update(digest, userConfigFile);
+      digest.update(Files.readAllBytes(Paths.get(userConfigFile)));
+    }
+    StringBuilder key = new StringBuilder();
+    for(byte b : digest.digest()) {
+      key.append(String.format("%02x", b));
+    }
+    return key.toString();
+  }
+
+  /**
+   * Read the snapshot stored under a key.
+   *
+   * @param directory Cache directory.
+   * @param key       Key of the snapshot.
+   * @return The snapshot. Null if there is no snapshot for this key.
+   * @throws IOException If the snapshot file exists but is not valid.
+   */
+  public static ConfigurationSnapshot read(Path directory, String key)
+      throws IOException
+  {
+    File file = getFile(directory, key).toFile();
+    if(!file.isFile()) {
+      return null;
+    }
+    try(DataInputStream in = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(file))))
+    {
+      if(in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION
+          || !key.equals(in.readUTF()))
+      {
+        throw new IOException("Invalid configuration snapshot " + file);
+      }
+      Map<String, String> parameters = new HashMap<>();
+      int nbParameters = in.readInt();
+      for(int i = 0; i < nbParameters; ++i) {
+        parameters.put(in.readUTF(), in.readUTF());
+      }
+      List<GroupConfiguration> groups = new ArrayList<>();
+      Map<String, String> setJars = new HashMap<>();
+      int nbGroups = in.readInt();
+      for(int i = 0; i < nbGroups; ++i) {
+        String setName = in.readUTF();
+        String name = in.readUTF();
+        GroupConfiguration.GroupType type =
+            GroupConfiguration.GroupType.valueOf(in.readUTF());
+        GroupConfiguration.TriggerType trigger =
+            GroupConfiguration.TriggerType.valueOf(in.readUTF());
+        String cPath = in.readUTF();
+        String directive = in.readBoolean() ? in.readUTF() : null;
+        String jar = in.readUTF();
+        if(!jar.equals(NO_JAR)) {
+          setJars.put(setName, jar);
+        }
+        groups.add(new GroupConfiguration(setName, name, type, trigger, cPath,
+            directive, null));
+      }
+      return new ConfigurationSnapshot(parameters, groups, setJars);
+    } catch(IllegalArgumentException | EOFException e) {
+      throw new IOException("Invalid configuration snapshot " + file);
+    }
+  }
+
+  /**
+   * Write the snapshot under a key. The file is written next to its final
+   * location and moved so concurrent translator processes never read a
+   * partial snapshot.
+   *
+   * @param directory Cache directory. Created if it does not exist.
+   * @param key       Key of the snapshot.
+   * @throws IOException If the snapshot cannot be written.
+   */
+  public void write(Path directory, String key) throws IOException {
+    Files.createDirectories(directory);
+    Path tmp = Files.createTempFile(directory, PREFIX, ".tmp");
+    try {
+      try(DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(new FileOutputStream(tmp.toFile()))))
+      {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeUTF(key);
+        out.writeInt(_parameters.size());
+        for(Map.Entry<String, String> parameter : _parameters.entrySet()) {
+          out.writeUTF(parameter.getKey());
+          out.writeUTF(parameter.getValue());
+        }
+        out.writeInt(_groups.size());
+        for(GroupConfiguration group : _groups) {
+          out.writeUTF(group.getSetName());
+          out.writeUTF(group.getName());
+          out.writeUTF(group.getType().name());
+          out.writeUTF(group.getTriggerType().name());
+          out.writeUTF(group.getTransformationClassName());
+          out.writeBoolean(group.getDirective() != null);
+          if(group.getDirective() != null) {
+            out.writeUTF(group.getDirective());
+          }
+          out.writeUTF(_setJars.getOrDefault(group.getSetName(), NO_JAR));
+        }
+      }
+      Files.move(tmp, getFile(directory, key),
+          StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  /**
+   * Get the snapshot file for a key.
+   *
+   * @param directory Cache directory.
+   * @param key       Key of the snapshot.
+   * @return Path to the snapshot file.
+   */
+  private static Path getFile(Path directory, String key) {
+    return directory.resolve(PREFIX + key + EXTENSION);
+  }
+
+  /**
+   * Add a string and its separator to the digest.
+   *
+   * @param digest Digest to be updated.
+   * @param value  String value.
+   */
+  private static void update(MessageDigest digest, String value) {
+    digest.update(value.getBytes(StandardCharsets.UTF_8));
+    digest.update((byte) 0);
+  }
+}
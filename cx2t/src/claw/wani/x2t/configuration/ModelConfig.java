@@ -4,6 +4,7 @@
  */
 package claw.wani.x2t.configuration;
 
+import claw.tatsu.directive.common.LoopMapping;
 import claw.tatsu.xcodeml.abstraction.DimensionDefinition;
 import net.consensys.cava.toml.Toml;
 import net.consensys.cava.toml.TomlArray;
@@ -30,10 +31,21 @@ public class ModelConfig {
   private static final String KEY_DIMENSION_UB = "upper";
   private static final String KEY_DIMENSION_STEP = "step";
   private static final String KEY_DIMENSION_ITERATION = "iteration";
+  private static final String KEY_DIMENSION_TRIP_COUNT = "trip_count";
+  private static final String KEY_DIMENSION_SPECIALIZE = "specialize";
   private static final String KEY_LAYOUTS = "layouts";
   private static final String KEY_LAYOUT_POSITION = "position";
+  private static final String KEY_MAPPINGS = "mappings";
+  private static final String KEY_MAPPING_KERNEL = "kernel";
+  private static final String KEY_MAPPING_COLLAPSE = "collapse";
+  private static final String KEY_MAPPING_INNER_COLLAPSE = "inner_collapse";
+  private static final String KEY_MAPPING_NUM_GANGS = "num_gangs";
+  private static final String KEY_MAPPING_NUM_WORKERS = "num_workers";
+  private static final String KEY_MAPPING_VECTOR_LENGTH = "vector_length";
+  private static final String KEY_MAPPING_THREAD_LIMIT = "thread_limit";
 
   private static final String DEFAULT_LAYOUT_ID = "default";
+  private static final String DEFAULT_MAPPING_ID = "default";
   private static final String DEFAULT_LOWER_BOUND = "1";
 
   static final String ERR_MALFORMATTED =
@@ -54,12 +66,17 @@ public class ModelConfig {
       + "%s in not available in this configuration.";
   static final String ERR_NO_BASE_DIM =
       "Layout %s is missing the base dimension \":\"";
+  static final String ERR_MAPPING_NO_KERNEL =
+      "Loop mapping is missing kernel information";
+  static final String ERR_SPECIALIZE_CONSTANT = "Dimension %s cannot be " +
+      "specialized as its size upper bound is not a variable";
 
   // Dotted key from the configuration file
   private static final String KEY_MODEL_NAME = "model.name";
 
   private final Map<String, DimensionDefinition> _dimensions;
   private final Map<String, List<DimensionDefinition>> _layouts;
+  private final Map<String, LoopMapping> _mappings;
 
   private String _modelName;
   private boolean _isLoaded;
@@ -70,6 +87,7 @@ public class ModelConfig {
   public ModelConfig() {
     _dimensions = new LinkedHashMap<>();
     _layouts = new HashMap<>();
+    _mappings = new HashMap<>();
     _isLoaded = false;
   }
 
@@ -83,6 +101,7 @@ public class ModelConfig {
   void load(String configPath) throws Exception {
     _dimensions.clear();
     _layouts.clear();
+    _mappings.clear();
     load(new FileInputStream(configPath));
   }
 
@@ -94,6 +113,7 @@ public class ModelConfig {
       _modelName = result.getString(KEY_MODEL_NAME);
       readDimensions(result);
       readLayouts(result);
+      readMappings(result);
     }
     _isLoaded = true;
   }
@@ -111,7 +131,9 @@ public class ModelConfig {
    * [dimensions.iteration]<br>
    * lower = "pstart" # if not specified size.lower by default<br>
    * upper = "pend"   # if not specified size.upper by default<br>
-   * step = 1         # if not specified, 1 by default<br><br>
+   * step = 1         # if not specified, 1 by default<br>
+   * trip_count = 20000 # optional expected number of iterations<br>
+   * specialize = 16 # optional constant value of size.upper<br><br>
    *
    * @param result The current TOML parse result object.
    * @throws Exception If the result is not conform to the specifications.
@@ -151,6 +173,15 @@ public class ModelConfig {
             new DimensionDefinition(dimId, lowerBound, upperBound,
                 lowerItBound, upperItBound, stepItBound));
       }
+      _dimensions.get(dimId).setTripCountHint(
+          readInt(dimension, KEY_DIMENSION_TRIP_COUNT));
+      int specializedSize = readInt(dimension, KEY_DIMENSION_SPECIALIZE);
+      if(specializedSize > 0
+          && !_dimensions.get(dimId).getUpperBound().isVar())
+      {
+        throw new Exception(String.format(ERR_SPECIALIZE_CONSTANT, dimId));
+      }
+      _dimensions.get(dimId).setSpecializedSize(specializedSize);
     }
   }
 
@@ -214,6 +245,62 @@ public class ModelConfig {
     }
   }
 
+  /**
+   * Read all the loop mappings defined in the model configuration. Loop
+   * mappings are optional and override the computed mapping of the kernels.
+   *
+   * The loop mappings can be defined as follows:
+   *
+   * [[mappings]]
+   * kernel = "name"     # subroutine/function name or "default"
+   * collapse = 1        # levels collapsed in the outer construct
+   * inner_collapse = 1  # levels collapsed in the inner construct
+   * num_gangs = 256
+   * num_workers = 1
+   * vector_length = 128
+   * thread_limit = 128
+   *
+   * @param result The current TOML parse result object.
+   * @throws Exception If the result is not conform to the specifications.
+   */
+  private void readMappings(TomlParseResult result) throws Exception {
+    TomlArray mappings = result.getArray(KEY_MAPPINGS);
+    if(mappings == null) {
+      return;
+    }
+
+    for(int i = 0; i < mappings.size(); ++i) {
+      TomlTable table = mappings.getTable(i);
+      String kernel = table.getString(KEY_MAPPING_KERNEL);
+      if(kernel == null) {
+        throw new Exception(ERR_MAPPING_NO_KERNEL);
+      }
+      LoopMapping mapping =
+          new LoopMapping(readInt(table, KEY_MAPPING_COLLAPSE));
+      mapping.setInnerCollapse(readInt(table, KEY_MAPPING_INNER_COLLAPSE));
+      mapping.setNumGangs(readInt(table, KEY_MAPPING_NUM_GANGS));
+      mapping.setNumWorkers(readInt(table, KEY_MAPPING_NUM_WORKERS));
+      mapping.setVectorLength(readInt(table, KEY_MAPPING_VECTOR_LENGTH));
+      mapping.setThreadLimit(readInt(table, KEY_MAPPING_THREAD_LIMIT));
+      putLoopMapping(kernel, mapping);
+    }
+  }
+
+  /**
+   * Read an integer value if present.
+   *
+   * @param table     Current table to read in.
+   * @param dottedKey Dotted key to get the value.
+   * @return Integer value if present. 0 otherwise.
+   */
+  private int readInt(TomlTable table, String dottedKey) {
+    Object value = table.get(dottedKey);
+    if(value instanceof Number) {
+      return ((Number) value).intValue();
+    }
+    return 0;
+  }
+
   /**
    * Read value if present or return null.
    *
@@ -309,6 +396,54 @@ public class ModelConfig {
     }
   }
 
+  /**
+   * Get the constant values declared for the size of the dimensions.
+   *
+   * @return Map of lower case size upper bound variables and their constant
+   * value in the order of the dimensions.
+   */
+  public Map<String, Integer> getSpecializations() {
+    Map<String, Integer> specializations = new LinkedHashMap<>();
+    for(DimensionDefinition dimension : _dimensions.values()) {
+      if(dimension.getSpecializedSize() > 0) {
+        specializations.put(dimension.getUpperBound().getValue().toLowerCase(),
+            dimension.getSpecializedSize());
+      }
+    }
+    return specializations;
+  }
+
+  /**
+   * Get the number of iterations of the dimensions when it is known from the
+   * iteration bounds or from a trip count hint.
+   *
+   * @return Map of lower case dimension identifiers and their number of
+   * iterations in the order of the dimensions.
+   */
+  public Map<String, Integer> getTripCounts() {
+    Map<String, Integer> tripCounts = new LinkedHashMap<>();
+    for(DimensionDefinition dimension : _dimensions.values()) {
+      if(dimension.getTripCount() > 0) {
+        tripCounts.put(dimension.getIdentifier().toLowerCase(),
+            dimension.getTripCount());
+      }
+    }
+    return tripCounts;
+  }
+
+  /**
+   * Get the identifiers of the dimensions defined in the configuration.
+   *
+   * @return Set of lower case dimension identifiers.
+   */
+  public Set<String> getDimensionIdentifiers() {
+    Set<String> identifiers = new HashSet<>();
+    for(DimensionDefinition dimension : _dimensions.values()) {
+      identifiers.add(dimension.getIdentifier().toLowerCase());
+    }
+    return identifiers;
+  }
+
   /**
    * Get the number of dimensions defined in the configuration.
    *
@@ -407,4 +542,38 @@ public class ModelConfig {
     return _isLoaded;
   }
 
+  /**
+   * Add a loop mapping override for a kernel.
+   *
+   * @param kernel  Name of the kernel or "default" for all kernels.
+   * @param mapping Loop mapping override.
+   */
+  public void putLoopMapping(String kernel, LoopMapping mapping) {
+    if(kernel != null && mapping != null) {
+      _mappings.put(kernel.toLowerCase(), mapping);
+    }
+  }
+
+  /**
+   * Get the loop mapping override for a kernel. If no override is defined for
+   * the kernel, the default override is returned.
+   *
+   * @param kernel Name of the kernel.
+   * @return Loop mapping override if defined. Null otherwise.
+   */
+  public LoopMapping getLoopMapping(String kernel) {
+    if(kernel != null && _mappings.containsKey(kernel.toLowerCase())) {
+      return _mappings.get(kernel.toLowerCase());
+    }
+    return _mappings.get(DEFAULT_MAPPING_ID);
+  }
+
+  /**
+   * Get the number of loop mappings defined in the configuration.
+   *
+   * @return Number of loop mappings.
+   */
+  public int getNbLoopMappings() {
+    return _mappings.size();
+  }
 }
@@ -4,11 +4,13 @@
  */
 package claw.wani.x2t.translator;
 
+import claw.shenron.analysis.*;
 import claw.shenron.transformation.DependentTransformationGroup;
 import claw.shenron.transformation.IndependentTransformationGroup;
 import claw.shenron.transformation.Transformation;
 import claw.shenron.transformation.TransformationGroup;
 import claw.shenron.translator.Translator;
+import claw.tatsu.analysis.topology.CallGraph;
 import claw.tatsu.analysis.topology.DirectedGraph;
 import claw.tatsu.analysis.topology.TopologicalSort;
 import claw.tatsu.common.Context;
@@ -26,6 +28,7 @@ import claw.wani.transformation.ll.caching.Kcaching;
 import claw.wani.transformation.ll.directive.DirectivePrimitive;
 import claw.wani.transformation.ll.loop.*;
 import claw.wani.transformation.ll.utility.ArrayToFctCall;
+import claw.wani.transformation.ll.utility.Inlining;
 import claw.wani.transformation.ll.utility.UtilityRemove;
 import claw.wani.transformation.sca.*;
 import claw.wani.x2t.configuration.Configuration;
@@ -48,6 +51,10 @@ public class ClawTranslator implements Translator {
   // Hold cross-transformation elements
   private final Map<Element, Object> _crossTransformationTable;
   private final Map<ClawDirectiveKey, Deque<ClawPragma>> _blockDirectives;
+  // Hold information reported by transformations
+  private final Map<String, List<String>> _reportInfo;
+  // Cache the analyses of the function definitions
+  private final AnalysisManager _analysisManager;
   private int _transformationCounter = 0;
 
   /**
@@ -77,6 +84,14 @@ public class ClawTranslator implements Translator {
     _crossTransformationTable = new HashMap<>();
 
     _blockDirectives = new Hashtable<>();
+
+    _reportInfo = new LinkedHashMap<>();
+
+    _analysisManager = new AnalysisManager();
+    _analysisManager.register(new AssignStatements());
+    _analysisManager.register(new InductionVariables());
+    _analysisManager.register(new LocalArrays());
+    _analysisManager.register(new PresentVariables());
   }
 
   @Override
@@ -118,6 +133,9 @@ public class ClawTranslator implements Translator {
       case IF_EXTRACT:
         addTransformation(xcodeml, new IfExtract(analyzedPragma));
         break;
+      case INLINE:
+        addTransformation(xcodeml, new Inlining(analyzedPragma));
+        break;
       case SCA:
         addScaTransformation(xcodeml, analyzedPragma);
         break;
@@ -181,7 +199,7 @@ public class ClawTranslator implements Translator {
       }
     }
 
-    reorderTransformations();
+    reorderTransformations(xcodeml);
   }
 
   /**
@@ -321,9 +339,14 @@ public class ClawTranslator implements Translator {
   }
 
   /**
+   * Order the SCA forward transformations so a transformation is applied
+   * after the ones of the functions it calls. The called functions are
+   * resolved through the call graph of the translation unit so renamed and
+   * type-bound procedures are ordered as well.
    *
+   * @param xcodeml Current translation unit.
    */
-  private void reorderTransformations() {
+  private void reorderTransformations(XcodeProgram xcodeml) {
     if(getGroups().containsKey(ScaForward.class)) {
       TransformationGroup tg = getGroups().get(ScaForward.class);
 
@@ -331,29 +354,28 @@ public class ClawTranslator implements Translator {
         return;
       }
 
+      CallGraph callGraph = xcodeml.getCallGraph();
       DirectedGraph<Transformation> dg = new DirectedGraph<>();
       Map<String, List<Transformation>> fctMap = new HashMap<>();
 
       for(Transformation t : tg.getTransformations()) {
         ScaForward p = (ScaForward) t;
         dg.addNode(p);
-        if(fctMap.containsKey(p.getCallingFctName())) {
-          List<Transformation> tList = fctMap.get(p.getCallingFctName());
-          tList.add(p);
-        } else {
-          List<Transformation> tList = new ArrayList<>();
-          tList.add(p);
-          fctMap.put(p.getCallingFctName(), tList);
+        if(p.getCallingFctName() != null) {
+          fctMap.computeIfAbsent(p.getCallingFctName().toLowerCase(),
+              k -> new ArrayList<>()).add(p);
         }
       }
 
       for(Transformation t : tg.getTransformations()) {
         ScaForward p = (ScaForward) t;
-        if(p.getCalledFctName() != null
-            && fctMap.containsKey(p.getCalledFctName()))
-        {
-          List<Transformation> tList = fctMap.get(p.getCalledFctName());
-          for(Transformation end : tList) {
+        if(p.getCalledFctName() == null) {
+          continue;
+        }
+        String calledFctName =
+            callGraph.resolve(p.getCallingFctName(), p.getCalledFctName());
+        if(fctMap.containsKey(calledFctName)) {
+          for(Transformation end : fctMap.get(calledFctName)) {
             dg.addEdge(p, end);
           }
         }
@@ -363,7 +385,6 @@ public class ClawTranslator implements Translator {
           TopologicalSort.sort(TopologicalSort.reverseGraph(dg));
       tg.setTransformations(ordered);
     }
-
   }
 
   /**
@@ -448,6 +469,11 @@ public class ClawTranslator implements Translator {
     return _tGroups;
   }
 
+  @Override
+  public AnalysisManager getAnalysisManager() {
+    return _analysisManager;
+  }
+
   /**
    * Get the next extraction counter value.
    *
@@ -483,4 +509,24 @@ public class ClawTranslator implements Translator {
     _crossTransformationTable.remove(key.element());
     _crossTransformationTable.put(key.element(), value);
   }
+
+  /**
+   * Add an information line to the transformation report. Lines are grouped
+   * by section and kept in insertion order.
+   *
+   * @param section Section of the report, usually the transformation name.
+   * @param info    Information to be reported.
+   */
+  public void addReportInfo(String section, String info) {
+    _reportInfo.computeIfAbsent(section, k -> new ArrayList<>()).add(info);
+  }
+
+  /**
+   * Get the information reported by the transformations.
+   *
+   * @return Map of report lines by section.
+   */
+  public Map<String, List<String>> getReportInfo() {
+    return _reportInfo;
+  }
 }
@@ -22,10 +22,15 @@ import claw.wani.x2t.configuration.Configuration;
 import claw.wani.x2t.configuration.GroupConfiguration;
 import xcodeml.util.XmOption;
 
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.lang.reflect.Constructor;
-import java.util.Map;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * ClawTranslatorDriver is the class driving the translation. It creates the
@@ -40,6 +45,7 @@ public class ClawTranslatorDriver {
   private final String _xcodemlInputFile;
   private final String _xcodemlOutputFile;
   private boolean _canTransform = false;
+  private boolean _binaryOutput = false;
   private ClawTranslator _translator;
   private XcodeProgram _translationUnit = null;
 
@@ -86,6 +92,17 @@ public class ClawTranslatorDriver {
       abort();
     }
 
+    // Add the procedures of the translation units sharing the call graph
+    String callGraphFile = Context.get().getCallGraphFile();
+    if(callGraphFile != null) {
+      try {
+        _translationUnit.getCallGraph().load(Paths.get(callGraphFile));
+      } catch(IOException e) {
+        _translationUnit.addWarning("Call graph not loaded: "
+            + e.getMessage(), 0);
+      }
+    }
+
     if(Configuration.get().getCurrentDirective() == CompilerDirective.OPENMP
         && Configuration.get().getCurrentTarget() == Target.CPU)
     {
@@ -173,26 +190,63 @@ public class ClawTranslatorDriver {
     }
   }
 
+  /**
+   * Write the transformed XcodeML output file in the binary format instead of
+   * the textual format.
+   *
+   * @param binaryOutput True to write the binary format.
+   */
+  public void setBinaryOutput(boolean binaryOutput) {
+    _binaryOutput = binaryOutput;
+  }
+
+  /**
+   * Write the translation unit to the XcodeML output file.
+   *
+   * @throws IllegalTransformationException If the file cannot be written.
+   */
+  private void writeTranslationUnit() throws IllegalTransformationException {
+    if(_binaryOutput) {
+      _translationUnit.writeBinary(_xcodemlOutputFile);
+    } else {
+      _translationUnit.write(_xcodemlOutputFile, ClawConstant.INDENT_OUTPUT);
+    }
+  }
+
   /**
    * Apply all the transformation in the pipeline.
    */
   public void transform() {
     try {
       if(!_canTransform) {
-        _translationUnit.write(_xcodemlOutputFile, ClawConstant.INDENT_OUTPUT);
+        writeTranslationUnit();
         return;
       }
 
-      for(Map.Entry<Class, TransformationGroup> entry :
-          _translator.getGroups().entrySet()) {
+      List<TransformationGroup> groups =
+          new ArrayList<>(_translator.getGroups().values());
+      FunctionSpiller spiller = null;
+      if(Context.get().isMemoryBounded()) {
+        Path spillDirectory = Files.createTempDirectory("claw-spill");
+        spillDirectory.toFile().deleteOnExit();
+        spiller = new FunctionSpiller(_translationUnit, groups,
+            _translator.getAnalysisManager(), spillDirectory,
+            ClawConstant.INDENT_OUTPUT);
+        spiller.spillFinished(-1);
+      }
+
+      for(int i = 0; i < groups.size(); ++i) {
+        TransformationGroup group = groups.get(i);
         Message.debug("Apply transformation: " +
-            entry.getValue().transformationName() + " - " +
-            entry.getValue().count()
+            group.transformationName() + " - " + group.count()
         );
 
         try {
-          entry.getValue().applyTransformations(_translationUnit, _translator);
+          group.applyTransformations(_translationUnit, _translator);
           Message.warnings(_translationUnit);
+          if(spiller != null) {
+            spiller.spillFinished(i);
+          }
         } catch(IllegalTransformationException itex) {
           _translationUnit.addError(itex.getMessage(), itex.getStartLine());
           abort();
@@ -209,7 +263,10 @@ public class ClawTranslatorDriver {
 
       if(_xcodemlOutputFile != null) {
         // Write transformed IR to file
-        _translationUnit.write(_xcodemlOutputFile, ClawConstant.INDENT_OUTPUT);
+        writeTranslationUnit();
+      } else {
+        // Transformed IR is decompiled from memory
+        _translationUnit.restoreSpilled();
       }
     } catch(Exception ex) {
       System.err.println("Transformation exception: " + ex.getMessage());
@@ -233,6 +290,18 @@ public class ClawTranslatorDriver {
       throws IllegalTransformationException
   {
     Context.get().getModuleCache().write(ClawConstant.INDENT_OUTPUT);
+
+    // Share the procedures of the translation unit with the next ones
+    String callGraphFile = Context.get().getCallGraphFile();
+    if(callGraphFile != null) {
+      try {
+        _translationUnit.getCallGraph().write(Paths.get(callGraphFile));
+      } catch(IOException e) {
+        _translationUnit.addWarning("Call graph not written: "
+            + e.getMessage(), 0);
+        Message.warnings(_translationUnit);
+      }
+    }
   }
 
   /**
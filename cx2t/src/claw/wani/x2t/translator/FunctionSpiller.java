@@ -0,0 +1,183 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.wani.x2t.translator;
+
+import claw.shenron.analysis.AnalysisManager;
+import claw.shenron.transformation.Transformation;
+import claw.shenron.transformation.TransformationGroup;
+import claw.tatsu.analysis.topology.CallGraph;
+import claw.tatsu.common.Message;
+import claw.tatsu.xcodeml.xnode.common.Xcode;
+import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
+import claw.tatsu.xcodeml.xnode.common.Xnode;
+import claw.tatsu.xcodeml.xnode.fortran.FfunctionDefinition;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * FunctionSpiller releases the memory of the function definitions of a
+ * translation unit once no pending transformation can touch them. Such a
+ * function definition is serialized to a spill file and detached from the
+ * translation unit until the output is written.
+ *
+ * A function definition can be touched by a pending transformation if the
+ * transformation declares it, see Transformation#getTouchedFunctions, or if
+ * it is called, directly or not, by a declared function as the
+ * transformations read the definitions of the called functions. A pending
+ * transformation that can touch any function, e.g. a translation_unit
+ * transformation without a narrower declaration, prevents any spill.
+ * Function definitions are spilled with the functions they contain.
+ *
+ * @author clementval
+ */
+class FunctionSpiller {
+
+  private final XcodeProgram _xcodeml;
+  private final List<TransformationGroup> _groups;
+  private final AnalysisManager _analysisManager;
+  private final Path _directory;
+  private final int _indent;
+
+  /**
+   * Constructs a new function spiller.
+   *
+   * @param xcodeml         Current translation unit.
+   * @param groups          Transformation groups in application order.
+   * @param analysisManager Analysis manager of the translator.
+   * @param directory       Directory of the spill files.
+   * @param indent          Number of spaces used to indent the spill files.
+   */
+  FunctionSpiller(XcodeProgram xcodeml, List<TransformationGroup> groups,
+                  AnalysisManager analysisManager, Path directory, int indent)
+  {
+    _xcodeml = xcodeml;
+    _groups = groups;
+    _analysisManager = analysisManager;
+    _directory = directory;
+    _indent = indent;
+  }
+
+  /**
+   * Spill the function definitions that cannot be touched by the groups
+   * following the given one. The transformations of the applied groups are
+   * released.
+   *
+   * @param applied Index of the last applied group. -1 before the first group.
+   * @return Number of function definitions spilled.
+   * @throws IOException If a spill file cannot be written.
+   */
+  int spillFinished(int applied) throws IOException {
+    if(applied >= 0) {
+      _groups.get(applied).releaseTransformations();
+    }
+
+    Set<Xnode> touched = new HashSet<>();
+    for(int i = applied + 1; i < _groups.size(); ++i) {
+      for(Transformation t : _groups.get(i).getTransformations()) {
+        List<FfunctionDefinition> targets = t.getTouchedFunctions(_xcodeml);
+        if(targets == null) {
+          return 0; // Whole translation unit can be touched
+        }
+        for(FfunctionDefinition target : targets) {
+          touched.add(getOutermost(target));
+        }
+      }
+    }
+    addCallees(touched);
+
+    int spilled = 0;
+    for(Xnode fctDef : _xcodeml.matchAll(Xcode.F_FUNCTION_DEFINITION)) {
+      if(fctDef.findParentFunction() == null && !touched.contains(fctDef)) {
+        spill(new FfunctionDefinition(fctDef));
+        ++spilled;
+      }
+    }
+    if(spilled > 0) {
+      Message.debug(String.format("Spilled %d function definitions (%d total)",
+          spilled, _xcodeml.getSpilledCount()));
+    }
+    return spilled;
+  }
+
+  /**
+   * Serialize a function definition to a spill file and drop the references
+   * of the translation unit caches to it.
+   *
+   * @param fctDef Function definition to spill.
+   * @throws IOException If the spill file cannot be written.
+   */
+  private void spill(FfunctionDefinition fctDef) throws IOException {
+    for(Xnode inner : fctDef.matchAll(Xcode.F_FUNCTION_DEFINITION)) {
+      release(new FfunctionDefinition(inner));
+    }
+    release(fctDef);
+    _xcodeml.spill(fctDef, _directory, _indent);
+  }
+
+  /**
+   * Drop the cached information about a function definition.
+   *
+   * @param fctDef Function definition.
+   */
+  private void release(FfunctionDefinition fctDef) {
+    _xcodeml.getCallGraph().release(fctDef);
+    if(_analysisManager != null) {
+      _analysisManager.invalidate(fctDef);
+    }
+  }
+
+  /**
+   * Add the outermost definitions of the functions called, directly or not,
+   * by the given function definitions or the functions they contain.
+   *
+   * @param fctDefs Outermost function definitions. Updated in place.
+   */
+  private void addCallees(Set<Xnode> fctDefs) {
+    CallGraph callGraph = _xcodeml.getCallGraph();
+    Deque<String> names = new ArrayDeque<>();
+    for(Xnode fctDef : fctDefs) {
+      names.add(new FfunctionDefinition(fctDef).getName());
+      for(Xnode inner : fctDef.matchAll(Xcode.F_FUNCTION_DEFINITION)) {
+        names.add(new FfunctionDefinition(inner).getName());
+      }
+    }
+    Set<String> visited = new HashSet<>();
+    while(!names.isEmpty()) {
+      String name = names.pop().toLowerCase();
+      if(!visited.add(name)) {
+        continue;
+      }
+      for(String callee : callGraph.getCallees(name)) {
+        for(CallGraph.Procedure procedure : callGraph.getProcedures(callee)) {
+          if(procedure.getDefinition() != null) {
+            fctDefs.add(getOutermost(procedure.getDefinition()));
+          }
+        }
+        names.add(callee);
+      }
+    }
+  }
+
+  /**
+   * Get the outermost function definition containing a function definition.
+   *
+   * @param fctDef Function definition.
+   * @return Outermost function definition. The given one if not contained.
+   */
+  private static FfunctionDefinition getOutermost(FfunctionDefinition fctDef) {
+    FfunctionDefinition parent = fctDef.findParentFunction();
+    while(parent != null) {
+      fctDef = parent;
+      parent = fctDef.findParentFunction();
+    }
+    return fctDef;
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.shenron.analysis;
+
+import claw.tatsu.xcodeml.abstraction.AssignStatement;
+import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
+import claw.tatsu.xcodeml.xnode.fortran.FfunctionDefinition;
+import helper.TestConstant;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the features of the AnalysisManager class.
+ *
+ * @author clementval
+ */
+public class AnalysisManagerTest {
+
+  @Test
+  public void cacheTest() {
+    XcodeProgram xcodeml =
+        XcodeProgram.createFromFile(TestConstant.TEST_CALL_GRAPH);
+    assertNotNull(xcodeml);
+    FfunctionDefinition compute =
+        xcodeml.getGlobalDeclarationsTable().getFunctionDefinition(
+            "compute_column");
+    FfunctionDefinition update =
+        xcodeml.getGlobalDeclarationsTable().getFunctionDefinition("update");
+
+    AnalysisManager manager = new AnalysisManager();
+    manager.register(new AssignStatements());
+    manager.register(new InductionVariables());
+    assertEquals(2, manager.getAnalyses().size());
+
+    List<AssignStatement> assignStatements =
+        manager.get(AssignStatements.class, xcodeml, compute);
+    assertEquals(1, assignStatements.size());
+    assertSame(assignStatements,
+        manager.get(AssignStatements.class, xcodeml, compute));
+    assertTrue(manager.get(AssignStatements.class, xcodeml, update).isEmpty());
+    assertEquals(1, manager.getHits(AssignStatements.class));
+    assertEquals(2, manager.getMisses(AssignStatements.class));
+    assertEquals(0, manager.getHits(InductionVariables.class));
+    assertEquals(0, manager.getMisses(InductionVariables.class));
+
+    // Invalidation of a single function definition
+    manager.get(AssignStatements.class, xcodeml, update);
+    manager.invalidate(compute);
+    assertNotSame(assignStatements,
+        manager.get(AssignStatements.class, xcodeml, compute));
+    manager.get(AssignStatements.class, xcodeml, update);
+    assertEquals(3, manager.getHits(AssignStatements.class));
+    assertEquals(3, manager.getMisses(AssignStatements.class));
+  }
+
+  @Test
+  public void preservedTest() {
+    XcodeProgram xcodeml =
+        XcodeProgram.createFromFile(TestConstant.TEST_CALL_GRAPH);
+    assertNotNull(xcodeml);
+    FfunctionDefinition compute =
+        xcodeml.getGlobalDeclarationsTable().getFunctionDefinition(
+            "compute_column");
+
+    AnalysisManager manager = new AnalysisManager();
+    manager.register(new AssignStatements());
+    manager.register(new InductionVariables());
+
+    Set<String> inductions =
+        manager.get(InductionVariables.class, xcodeml, compute);
+    List<AssignStatement> assignStatements =
+        manager.get(AssignStatements.class, xcodeml, compute);
+    manager.invalidate(
+        Collections.<Class<? extends Analysis<?>>>singleton(
+            AssignStatements.class));
+    assertSame(assignStatements,
+        manager.get(AssignStatements.class, xcodeml, compute));
+    assertNotSame(inductions,
+        manager.get(InductionVariables.class, xcodeml, compute));
+
+    // Nothing preserved
+    manager.invalidate(Collections.emptySet());
+    assertNotSame(assignStatements,
+        manager.get(AssignStatements.class, xcodeml, compute));
+  }
+
+  @Test
+  public void unregisteredTest() {
+    XcodeProgram xcodeml =
+        XcodeProgram.createFromFile(TestConstant.TEST_CALL_GRAPH);
+    assertNotNull(xcodeml);
+    FfunctionDefinition compute =
+        xcodeml.getGlobalDeclarationsTable().getFunctionDefinition(
+            "compute_column");
+    AnalysisManager manager = new AnalysisManager();
+    try {
+      manager.get(LocalArrays.class, xcodeml, compute);
+      fail();
+    } catch(IllegalArgumentException ignored) {
+    }
+  }
+}
@@ -0,0 +1,180 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.analysis.cost;
+
+import claw.tatsu.xcodeml.xnode.common.Xcode;
+import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
+import claw.tatsu.xcodeml.xnode.common.Xnode;
+import claw.tatsu.xcodeml.xnode.fortran.FfunctionDefinition;
+import helper.TestConstant;
+import helper.XmlHelper;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the features of the KernelCost class.
+ *
+ * @author clementval
+ */
+public class KernelCostTest {
+
+  private static final String VAR = "<Var type=\"%s\" scope=\"local\">%s</Var>";
+  private static final String INT = "<FintConstant type=\"Fint\">%d" +
+      "</FintConstant>";
+
+  @Test
+  public void analyzeTest() {
+    XcodeProgram xcodeml =
+        XcodeProgram.createFromFile(TestConstant.TEST_INLINE);
+    assertNotNull(xcodeml);
+    // Loop not offloaded
+    List<KernelCost> costs = KernelCost.analyze(xcodeml,
+        Collections.emptyMap());
+    assertTrue(costs.isEmpty());
+
+    Xnode doStmt = xcodeml.matchAll(Xcode.F_DO_STATEMENT).get(0);
+    doStmt.insertBefore(xcodeml.createSinglePragma("acc parallel"));
+    doStmt.insertAfter(xcodeml.createSinglePragma("acc end parallel"));
+    costs = KernelCost.analyze(xcodeml, Collections.emptyMap());
+    assertEquals(1, costs.size());
+    KernelCost cost = costs.get(0);
+    assertEquals("kernel#1", cost.getName());
+    assertEquals(16, cost.getLineNo());
+    // do i = 1, n is unknown without hint
+    assertEquals(0, cost.getIterations());
+    // a(i) = scale(a(i), 2.0 * t)
+    assertEquals(4, cost.getLoadedBytes());
+    assertEquals(4, cost.getStoredBytes());
+    assertEquals(1, cost.getFlops());
+    assertEquals(0.125, cost.getArithmeticIntensity(), 0.0);
+    assertTrue(cost.isMemoryBound(8));
+    assertFalse(cost.isMemoryBound(0.1));
+
+    costs = KernelCost.analyze(xcodeml, Collections.singletonMap("i", 100));
+    assertEquals(100, costs.get(0).getIterations());
+  }
+
+  @Test
+  public void nestedLoopTest() {
+    XcodeProgram xcodeml = XmlHelper.getDummyXcodeProgram();
+    // do j = 1, 10
+    //   do i = 1, 20
+    //     a(i,j) = b(i,j) * 2.0 + sqrt(c(i)) + b(i,j)
+    //     k(i) = k(i) + 1
+    Xnode kernel = XmlHelper.createXnode(loop("j", 10, loop("i", 20,
+        assign(array("a", "i", "j"), binary("plusExpr", binary("plusExpr",
+            binary("mulExpr", array("b", "i", "j"),
+                "<FrealConstant type=\"Freal\">2.0</FrealConstant>"),
+            sqrt(array("c", "i"))), array("b", "i", "j")))
+            + assign(intArray("k"), "<plusExpr type=\"Fint\">"
+            + intArray("k") + String.format(INT, 1) + "</plusExpr>"))));
+    KernelCost cost = new KernelCost(xcodeml, "nested", kernel,
+        Collections.emptyMap());
+    assertEquals("nested", cost.getName());
+    assertEquals(200, cost.getIterations());
+    // b(i,j), c(i) and k(i) read once, a(i,j) and k(i) written
+    assertEquals(12, cost.getLoadedBytes());
+    assertEquals(8, cost.getStoredBytes());
+    // Integer operations are not counted
+    assertEquals(4, cost.getFlops());
+    assertEquals(0.2, cost.getArithmeticIntensity(), 1e-9);
+    assertEquals(160.0, cost.getCost(8), 0.0);
+    assertEquals(4.0, cost.getCost(0.1), 1e-9);
+  }
+
+  @Test
+  public void computeRegionTest() {
+    XcodeProgram xcodeml = XmlHelper.getDummyXcodeProgram();
+    FfunctionDefinition fctDef = xcodeml.getAllFctDef().get(0);
+    String kernel = loop("i", 20, assign(array("a", "i"), array("b", "i")));
+    Xnode body = fctDef.body();
+    for(Xnode stmt : body.children()) {
+      stmt.delete();
+    }
+    // Host loop around a region with two kernels
+    append(xcodeml, body, loop("t", 5, pragma("acc data present(a,b)")
+        + pragma("acc parallel") + kernel + pragma("acc loop seq") + kernel
+        + pragma("acc end parallel") + pragma("acc end data")));
+    // Data region only
+    append(xcodeml, body, pragma("omp target data map(a)"));
+    append(xcodeml, body, kernel);
+    append(xcodeml, body, pragma("omp end target data"));
+    // Combined constructs
+    append(xcodeml, body, pragma("acc parallel loop gang"));
+    append(xcodeml, body, loop("j", 10, kernel));
+    append(xcodeml, body, pragma("acc end parallel loop"));
+    append(xcodeml, body, kernel);
+    append(xcodeml, body, pragma("omp target teams distribute collapse(2)"));
+    append(xcodeml, body, kernel);
+    // Region in a conditional block
+    append(xcodeml, body, "<FifStatement><condition>"
+        + String.format(VAR, "Flogical", "flag") + "</condition><then><body>"
+        + pragma("omp target") + pragma("omp teams") + kernel
+        + pragma("omp end teams") + pragma("omp end target")
+        + "</body></then></FifStatement>");
+
+    List<KernelCost> costs = KernelCost.analyze(xcodeml,
+        Collections.emptyMap());
+    assertEquals(5, costs.size());
+    assertEquals(fctDef.getName() + "#1", costs.get(0).getName());
+    assertEquals(20, costs.get(0).getIterations());
+    assertEquals(200, costs.get(2).getIterations());
+    assertEquals(20, costs.get(3).getIterations());
+    assertEquals(20, costs.get(4).getIterations());
+    // a(i) = b(i) is memory bound and not a flop
+    assertEquals(64.0, costs.get(0).getCost(8), 0.0);
+    assertEquals(1280.0, costs.get(0).getTotalCost(8), 0.0);
+    assertEquals(12800.0, costs.get(2).getTotalCost(8), 0.0);
+  }
+
+  private void append(XcodeProgram xcodeml, Xnode body, String xml) {
+    body.append(xcodeml.importNode(XmlHelper.createXnode(xml)));
+  }
+
+  private String pragma(String value) {
+    return "<FpragmaStatement>" + value + "</FpragmaStatement>";
+  }
+
+  private String loop(String var, int upper, String body) {
+    return "<FdoStatement>" + String.format(VAR, "Fint", var)
+        + "<indexRange><lowerBound>" + String.format(INT, 1) + "</lowerBound>"
+        + "<upperBound>" + String.format(INT, upper) + "</upperBound>"
+        + "<step>" + String.format(INT, 1) + "</step></indexRange>"
+        + "<body>" + body + "</body></FdoStatement>";
+  }
+
+  private String array(String name, String... indexes) {
+    StringBuilder ref = new StringBuilder("<FarrayRef type=\"Freal\">"
+        + "<varRef type=\"A1\">" + String.format(VAR, "A1", name)
+        + "</varRef>");
+    for(String index : indexes) {
+      ref.append("<arrayIndex>").append(String.format(VAR, "Fint", index))
+          .append("</arrayIndex>");
+    }
+    return ref.append("</FarrayRef>").toString();
+  }
+
+  private String intArray(String name) {
+    return array(name, "i").replace("Freal", "Fint");
+  }
+
+  private String assign(String lhs, String rhs) {
+    return "<FassignStatement>" + lhs + rhs + "</FassignStatement>";
+  }
+
+  private String binary(String opcode, String lhs, String rhs) {
+    return String.format("<%s type=\"Freal\">%s%s</%s>", opcode, lhs, rhs,
+        opcode);
+  }
+
+  private String sqrt(String arg) {
+    return "<functionCall type=\"Freal\" is_intrinsic=\"true\">"
+        + "<name>sqrt</name><arguments>" + arg + "</arguments></functionCall>";
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.analysis.dependency;
+
+import claw.tatsu.xcodeml.xnode.common.Xnode;
+import helper.XmlHelper;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the features of the DefUseAnalysis class.
+ *
+ * @author clementval
+ */
+public class DefUseAnalysisTest {
+
+  private static final String VAR =
+      "<Var type=\"Freal\" scope=\"local\">%s</Var>";
+
+  @Test
+  public void definitionTest() {
+    DefUseAnalysis analysis = new DefUseAnalysis(XmlHelper.createXnode(
+        "<body>" + assign(var("a"), var("b")) + assign(var("a"), var("c"))
+            + "<FdoStatement>" + var("i") + "<body>"
+            + assign(arrayRef("d", var("i")), var("e")) + "</body>"
+            + "</FdoStatement></body>"));
+    assertEquals(2, analysis.getDefinitionCount("a"));
+    assertEquals(1, analysis.getDefinitionCount("d"));
+    assertEquals(1, analysis.getDefinitionCount("i"));
+    assertFalse(analysis.isDefined("b"));
+    assertFalse(analysis.isDefined("e"));
+    assertTrue(analysis.getUses().containsAll(
+        Arrays.asList("a", "b", "c", "d", "e", "i")));
+    assertFalse(analysis.hasUnknownSideEffect());
+
+    analysis.removeDefinition("a");
+    assertEquals(1, analysis.getDefinitionCount("a"));
+    analysis.removeDefinition("a");
+    assertFalse(analysis.isDefined("a"));
+  }
+
+  @Test
+  public void callTest() {
+    DefUseAnalysis analysis = new DefUseAnalysis(XmlHelper.createXnode(
+        "<body><exprStatement><functionCall type=\"Fvoid\"><name>foo</name>"
+            + "<arguments>" + var("x") + "</arguments></functionCall>"
+            + "</exprStatement>" + assign(var("y"), var("z")) + "</body>"));
+    assertTrue(analysis.hasUnknownSideEffect());
+    assertTrue(analysis.isDefined("x"));
+    assertTrue(analysis.isDefined("y"));
+    assertFalse(analysis.isDefined("z"));
+  }
+
+  private String var(String name) {
+    return String.format(VAR, name);
+  }
+
+  private String assign(String lhs, String rhs) {
+    return "<FassignStatement>" + lhs + rhs + "</FassignStatement>";
+  }
+
+  private String arrayRef(String name, String index) {
+    return "<FarrayRef type=\"Freal\"><varRef type=\"Freal\">" + var(name)
+        + "</varRef><arrayIndex>" + index + "</arrayIndex></FarrayRef>";
+  }
+}
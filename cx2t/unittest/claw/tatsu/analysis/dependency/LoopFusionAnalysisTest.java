@@ -0,0 +1,122 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.analysis.dependency;
+
+import claw.tatsu.xcodeml.abstraction.NestedDoStatement;
+import claw.tatsu.xcodeml.xnode.common.Xnode;
+import helper.XmlHelper;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the features of the LoopFusionAnalysis class.
+ *
+ * @author clementval
+ */
+public class LoopFusionAnalysisTest {
+
+  private static final String VAR =
+      "<Var type=\"Fint\" scope=\"local\">%s</Var>";
+
+  @Test
+  public void legalFusionTest() {
+    LoopFusionAnalysis analysis = analyze(
+        doStmt("i", "n", assign(arrayRef("a", var("i")),
+            arrayRef("b", var("i")))),
+        doStmt("i", "n", assign(arrayRef("c", var("i")),
+            arrayRef("a", var("i")))));
+    assertTrue(analysis.isLegal());
+    assertEquals(1, analysis.getScore());
+    assertTrue(analysis.getSharedArrays().contains("a"));
+  }
+
+  @Test
+  public void noSharedArrayTest() {
+    LoopFusionAnalysis analysis = analyze(
+        doStmt("i", "n", assign(arrayRef("a", var("i")),
+            arrayRef("b", var("i")))),
+        doStmt("i", "n", assign(arrayRef("c", var("i")),
+            arrayRef("d", var("i")))));
+    assertTrue(analysis.isLegal());
+    assertEquals(0, analysis.getScore());
+  }
+
+  @Test
+  public void differentRangeTest() {
+    LoopFusionAnalysis analysis = analyze(
+        doStmt("i", "n", assign(arrayRef("a", var("i")),
+            arrayRef("b", var("i")))),
+        doStmt("i", "m", assign(arrayRef("c", var("i")),
+            arrayRef("a", var("i")))));
+    assertFalse(analysis.isLegal());
+    assertEquals(0, analysis.getScore());
+  }
+
+  @Test
+  public void loopCarriedDependenceTest() {
+    LoopFusionAnalysis analysis = analyze(
+        doStmt("i", "n", assign(arrayRef("a", var("i")),
+            arrayRef("b", var("i")))),
+        doStmt("i", "n", assign(arrayRef("c", var("i")),
+            arrayRef("a", "<plusExpr type=\"Fint\">" + var("i")
+                + "<FintConstant type=\"Fint\">1</FintConstant></plusExpr>"
+            ))));
+    assertFalse(analysis.isLegal());
+  }
+
+  @Test
+  public void scalarConflictTest() {
+    LoopFusionAnalysis analysis = analyze(
+        doStmt("i", "n", assign(var("s"), arrayRef("b", var("i")))),
+        doStmt("i", "n", assign(arrayRef("b", var("i")), var("s"))));
+    assertFalse(analysis.isLegal());
+  }
+
+  @Test
+  public void transposedAccessTest() {
+    LoopFusionAnalysis analysis = analyze(
+        doStmt("i", "n", assign(arrayRef("a", var("i"), var("k")),
+            arrayRef("b", var("i")))),
+        doStmt("i", "n", assign(arrayRef("c", var("i")),
+            arrayRef("a", var("k"), var("i")))));
+    assertFalse(analysis.isLegal());
+  }
+
+  private LoopFusionAnalysis analyze(String loop1, String loop2) {
+    Xnode body = XmlHelper.createXnode("<body>" + loop1 + loop2 + "</body>");
+    List<Xnode> loops = body.children();
+    assertEquals(2, loops.size());
+    return new LoopFusionAnalysis(new NestedDoStatement(loops.get(0)),
+        new NestedDoStatement(loops.get(1)));
+  }
+
+  private String var(String name) {
+    return String.format(VAR, name);
+  }
+
+  private String doStmt(String induction, String upper, String body) {
+    return "<FdoStatement>" + var(induction) + "<indexRange><lowerBound>"
+        + "<FintConstant type=\"Fint\">1</FintConstant></lowerBound>"
+        + "<upperBound>" + var(upper) + "</upperBound><step>"
+        + "<FintConstant type=\"Fint\">1</FintConstant></step></indexRange>"
+        + "<body>" + body + "</body></FdoStatement>";
+  }
+
+  private String assign(String lhs, String rhs) {
+    return "<FassignStatement>" + lhs + rhs + "</FassignStatement>";
+  }
+
+  private String arrayRef(String name, String... indexes) {
+    StringBuilder ref = new StringBuilder("<FarrayRef type=\"Freal\">"
+        + "<varRef type=\"Freal\">" + var(name) + "</varRef>");
+    for(String index : indexes) {
+      ref.append("<arrayIndex>").append(index).append("</arrayIndex>");
+    }
+    return ref.append("</FarrayRef>").toString();
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.analysis.dependency;
+
+import claw.tatsu.directive.common.ReductionOperator;
+import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
+import claw.tatsu.xcodeml.xnode.common.Xnode;
+import helper.XmlHelper;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the features of the ReductionAnalysis class.
+ *
+ * @author clementval
+ */
+public class ReductionAnalysisTest {
+
+  private static final String VAR = "<Var type=\"%s\" scope=\"local\">%s</Var>";
+
+  @Test
+  public void reductionTest() {
+    XcodeProgram xcodeml = XmlHelper.getDummyXcodeProgram();
+    Xnode block = XmlHelper.createXnode("<body>"
+        + assign(var("Fint", "n"), binary("plusExpr", var("Fint", "n"),
+        var("Fint", "k")))
+        + assign(var("Fint", "n"), binary("minusExpr", var("Fint", "n"),
+        var("Fint", "j")))
+        + assign(var("Freal", "mx"), call("max", var("Freal", "t"),
+        var("Freal", "mx")))
+        + assign(var("Flogical", "ok"), binary("logAndExpr",
+        var("Flogical", "ok"), var("Flogical", "b")))
+        + assign(var("Freal", "t"), var("Freal", "u"))
+        + "</body>");
+    ReductionAnalysis analysis = new ReductionAnalysis(xcodeml, block,
+        Arrays.asList("n", "mx", "ok", "u", "z"), false);
+    assertEquals(3, analysis.getReductions().size());
+    assertSame(ReductionOperator.SUM, analysis.getReductions().get("n"));
+    assertSame(ReductionOperator.MAX, analysis.getReductions().get("mx"));
+    assertSame(ReductionOperator.AND, analysis.getReductions().get("ok"));
+    // Read only or unused candidates are neither reductions nor refused
+    assertTrue(analysis.getRefusals().isEmpty());
+  }
+
+  @Test
+  public void floatingPointSumTest() {
+    XcodeProgram xcodeml = XmlHelper.getDummyXcodeProgram();
+    Xnode block = XmlHelper.createXnode("<body>"
+        + assign(var("Freal", "s"), binary("plusExpr", var("Freal", "t"),
+        var("Freal", "s")))
+        + "</body>");
+    ReductionAnalysis strict = new ReductionAnalysis(xcodeml, block,
+        Collections.singletonList("s"), false);
+    assertTrue(strict.getReductions().isEmpty());
+    assertTrue(strict.getRefusals().containsKey("s"));
+
+    ReductionAnalysis relaxed = new ReductionAnalysis(xcodeml, block,
+        Collections.singletonList("s"), true);
+    assertSame(ReductionOperator.SUM, relaxed.getReductions().get("s"));
+    assertTrue(relaxed.getRefusals().isEmpty());
+  }
+
+  @Test
+  public void refusalTest() {
+    XcodeProgram xcodeml = XmlHelper.getDummyXcodeProgram();
+    Xnode block = XmlHelper.createXnode("<body>"
+        // Mixed operators
+        + assign(var("Fint", "a"), binary("plusExpr", var("Fint", "a"),
+        var("Fint", "k")))
+        + assign(var("Fint", "a"), binary("mulExpr", var("Fint", "a"),
+        var("Fint", "k")))
+        // Variable used in the accumulated expression
+        + assign(var("Fint", "b"), binary("plusExpr", var("Fint", "b"),
+        binary("mulExpr", var("Fint", "b"), var("Fint", "k"))))
+        // expr - c is not an accumulation
+        + assign(var("Fint", "c"), binary("minusExpr", var("Fint", "k"),
+        var("Fint", "c")))
+        // Accumulated value read elsewhere
+        + assign(var("Fint", "d"), binary("plusExpr", var("Fint", "d"),
+        var("Fint", "k")))
+        + assign(var("Fint", "e"), var("Fint", "d"))
+        // Non reduction intrinsic
+        + assign(var("Fint", "f"), call("mod", var("Fint", "f"),
+        var("Fint", "k")))
+        + "</body>");
+    ReductionAnalysis analysis = new ReductionAnalysis(xcodeml, block,
+        Arrays.asList("a", "b", "c", "d", "f"), true);
+    assertTrue(analysis.getReductions().isEmpty());
+    assertEquals(5, analysis.getRefusals().size());
+  }
+
+  private String var(String type, String name) {
+    return String.format(VAR, type, name);
+  }
+
+  private String assign(String lhs, String rhs) {
+    return "<FassignStatement>" + lhs + rhs + "</FassignStatement>";
+  }
+
+  private String binary(String opcode, String lhs, String rhs) {
+    return String.format("<%s>%s%s</%s>", opcode, lhs, rhs, opcode);
+  }
+
+  private String call(String name, String arg1, String arg2) {
+    return "<functionCall is_intrinsic=\"true\"><name>" + name + "</name>"
+        + "<arguments>" + arg1 + arg2 + "</arguments></functionCall>";
+  }
+}
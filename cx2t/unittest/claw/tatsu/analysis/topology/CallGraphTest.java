@@ -0,0 +1,154 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.analysis.topology;
+
+import claw.tatsu.primitive.Function;
+import claw.tatsu.xcodeml.abstraction.FunctionCall;
+import claw.tatsu.xcodeml.xnode.common.Xcode;
+import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
+import claw.tatsu.xcodeml.xnode.fortran.FfunctionDefinition;
+import helper.TestConstant;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the features of the CallGraph class.
+ *
+ * @author clementval
+ */
+public class CallGraphTest {
+
+  @Test
+  public void buildTest() {
+    XcodeProgram xcodeml =
+        XcodeProgram.createFromFile(TestConstant.TEST_CALL_GRAPH);
+    assertNotNull(xcodeml);
+    CallGraph callGraph = xcodeml.getCallGraph();
+    assertSame(callGraph, xcodeml.getCallGraph());
+    assertEquals(3, callGraph.size());
+
+    List<CallGraph.Procedure> procedures =
+        callGraph.getProcedures("compute_column");
+    assertEquals(1, procedures.size());
+    assertEquals("mo_column", procedures.get(0).getModule());
+    assertEquals("F7f81a0c02000", procedures.get(0).getType());
+    assertNotNull(procedures.get(0).getDefinition());
+    assertNull(callGraph.getProcedures("main").get(0).getModule());
+    assertTrue(callGraph.getProcedures("sqrt").isEmpty());
+
+    // Intrinsic calls are not part of the call graph
+    assertEquals(Arrays.asList("update"),
+        Arrays.asList(callGraph.getCallees("compute_column").toArray()));
+    // Type-bound and renamed procedures are resolved
+    assertEquals(Arrays.asList("compute_column", "update", "external_init"),
+        Arrays.asList(callGraph.getCallees("main").toArray()));
+    assertTrue(callGraph.getCallees("update").isEmpty());
+    assertTrue(callGraph.getCallees("unknown").isEmpty());
+  }
+
+  @Test
+  public void resolveTest() {
+    XcodeProgram xcodeml =
+        XcodeProgram.createFromFile(TestConstant.TEST_CALL_GRAPH);
+    assertNotNull(xcodeml);
+    CallGraph callGraph = xcodeml.getCallGraph();
+
+    assertEquals("update", callGraph.resolve("main", "refresh"));
+    assertEquals("update", callGraph.resolve("MAIN", "Refresh"));
+    assertEquals("refresh", callGraph.resolve("compute_column", "refresh"));
+    assertEquals("compute_column", callGraph.resolve("main", "compute"));
+    assertEquals("update", callGraph.resolve(null, "update"));
+    assertEquals("mo_column", callGraph.getModule("main", "refresh"));
+    assertEquals("mo_column", callGraph.getModule("main", "compute"));
+    assertNull(callGraph.getModule("main", "external_init"));
+  }
+
+  @Test
+  public void findDefinitionTest() {
+    XcodeProgram xcodeml =
+        XcodeProgram.createFromFile(TestConstant.TEST_CALL_GRAPH);
+    assertNotNull(xcodeml);
+    CallGraph callGraph = xcodeml.getCallGraph();
+
+    assertTrue(callGraph.findDefinition("mo_column", "update").isPresent());
+    assertTrue(callGraph.findDefinition(null, "UPDATE").isPresent());
+    assertFalse(callGraph.findDefinition("mo_other", "update").isPresent());
+    assertFalse(callGraph.findDefinition(null, "refresh").isPresent());
+    assertFalse(callGraph.findDefinition(null, null).isPresent());
+
+    // Renamed procedure called from the main program
+    FfunctionDefinition main = xcodeml.getGlobalDeclarationsTable()
+        .getFunctionDefinition("main");
+    assertNotNull(main);
+    FunctionCall refresh =
+        new FunctionCall(main.body().matchAll(Xcode.FUNCTION_CALL).get(1));
+    assertEquals("refresh", refresh.getFctName());
+    Optional<FfunctionDefinition> update =
+        Function.findFunctionDefinition(xcodeml, main, refresh);
+    assertTrue(update.isPresent());
+    assertEquals("update", update.get().getName());
+
+    // Deleted definitions are not returned
+    update.get().delete();
+    assertFalse(callGraph.findDefinition(null, "update").isPresent());
+  }
+
+  @Test
+  public void persistenceTest() throws IOException {
+    Path dir = Files.createTempDirectory("claw-callgraph");
+    Path file = dir.resolve("callgraph.idx");
+    try {
+      XcodeProgram xcodeml =
+          XcodeProgram.createFromFile(TestConstant.TEST_CALL_GRAPH);
+      assertNotNull(xcodeml);
+      xcodeml.getCallGraph().write(file);
+
+      XcodeProgram inline =
+          XcodeProgram.createFromFile(TestConstant.TEST_INLINE);
+      assertNotNull(inline);
+      CallGraph callGraph = inline.getCallGraph();
+      assertEquals(2, callGraph.size());
+      assertNull(callGraph.getModule("kernel", "update"));
+      callGraph.load(file);
+      assertEquals(5, callGraph.size());
+      assertEquals("mo_column", callGraph.getModule("kernel", "update"));
+      assertEquals(Arrays.asList("update"), Arrays.asList(
+          callGraph.getCallees("compute_column").toArray()));
+      // Procedures of other translation units have no definition
+      assertNull(callGraph.getProcedures("update").get(0).getDefinition());
+      assertFalse(callGraph.findDefinition(null, "update").isPresent());
+
+      // Entries of both translation units are kept
+      callGraph.write(file);
+      CallGraph other = new CallGraph();
+      other.load(file);
+      assertEquals(5, other.size());
+      assertEquals(Arrays.asList("scale"),
+          Arrays.asList(other.getCallees("kernel").toArray()));
+      assertEquals(1, dir.toFile().listFiles().length);
+
+      // Missing file is ignored
+      new CallGraph().load(dir.resolve("missing.idx"));
+
+      Files.write(file, Arrays.asList("not a call graph"));
+      try {
+        new CallGraph().load(file);
+        fail();
+      } catch(IOException ignored) {
+      }
+    } finally {
+      Files.deleteIfExists(file);
+      Files.delete(dir);
+    }
+  }
+}
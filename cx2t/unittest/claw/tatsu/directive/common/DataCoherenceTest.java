@@ -0,0 +1,189 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.directive.common;
+
+import claw.tatsu.common.CompilerDirective;
+import claw.tatsu.common.Context;
+import claw.tatsu.common.Target;
+import claw.tatsu.xcodeml.xnode.common.*;
+import claw.tatsu.xcodeml.xnode.fortran.DeclarationPosition;
+import claw.tatsu.xcodeml.xnode.fortran.FbasicType;
+import claw.tatsu.xcodeml.xnode.fortran.FfunctionDefinition;
+import claw.tatsu.xcodeml.xnode.fortran.FortranType;
+import claw.tatsu.xcodeml.xnode.fortran.Intent;
+import helper.XmlHelper;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the features of the DataCoherence class.
+ *
+ * @author clementval
+ */
+public class DataCoherenceTest {
+
+  @Test
+  public void redundantUpdateTest() {
+    Context.get().init(CompilerDirective.OPENACC, Target.GPU, null, 80);
+    XcodeProgram xcodeml = XmlHelper.getDummyXcodeProgram();
+    assertNotNull(xcodeml);
+    Xnode body = xcodeml.createNode(Xcode.BODY);
+    body.append(xcodeml.createSinglePragma("acc update device(a)"));
+    body.append(assign(xcodeml, "b", "a"));
+    body.append(xcodeml.createSinglePragma("acc update device(a, c)"));
+    body.append(xcodeml.createSinglePragma("acc update host(b)"));
+    body.append(xcodeml.createSinglePragma("acc update host(b)"));
+
+    DataCoherence coherence = new DataCoherence(xcodeml);
+    assertEquals(2, coherence.optimize(body));
+    assertEquals(2, coherence.getRemovedTransfers().size());
+    assertEquals("a", coherence.getRemovedTransfers().get(0));
+    assertEquals("b", coherence.getRemovedTransfers().get(1));
+
+    List<Xnode> pragmas = body.matchAll(Xcode.F_PRAGMA_STATEMENT);
+    assertEquals(3, pragmas.size());
+    assertEquals("acc update device(a)", pragmas.get(0).value());
+    assertEquals("acc update device(c)", pragmas.get(1).value());
+    assertEquals("acc update host(b)", pragmas.get(2).value());
+  }
+
+  @Test
+  public void writtenVariableTest() {
+    Context.get().init(CompilerDirective.OPENACC, Target.GPU, null, 80);
+    XcodeProgram xcodeml = XmlHelper.getDummyXcodeProgram();
+    assertNotNull(xcodeml);
+    Xnode body = xcodeml.createNode(Xcode.BODY);
+    body.append(xcodeml.createSinglePragma("acc update host(a)"));
+    body.append(assign(xcodeml, "a", "b"));
+    body.append(xcodeml.createSinglePragma("acc update host(a)"));
+
+    DataCoherence coherence = new DataCoherence(xcodeml);
+    assertEquals(0, coherence.optimize(body));
+    assertEquals(2, body.matchAll(Xcode.F_PRAGMA_STATEMENT).size());
+  }
+
+  @Test
+  public void resetTest() {
+    Context.get().init(CompilerDirective.OPENACC, Target.GPU, null, 80);
+    XcodeProgram xcodeml = XmlHelper.getDummyXcodeProgram();
+    assertNotNull(xcodeml);
+    Xnode body = xcodeml.createNode(Xcode.BODY);
+    body.append(xcodeml.createSinglePragma("acc update host(a)"));
+    body.append(xcodeml.createNode(Xcode.EXPR_STATEMENT).append(
+        xcodeml.createFctCall(FortranType.VOID.toString(), "foo", null)));
+    body.append(xcodeml.createSinglePragma("acc update device(a)"));
+    body.append(xcodeml.createSinglePragma("acc enter data create(a)"));
+    body.append(xcodeml.createSinglePragma("acc update device(a)"));
+    body.append(xcodeml.createSinglePragma("acc update device(a) async(1)"));
+
+    DataCoherence coherence = new DataCoherence(xcodeml);
+    assertEquals(0, coherence.optimize(body));
+    assertEquals(5, body.matchAll(Xcode.F_PRAGMA_STATEMENT).size());
+  }
+
+  @Test
+  public void nestedBlockTest() {
+    Context.get().init(CompilerDirective.OPENMP, Target.GPU, null, 80);
+    XcodeProgram xcodeml = XmlHelper.getDummyXcodeProgram();
+    assertNotNull(xcodeml);
+    Xnode body = xcodeml.createNode(Xcode.BODY);
+    Xnode doStmt = xcodeml.createDoStmt(
+        xcodeml.createVar(FortranType.INTEGER, "i", Xscope.LOCAL),
+        xcodeml.createNode(Xcode.INDEX_RANGE));
+    doStmt.body().append(xcodeml.createSinglePragma("omp target update to(a)"));
+    doStmt.body().append(
+        xcodeml.createSinglePragma("omp target update from(a)"));
+    body.append(xcodeml.createSinglePragma("omp target update from(a)"));
+    body.append(doStmt);
+    body.append(xcodeml.createSinglePragma("omp target update to(a)"));
+
+    DataCoherence coherence = new DataCoherence(xcodeml);
+    assertEquals(2, coherence.optimize(body));
+    assertEquals(Collections.nCopies(2, "a"),
+        coherence.getRemovedTransfers());
+    assertEquals(2, body.matchAll(Xcode.F_PRAGMA_STATEMENT).size());
+    assertEquals(1, doStmt.body().matchAll(Xcode.F_PRAGMA_STATEMENT).size());
+  }
+
+  @Test
+  public void pointerAliasTest() {
+    Context.get().init(CompilerDirective.OPENACC, Target.GPU, null, 80);
+    XcodeProgram xcodeml = XmlHelper.getDummyXcodeProgram();
+    assertNotNull(xcodeml);
+    FfunctionDefinition fctDef = new FfunctionDefinition(
+        xcodeml.matchDescendant(Xcode.F_FUNCTION_DEFINITION));
+    declare(xcodeml, fctDef, "p", Xattr.IS_POINTER);
+    declare(xcodeml, fctDef, "a", Xattr.IS_TARGET);
+    declare(xcodeml, fctDef, "c", null);
+
+    // p => a is done before the block: p = 1 writes a
+    Xnode body = xcodeml.createNode(Xcode.BODY);
+    fctDef.body().append(body);
+    body.append(xcodeml.createSinglePragma("acc update device(a, c)"));
+    body.append(assign(xcodeml, "p", "b"));
+    body.append(xcodeml.createSinglePragma("acc update device(a, c)"));
+    // A write to a target invalidates the pointers
+    body.append(xcodeml.createSinglePragma("acc update host(p)"));
+    body.append(assign(xcodeml, "a", "b"));
+    body.append(xcodeml.createSinglePragma("acc update host(p)"));
+
+    DataCoherence coherence = new DataCoherence(xcodeml);
+    assertEquals(1, coherence.optimize(body));
+    assertEquals(Collections.singletonList("c"),
+        coherence.getRemovedTransfers());
+    List<Xnode> pragmas = body.matchAll(Xcode.F_PRAGMA_STATEMENT);
+    assertEquals(4, pragmas.size());
+    assertEquals("acc update device(a)", pragmas.get(1).value());
+  }
+
+  @Test
+  public void associateAliasTest() {
+    Context.get().init(CompilerDirective.OPENACC, Target.GPU, null, 80);
+    XcodeProgram xcodeml = XmlHelper.getDummyXcodeProgram();
+    assertNotNull(xcodeml);
+    FfunctionDefinition fctDef = new FfunctionDefinition(
+        xcodeml.matchDescendant(Xcode.F_FUNCTION_DEFINITION));
+
+    // associate(x => a) ... end associate
+    Xnode associate = xcodeml.createNode(Xcode.ASSOCIATE_STATEMENT);
+    Xnode id = xcodeml.createNode(Xcode.ID)
+        .append(xcodeml.createName("x", FortranType.REAL.toString()))
+        .append(xcodeml.createNode(Xcode.VALUE).append(
+            xcodeml.createVar(FortranType.REAL, "a", Xscope.LOCAL)));
+    associate.append(xcodeml.createNode(Xcode.SYMBOLS).append(id));
+    Xnode body = xcodeml.createNode(Xcode.BODY);
+    associate.append(body);
+    fctDef.body().append(associate);
+    body.append(xcodeml.createSinglePragma("acc update device(a)"));
+    body.append(assign(xcodeml, "x", "b"));
+    body.append(xcodeml.createSinglePragma("acc update device(a)"));
+
+    DataCoherence coherence = new DataCoherence(xcodeml);
+    assertEquals(0, coherence.optimize(body));
+    assertEquals(2, body.matchAll(Xcode.F_PRAGMA_STATEMENT).size());
+  }
+
+  private void declare(XcodeProgram xcodeml, FfunctionDefinition fctDef,
+                       String name, Xattr attribute)
+  {
+    FbasicType type = xcodeml.createBasicType(FortranType.REAL, Intent.NONE);
+    if(attribute != null) {
+      type.setBooleanAttribute(attribute, true);
+    }
+    xcodeml.getTypeTable().add(type);
+    xcodeml.createIdAndDecl(name, type.getType(), XstorageClass.F_LOCAL,
+        fctDef, DeclarationPosition.LAST);
+  }
+
+  private Xnode assign(XcodeProgram xcodeml, String lhs, String rhs) {
+    return xcodeml.createNode(Xcode.F_ASSIGN_STATEMENT)
+        .append(xcodeml.createVar(FortranType.REAL, lhs, Xscope.LOCAL))
+        .append(xcodeml.createVar(FortranType.REAL, rhs, Xscope.LOCAL));
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.directive.common;
+
+import claw.tatsu.common.CompilerDirective;
+import claw.tatsu.common.Context;
+import claw.tatsu.common.Target;
+import claw.tatsu.directive.configuration.OpenAccConfiguration;
+import claw.tatsu.directive.configuration.OpenMpConfiguration;
+import claw.tatsu.xcodeml.abstraction.NestedDoStatement;
+import claw.tatsu.xcodeml.xnode.common.Xcode;
+import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
+import claw.tatsu.xcodeml.xnode.common.Xnode;
+import helper.XmlHelper;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Test the generation of the directives around a group of do statements.
+ *
+ * @author clementval
+ */
+public class DirectiveTest {
+
+  @Test
+  public void openAccReductionTest() {
+    Context.get().init(CompilerDirective.OPENACC, Target.GPU,
+        new OpenAccConfiguration(new HashMap<>()), 80);
+    assertEquals(Arrays.asList(
+        "acc parallel num_gangs(200) vector_length(64) reduction(+:s) copy(s)",
+        "acc loop gang reduction(+:s)",
+        "acc loop vector reduction(+:s)",
+        "acc end parallel"),
+        generateReductionNest(gangVectorMapping()));
+  }
+
+  @Test
+  public void openMpGpuReductionTest() {
+    Context.get().init(CompilerDirective.OPENMP, Target.GPU,
+        new OpenMpConfiguration(new HashMap<>()), 80);
+    // Reduction on the teams construct and not on the distribute construct
+    assertEquals(Arrays.asList(
+        "omp target map(tofrom:s)",
+        "omp teams num_teams(200) thread_limit(64) reduction(+:s)",
+        "omp distribute",
+        "omp parallel do simd reduction(+:s)",
+        "omp end parallel do simd",
+        "omp end distribute",
+        "omp end teams",
+        "omp end target"),
+        generateReductionNest(gangVectorMapping()));
+    assertEquals(Arrays.asList(
+        "omp target map(tofrom:s)",
+        "omp teams reduction(+:s)",
+        "omp distribute collapse(2)",
+        "omp end distribute",
+        "omp end teams",
+        "omp end target"),
+        generateReductionNest(new LoopMapping(2)));
+  }
+
+  @Test
+  public void openMpCpuReductionTest() {
+    Context.get().init(CompilerDirective.OPENMP, Target.CPU,
+        new OpenMpConfiguration(new HashMap<>()), 80);
+    // Reduction variable must be shared in the parallel region
+    assertEquals(Arrays.asList(
+        "omp parallel",
+        "omp do reduction(+:s) collapse(2)",
+        "omp end do",
+        "omp end parallel"),
+        generateReductionNest(new LoopMapping(2)));
+  }
+
+  @Test
+  public void noReductionTest() {
+    Context.get().init(CompilerDirective.OPENMP, Target.GPU,
+        new OpenMpConfiguration(new HashMap<>()), 80);
+    List<String> directives = generateNest(new LoopMapping(2),
+        Collections.emptyMap());
+    assertEquals("omp target", directives.get(0));
+    assertEquals("omp teams", directives.get(1));
+  }
+
+  /**
+   * Create a mapping with the outer level on the gangs and the inner level on
+   * the vector lanes.
+   *
+   * @return New mapping.
+   */
+  private LoopMapping gangVectorMapping() {
+    LoopMapping mapping = new LoopMapping(1);
+    mapping.setInnerCollapse(1);
+    mapping.setNumGangs(200);
+    mapping.setVectorLength(64);
+    mapping.setThreadLimit(64);
+    return mapping;
+  }
+
+  private List<String> generateReductionNest(LoopMapping mapping) {
+    return generateNest(mapping,
+        Collections.singletonMap("s", ReductionOperator.SUM));
+  }
+
+  /**
+   * Generate the directives around a sum over two nested do statements.
+   *
+   * @param mapping    Mapping of the do statements.
+   * @param reductions Reduction variables.
+   * @return Values of the generated directives in document order with
+   * normalized spaces.
+   */
+  private List<String> generateNest(LoopMapping mapping,
+                                    Map<String, ReductionOperator> reductions)
+  {
+    XcodeProgram xcodeml = XmlHelper.getDummyXcodeProgram();
+    assertNotNull(xcodeml);
+    Xnode body = xcodeml.createNode(Xcode.BODY);
+    Xnode outer = xcodeml.importNode(XmlHelper.createXnode(doStmt("j",
+        doStmt("i", "<FassignStatement>" + var("s", "Freal")
+            + "<plusExpr type=\"Freal\">" + var("s", "Freal")
+            + "<FarrayRef type=\"Freal\"><varRef type=\"Freal\">"
+            + var("a", "Freal") + "</varRef><arrayIndex>" + var("i", "Fint")
+            + "</arrayIndex><arrayIndex>" + var("j", "Fint")
+            + "</arrayIndex></FarrayRef></plusExpr></FassignStatement>"))));
+    body.append(outer);
+
+    Directive.generateParallelLoopClause(xcodeml,
+        Collections.<String>emptyList(), reductions,
+        new NestedDoStatement(outer), mapping);
+    List<String> directives = new ArrayList<>();
+    for(Xnode pragma : body.matchAll(Xcode.F_PRAGMA_STATEMENT)) {
+      directives.add(pragma.value().replaceAll("\\s+", " "));
+    }
+    return directives;
+  }
+
+  private String var(String name, String type) {
+    return String.format("<Var type=\"%s\" scope=\"local\">%s</Var>", type,
+        name);
+  }
+
+  private String doStmt(String inductionVar, String body) {
+    return "<FdoStatement>" + var(inductionVar, "Fint") + "<indexRange>"
+        + "<lowerBound><FintConstant type=\"Fint\">1</FintConstant>"
+        + "</lowerBound><upperBound>" + var("n", "Fint") + "</upperBound>"
+        + "<step><FintConstant type=\"Fint\">1</FintConstant></step>"
+        + "</indexRange><body>" + body + "</body></FdoStatement>";
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.directive.common;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test the features of the LoopMapping class.
+ *
+ * @author clementval
+ */
+public class LoopMappingTest {
+
+  @Test
+  public void unknownTripCountTest() {
+    LoopMapping mapping =
+        LoopMapping.compute(Arrays.asList(0, 100), 1, 128, 128);
+    assertEquals(3, mapping.getCollapse());
+    assertEquals(0, mapping.getInnerCollapse());
+    assertEquals(0, mapping.getNumGangs());
+    assertEquals(0, mapping.getVectorLength());
+    assertEquals(0, mapping.getThreadLimit());
+  }
+
+  @Test
+  public void singleLevelTest() {
+    LoopMapping mapping =
+        LoopMapping.compute(Collections.singletonList(1000), 0, 128, 128);
+    assertEquals(1, mapping.getCollapse());
+    assertEquals(0, mapping.getInnerCollapse());
+    assertEquals(128, mapping.getVectorLength());
+    assertEquals(128, mapping.getThreadLimit());
+    assertEquals(8, mapping.getNumGangs());
+
+    mapping = LoopMapping.compute(Collections.singletonList(20), 0, 128, 128);
+    assertEquals(32, mapping.getVectorLength());
+    assertEquals(1, mapping.getNumGangs());
+  }
+
+  @Test
+  public void gangVectorTest() {
+    LoopMapping mapping =
+        LoopMapping.compute(Arrays.asList(200, 60), 1, 128, 128);
+    assertEquals(1, mapping.getCollapse());
+    assertEquals(2, mapping.getInnerCollapse());
+    assertEquals(200, mapping.getNumGangs());
+    assertEquals(64, mapping.getVectorLength());
+  }
+
+  @Test
+  public void collapseAllTest() {
+    // Not enough gangs in the outer level
+    LoopMapping mapping =
+        LoopMapping.compute(Arrays.asList(10, 60), 0, 128, 128);
+    assertEquals(2, mapping.getCollapse());
+    assertEquals(0, mapping.getInnerCollapse());
+    assertEquals(5, mapping.getNumGangs());
+    assertEquals(128, mapping.getVectorLength());
+
+    // Not enough iterations in the inner level
+    mapping = LoopMapping.compute(Arrays.asList(1000, 8), 0, 128, 128);
+    assertEquals(2, mapping.getCollapse());
+    assertEquals(0, mapping.getInnerCollapse());
+  }
+
+  @Test
+  public void overrideTest() {
+    LoopMapping mapping =
+        LoopMapping.compute(Arrays.asList(200, 60), 0, 128, 128);
+    LoopMapping override = new LoopMapping(2);
+    override.setVectorLength(256);
+    mapping.override(override);
+    assertEquals(2, mapping.getCollapse());
+    assertEquals(0, mapping.getInnerCollapse());
+    assertEquals(200, mapping.getNumGangs());
+    assertEquals(256, mapping.getVectorLength());
+    assertEquals(64, mapping.getThreadLimit());
+
+    mapping = new LoopMapping(2);
+    override = new LoopMapping(1);
+    override.setNumGangs(16);
+    override.setThreadLimit(64);
+    mapping.override(override);
+    assertEquals(1, mapping.getCollapse());
+    assertEquals(1, mapping.getInnerCollapse());
+    assertEquals(16, mapping.getNumGangs());
+    assertEquals(64, mapping.getThreadLimit());
+
+    mapping.override(null);
+    assertEquals(1, mapping.getCollapse());
+  }
+}
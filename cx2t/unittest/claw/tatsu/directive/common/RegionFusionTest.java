@@ -0,0 +1,153 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.directive.common;
+
+import claw.tatsu.common.CompilerDirective;
+import claw.tatsu.common.Context;
+import claw.tatsu.common.Target;
+import claw.tatsu.xcodeml.exception.IllegalTransformationException;
+import claw.tatsu.xcodeml.xnode.common.Xcode;
+import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
+import claw.tatsu.xcodeml.xnode.common.Xnode;
+import helper.XmlHelper;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the features of the RegionFusion class.
+ *
+ * @author clementval
+ */
+public class RegionFusionTest {
+
+  private static final String VAR =
+      "<Var type=\"Fint\" scope=\"local\">%s</Var>";
+
+  @Test
+  public void fusionTest() throws IllegalTransformationException {
+    Context.get().init(CompilerDirective.OPENACC, Target.GPU, null, 80);
+    XcodeProgram xcodeml = XmlHelper.getDummyXcodeProgram();
+    assertNotNull(xcodeml);
+    Xnode body = createBody(xcodeml,
+        region("present(a)", "private(t)", "n",
+            assign(arrayRef("a", var("i")), arrayRef("b", var("i")))),
+        region("present(c, a)", "private(u)", "n",
+            assign(arrayRef("c", var("i")), arrayRef("a", var("i")))));
+
+    RegionFusion fusion = new RegionFusion(xcodeml);
+    assertEquals(1, fusion.fuse(body));
+    assertEquals(1, fusion.getFusedRegions().size());
+    assertEquals(1, body.matchAll(Xcode.F_DO_STATEMENT).size());
+    assertEquals(2, body.matchAll(Xcode.F_ASSIGN_STATEMENT).size());
+
+    List<Xnode> pragmas = body.matchAll(Xcode.F_PRAGMA_STATEMENT);
+    assertEquals(5, pragmas.size());
+    assertEquals("acc data present(a,c)", pragmas.get(0).value());
+    assertEquals("acc parallel", pragmas.get(1).value());
+    assertEquals("acc loop gang vector private(t,u)", pragmas.get(2).value());
+    assertEquals("acc end parallel", pragmas.get(3).value());
+    assertEquals("acc end data", pragmas.get(4).value());
+  }
+
+  @Test
+  public void dependenceTest() throws IllegalTransformationException {
+    Context.get().init(CompilerDirective.OPENACC, Target.GPU, null, 80);
+    XcodeProgram xcodeml = XmlHelper.getDummyXcodeProgram();
+    assertNotNull(xcodeml);
+    Xnode body = createBody(xcodeml,
+        region("present(a)", "", "n",
+            assign(arrayRef("a", var("i")), arrayRef("b", var("i")))),
+        region("present(a)", "", "n",
+            assign(arrayRef("c", var("i")), arrayRef("a",
+                "<plusExpr type=\"Fint\">" + var("i") + "<FintConstant "
+                    + "type=\"Fint\">1</FintConstant></plusExpr>"))));
+
+    RegionFusion fusion = new RegionFusion(xcodeml);
+    assertEquals(0, fusion.fuse(body));
+    assertEquals(2, body.matchAll(Xcode.F_DO_STATEMENT).size());
+    assertEquals(10, body.matchAll(Xcode.F_PRAGMA_STATEMENT).size());
+  }
+
+  @Test
+  public void differentIterationSpaceTest()
+      throws IllegalTransformationException
+  {
+    Context.get().init(CompilerDirective.OPENACC, Target.GPU, null, 80);
+    XcodeProgram xcodeml = XmlHelper.getDummyXcodeProgram();
+    assertNotNull(xcodeml);
+    Xnode body = createBody(xcodeml,
+        region("present(a)", "", "n",
+            assign(arrayRef("a", var("i")), arrayRef("b", var("i")))),
+        region("present(a)", "", "m",
+            assign(arrayRef("c", var("i")), arrayRef("a", var("i")))));
+
+    RegionFusion fusion = new RegionFusion(xcodeml);
+    assertEquals(0, fusion.fuse(body));
+    assertEquals(2, body.matchAll(Xcode.F_DO_STATEMENT).size());
+  }
+
+  @Test
+  public void nonAdjacentTest() throws IllegalTransformationException {
+    Context.get().init(CompilerDirective.OPENACC, Target.GPU, null, 80);
+    XcodeProgram xcodeml = XmlHelper.getDummyXcodeProgram();
+    assertNotNull(xcodeml);
+    Xnode body = createBody(xcodeml,
+        region("present(a)", "", "n",
+            assign(arrayRef("a", var("i")), arrayRef("b", var("i")))),
+        assign(var("s"), var("n")),
+        region("present(a)", "", "n",
+            assign(arrayRef("c", var("i")), arrayRef("a", var("i")))));
+
+    RegionFusion fusion = new RegionFusion(xcodeml);
+    assertEquals(0, fusion.fuse(body));
+    assertEquals(2, body.matchAll(Xcode.F_DO_STATEMENT).size());
+  }
+
+  private Xnode createBody(XcodeProgram xcodeml, String... stmts) {
+    return xcodeml.importNode(XmlHelper.createXnode("<body>"
+        + String.join("", stmts) + "</body>"));
+  }
+
+  private String region(String present, String privates, String upper,
+                        String stmt)
+  {
+    return pragma("acc data " + present) + pragma("acc parallel")
+        + pragma(("acc loop gang vector " + privates).trim())
+        + doStmt("i", upper, stmt) + pragma("acc end parallel")
+        + pragma("acc end data");
+  }
+
+  private String pragma(String value) {
+    return "<FpragmaStatement>" + value + "</FpragmaStatement>";
+  }
+
+  private String var(String name) {
+    return String.format(VAR, name);
+  }
+
+  private String doStmt(String induction, String upper, String body) {
+    return "<FdoStatement>" + var(induction) + "<indexRange><lowerBound>"
+        + "<FintConstant type=\"Fint\">1</FintConstant></lowerBound>"
+        + "<upperBound>" + var(upper) + "</upperBound><step>"
+        + "<FintConstant type=\"Fint\">1</FintConstant></step></indexRange>"
+        + "<body>" + body + "</body></FdoStatement>";
+  }
+
+  private String assign(String lhs, String rhs) {
+    return "<FassignStatement>" + lhs + rhs + "</FassignStatement>";
+  }
+
+  private String arrayRef(String name, String... indexes) {
+    StringBuilder ref = new StringBuilder("<FarrayRef type=\"Freal\">"
+        + "<varRef type=\"Freal\">" + var(name) + "</varRef>");
+    for(String index : indexes) {
+      ref.append("<arrayIndex>").append(index).append("</arrayIndex>");
+    }
+    return ref.append("</FarrayRef>").toString();
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.directive.common;
+
+import claw.tatsu.common.CompilerDirective;
+import claw.tatsu.common.Context;
+import claw.tatsu.common.Target;
+import claw.tatsu.xcodeml.abstraction.FunctionCall;
+import claw.tatsu.xcodeml.xnode.common.Xcode;
+import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
+import claw.tatsu.xcodeml.xnode.common.Xnode;
+import claw.tatsu.xcodeml.xnode.fortran.FfunctionDefinition;
+import helper.TestConstant;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the features of the RegionInstrumentation class.
+ *
+ * @author clementval
+ */
+public class RegionInstrumentationTest {
+
+  @Test
+  public void instrumentTest() {
+    Context.get().init(CompilerDirective.OPENACC, Target.GPU, null, 80);
+    XcodeProgram xcodeml =
+        XcodeProgram.createFromFile(TestConstant.TEST_INLINE);
+    assertNotNull(xcodeml);
+    FfunctionDefinition kernel = getFctDef(xcodeml, "kernel");
+    FfunctionDefinition scale = getFctDef(xcodeml, "scale");
+    Xnode doStmt = kernel.body().matchDescendant(Xcode.F_DO_STATEMENT);
+    Xnode end = Directive.generateParallelRegion(xcodeml, doStmt, doStmt);
+    assertNotNull(end);
+    Xnode start = doStmt.prevSibling();
+
+    RegionInstrumentation instrumentation =
+        new RegionInstrumentation(xcodeml);
+    assertEquals(0, instrumentation.instrument(scale));
+    assertEquals(1, instrumentation.instrument(kernel));
+    assertEquals(1, instrumentation.getRegions().size());
+    assertEquals("inline.f90:16:kernel", instrumentation.getRegions().get(0));
+
+    assertCall(start.prevSibling(), RegionInstrumentation.START_ROUTINE);
+    assertCall(end.nextSibling(), RegionInstrumentation.STOP_ROUTINE);
+    assertEquals(2, kernel.body().matchAll(Xcode.EXPR_STATEMENT).size());
+    assertTrue(kernel.getDeclarationTable()
+        .contains(RegionInstrumentation.MODULE_NAME));
+    assertFalse(scale.getDeclarationTable()
+        .contains(RegionInstrumentation.MODULE_NAME));
+
+    // Report is only printed by a main program
+    assertFalse(instrumentation.insertReport(kernel));
+  }
+
+  @Test
+  public void combinedConstructTest() {
+    Context.get().init(CompilerDirective.OPENACC, Target.GPU, null, 80);
+    XcodeProgram xcodeml =
+        XcodeProgram.createFromFile(TestConstant.TEST_INLINE);
+    assertNotNull(xcodeml);
+    FfunctionDefinition kernel = getFctDef(xcodeml, "kernel");
+    Xnode doStmt = kernel.body().matchDescendant(Xcode.F_DO_STATEMENT);
+    Directive.addPragmasBefore(xcodeml,
+        new String[]{"acc parallel loop gang vector"}, doStmt);
+    Directive.addPragmaAfter(xcodeml,
+        new String[]{"acc end parallel loop"}, doStmt);
+
+    RegionInstrumentation instrumentation =
+        new RegionInstrumentation(xcodeml);
+    assertEquals(0, instrumentation.instrument(kernel));
+    assertTrue(kernel.body().matchAll(Xcode.EXPR_STATEMENT).isEmpty());
+  }
+
+  private void assertCall(Xnode exprStmt, String routine) {
+    assertNotNull(exprStmt);
+    assertTrue(exprStmt.is(Xcode.EXPR_STATEMENT));
+    FunctionCall call = new FunctionCall(exprStmt.firstChild());
+    assertEquals(routine, call.getFctName());
+    assertEquals(1, call.arguments().size());
+    assertEquals("inline.f90:16:kernel", call.arguments().get(0).value());
+  }
+
+  private FfunctionDefinition getFctDef(XcodeProgram xcodeml, String name) {
+    FfunctionDefinition fctDef =
+        xcodeml.getGlobalDeclarationsTable().getFunctionDefinition(name);
+    assertNotNull(fctDef);
+    return fctDef;
+  }
+}
@@ -0,0 +1,235 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.directive.common;
+
+import claw.tatsu.common.CompilerDirective;
+import claw.tatsu.common.Context;
+import claw.tatsu.common.Target;
+import claw.tatsu.directive.configuration.OpenAccConfiguration;
+import claw.tatsu.xcodeml.xnode.common.*;
+import claw.tatsu.xcodeml.xnode.fortran.DeclarationPosition;
+import claw.tatsu.xcodeml.xnode.fortran.FbasicType;
+import claw.tatsu.xcodeml.xnode.fortran.FfunctionDefinition;
+import claw.tatsu.xcodeml.xnode.fortran.FmoduleDefinition;
+import claw.tatsu.xcodeml.xnode.fortran.FortranType;
+import claw.tatsu.xcodeml.xnode.fortran.Intent;
+import helper.XmlHelper;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the slot assignment and the code generation of the ScratchPool class.
+ *
+ * @author clementval
+ */
+public class ScratchPoolTest {
+
+  private static final String REAL8 = "Freal(8)";
+  private static final String SHAPE = "1:nproma,1:nz";
+
+  @Test
+  public void sharedSlotTest() {
+    ScratchPool pool = new ScratchPool("claw_scratch_mo_column");
+    pool.addRequest("compute_t", "t", REAL8, SHAPE);
+    pool.addRequest("compute_t", "u", REAL8, SHAPE);
+    pool.addRequest("compute_q", "q", REAL8, SHAPE);
+    pool.addRequest("compute_q", "w", REAL8, SHAPE);
+    pool.assignSlots();
+
+    // Two slots for the arrays of one routine, reused by the other routine
+    assertEquals(4, pool.getNbRequests());
+    assertEquals(2, pool.getNbSlots());
+    assertEquals("claw_scratch_mo_column_1", pool.getSlot("compute_t", "t"));
+    assertEquals("claw_scratch_mo_column_2", pool.getSlot("compute_t", "u"));
+    assertEquals("claw_scratch_mo_column_1", pool.getSlot("compute_q", "q"));
+    assertEquals("claw_scratch_mo_column_2", pool.getSlot("compute_q", "w"));
+    assertNull(pool.getSlot("compute_q", "t"));
+  }
+
+  @Test
+  public void referenceRewriteTest() {
+    Context.get().init(CompilerDirective.OPENACC, Target.GPU,
+        new OpenAccConfiguration(new HashMap<>()), 80);
+    XcodeProgram xcodeml = XmlHelper.getDummyXcodeProgram();
+    FfunctionDefinition fctDef = xcodeml.getAllFctDef().get(0);
+    ScratchPool pool = new ScratchPool(ScratchPool.getModuleName(xcodeml));
+    assertEquals("claw_scratch_original_code", pool.getModuleName());
+    assertTrue(pool.add(xcodeml, fctDef, "value1"));
+    assertTrue(pool.add(xcodeml, fctDef, "value2"));
+    assertFalse(pool.add(xcodeml, fctDef, "undefined"));
+
+    // Local declarations replaced by a use-association of the module
+    assertNull(fctDef.getDeclarationTable().get("value1"));
+    assertFalse(fctDef.getSymbolTable().contains("value1"));
+    Xnode useDecl = fctDef.getDeclarationTable().get(pool.getModuleName());
+    assertNotNull(useDecl);
+    assertTrue(useDecl.is(Xcode.F_USE_ONLY_DECL));
+    List<Xnode> renamables = useDecl.matchAll(Xcode.RENAMABLE);
+    assertEquals(2, renamables.size());
+
+    // Same function so the arrays need their own slot
+    assertEquals(2, pool.generate(xcodeml));
+    assertEquals("value1", renamables.get(0).getAttribute(Xattr.LOCAL_NAME));
+    assertEquals("claw_scratch_original_code_1",
+        renamables.get(0).getAttribute(Xattr.USE_NAME));
+    assertEquals("value2", renamables.get(1).getAttribute(Xattr.LOCAL_NAME));
+    assertEquals("claw_scratch_original_code_2",
+        renamables.get(1).getAttribute(Xattr.USE_NAME));
+
+    // Module with thread private allocatable slots
+    FmoduleDefinition moduleDef = xcodeml.getGlobalDeclarationsTable()
+        .getModuleDefinition(pool.getModuleName());
+    assertNotNull(moduleDef);
+    Xnode slotDecl = moduleDef.getDeclarationTable()
+        .get("claw_scratch_original_code_1");
+    assertNotNull(slotDecl);
+    FbasicType slotType = xcodeml.getTypeTable().getBasicType(slotDecl);
+    assertTrue(slotType.isAllocatable());
+    assertEquals(1, slotType.getDimensions());
+    StringBuilder threadPrivate = new StringBuilder();
+    for(Xnode pragma : moduleDef.getDeclarationTable()
+        .matchAll(Xcode.F_PRAGMA_STATEMENT))
+    {
+      threadPrivate.append(pragma.value());
+    }
+    assertTrue(threadPrivate.toString().startsWith("omp threadprivate("));
+    assertTrue(threadPrivate.toString().contains(
+        "claw_scratch_original_code_2"));
+  }
+
+  @Test
+  public void allocationGuardTest() {
+    Context.get().init(CompilerDirective.OPENACC, Target.GPU,
+        new OpenAccConfiguration(new HashMap<>()), 80);
+    XcodeProgram xcodeml = XmlHelper.getDummyXcodeProgram();
+    FfunctionDefinition fctDef = xcodeml.getAllFctDef().get(0);
+    ScratchPool pool = new ScratchPool(ScratchPool.getModuleName(xcodeml));
+    assertTrue(pool.add(xcodeml, fctDef, "value1"));
+
+    // Reallocation if the bounds differ
+    Xnode allocatedIf = fctDef.body().firstChild();
+    assertTrue(allocatedIf.is(Xcode.F_IF_STATEMENT));
+    assertEquals("allocated", allocatedIf.matchSeq(Xcode.CONDITION,
+        Xcode.FUNCTION_CALL, Xcode.NAME).value());
+    Xnode boundsIf = allocatedIf.matchSeq(Xcode.THEN, Xcode.BODY,
+        Xcode.F_IF_STATEMENT);
+    assertNotNull(boundsIf);
+    assertNotNull(boundsIf.matchSeq(Xcode.CONDITION, Xcode.LOG_OR_EXPR));
+    Xnode exitData = boundsIf.matchSeq(Xcode.THEN, Xcode.BODY).firstChild();
+    assertEquals("acc exit data delete(value1)", exitData.value());
+    assertTrue(exitData.nextSibling().is(Xcode.F_DEALLOCATE_STATEMENT));
+
+    // Allocation if not allocated yet
+    Xnode notAllocatedIf = allocatedIf.nextSibling();
+    assertTrue(notAllocatedIf.is(Xcode.F_IF_STATEMENT));
+    assertNotNull(notAllocatedIf.matchSeq(Xcode.CONDITION, Xcode.LOG_NOT_EXPR,
+        Xcode.FUNCTION_CALL));
+    Xnode allocate = notAllocatedIf.matchSeq(Xcode.THEN, Xcode.BODY)
+        .firstChild();
+    assertTrue(allocate.is(Xcode.F_ALLOCATE_STATEMENT));
+    assertEquals("10", allocate.matchSeq(Xcode.ALLOC, Xcode.INDEX_RANGE,
+        Xcode.UPPER_BOUND, Xcode.F_INT_CONSTANT).value());
+    assertEquals("acc enter data pcreate(value1)",
+        allocate.nextSibling().value());
+  }
+
+  @Test
+  public void allocatableGuardTest() {
+    Context.get().init(CompilerDirective.OPENACC, Target.GPU,
+        new OpenAccConfiguration(new HashMap<>()), 80);
+    XcodeProgram xcodeml = XmlHelper.getDummyXcodeProgram();
+    FfunctionDefinition fctDef = xcodeml.getAllFctDef().get(0);
+    FbasicType type = xcodeml.createBasicType(FortranType.REAL, Intent.NONE);
+    type.setBooleanAttribute(Xattr.IS_ALLOCATABLE, true);
+    type.addDimension(xcodeml.createEmptyAssumedShaped());
+    xcodeml.getTypeTable().add(type);
+    xcodeml.createIdAndDecl("tmp", type.getType(), XstorageClass.F_LOCAL,
+        fctDef, DeclarationPosition.LAST);
+    Xnode allocate = xcodeml.createNode(Xcode.F_ALLOCATE_STATEMENT).append(
+        xcodeml.createNode(Xcode.ALLOC).append(
+            xcodeml.createVar(type.getType(), "tmp", Xscope.LOCAL)).append(
+            xcodeml.createNode(Xcode.ARRAY_INDEX).append(
+                xcodeml.createIntConstant(20))));
+    Xnode deallocate = xcodeml.createNode(Xcode.F_DEALLOCATE_STATEMENT)
+        .append(xcodeml.createNode(Xcode.ALLOC).append(
+            xcodeml.createVar(type.getType(), "tmp", Xscope.LOCAL)));
+    fctDef.body().append(allocate);
+    fctDef.body().append(deallocate);
+    int statements = fctDef.body().children().size();
+
+    ScratchPool pool = new ScratchPool(ScratchPool.getModuleName(xcodeml));
+    assertTrue(pool.add(xcodeml, fctDef, "tmp"));
+
+    // Allocation replaced by the guard and deallocation removed
+    assertEquals(statements, fctDef.body().children().size());
+    assertNull(deallocate.ancestor());
+    Xnode notAllocatedIf = fctDef.body().lastChild();
+    Xnode allocatedIf = notAllocatedIf.prevSibling();
+    assertTrue(allocatedIf.is(Xcode.F_IF_STATEMENT));
+    assertTrue(notAllocatedIf.is(Xcode.F_IF_STATEMENT));
+    assertEquals(1, fctDef.body().matchAll(Xcode.F_ALLOCATE_STATEMENT).size());
+    assertEquals("20", notAllocatedIf.matchDescendant(Xcode.INDEX_RANGE)
+        .matchSeq(Xcode.UPPER_BOUND, Xcode.F_INT_CONSTANT).value());
+    List<Xnode> deallocates =
+        fctDef.body().matchAll(Xcode.F_DEALLOCATE_STATEMENT);
+    assertEquals(1, deallocates.size());
+    assertEquals(boundsIf(allocatedIf), deallocates.get(0).ancestor()
+        .ancestor().ancestor());
+  }
+
+  @Test
+  public void openMpRefusedTest() {
+    Context.get().init(CompilerDirective.OPENMP, Target.GPU, null, 80);
+    XcodeProgram xcodeml = XmlHelper.getDummyXcodeProgram();
+    FfunctionDefinition fctDef = xcodeml.getAllFctDef().get(0);
+    ScratchPool pool = new ScratchPool(ScratchPool.getModuleName(xcodeml));
+    // Thread private slots cannot be mapped with OpenMP
+    assertFalse(pool.add(xcodeml, fctDef, "value1"));
+    assertNotNull(fctDef.getDeclarationTable().get("value1"));
+    assertEquals(0, pool.generate(xcodeml));
+  }
+
+  @Test
+  public void conflictTest() {
+    ScratchPool pool = new ScratchPool("claw_scratch");
+    pool.addRequest("compute_t", "t", REAL8, SHAPE);
+    pool.addRequest("compute_q", "q", REAL8, SHAPE);
+    pool.addRequest("compute_r", "r", REAL8, SHAPE);
+    // compute_t calls compute_q
+    pool.addConflict("compute_t", "compute_q");
+    pool.assignSlots();
+
+    assertEquals(2, pool.getNbSlots());
+    assertEquals("claw_scratch_1", pool.getSlot("compute_t", "t"));
+    assertEquals("claw_scratch_2", pool.getSlot("compute_q", "q"));
+    assertEquals("claw_scratch_1", pool.getSlot("compute_r", "r"));
+  }
+
+  @Test
+  public void differentShapeTest() {
+    ScratchPool pool = new ScratchPool("claw_scratch");
+    pool.addRequest("compute_t", "t", REAL8, SHAPE);
+    pool.addRequest("compute_q", "q", "Freal(4)", SHAPE);
+    pool.addRequest("compute_r", "r", REAL8, "1:nproma");
+    pool.addRequest("compute_s", "s", REAL8, SHAPE);
+    pool.assignSlots();
+
+    assertEquals(3, pool.getNbSlots());
+    assertEquals(pool.getSlot("compute_t", "t"),
+        pool.getSlot("compute_s", "s"));
+    assertNotEquals(pool.getSlot("compute_t", "t"),
+        pool.getSlot("compute_q", "q"));
+    assertNotEquals(pool.getSlot("compute_t", "t"),
+        pool.getSlot("compute_r", "r"));
+  }
+
+  private Xnode boundsIf(Xnode allocatedIf) {
+    return allocatedIf.matchSeq(Xcode.THEN, Xcode.BODY, Xcode.F_IF_STATEMENT);
+  }
+}
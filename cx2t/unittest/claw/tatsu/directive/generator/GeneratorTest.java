@@ -5,8 +5,11 @@
 package claw.tatsu.directive.generator;
 
 import claw.tatsu.common.CompilerDirective;
+import claw.tatsu.directive.common.LoopMapping;
+import claw.tatsu.directive.common.ReductionOperator;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.Collections;
 
 import static junit.framework.TestCase.assertEquals;
@@ -39,12 +42,119 @@ public class GeneratorTest {
     assertTrue(gen.getParallelKeyword().isEmpty());
     assertTrue(gen.getPrivateClause("").isEmpty());
     assertTrue(gen.getPrivateClause(Collections.emptyList()).isEmpty());
+    assertTrue(gen.getReductionClause(ReductionOperator.SUM,
+        Collections.singletonList("s")).isEmpty());
     assertTrue(gen.getSequentialClause().isEmpty());
 
     assertFalse(gen.isCompileGuard(""));
     assertFalse(gen.isCompileGuard("acc loop"));
 
     assertSame(CompilerDirective.NONE, gen.getDirectiveLanguage());
+    assertEquals(0,
+        gen.getCacheDirective(Collections.singletonList("a(i)")).length);
+    assertEquals(0, gen.getStartSimdDirective(true, "").length);
+    assertEquals(0, gen.getEndSimdDirective(true).length);
+    assertTrue(gen.getSafelenClause(8).isEmpty());
+    assertTrue(gen.getAlignedClause(Collections.singletonList("a"), 64)
+        .isEmpty());
+  }
+
+  @Test
+  public void cacheDirectiveTest() {
+    DirectiveGenerator acc = new OpenAcc();
+    assertEquals(0, acc.getCacheDirective(Collections.emptyList()).length);
+    String[] directives =
+        acc.getCacheDirective(Arrays.asList("a(i,k-1:k+1)", "b(i,k)"));
+    assertEquals(1, directives.length);
+    assertEquals("acc cache(a(i,k-1:k+1),b(i,k))", directives[0]);
+
+    DirectiveGenerator omp = new OpenMp();
+    assertEquals(0,
+        omp.getCacheDirective(Collections.singletonList("a(i)")).length);
+  }
+
+  @Test
+  public void simdDirectiveTest() {
+    DirectiveGenerator omp = new OpenMp();
+    String[] start = omp.getStartSimdDirective(true, "");
+    assertEquals(1, start.length);
+    assertEquals("omp do simd", start[0]);
+    start = omp.getStartSimdDirective(false, "private(t) safelen(8)");
+    assertEquals(1, start.length);
+    assertEquals("omp simd private(t) safelen(8)", start[0]);
+    assertEquals("omp end do simd", omp.getEndSimdDirective(true)[0]);
+    assertEquals("omp end simd", omp.getEndSimdDirective(false)[0]);
+
+    assertEquals("safelen(8)", omp.getSafelenClause(8));
+    assertTrue(omp.getSafelenClause(0).isEmpty());
+    assertEquals("aligned(a,b:64)",
+        omp.getAlignedClause(Arrays.asList("a", "b"), 64));
+    assertTrue(omp.getAlignedClause(Collections.emptyList(), 64).isEmpty());
+    assertTrue(omp.getAlignedClause(Collections.singletonList("a"), 0)
+        .isEmpty());
+
+    DirectiveGenerator acc = new OpenAcc();
+    assertEquals(0, acc.getStartSimdDirective(true, "").length);
+    assertEquals(0, acc.getEndSimdDirective(true).length);
+  }
+
+  @Test
+  public void reductionClauseTest() {
+    DirectiveGenerator acc = new OpenAcc();
+    assertEquals("reduction(+:s,t)", acc.getReductionClause(
+        ReductionOperator.SUM, Arrays.asList("s", "t")));
+    assertTrue(acc.getReductionClause(ReductionOperator.SUM,
+        Collections.emptyList()).isEmpty());
+
+    DirectiveGenerator omp = new OpenMp();
+    assertEquals("reduction(max:m)", omp.getReductionClause(
+        ReductionOperator.MAX, Collections.singletonList("m")));
+    assertEquals("reduction(.and.:ok)", omp.getReductionClause(
+        ReductionOperator.AND, Collections.singletonList("ok")));
+  }
+
+  @Test
+  public void unstructuredDataDirectiveTest() {
+    DirectiveGenerator acc = new OpenAcc();
+    assertEquals("acc enter data pcreate(t,u)",
+        acc.getEnterDataDirective(Arrays.asList("t", "u"))[0]);
+    assertEquals("acc exit data delete(t)",
+        acc.getExitDataDirective(Collections.singletonList("t"))[0]);
+    assertEquals(0, acc.getEnterDataDirective(null).length);
+
+    DirectiveGenerator omp = new OpenMp();
+    assertEquals("omp target enter data map(alloc:t)",
+        omp.getEnterDataDirective(Collections.singletonList("t"))[0]);
+    assertEquals("omp target exit data map(delete:t)",
+        omp.getExitDataDirective(Collections.singletonList("t"))[0]);
+    assertEquals(0, omp.getExitDataDirective(Collections.emptyList()).length);
+
+    DirectiveGenerator none = new DirectiveNone();
+    assertEquals(0, none.getEnterDataDirective(
+        Collections.singletonList("t")).length);
+    assertEquals(0, none.getExitDataDirective(
+        Collections.singletonList("t")).length);
   }
 
+  @Test
+  public void loopMappingDirectiveTest() {
+    LoopMapping mapping = new LoopMapping(1);
+    mapping.setNumGangs(200);
+    mapping.setVectorLength(64);
+    mapping.setThreadLimit(64);
+
+    DirectiveGenerator acc = new OpenAcc();
+    assertEquals("num_gangs(200) vector_length(64)",
+        acc.getParallelHintClauses(mapping));
+    assertTrue(acc.getParallelHintClauses(null).isEmpty());
+    assertEquals("acc loop gang",
+        acc.getStartOuterLoopDirective(1, "")[0]);
+    assertEquals("acc loop vector collapse(2) private(a)",
+        acc.getStartInnerLoopDirective(2, "private(a)")[0]);
+    assertEquals(0, acc.getEndInnerLoopDirective().length);
+
+    DirectiveGenerator none = new DirectiveNone();
+    assertTrue(none.getParallelHintClauses(mapping).isEmpty());
+    assertEquals(0, none.getStartInnerLoopDirective(1, "").length);
+  }
 }
@@ -16,10 +16,13 @@ import claw.tatsu.xcodeml.xnode.fortran.FfunctionDefinition;
 
 import helper.TestConstant;
 import org.junit.Test;
+import org.w3c.dom.Node;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import static junit.framework.TestCase.fail;
 import static org.junit.Assert.*;
@@ -253,6 +256,80 @@ public class FieldTest {
         new int[]{1, 30, 1, 10, 1, 20, 1, 40});
   }
 
+  @Test
+  public void adaptArrayRefsTest() throws IllegalTransformationException {
+    DimensionDefinition dim1 = new DimensionDefinition("dim1", "1", "30");
+    dim1.setInsertionPosition(InsertionPosition.BEFORE);
+    List<DimensionDefinition> dimensions = Collections.singletonList(dim1);
+
+    XcodeProgram xcodeml =
+        XcodeProgram.createFromFile(TestConstant.TEST_PROMOTION);
+    assertNotNull(xcodeml);
+    FfunctionDefinition fctDef = xcodeml.getAllFctDef().get(0);
+
+    // s1 = a(j,k) and a(j,k) = s1
+    Xnode assign1 = xcodeml.createNode(Xcode.F_ASSIGN_STATEMENT);
+    assign1.append(xcodeml.createVar(FortranType.REAL, "s1", Xscope.LOCAL));
+    assign1.append(createArrayRef(xcodeml, fctDef, "a"));
+    Xnode assign2 = xcodeml.createNode(Xcode.F_ASSIGN_STATEMENT);
+    assign2.append(createArrayRef(xcodeml, fctDef, "a"));
+    assign2.append(xcodeml.createVar(FortranType.REAL, "s1", Xscope.LOCAL));
+    fctDef.body().append(assign1);
+    fctDef.body().append(assign2);
+
+    PromotionInfo s1 = new PromotionInfo("s1", dimensions);
+    PromotionInfo a = new PromotionInfo("a", dimensions);
+    Field.promote(s1, fctDef, xcodeml);
+    Field.promote(a, fctDef, xcodeml);
+
+    assertEquals(4, Field.adaptArrayRefs(Arrays.asList(s1, a), fctDef.body(),
+        false, xcodeml));
+    assertTrue(s1.isRefAdapted());
+    assertTrue(a.isRefAdapted());
+
+    Set<Node> firstIndexes = new HashSet<>();
+    for(Xnode assign : Arrays.asList(assign1, assign2)) {
+      for(Xnode ref : assign.children()) {
+        assertEquals(Xcode.F_ARRAY_REF, ref.opcode());
+        List<Xnode> indexes = ref.matchAll(Xcode.ARRAY_INDEX);
+        assertEquals("s1".equals(ref.matchSeq(Xcode.VAR_REF, Xcode.VAR)
+            .value()) ? 1 : 3, indexes.size());
+        assertEquals("dim1", indexes.get(0).child(0).value());
+        firstIndexes.add(indexes.get(0).element());
+      }
+    }
+    // Each reference has its own copy of the indexes
+    assertEquals(4, firstIndexes.size());
+
+    // References are adapted only once
+    assertEquals(0, Field.adaptArrayRefs(Arrays.asList(s1, a), fctDef.body(),
+        false, xcodeml));
+  }
+
+  /**
+   * Create a two dimensional array reference to a field with j and k indexes.
+   *
+   * @param xcodeml Current XcodeML translation unit.
+   * @param fctDef  Function definition in which the field is declared.
+   * @param id      Identifier of the field.
+   * @return New array reference.
+   */
+  private Xnode createArrayRef(XcodeProgram xcodeml, FfunctionDefinition fctDef,
+                               String id)
+  {
+    FbasicType bt = xcodeml.getTypeTable()
+        .getBasicType(fctDef.getDeclarationTable().get(id));
+    Xnode arrayRef = xcodeml.createArrayRef(bt,
+        xcodeml.createVar(bt.getType(), id, Xscope.LOCAL));
+    for(String index : Arrays.asList("j", "k")) {
+      Xnode arrayIndex = xcodeml.createNode(Xcode.ARRAY_INDEX);
+      arrayIndex.append(
+          xcodeml.createVar(FortranType.INTEGER, index, Xscope.LOCAL));
+      arrayRef.append(arrayIndex);
+    }
+    return arrayRef;
+  }
+
   /**
    * Perform the promotion transformation and assert its result.
    *
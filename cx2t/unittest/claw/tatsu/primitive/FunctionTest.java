@@ -0,0 +1,275 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.primitive;
+
+import claw.tatsu.xcodeml.abstraction.FunctionCall;
+import claw.tatsu.xcodeml.exception.IllegalTransformationException;
+import claw.tatsu.xcodeml.xnode.common.Xcode;
+import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
+import claw.tatsu.xcodeml.xnode.common.Xnode;
+import claw.tatsu.xcodeml.xnode.fortran.FfunctionDefinition;
+import helper.TestConstant;
+import helper.XmlHelper;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test methods of the Function class.
+ *
+ * @author clementval
+ */
+public class FunctionTest {
+
+  @Test
+  public void inlineSubroutineTest() throws IllegalTransformationException {
+    XcodeProgram xcodeml = XmlHelper.getDummyXcodeProgram();
+    FfunctionDefinition caller = getFctDef(xcodeml, "loop_extract");
+    FunctionCall fctCall = getFctCall(caller);
+    Optional<FfunctionDefinition> callee =
+        Function.findFunctionDefinition(xcodeml, caller, fctCall);
+    assertTrue(callee.isPresent());
+    assertEquals("clawloop", callee.get().getName());
+    assertEquals(3, Function.countStatements(callee.get()));
+
+    assertEquals(1, Function.inline(xcodeml, caller, fctCall, callee.get()));
+    assertNull(caller.body().matchDescendant(Xcode.FUNCTION_CALL));
+    Xnode doStmt = caller.body().matchDirectDescendant(Xcode.F_DO_STATEMENT);
+    assertNotNull(doStmt);
+    assertEquals("clawloop_i", Loop.extractInductionVariable(doStmt));
+    assertEquals("clawloop_istart",
+        doStmt.matchDescendant(Xcode.LOWER_BOUND).firstChild().value());
+    assertTrue(caller.getDeclarationTable().contains("clawloop_i"));
+    assertTrue(caller.getDeclarationTable().contains("clawloop_istart"));
+    assertTrue(caller.getDeclarationTable().contains("clawloop_iend"));
+    assertTrue(caller.getSymbolTable().contains("clawloop_iend"));
+    assertNotNull(caller.getDeclarationTable().get("clawloop_iend")
+        .matchDirectDescendant(Xcode.VALUE));
+
+    // Dummy arguments are replaced by the actual arguments
+    for(Xnode varRef : doStmt.matchAll(Xcode.VAR_REF)) {
+      assertTrue(varRef.firstChild().value().startsWith("value"));
+      assertTrue(varRef.firstChild().getType().equals("A7fca03c07980")
+          || varRef.firstChild().getType().equals("A7fca03c08230"));
+    }
+
+    // Original routine is kept
+    assertNotNull(callee.get().body().matchDescendant(Xcode.F_DO_STATEMENT));
+    assertEquals("i", Loop.extractInductionVariable(
+        callee.get().body().matchDescendant(Xcode.F_DO_STATEMENT)));
+  }
+
+  @Test
+  public void inlineFunctionTest() throws IllegalTransformationException {
+    XcodeProgram xcodeml =
+        XcodeProgram.createFromFile(TestConstant.TEST_INLINE);
+    assertNotNull(xcodeml);
+    FfunctionDefinition caller = getFctDef(xcodeml, "kernel");
+    FunctionCall fctCall = getFctCall(caller);
+    FfunctionDefinition callee = getFctDef(xcodeml, "scale");
+
+    // Temporary for the expression argument and the two statements
+    assertEquals(3, Function.inline(xcodeml, caller, fctCall, callee));
+    assertNull(caller.body().matchDescendant(Xcode.FUNCTION_CALL));
+    List<Xnode> assigns = caller.body().matchDescendant(Xcode.F_DO_STATEMENT)
+        .body().children();
+    assertEquals(4, assigns.size());
+
+    // scale_f = 2.0 * t
+    assertEquals("scale_f", assigns.get(0).firstChild().value());
+    assertTrue(assigns.get(0).child(1).is(Xcode.MUL_EXPR));
+    assertEquals("t", assigns.get(0).child(1).child(1).value());
+
+    // scale_t = a(i) * scale_f
+    assertEquals("scale_t", assigns.get(1).firstChild().value());
+    Xnode mul = assigns.get(1).child(1);
+    assertTrue(mul.firstChild().is(Xcode.F_ARRAY_REF));
+    assertEquals("a", mul.firstChild().matchDescendant(Xcode.VAR).value());
+    assertEquals("scale_f", mul.child(1).value());
+
+    // scale_r = scale_t + 1.0
+    assertEquals("scale_r", assigns.get(2).firstChild().value());
+    assertEquals("scale_t", assigns.get(2).child(1).firstChild().value());
+
+    // a(i) = scale_r
+    assertTrue(assigns.get(3).firstChild().is(Xcode.F_ARRAY_REF));
+    assertTrue(assigns.get(3).child(1).is(Xcode.VAR));
+    assertEquals("scale_r", assigns.get(3).child(1).value());
+    assertEquals("Freal", assigns.get(3).child(1).getType());
+
+    for(String name : new String[]{"scale_f", "scale_t", "scale_r"}) {
+      assertTrue(caller.getDeclarationTable().contains(name));
+      assertTrue(caller.getSymbolTable().contains(name));
+    }
+    assertEquals(2, callee.body().children().size());
+  }
+
+  @Test
+  public void notInlinableTest() {
+    XcodeProgram xcodeml = XmlHelper.getDummyXcodeProgram();
+    FfunctionDefinition caller = getFctDef(xcodeml, "loop_extract");
+    FfunctionDefinition callee = getFctDef(xcodeml, "clawloop");
+    callee.body().append(xcodeml.createNode(Xcode.F_STOP_STATEMENT));
+    assertNotInlinable(xcodeml, caller, callee);
+
+    // Defined dummy argument with an expression as actual argument
+    xcodeml = XcodeProgram.createFromFile(TestConstant.TEST_INLINE);
+    assertNotNull(xcodeml);
+    caller = getFctDef(xcodeml, "kernel");
+    callee = getFctDef(xcodeml, "scale");
+    Xnode assign = callee.body().firstChild().cloneNode();
+    assign.firstChild().setValue("f");
+    callee.body().insert(assign);
+    assertNotInlinable(xcodeml, caller, callee);
+  }
+
+  @Test
+  public void specializeTest() throws IllegalTransformationException {
+    XcodeProgram xcodeml =
+        XcodeProgram.createFromFile(TestConstant.TEST_INLINE);
+    assertNotNull(xcodeml);
+    FfunctionDefinition kernel = getFctDef(xcodeml, "kernel");
+    FfunctionDefinition copy = Function.specialize(xcodeml, kernel,
+        Collections.singletonMap("n", 16), "kernel_n16");
+    assertEquals("kernel_n16", copy.getName());
+    assertSame(copy.element(), kernel.nextSibling().element());
+    assertTrue(xcodeml.getGlobalSymbolsTable().contains("kernel_n16"));
+    assertNotEquals(kernel.name().getType(), copy.name().getType());
+
+    // Constant loop bound in the copy
+    Xnode upper = copy.body().matchDescendant(Xcode.F_DO_STATEMENT)
+        .matchDescendant(Xcode.UPPER_BOUND).firstChild();
+    assertTrue(upper.is(Xcode.F_INT_CONSTANT));
+    assertEquals("16", upper.value());
+
+    // Dispatch at the beginning of the generic version
+    Xnode dispatch = kernel.body().firstChild();
+    assertTrue(dispatch.is(Xcode.F_IF_STATEMENT));
+    Xnode condition = dispatch.matchDirectDescendant(Xcode.CONDITION)
+        .firstChild();
+    assertTrue(condition.is(Xcode.LOG_EQ_EXPR));
+    assertEquals("n", condition.firstChild().value());
+    Xnode thenBody = dispatch.matchDirectDescendant(Xcode.THEN).body();
+    FunctionCall call =
+        new FunctionCall(thenBody.firstChild().firstChild());
+    assertEquals("kernel_n16", call.getFctName());
+    assertEquals(2, call.arguments().size());
+    assertTrue(thenBody.lastChild().is(Xcode.F_RETURN_STATEMENT));
+    assertTrue(kernel.body().matchDescendant(Xcode.F_DO_STATEMENT)
+        .matchDescendant(Xcode.UPPER_BOUND).firstChild().is(Xcode.VAR));
+  }
+
+  @Test
+  public void notSpecializableTest() {
+    XcodeProgram xcodeml =
+        XcodeProgram.createFromFile(TestConstant.TEST_INLINE);
+    assertNotNull(xcodeml);
+    FfunctionDefinition kernel = getFctDef(xcodeml, "kernel");
+    FfunctionDefinition scale = getFctDef(xcodeml, "scale");
+    // Function, array argument, argument not found and name already used
+    assertNotSpecializable(xcodeml, scale, "x", "scale_x1");
+    assertNotSpecializable(xcodeml, kernel, "a", "kernel_a1");
+    assertNotSpecializable(xcodeml, kernel, "m", "kernel_m1");
+    assertNotSpecializable(xcodeml, kernel, "n", "scale");
+    assertTrue(kernel.body().firstChild().is(Xcode.F_ASSIGN_STATEMENT));
+    assertEquals(2, xcodeml.getAllFctDef().size());
+  }
+
+  @Test
+  public void specializeModuleTest() throws IllegalTransformationException {
+    XcodeProgram xcodeml =
+        XcodeProgram.createFromFile(TestConstant.TEST_SPECIALIZE);
+    assertNotNull(xcodeml);
+    FfunctionDefinition kernel = findFctDef(xcodeml, "kernel");
+    FfunctionDefinition copy = Function.specialize(xcodeml, kernel,
+        Collections.singletonMap("n", 16), "kernel_n16");
+
+    // Copy in the module so the dispatcher has its explicit interface
+    assertNotNull(copy.findParentModule());
+    assertSame(kernel.findParentModule().element(),
+        copy.findParentModule().element());
+    assertTrue(kernel.findParentModule().getSymbolTable()
+        .contains("kernel_n16"));
+    assertFalse(xcodeml.getGlobalSymbolsTable().contains("kernel_n16"));
+
+    // Dispatcher passes the assumed-shape argument to the copy
+    Xnode thenBody = kernel.body().firstChild()
+        .matchDirectDescendant(Xcode.THEN).body();
+    FunctionCall call =
+        new FunctionCall(thenBody.firstChild().firstChild());
+    assertEquals("kernel_n16", call.getFctName());
+    assertEquals(2, call.arguments().size());
+    Xnode arg = call.arguments().get(1);
+    assertEquals("a", arg.value());
+    assertTrue(xcodeml.getTypeTable().getBasicType(arg).isAllAssumedShape());
+    assertTrue(xcodeml.getTypeTable().getBasicType(
+        copy.getDeclarationTable().get("a")).isAllAssumedShape());
+  }
+
+  @Test
+  public void notSpecializableExternalTest() {
+    XcodeProgram xcodeml =
+        XcodeProgram.createFromFile(TestConstant.TEST_SPECIALIZE);
+    assertNotNull(xcodeml);
+    // External subroutine with an assumed-shape argument
+    FfunctionDefinition extKernel = findFctDef(xcodeml, "ext_kernel");
+    assertNotSpecializable(xcodeml, extKernel, "n", "ext_kernel_n1");
+    assertTrue(extKernel.body().firstChild().is(Xcode.F_DO_STATEMENT));
+    assertEquals(3, xcodeml.getAllFctDef().size());
+  }
+
+  private void assertNotSpecializable(XcodeProgram xcodeml,
+                                      FfunctionDefinition fctDef,
+                                      String param, String name)
+  {
+    try {
+      Function.specialize(xcodeml, fctDef, Collections.singletonMap(param, 1),
+          name);
+      fail();
+    } catch(IllegalTransformationException ignored) {
+    }
+  }
+
+  private void assertNotInlinable(XcodeProgram xcodeml,
+                                  FfunctionDefinition caller,
+                                  FfunctionDefinition callee)
+  {
+    int declarations = caller.getDeclarationTable().count();
+    try {
+      Function.inline(xcodeml, caller, getFctCall(caller), callee);
+      fail();
+    } catch(IllegalTransformationException ignored) {
+    }
+    assertNotNull(caller.body().matchDescendant(Xcode.FUNCTION_CALL));
+    assertEquals(declarations, caller.getDeclarationTable().count());
+  }
+
+  private FfunctionDefinition findFctDef(XcodeProgram xcodeml, String name) {
+    for(FfunctionDefinition fctDef : xcodeml.getAllFctDef()) {
+      if(fctDef.getName().equals(name)) {
+        return fctDef;
+      }
+    }
+    fail();
+    return null;
+  }
+
+  private FfunctionDefinition getFctDef(XcodeProgram xcodeml, String name) {
+    FfunctionDefinition fctDef =
+        xcodeml.getGlobalDeclarationsTable().getFunctionDefinition(name);
+    assertNotNull(fctDef);
+    return fctDef;
+  }
+
+  private FunctionCall getFctCall(FfunctionDefinition fctDef) {
+    Xnode fctCall = fctDef.body().matchDescendant(Xcode.FUNCTION_CALL);
+    assertNotNull(fctCall);
+    return new FunctionCall(fctCall);
+  }
+}
@@ -5,6 +5,7 @@
 package claw.tatsu.primitive;
 
 import claw.tatsu.xcodeml.abstraction.DimensionDefinition;
+import claw.tatsu.xcodeml.abstraction.NestedDoStatement;
 import claw.tatsu.xcodeml.exception.IllegalTransformationException;
 import claw.tatsu.xcodeml.xnode.common.Xcode;
 import claw.tatsu.xcodeml.xnode.common.XcodeML;
@@ -15,6 +16,7 @@ import claw.tatsu.xcodeml.xnode.fortran.FortranType;
 import helper.XmlHelper;
 import org.junit.Test;
 
+import java.util.Collections;
 import java.util.List;
 
 import static junit.framework.TestCase.fail;
@@ -93,4 +95,227 @@ public class LoopTest {
     int doStmtCnt3 = f1.matchAll(Xcode.F_DO_STATEMENT).size();
     assertEquals(doStmtCnt1 + 1, doStmtCnt3);
   }
+
+  @Test
+  public void hoistInvariantsTest() {
+    XcodeML xcodeml = XmlHelper.getDummyXcodeProgram();
+    assertNotNull(xcodeml);
+    FfunctionDefinition fctDef = xcodeml.getAllFctDef().get(0);
+    Xnode doStmt = xcodeml.importNode(XmlHelper.createXnode(doStmt(
+        assign(var("s", "Freal"), "<mulExpr type=\"Freal\">"
+            + var("c", "Freal") + var("d", "Freal") + "</mulExpr>")
+            + assign(arrayRef("a"), var("s", "Freal"))
+            + assign(var("t", "Freal"), arrayRef("a"))
+            + "<FifStatement><condition><logAndExpr type=\"Flogical\">"
+            + var("flag", "Flogical") + var("flag2", "Flogical")
+            + "</logAndExpr></condition><then><body>"
+            + assign(arrayRef("a"), var("t", "Freal"))
+            + "</body></then></FifStatement>")));
+    fctDef.body().append(doStmt);
+
+    int hoisted = Loop.hoistInvariants(xcodeml, fctDef,
+        new NestedDoStatement(doStmt), Collections.singleton("a"));
+    assertEquals(2, hoisted);
+
+    // Hoisted statements only executed if the group has an iteration
+    List<Xnode> stmts = getGuardedStatements(fctDef, doStmt);
+    assertEquals(2, stmts.size());
+    assertEquals("s", stmts.get(0).firstChild().value());
+    assertEquals("claw_licm_cond", stmts.get(1).firstChild().value());
+    assertEquals(3, doStmt.body().children().size());
+    assertEquals("claw_licm_cond", doStmt.body().matchSeq(
+        Xcode.F_IF_STATEMENT, Xcode.CONDITION, Xcode.VAR).value());
+    assertTrue(fctDef.getSymbolTable().contains("claw_licm_cond"));
+  }
+
+  @Test
+  public void hoistInvariantsUsedBeforeTest() {
+    XcodeML xcodeml = XmlHelper.getDummyXcodeProgram();
+    assertNotNull(xcodeml);
+    FfunctionDefinition fctDef = xcodeml.getAllFctDef().get(0);
+    Xnode doStmt = xcodeml.importNode(XmlHelper.createXnode(doStmt(
+        assign(arrayRef("a"), var("x", "Freal"))
+            + assign(var("x", "Freal"), var("c", "Freal")))));
+    fctDef.body().append(doStmt);
+
+    assertEquals(0, Loop.hoistInvariants(xcodeml, fctDef,
+        new NestedDoStatement(doStmt), Collections.singleton("a")));
+    assertEquals(2, doStmt.body().children().size());
+  }
+
+  @Test
+  public void hoistInvariantsScalarOnlyTest() {
+    XcodeML xcodeml = XmlHelper.getDummyXcodeProgram();
+    assertNotNull(xcodeml);
+    FfunctionDefinition fctDef = xcodeml.getAllFctDef().get(0);
+    // Invariant statements reading the element of an array not defined in
+    // the group as done on GPU where the group is in a data region.
+    String body = assign(var("s", "Freal"), constArrayRef("b"))
+        + assign(var("t", "Freal"), "<mulExpr type=\"Freal\">"
+        + var("c", "Freal") + var("d", "Freal") + "</mulExpr>")
+        + "<FifStatement><condition><logGTExpr type=\"Flogical\">"
+        + constArrayRef("b") + var("c", "Freal")
+        + "</logGTExpr></condition><then><body>"
+        + assign(arrayRef("a"), var("s", "Freal"))
+        + "</body></then></FifStatement>"
+        + assign(arrayRef("a"), var("t", "Freal"));
+
+    Xnode doStmt = xcodeml.importNode(XmlHelper.createXnode(doStmt(body)));
+    fctDef.body().append(doStmt);
+    assertEquals(1, Loop.hoistInvariants(xcodeml, fctDef,
+        new NestedDoStatement(doStmt), Collections.singleton("a"), true));
+    List<Xnode> stmts = getGuardedStatements(fctDef, doStmt);
+    assertEquals(1, stmts.size());
+    assertEquals("t", stmts.get(0).firstChild().value());
+    assertEquals(3, doStmt.body().children().size());
+    assertEquals("s", doStmt.body().firstChild().firstChild().value());
+    assertNotNull(doStmt.body().matchSeq(Xcode.F_IF_STATEMENT, Xcode.CONDITION,
+        Xcode.LOG_GT_EXPR, Xcode.F_ARRAY_REF));
+    assertFalse(fctDef.getSymbolTable().contains("claw_licm_cond"));
+
+    // Same group on CPU
+    doStmt = xcodeml.importNode(XmlHelper.createXnode(doStmt(body)));
+    fctDef.body().append(doStmt);
+    assertEquals(3, Loop.hoistInvariants(xcodeml, fctDef,
+        new NestedDoStatement(doStmt), Collections.singleton("a"), false));
+    assertEquals(2, doStmt.body().children().size());
+  }
+
+  @Test
+  public void hoistInvariantsUnknownStepTest() {
+    XcodeML xcodeml = XmlHelper.getDummyXcodeProgram();
+    assertNotNull(xcodeml);
+    FfunctionDefinition fctDef = xcodeml.getAllFctDef().get(0);
+    // The sign of the step is unknown, no guard can be computed
+    Xnode doStmt = xcodeml.importNode(XmlHelper.createXnode(doStmt(
+        assign(var("s", "Freal"), var("c", "Freal"))
+            + assign(arrayRef("a"), var("s", "Freal")))));
+    Xnode step = doStmt.matchSeq(Xcode.INDEX_RANGE, Xcode.STEP);
+    step.firstChild().delete();
+    step.append(xcodeml.importNode(XmlHelper.createXnode(var("k", "Fint"))));
+    fctDef.body().append(doStmt);
+
+    assertEquals(0, Loop.hoistInvariants(xcodeml, fctDef,
+        new NestedDoStatement(doStmt), Collections.singleton("a")));
+    assertEquals(2, doStmt.body().children().size());
+  }
+
+  @Test
+  public void unswitchTest() throws IllegalTransformationException {
+    XcodeML xcodeml = XmlHelper.getDummyXcodeProgram();
+    assertNotNull(xcodeml);
+    FfunctionDefinition fctDef = xcodeml.getAllFctDef().get(0);
+    Xnode doStmt = xcodeml.importNode(XmlHelper.createXnode(doStmt(
+        assign(arrayRef("a"), var("c", "Freal"))
+            + "<FifStatement><condition>" + var("flag", "Flogical")
+            + "</condition><then><body>"
+            + assign(arrayRef("b"), var("c", "Freal"))
+            + "</body></then><else><body>"
+            + assign(arrayRef("b"), var("d", "Freal"))
+            + assign(arrayRef("e"), var("d", "Freal"))
+            + "</body></else></FifStatement>")));
+    fctDef.body().append(doStmt);
+    int size = Loop.countStatements(doStmt);
+    assertEquals(6, size);
+
+    Xnode ifStmt = Loop.findUnswitchCandidate(fctDef, doStmt);
+    assertNotNull(ifStmt);
+    Xnode newIf = Loop.unswitch(xcodeml, doStmt, ifStmt);
+    assertEquals(fctDef.body(), newIf.ancestor());
+    assertEquals("flag",
+        newIf.matchSeq(Xcode.CONDITION, Xcode.VAR).value());
+
+    Xnode thenLoop = newIf.matchSeq(Xcode.THEN, Xcode.BODY,
+        Xcode.F_DO_STATEMENT);
+    Xnode elseLoop = newIf.matchSeq(Xcode.ELSE, Xcode.BODY,
+        Xcode.F_DO_STATEMENT);
+    assertNotNull(thenLoop);
+    assertNotNull(elseLoop);
+    assertNull(thenLoop.matchDescendant(Xcode.F_IF_STATEMENT));
+    assertNull(elseLoop.matchDescendant(Xcode.F_IF_STATEMENT));
+    assertEquals(2, thenLoop.body().children().size());
+    assertEquals(3, elseLoop.body().children().size());
+    assertNull(Loop.findUnswitchCandidate(fctDef, thenLoop));
+  }
+
+  @Test
+  public void unswitchVariantConditionTest() {
+    XcodeML xcodeml = XmlHelper.getDummyXcodeProgram();
+    assertNotNull(xcodeml);
+    FfunctionDefinition fctDef = xcodeml.getAllFctDef().get(0);
+    String ifStmt = "<FifStatement><condition><logGTExpr type=\"Flogical\">"
+        + "%s<FintConstant type=\"Fint\">1</FintConstant></logGTExpr>"
+        + "</condition><then><body>"
+        + assign(arrayRef("b"), var("c", "Freal"))
+        + "</body></then></FifStatement>";
+
+    // Condition depends on the induction variable
+    Xnode doStmt = xcodeml.importNode(XmlHelper.createXnode(doStmt(
+        String.format(ifStmt, var("i", "Fint")))));
+    fctDef.body().append(doStmt);
+    assertNull(Loop.findUnswitchCandidate(fctDef, doStmt));
+
+    // Condition uses a variable defined in the loop
+    doStmt = xcodeml.importNode(XmlHelper.createXnode(doStmt(
+        assign(var("k", "Fint"), var("i", "Fint"))
+            + String.format(ifStmt, var("k", "Fint")))));
+    fctDef.body().append(doStmt);
+    assertNull(Loop.findUnswitchCandidate(fctDef, doStmt));
+
+    // Condition is invariant
+    doStmt = xcodeml.importNode(XmlHelper.createXnode(doStmt(
+        String.format(ifStmt, var("m", "Fint")))));
+    fctDef.body().append(doStmt);
+    assertNotNull(Loop.findUnswitchCandidate(fctDef, doStmt));
+  }
+
+  private String var(String name, String type) {
+    return String.format("<Var type=\"%s\" scope=\"local\">%s</Var>", type,
+        name);
+  }
+
+  private String arrayRef(String name) {
+    return "<FarrayRef type=\"Freal\"><varRef type=\"Freal\">"
+        + var(name, "Freal") + "</varRef><arrayIndex>" + var("i", "Fint")
+        + "</arrayIndex></FarrayRef>";
+  }
+
+  private String constArrayRef(String name) {
+    return "<FarrayRef type=\"Freal\"><varRef type=\"Freal\">"
+        + var(name, "Freal") + "</varRef><arrayIndex>"
+        + "<FintConstant type=\"Fint\">1</FintConstant></arrayIndex>"
+        + "</FarrayRef>";
+  }
+
+  private String assign(String lhs, String rhs) {
+    return "<FassignStatement>" + lhs + rhs + "</FassignStatement>";
+  }
+
+  /**
+   * Get the statements hoisted in the guard in front of a do statement.
+   *
+   * @param fctDef Function definition holding the do statement.
+   * @param doStmt Outer do statement of the group.
+   * @return Statements of the then body of the guard.
+   */
+  private List<Xnode> getGuardedStatements(FfunctionDefinition fctDef,
+                                           Xnode doStmt)
+  {
+    List<Xnode> stmts = fctDef.body().children();
+    Xnode guard = stmts.get(stmts.indexOf(doStmt) - 1);
+    assertTrue(guard.is(Xcode.F_IF_STATEMENT));
+    Xnode nonEmpty = guard.matchSeq(Xcode.CONDITION, Xcode.LOG_GE_EXPR);
+    assertNotNull(nonEmpty);
+    assertEquals("n", nonEmpty.child(0).value());
+    assertEquals("1", nonEmpty.child(1).value());
+    return guard.matchDirectDescendant(Xcode.THEN).body().children();
+  }
+
+  private String doStmt(String body) {
+    return "<FdoStatement>" + var("i", "Fint") + "<indexRange><lowerBound>"
+        + "<FintConstant type=\"Fint\">1</FintConstant></lowerBound>"
+        + "<upperBound>" + var("n", "Fint") + "</upperBound><step>"
+        + "<FintConstant type=\"Fint\">1</FintConstant></step></indexRange>"
+        + "<body>" + body + "</body></FdoStatement>";
+  }
 }
@@ -140,4 +140,42 @@ public class DimensionTest {
     assertEquals(Xcode.VAR, upperNode.firstChild().opcode());
     assertEquals("nend", upperNode.firstChild().value());
   }
+
+  @Test
+  public void paddingTest() {
+    XcodeProgram xcodeml = XmlHelper.getDummyXcodeProgram();
+    DimensionDefinition dimDef = new DimensionDefinition("nproma", "1", "10");
+    dimDef.setInsertionPosition(InsertionPosition.AFTER);
+    DimensionDefinition padded = dimDef.pad(8);
+    assertEquals(16, padded.getUpperBound().getIntValue());
+    assertEquals(10, padded.getIterationUpperBound().getIntValue());
+    assertEquals(InsertionPosition.AFTER, padded.getInsertionPosition());
+    assertEquals(16, padded.pad(8).getUpperBound().getIntValue());
+    assertEquals(10, dimDef.pad(1).getUpperBound().getIntValue());
+
+    DimensionDefinition varDim = new DimensionDefinition("nproma", "1", "nend");
+    DimensionDefinition paddedVar = varDim.pad(8);
+    assertEquals(8, paddedVar.getUpperBound().getPadding());
+    assertEquals("nend", paddedVar.getIterationUpperBound().getValue());
+    Xnode upper = paddedVar.getUpperBound().generate(xcodeml);
+    assertEquals(Xcode.MUL_EXPR, upper.firstChild().opcode());
+    assertEquals(Xcode.DIV_EXPR, upper.firstChild().firstChild().opcode());
+    assertEquals(Xcode.VAR, upper.matchDescendant(Xcode.VAR).opcode());
+
+    DimensionDefinition offsetDim =
+        new DimensionDefinition("nproma", "nstart", "nend");
+    assertEquals(0, offsetDim.pad(8).getUpperBound().getPadding());
+  }
+
+  @Test
+  public void tripCountTest() {
+    assertEquals(60, new DimensionDefinition("k", "1", "60").getTripCount());
+    assertEquals(30, new DimensionDefinition("k", "1", "60", null, null, "2")
+        .getTripCount());
+    DimensionDefinition dimDef = new DimensionDefinition("i", "1", "nproma");
+    assertEquals(0, dimDef.getTripCount());
+    dimDef.setTripCountHint(1000);
+    assertEquals(1000, dimDef.getTripCount());
+    assertEquals(1000, dimDef.pad(8).getTripCount());
+  }
 }
@@ -0,0 +1,103 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.xcodeml.module;
+
+import claw.tatsu.common.CompilerDirective;
+import claw.tatsu.common.Context;
+import claw.tatsu.common.Target;
+import claw.tatsu.primitive.Xmod;
+import claw.tatsu.xcodeml.xnode.XnodeUtil;
+import claw.tatsu.xcodeml.xnode.fortran.FortranModule;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the features of the ModuleCache class.
+ *
+ * @author clementval
+ */
+public class ModuleCacheTest {
+
+  private static final int INDENT = 2;
+
+  @Test
+  public void evictionTest() throws Exception {
+    Context.get().init(CompilerDirective.OPENACC, Target.GPU, null, 80);
+    Path dir = Files.createTempDirectory("claw-module-cache");
+    try {
+      ModuleCache cache = new ModuleCache();
+      // Always under pressure
+      cache.enableEviction(INDENT, 0.0);
+      cache.add("mo_a", createModule(dir, "mo_a"));
+      assertTrue(cache.isModuleLoaded("MO_A"));
+      File evictedFile = new File(dir.toFile(), "mo_a" + Xmod.getSuffix());
+      assertFalse(evictedFile.exists());
+
+      cache.add("mo_b", createModule(dir, "mo_b"));
+      assertTrue(evictedFile.exists());
+      assertTrue(cache.isModuleLoaded("mo_a"));
+      assertTrue(cache.isModuleLoaded("mo_b"));
+      assertFalse(cache.isModuleLoaded("mo_c"));
+
+      // Evicted module is read again
+      FortranModule modA = cache.get("mo_a");
+      assertNotNull(modA);
+      assertEquals("mo_a", modA.getName());
+      assertEquals(dir.toString() + "/", modA.getPath());
+      assertSame(modA, cache.get("MO_A"));
+      assertNull(cache.get("mo_c"));
+    } finally {
+      deleteDirectory(dir.toFile());
+    }
+  }
+
+  @Test
+  public void noPressureTest() throws Exception {
+    Context.get().init(CompilerDirective.OPENACC, Target.GPU, null, 80);
+    Path dir = Files.createTempDirectory("claw-module-cache");
+    try {
+      ModuleCache cache = new ModuleCache();
+      cache.enableEviction(INDENT, 1.0);
+      FortranModule modA = createModule(dir, "mo_a");
+      cache.add("mo_a", modA);
+      cache.add("mo_b", createModule(dir, "mo_b"));
+      assertSame(modA, cache.get("mo_a"));
+      File[] files = dir.toFile().listFiles();
+      assertNotNull(files);
+      assertEquals(2, files.length);
+
+      cache.write(INDENT);
+      files = dir.toFile().listFiles();
+      assertNotNull(files);
+      assertEquals(4, files.length);
+    } finally {
+      deleteDirectory(dir.toFile());
+    }
+  }
+
+  private FortranModule createModule(Path dir, String name) throws Exception {
+    Path file = dir.resolve(name + ".xmod");
+    Files.write(file, ("<OmniFortranModule version=\"1.0\"><name>" + name
+        + "</name><typeTable/><identifiers/><declarations/>"
+        + "<interfaceDecls/><aux_info/></OmniFortranModule>").getBytes());
+    return new FortranModule(XnodeUtil.readXmlFile(file.toString()), name,
+        dir.toString());
+  }
+
+  private void deleteDirectory(File dir) {
+    File[] files = dir.listFiles();
+    if(files != null) {
+      for(File file : files) {
+        assertTrue(file.delete());
+      }
+    }
+    assertTrue(dir.delete());
+  }
+}
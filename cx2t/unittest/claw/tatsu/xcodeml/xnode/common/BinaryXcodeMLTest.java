@@ -0,0 +1,131 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.xcodeml.xnode.common;
+
+import helper.TestConstant;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the binary XcodeML format.
+ *
+ * @author clementval
+ */
+public class BinaryXcodeMLTest {
+
+  private static final int INDENT = 2;
+
+  @Test
+  public void roundTripTest() throws Exception {
+    Path dir = Files.createTempDirectory("claw-binary-test");
+    try {
+      XcodeProgram reference =
+          XcodeProgram.createFromFile(TestConstant.TEST_CALL_GRAPH);
+      assertNotNull(reference);
+      Path expected = dir.resolve("expected.xml");
+      reference.write(expected.toString(), INDENT);
+
+      // Write the binary format
+      Path binary = dir.resolve("output.xbin");
+      reference.writeBinary(binary.toString());
+      assertTrue(BinaryXcodeML.isBinary(binary));
+      assertFalse(BinaryXcodeML.isBinary(expected));
+      assertFalse(BinaryXcodeML.isBinary(Paths.get(
+          TestConstant.TEST_CALL_GRAPH)));
+      assertTrue(Files.size(binary) < Files.size(expected));
+
+      // Textual format written back is the same
+      Path output = dir.resolve("output.xml");
+      try(OutputStream out = Files.newOutputStream(output)) {
+        BinaryXcodeML.writeXml(BinaryXcodeML.read(binary), out, INDENT);
+      }
+      assertEquals(Files.readAllLines(expected), Files.readAllLines(output));
+
+      // Binary files are read transparently
+      XcodeProgram xcodeml = XcodeProgram.createFromFile(binary.toString());
+      assertNotNull(xcodeml);
+      assertFalse(xcodeml.hasErrors());
+      assertEquals(3, xcodeml.matchAll(Xcode.F_FUNCTION_DEFINITION).size());
+      Path rewritten = dir.resolve("rewritten.xml");
+      xcodeml.write(rewritten.toString(), INDENT);
+      assertEquals(Files.readAllLines(expected),
+          Files.readAllLines(rewritten));
+
+      // Binary streams are detected
+      try(InputStream in = Files.newInputStream(binary)) {
+        Document doc = XcodeML.readXmlStream(in);
+        assertNotNull(doc);
+        assertEquals(3, XcodeProgram.createFromDocument(doc)
+            .matchAll(Xcode.F_FUNCTION_DEFINITION).size());
+      }
+    } finally {
+      deleteDirectory(dir.toFile());
+    }
+  }
+
+  @Test
+  public void textPreservedTest() throws Exception {
+    XcodeProgram xcodeml =
+        XcodeProgram.createFromFile(TestConstant.TEST_CALL_GRAPH);
+    assertNotNull(xcodeml);
+    Xnode value = xcodeml.createNode(Xcode.F_CHARACTER_CONSTANT);
+    value.setValue("  a  b ");
+    xcodeml.matchAll(Xcode.F_FUNCTION_DEFINITION).get(0).append(value);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BinaryXcodeML.write(xcodeml.getDocument(), out);
+    XcodeProgram read = XcodeProgram.createFromDocument(
+        BinaryXcodeML.read(new ByteArrayInputStream(out.toByteArray())));
+    boolean found = false;
+    for(Xnode readValue : read.matchAll(Xcode.F_CHARACTER_CONSTANT)) {
+      found |= readValue.element().getTextContent().equals("  a  b ");
+    }
+    assertTrue(found);
+  }
+
+  @Test
+  public void corruptedTest() throws Exception {
+    XcodeProgram xcodeml =
+        XcodeProgram.createFromFile(TestConstant.TEST_CALL_GRAPH);
+    assertNotNull(xcodeml);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BinaryXcodeML.write(xcodeml.getDocument(), out);
+    byte[] bytes = out.toByteArray();
+
+    try {
+      BinaryXcodeML.read(ByteBuffer.wrap(bytes, 0, bytes.length / 2));
+      fail();
+    } catch(IOException ignored) {
+    }
+    try {
+      BinaryXcodeML.read(ByteBuffer.wrap(new byte[]{1, 2, 3}));
+      fail();
+    } catch(IOException ignored) {
+    }
+  }
+
+  private void deleteDirectory(File dir) {
+    File[] files = dir.listFiles();
+    if(files != null) {
+      for(File file : files) {
+        deleteDirectory(file);
+      }
+    }
+    assertTrue(dir.delete());
+  }
+}
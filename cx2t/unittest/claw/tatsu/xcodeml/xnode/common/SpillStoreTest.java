@@ -0,0 +1,90 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.xcodeml.xnode.common;
+
+import claw.tatsu.xcodeml.xnode.fortran.FfunctionDefinition;
+import helper.TestConstant;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the spill of subtrees of an XcodeML translation unit.
+ *
+ * @author clementval
+ */
+public class SpillStoreTest {
+
+  private static final int INDENT = 2;
+
+  @Test
+  public void spillWriteRestoreTest() throws Exception {
+    Path dir = Files.createTempDirectory("claw-spill-test");
+    try {
+      XcodeProgram reference =
+          XcodeProgram.createFromFile(TestConstant.TEST_CALL_GRAPH);
+      assertNotNull(reference);
+      Path expected = dir.resolve("expected.xml");
+      reference.write(expected.toString(), INDENT);
+
+      XcodeProgram xcodeml =
+          XcodeProgram.createFromFile(TestConstant.TEST_CALL_GRAPH);
+      assertNotNull(xcodeml);
+      List<Xnode> fctDefs = xcodeml.matchAll(Xcode.F_FUNCTION_DEFINITION);
+      assertEquals(3, fctDefs.size());
+      Path spillDir = dir.resolve("spill");
+      xcodeml.spill(fctDefs.get(1), spillDir, INDENT);
+      xcodeml.spill(fctDefs.get(2), spillDir, INDENT);
+      assertEquals(2, xcodeml.getSpilledCount());
+      assertEquals(1, xcodeml.matchAll(Xcode.F_FUNCTION_DEFINITION).size());
+      try {
+        xcodeml.spill(fctDefs.get(1), spillDir, INDENT);
+        fail();
+      } catch(java.io.IOException ignored) {
+      }
+
+      // Spilled subtrees are spliced back in the output file
+      Path output = dir.resolve("output.xml");
+      xcodeml.write(output.toString(), INDENT);
+      assertEquals(2, xcodeml.getSpilledCount());
+      assertEquals(Files.readAllLines(expected), Files.readAllLines(output));
+
+      // Spilled subtrees are restored in the document
+      xcodeml.restoreSpilled();
+      assertEquals(0, xcodeml.getSpilledCount());
+      List<Xnode> restored = xcodeml.matchAll(Xcode.F_FUNCTION_DEFINITION);
+      assertEquals(3, restored.size());
+      assertEquals("update",
+          new FfunctionDefinition(restored.get(1)).getName());
+      assertEquals("main",
+          new FfunctionDefinition(restored.get(2)).getName());
+      assertNotNull(xcodeml.getGlobalDeclarationsTable()
+          .getFunctionDefinition("main"));
+      File[] files = spillDir.toFile().listFiles();
+      assertNotNull(files);
+      assertEquals(0, files.length);
+
+      xcodeml.write(output.toString(), INDENT);
+      assertEquals(Files.readAllLines(expected), Files.readAllLines(output));
+    } finally {
+      deleteDirectory(dir.toFile());
+    }
+  }
+
+  private void deleteDirectory(File dir) {
+    File[] files = dir.listFiles();
+    if(files != null) {
+      for(File file : files) {
+        deleteDirectory(file);
+      }
+    }
+    assertTrue(dir.delete());
+  }
+}
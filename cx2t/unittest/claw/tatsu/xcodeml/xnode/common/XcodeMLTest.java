@@ -4,6 +4,10 @@
  */
 package claw.tatsu.xcodeml.xnode.common;
 
+import claw.tatsu.xcodeml.xnode.Xname;
+import claw.tatsu.xcodeml.xnode.fortran.FbasicType;
+import claw.tatsu.xcodeml.xnode.fortran.FortranType;
+import claw.tatsu.xcodeml.xnode.fortran.Intent;
 import helper.XmlHelper;
 import org.junit.Test;
 
@@ -52,4 +56,42 @@ public class XcodeMLTest {
     assertEquals("acc ,var24,var25,var26,var27,var28,var29,var30)",
         p4.get(3).value());
   }
+
+  @Test
+  public void importTypeTest() {
+    XcodeProgram src = XmlHelper.getDummyXcodeProgram();
+    XcodeProgram dst = XmlHelper.getDummyXcodeProgram();
+    int size = dst.getTypeTable().size();
+
+    // Same type under the same hash is not imported again
+    assertEquals("A7fca03c07980", dst.importType(src, "A7fca03c07980"));
+    assertEquals(Xname.TYPE_F_INT, dst.importType(src, Xname.TYPE_F_INT));
+    assertEquals(size, dst.getTypeTable().size());
+
+    // Both units generate the same hash for different types
+    FbasicType scalar = src.createBasicType(FortranType.INTEGER, Intent.IN);
+    src.getTypeTable().addDistinct(scalar);
+    FbasicType pointer = src.createBasicType(
+        src.getTypeTable().generateHash(FortranType.INTEGER), scalar.getType(),
+        Intent.NONE);
+    pointer.setBooleanAttribute(Xattr.IS_POINTER, true);
+    src.getTypeTable().addDistinct(pointer);
+    FbasicType other = dst.createBasicType(FortranType.INTEGER, Intent.OUT);
+    dst.getTypeTable().addDistinct(other);
+    assertEquals(scalar.getType(), other.getType());
+
+    // Colliding types are imported under new hashes and references updated
+    String hash = dst.importType(src, pointer.getType());
+    FbasicType imported = dst.getTypeTable().getBasicType(hash);
+    assertNotNull(imported);
+    assertTrue(imported.getBooleanAttribute(Xattr.IS_POINTER));
+    assertNotEquals(scalar.getType(), imported.getRef());
+    FbasicType importedScalar =
+        dst.getTypeTable().getBasicType(imported.getRef());
+    assertNotNull(importedScalar);
+    assertEquals(Intent.IN, importedScalar.getIntent());
+    assertEquals(Intent.OUT,
+        dst.getTypeTable().getBasicType(other.getType()).getIntent());
+    assertEquals(size + 3, dst.getTypeTable().size());
+  }
 }
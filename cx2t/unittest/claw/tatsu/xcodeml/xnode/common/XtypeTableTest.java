@@ -6,6 +6,8 @@ package claw.tatsu.xcodeml.xnode.common;
 
 import claw.tatsu.xcodeml.xnode.Xname;
 import claw.tatsu.xcodeml.xnode.fortran.*;
+import claw.tatsu.xcodeml.abstraction.DimensionDefinition;
+import claw.tatsu.xcodeml.abstraction.InsertionPosition;
 import helper.XmlHelper;
 import org.junit.Test;
 
@@ -124,6 +126,69 @@ public class XtypeTableTest {
     assertEquals(4, clone.size());
   }
 
+  @Test
+  public void hashConsingTest() {
+    XcodeProgram xcodeml = XmlHelper.getDummyXcodeProgram();
+    XtypeTable typeTable = xcodeml.getTypeTable();
+    int size = typeTable.size();
+
+    FbasicType t1 = createArrayType(xcodeml, Intent.IN, "10");
+    String hash1 = t1.getType();
+    assertEquals(hash1, typeTable.add(t1));
+    assertEquals(size + 1, typeTable.size());
+
+    // Structurally identical type takes the existing hash
+    FbasicType t2 = createArrayType(xcodeml, Intent.IN, "10");
+    assertNotEquals(hash1, t2.getType());
+    assertEquals(hash1, typeTable.add(t2));
+    assertEquals(hash1, t2.getType());
+    assertEquals(size + 1, typeTable.size());
+    assertEquals(1, typeTable.getMergedTypes());
+
+    // Different intent, dimension or attribute give different types
+    FbasicType t3 = createArrayType(xcodeml, Intent.INOUT, "10");
+    assertNotEquals(hash1, typeTable.add(t3));
+    FbasicType t4 = createArrayType(xcodeml, Intent.IN, "20");
+    assertNotEquals(hash1, typeTable.add(t4));
+    FbasicType t5 = createArrayType(xcodeml, Intent.IN, "10");
+    t5.setBooleanAttribute(Xattr.IS_ALLOCATABLE, true);
+    assertNotEquals(hash1, typeTable.add(t5));
+    assertEquals(size + 4, typeTable.size());
+    assertEquals(1, typeTable.getMergedTypes());
+
+    // Distinct type keeps its hash and is not shared
+    FbasicType t6 = createArrayType(xcodeml, Intent.INOUT, "20");
+    String hash6 = t6.getType();
+    typeTable.addDistinct(t6);
+    assertEquals(hash6, t6.getType());
+    FbasicType t7 = createArrayType(xcodeml, Intent.INOUT, "20");
+    assertEquals(t7.getType(), typeTable.add(t7));
+    assertEquals(size + 6, typeTable.size());
+
+    // Function types are never merged
+    FfunctionType f1 = xcodeml.createSubroutineType();
+    FfunctionType f2 = xcodeml.createSubroutineType();
+    assertNotEquals(f1.getType(), f2.getType());
+    assertTrue(typeTable.isFunctionType(f2.getType()));
+    assertEquals(1, typeTable.getMergedTypes());
+
+    // Types read from the table are shared as well
+    XtypeTable clone = typeTable.cloneNode();
+    FbasicType t8 = createArrayType(xcodeml, Intent.IN, "10");
+    assertEquals(hash1, clone.add(t8));
+    assertEquals(1, clone.getMergedTypes());
+  }
+
+  private FbasicType createArrayType(XcodeProgram xcodeml, Intent intent,
+                                     String upperBound)
+  {
+    FbasicType type = xcodeml.createBasicType(FortranType.REAL, intent);
+    DimensionDefinition dim = new DimensionDefinition("i", "1", upperBound);
+    dim.setInsertionPosition(InsertionPosition.BEFORE);
+    type.addDimension(dim.generateIndexRange(xcodeml, false));
+    return type;
+  }
+
   @Test
   public void hashTest() {
     XtypeTable typeTable =
@@ -152,4 +217,40 @@ public class XtypeTableTest {
     assertEquals(13, charHash.length());
     assertTrue(charHash.startsWith("C"));
   }
+
+  @Test
+  public void deterministicHashTest() {
+    XtypeTable typeTable =
+        XmlHelper.createXtypeTableFromString(BASIC_TYPE_TABLE);
+    assertNotNull(typeTable);
+
+    // Numbered after the seed of the table, one counter per prefix
+    assertEquals("C107c9b000001",
+        typeTable.generateHash(FortranType.CHARACTER));
+    assertEquals("C107c9b000002",
+        typeTable.generateHash(FortranType.CHARACTER));
+    assertEquals("F107c9b000001", typeTable.generateHash(FortranType.FUNCTION));
+    assertEquals("I107c9b000001", typeTable.generateHash(FortranType.INTEGER));
+
+    // Hashes of added types are skipped
+    XcodeProgram xcodeml = XmlHelper.getDummyXcodeProgram();
+    XtypeTable programTable = xcodeml.getTypeTable();
+    String hash = programTable.generateHash(FortranType.INTEGER);
+    long number = FortranType.INTEGER.getHashNumber(hash);
+    FbasicType bt = new FbasicType(xcodeml.createNode(Xcode.F_BASIC_TYPE));
+    bt.setType(FortranType.INTEGER.generateHash(number + 1));
+    bt.setRef(Xname.TYPE_F_INT);
+    programTable.addDistinct(bt);
+    assertEquals(FortranType.INTEGER.generateHash(number + 2),
+        programTable.generateHash(FortranType.INTEGER));
+
+    // Other tables have other seeds
+    assertNotEquals(0x107c9bL, number >> 24);
+
+    // Same sequence for the same table
+    XtypeTable other = XmlHelper.createXtypeTableFromString(BASIC_TYPE_TABLE);
+    assertNotNull(other);
+    assertEquals("C107c9b000001", other.generateHash(FortranType.CHARACTER));
+    assertEquals("I107c9b000001", other.generateHash(FortranType.INTEGER));
+  }
 }
@@ -7,6 +7,7 @@ package claw.tatsu.xcodeml.xnode.fortran;
 import claw.tatsu.xcodeml.xnode.Xname;
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -27,15 +28,34 @@ public class FortranTypeTest {
     assertTrue(FortranType.isBuiltInType(Xname.TYPE_F_VOID));
     assertFalse(FortranType.isBuiltInType(null));
     assertFalse(FortranType.isBuiltInType(""));
-    assertFalse(FortranType.isBuiltInType(FortranType.INTEGER.generateHash()));
+    assertFalse(FortranType.isBuiltInType(FortranType.INTEGER.generateHash(1)));
   }
 
   @Test
   public void isOfTypeTest() {
     assertTrue(FortranType.INTEGER.
-        isOfType(FortranType.INTEGER.generateHash()));
-    assertTrue(FortranType.REAL.isOfType(FortranType.REAL.generateHash()));
+        isOfType(FortranType.INTEGER.generateHash(1)));
+    assertTrue(FortranType.REAL.isOfType(FortranType.REAL.generateHash(1)));
     assertFalse(FortranType.REAL.isOfType(null));
     assertFalse(FortranType.REAL.isOfType(""));
   }
+
+  @Test
+  public void hashNumberTest() {
+    assertEquals("R000000000001", FortranType.REAL.generateHash(1));
+    assertEquals("A7f81a0c01000",
+        FortranType.ARRAY.generateHash(0x7f81a0c01000L));
+    assertEquals(0x7f81a0c01000L,
+        FortranType.ARRAY.getHashNumber("A7f81a0c01000"));
+    assertEquals(1, FortranType.REAL.getHashNumber("R000000000001"));
+    assertEquals(-1, FortranType.REAL.getHashNumber("A7f81a0c01000"));
+    assertEquals(-1, FortranType.REAL.getHashNumber(Xname.TYPE_F_REAL));
+    assertEquals(-1, FortranType.REAL.getHashNumber("R"));
+    assertEquals(-1, FortranType.REAL.getHashNumber(null));
+    assertEquals(-1, FortranType.REAL.getHashNumber("R0123456789abcdef"));
+    assertEquals(FortranType.ARRAY, FortranType.fromHash("A7f81a0c01000"));
+    assertEquals(FortranType.REAL, FortranType.fromHash("R000000000001"));
+    assertEquals(FortranType.NONE, FortranType.fromHash(Xname.TYPE_F_REAL));
+    assertEquals(FortranType.NONE, FortranType.fromHash(null));
+  }
 }
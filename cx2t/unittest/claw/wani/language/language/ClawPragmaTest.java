@@ -1518,7 +1518,7 @@ public class ClawPragmaTest {
   public void errorHandlingTest() {
     analyzeErrors("claw loop-fusion group(g", 1);
     analyzeErrors("claw loop-fusion group", 1);
-    analyzeErrors("claw loop", 19);
+    analyzeErrors("claw loop", 20);
   }
 
   private void analyzeErrors(String pragma, int nbExpectedToken) {
@@ -1577,6 +1577,17 @@ public class ClawPragmaTest {
         false, null);
   }
 
+  /**
+   * Test various input for the CLAW inline directive.
+   */
+  @Test
+  public void inlineTest() {
+    analyzeValidSimpleClaw("claw inline", ClawDirective.INLINE, false, null);
+    analyzeValidSimpleClaw("claw inline target(gpu)", ClawDirective.INLINE,
+        false, Collections.singletonList(Target.GPU));
+    analyzeInvalidClawLanguage("claw inline fct");
+  }
+
   @Test
   public void savepointTest() {
     assertValidSavepointClause("claw sca forward savepoint=sp1", "sp1", null);
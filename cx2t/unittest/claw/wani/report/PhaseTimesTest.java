@@ -0,0 +1,56 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.wani.report;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the features of the PhaseTimes class.
+ *
+ * @author clementval
+ */
+public class PhaseTimesTest {
+
+  @Test
+  public void writeTest() throws IOException {
+    PhaseTimes times = new PhaseTimes();
+    assertTrue(times.getTimes().isEmpty());
+    times.stop();
+    assertTrue(times.getTimes().isEmpty());
+    times.start("analyze");
+    times.start("transform");
+    times.stop();
+    times.start("analyze");
+    assertEquals(Arrays.asList("analyze", "transform"),
+        Arrays.asList(times.getTimes().keySet().toArray()));
+
+    Path file = Files.createTempFile("claw-phases", ".txt");
+    try {
+      times.write(file.toString(), "a.f90");
+      new PhaseTimes().write(file.toString(), null);
+      PhaseTimes other = new PhaseTimes();
+      other.start("flush");
+      other.write(file.toString(), null);
+      List<String> lines = Files.readAllLines(file);
+      assertEquals(3, lines.size());
+      assertTrue(lines.get(0).startsWith("a.f90\tanalyze\t"));
+      assertTrue(lines.get(1).startsWith("a.f90\ttransform\t"));
+      assertTrue(lines.get(2).startsWith("-\tflush\t"));
+      for(String line : lines) {
+        assertTrue(Long.parseLong(line.split("\t")[2]) >= 0);
+      }
+    } finally {
+      Files.delete(file);
+    }
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.wani.transformation.ll.caching;
+
+import claw.tatsu.xcodeml.xnode.common.Xnode;
+import helper.XmlHelper;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Test the computation of the stencil window of the kcache directive.
+ *
+ * @author clementval
+ */
+public class KcachingTest {
+
+  @Test
+  public void singleOffsetTest() {
+    assertEquals("a(i,k)", Kcaching.computeCacheWindow("a",
+        Collections.singletonList(ref("i", "k"))));
+    assertEquals("a(i,k+1)", Kcaching.computeCacheWindow("a",
+        Collections.singletonList(ref("i", "k+1"))));
+    assertEquals("a(3)", Kcaching.computeCacheWindow("a",
+        Collections.singletonList(ref("3"))));
+  }
+
+  @Test
+  public void negativeOffsetTest() {
+    assertEquals("a(i,k-2:k-1)", Kcaching.computeCacheWindow("a",
+        Arrays.asList(ref("i", "k-1"), ref("i", "k-2"))));
+    assertEquals("a(i,k-1:k+1)", Kcaching.computeCacheWindow("a",
+        Arrays.asList(ref("i", "k+1"), ref("i", "k-1"), ref("i", "k"))));
+    assertEquals("a(i-1,k-3)", Kcaching.computeCacheWindow("a",
+        Collections.singletonList(ref("i-1", "k-3"))));
+  }
+
+  @Test
+  public void nonContiguousOffsetTest() {
+    // The window covers the gap between the offsets
+    assertEquals("a(i,k-1:k+2)", Kcaching.computeCacheWindow("a",
+        Arrays.asList(ref("i", "k-1"), ref("i", "k+2"))));
+    assertEquals("a(1:4,k)", Kcaching.computeCacheWindow("a",
+        Arrays.asList(ref("4", "k"), ref("1", "k"))));
+  }
+
+  @Test
+  public void invalidWindowTest() {
+    // No reference
+    assertNull(Kcaching.computeCacheWindow("a",
+        Collections.<Xnode>emptyList()));
+    // Different variables in the same dimension
+    assertNull(Kcaching.computeCacheWindow("a",
+        Arrays.asList(ref("i", "k"), ref("j", "k"))));
+    // Different ranks
+    assertNull(Kcaching.computeCacheWindow("a",
+        Arrays.asList(ref("i", "k"), ref("i"))));
+    assertNull(Kcaching.computeCacheWindow("a",
+        Arrays.asList(ref("i"), ref("i", "k"))));
+    // Non-affine subscript
+    Xnode nonAffine = XmlHelper.createXnode("<FarrayRef type=\"A\">" +
+        "<varRef type=\"A\"><Var type=\"A\" scope=\"local\">a</Var></varRef>" +
+        "<arrayIndex><mulExpr type=\"Fint\">" + var("i") + var("k") +
+        "</mulExpr></arrayIndex></FarrayRef>");
+    assertNull(Kcaching.computeCacheWindow("a",
+        Collections.singletonList(nonAffine)));
+  }
+
+  /**
+   * Create an array reference to the array a.
+   *
+   * @param subscripts Subscripts as a variable with an optional offset or as
+   *                   an integer constant.
+   * @return Array reference node.
+   */
+  private static Xnode ref(String... subscripts) {
+    StringBuilder xml = new StringBuilder("<FarrayRef type=\"A\">" +
+        "<varRef type=\"A\"><Var type=\"A\" scope=\"local\">a</Var></varRef>");
+    for(String subscript : subscripts) {
+      xml.append("<arrayIndex>").append(subscript(subscript))
+          .append("</arrayIndex>");
+    }
+    return XmlHelper.createXnode(xml.append("</FarrayRef>").toString());
+  }
+
+  private static String subscript(String subscript) {
+    int plus = subscript.indexOf('+');
+    int minus = subscript.indexOf('-');
+    if(plus > 0) {
+      return "<plusExpr type=\"Fint\">" + var(subscript.substring(0, plus))
+          + constant(subscript.substring(plus + 1)) + "</plusExpr>";
+    } else if(minus > 0) {
+      return "<minusExpr type=\"Fint\">" + var(subscript.substring(0, minus))
+          + constant(subscript.substring(minus + 1)) + "</minusExpr>";
+    } else if(Character.isDigit(subscript.charAt(0))) {
+      return constant(subscript);
+    }
+    return var(subscript);
+  }
+
+  private static String var(String name) {
+    return "<Var type=\"Fint\" scope=\"local\">" + name + "</Var>";
+  }
+
+  private static String constant(String value) {
+    return "<FintConstant type=\"Fint\">" + value + "</FintConstant>";
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.wani.x2t.configuration;
+
+import helper.TestConstant;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the features of the ConfigurationSnapshot class.
+ *
+ * @author clementval
+ */
+public class ConfigurationSnapshotTest {
+
+  private static final int MAX_COLUMN = 80;
+
+  @Test
+  public void writeReadTest() throws IOException {
+    Path dir = Files.createTempDirectory("claw-snapshot");
+    try {
+      Map<String, String> parameters = new HashMap<>();
+      parameters.put("key1", "value1");
+      parameters.put("key2", "");
+      List<GroupConfiguration> groups = new ArrayList<>();
+      groups.add(new GroupConfiguration("set1", "group1",
+          GroupConfiguration.GroupType.DEPENDENT,
+          GroupConfiguration.TriggerType.DIRECTIVE, "a.b.C", "claw", null));
+      groups.add(new GroupConfiguration("set2", "group2",
+          GroupConfiguration.GroupType.INDEPENDENT,
+          GroupConfiguration.TriggerType.TRANSLATION_UNIT, "a.b.D", null,
+          null));
+      Map<String, String> setJars = new HashMap<>();
+      setJars.put("set2", "external.jar");
+
+      new ConfigurationSnapshot(parameters, groups, setJars).write(dir, "k1");
+      assertNull(ConfigurationSnapshot.read(dir, "k2"));
+      ConfigurationSnapshot snapshot = ConfigurationSnapshot.read(dir, "k1");
+      assertNotNull(snapshot);
+      assertEquals(parameters, snapshot.getParameters());
+      assertEquals(2, snapshot.getGroups().size());
+      GroupConfiguration g1 = snapshot.getGroups().get(0);
+      assertEquals("set1", g1.getSetName());
+      assertEquals("group1", g1.getName());
+      assertEquals(GroupConfiguration.GroupType.DEPENDENT, g1.getType());
+      assertEquals(GroupConfiguration.TriggerType.DIRECTIVE,
+          g1.getTriggerType());
+      assertEquals("a.b.C", g1.getTransformationClassName());
+      assertEquals("claw", g1.getDirective());
+      assertNull(g1.getTransformationClass());
+      GroupConfiguration g2 = snapshot.getGroups().get(1);
+      assertEquals("group2", g2.getName());
+      assertNull(g2.getDirective());
+      assertNull(snapshot.getJar("set1"));
+      assertEquals("external.jar", snapshot.getJar("set2"));
+
+      // Only the snapshot file is left in the directory
+      File[] files = dir.toFile().listFiles();
+      assertNotNull(files);
+      assertEquals(1, files.length);
+
+      // Truncated snapshot
+      Files.write(files[0].toPath(), new byte[]{0x43, 0x4c});
+      try {
+        ConfigurationSnapshot.read(dir, "k1");
+        fail();
+      } catch(IOException ignored) {
+      }
+    } finally {
+      deleteDirectory(dir);
+    }
+  }
+
+  @Test
+  public void computeKeyTest() throws IOException {
+    String key1 = ConfigurationSnapshot.computeKey(
+        TestConstant.TEST_CONFIG_PATH, null, null);
+    String key2 = ConfigurationSnapshot.computeKey(
+        TestConstant.TEST_CONFIG_PATH, null, null);
+    String key3 = ConfigurationSnapshot.computeKey(
+        TestConstant.TEST_CONFIG_PATH, null, "/opt/claw/sets");
+    String key4 = ConfigurationSnapshot.computeKey(
+        TestConstant.TEST_CONFIG_PATH, TestConstant.TEST_CONFIG_PATH
+            + "/claw-default.xml", null);
+    assertEquals(40, key1.length());
+    assertEquals(key1, key2);
+    assertNotEquals(key1, key3);
+    assertNotEquals(key1, key4);
+
+    try {
+      ConfigurationSnapshot.computeKey("/does/not/exist", null, null);
+      fail();
+    } catch(IOException ignored) {
+    }
+  }
+
+  @Test
+  public void loadFromSnapshotTest() throws Exception {
+    Path dir = Files.createTempDirectory("claw-snapshot");
+    Configuration conf = Configuration.get();
+    try {
+      conf.load(TestConstant.TEST_CONFIG_PATH, null, null, null, null,
+          MAX_COLUMN);
+      List<GroupConfiguration> expected = new ArrayList<>(conf.getGroups());
+      String target = conf.getCurrentTarget().toString();
+
+      conf.setSnapshotDirectory(dir.toString());
+      // First load writes the snapshot
+      conf.load(TestConstant.TEST_CONFIG_PATH, null, null, null, null,
+          MAX_COLUMN);
+      File[] files = dir.toFile().listFiles();
+      assertNotNull(files);
+      assertEquals(1, files.length);
+      long modified = files[0].lastModified();
+
+      // Second load restores it
+      conf.load(TestConstant.TEST_CONFIG_PATH, null, null, null, null,
+          MAX_COLUMN);
+      assertEquals(modified, files[0].lastModified());
+      assertEquals(target, conf.getCurrentTarget().toString());
+      assertEquals(expected.size(), conf.getGroups().size());
+      for(int i = 0; i < expected.size(); ++i) {
+        GroupConfiguration g1 = expected.get(i);
+        GroupConfiguration g2 = conf.getGroups().get(i);
+        assertEquals(g1.getName(), g2.getName());
+        assertEquals(g1.getSetName(), g2.getSetName());
+        assertEquals(g1.getType(), g2.getType());
+        assertEquals(g1.getTriggerType(), g2.getTriggerType());
+        assertEquals(g1.getDirective(), g2.getDirective());
+        assertSame(g1.getTransformationClass(), g2.getTransformationClass());
+      }
+      assertEquals(Configuration.CPU_STRATEGY_FUSION,
+          conf.getParameter(Configuration.CPU_STRATEGY));
+    } finally {
+      conf.setSnapshotDirectory(null);
+      deleteDirectory(dir);
+    }
+  }
+
+  private void deleteDirectory(Path dir) throws IOException {
+    File[] files = dir.toFile().listFiles();
+    if(files != null) {
+      for(File file : files) {
+        Files.delete(file.toPath());
+      }
+    }
+    Files.delete(dir);
+  }
+}
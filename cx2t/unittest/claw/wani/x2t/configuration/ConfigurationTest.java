@@ -89,6 +89,10 @@ public class ConfigurationTest {
       Configuration.get().
           overrideConfigurationParameter(DUMMY_KEY, DUMMY_VALUE);
       assertEquals(DUMMY_VALUE, Configuration.get().getParameter(DUMMY_KEY));
+
+      assertEquals(8,
+          Configuration.get().getIntParameter(Configuration.CPU_SIMD_LENGTH));
+      assertEquals(0, Configuration.get().getIntParameter(DUMMY_KEY));
     } catch(Exception e) {
       fail();
     }
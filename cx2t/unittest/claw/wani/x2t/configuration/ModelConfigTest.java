@@ -4,6 +4,7 @@
  */
 package claw.wani.x2t.configuration;
 
+import claw.tatsu.directive.common.LoopMapping;
 import claw.tatsu.xcodeml.abstraction.BoundDefinition;
 import claw.tatsu.xcodeml.abstraction.DimensionDefinition;
 import helper.TestConstant;
@@ -166,6 +167,75 @@ public class ModelConfigTest {
         String.format(ModelConfig.ERR_NO_BASE_DIM, "layout1"));
   }
 
+  @Test
+  public void loopMappingTest() {
+    StringBuilder config = new StringBuilder();
+    config.append("[model]\nname = \"model_name\"\n");
+    config.append("[[dimensions]]\nid = \"dim1\"\ntrip_count = 20000\n");
+    config.append("[dimensions.size]\nupper = \"nproma\"\n");
+    config.append("[[dimensions]]\nid = \"dim2\"\n");
+    config.append("[dimensions.size]\nupper = 60\n");
+    config.append("[[layouts]]\nid = \"default\"\n");
+    config.append("position = [ \"dim1\", \"dim2\", \":\" ]\n");
+    config.append("[[mappings]]\nkernel = \"default\"\n");
+    config.append("vector_length = 64\n");
+    config.append("[[mappings]]\nkernel = \"compute\"\n");
+    config.append("collapse = 1\nnum_gangs = 256\nthread_limit = 128\n");
+    try {
+      ModelConfig cfg = new ModelConfig();
+      cfg.load(getStreamFromString(config.toString()));
+      assertEquals(20000, cfg.getDimension("dim1").getTripCount());
+      assertEquals(60, cfg.getDimension("dim2").getTripCount());
+      assertEquals(2, cfg.getNbLoopMappings());
+
+      LoopMapping compute = cfg.getLoopMapping("COMPUTE");
+      assertNotNull(compute);
+      assertEquals(1, compute.getCollapse());
+      assertEquals(256, compute.getNumGangs());
+      assertEquals(128, compute.getThreadLimit());
+      assertEquals(0, compute.getVectorLength());
+
+      LoopMapping other = cfg.getLoopMapping("other");
+      assertNotNull(other);
+      assertEquals(0, other.getCollapse());
+      assertEquals(64, other.getVectorLength());
+    } catch(Exception ignored) {
+      fail();
+    }
+
+    config.append("[[mappings]]\ncollapse = 2\n");
+    assertError(config, ModelConfig.ERR_MAPPING_NO_KERNEL);
+    assertNull(new ModelConfig().getLoopMapping("compute"));
+  }
+
+  @Test
+  public void specializationTest() {
+    StringBuilder config = new StringBuilder();
+    config.append("[model]\nname = \"model_name\"\n");
+    config.append("[[dimensions]]\nid = \"horizontal\"\nspecialize = 16\n");
+    config.append("[dimensions.size]\nupper = \"nproma\"\n");
+    config.append("[[dimensions]]\nid = \"vertical\"\n");
+    config.append("[dimensions.size]\nupper = \"nz\"\n");
+    config.append("[[layouts]]\nid = \"default\"\n");
+    config.append("position = [ \"horizontal\", \":\" ]\n");
+    try {
+      ModelConfig cfg = new ModelConfig();
+      cfg.load(getStreamFromString(config.toString()));
+      assertEquals(16, cfg.getDimension("horizontal").getSpecializedSize());
+      assertEquals(0, cfg.getDimension("vertical").getSpecializedSize());
+      assertEquals(1, cfg.getSpecializations().size());
+      assertEquals(Integer.valueOf(16), cfg.getSpecializations().get("nproma"));
+      assertTrue(cfg.getDimensionIdentifiers().contains("vertical"));
+    } catch(Exception ignored) {
+      fail();
+    }
+
+    config.append("[[dimensions]]\nid = \"fixed\"\nspecialize = 8\n");
+    config.append("[dimensions.size]\nupper = 8\n");
+    assertError(config,
+        String.format(ModelConfig.ERR_SPECIALIZE_CONSTANT, "fixed"));
+  }
+
   private void assertError(StringBuilder config, String expectedError) {
     try {
       ModelConfig cfg = new ModelConfig();
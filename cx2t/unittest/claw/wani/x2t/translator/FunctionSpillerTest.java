@@ -0,0 +1,227 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.wani.x2t.translator;
+
+import claw.shenron.transformation.IndependentTransformationGroup;
+import claw.shenron.transformation.Transformation;
+import claw.shenron.transformation.TransformationGroup;
+import claw.shenron.translator.AnalyzedPragma;
+import claw.shenron.translator.Translator;
+import claw.tatsu.xcodeml.xnode.common.Xcode;
+import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
+import claw.tatsu.xcodeml.xnode.common.Xnode;
+import claw.tatsu.xcodeml.xnode.fortran.FfunctionDefinition;
+import helper.TestConstant;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the spill of the function definitions no pending transformation can
+ * touch.
+ *
+ * @author clementval
+ */
+public class FunctionSpillerTest {
+
+  private static final int INDENT = 2;
+
+  @Test
+  public void spillRestoreTest() throws Exception {
+    Path dir = Files.createTempDirectory("claw-spiller-test");
+    try {
+      XcodeProgram xcodeml = loadWithDirective("update");
+      Path expected = dir.resolve("expected.xml");
+      xcodeml.write(expected.toString(), INDENT);
+
+      // update calls nothing, compute_column and main are not touched
+      List<TransformationGroup> groups = Collections.singletonList(
+          group(new T1(directive(xcodeml, "update"))));
+      FunctionSpiller spiller = new FunctionSpiller(xcodeml, groups, null,
+          dir.resolve("spill"), INDENT);
+      assertEquals(2, spiller.spillFinished(-1));
+      assertEquals(2, xcodeml.getSpilledCount());
+      assertEquals(Collections.singletonList("update"), getNames(xcodeml));
+
+      // Nothing left to touch once the group is applied
+      assertEquals(1, spiller.spillFinished(0));
+      assertTrue(groups.get(0).getTransformations().isEmpty());
+      assertEquals(3, xcodeml.getSpilledCount());
+
+      Path output = dir.resolve("output.xml");
+      xcodeml.write(output.toString(), INDENT);
+      assertArrayEquals(Files.readAllBytes(expected),
+          Files.readAllBytes(output));
+
+      xcodeml.restoreSpilled();
+      assertEquals(0, xcodeml.getSpilledCount());
+      assertEquals(Arrays.asList("compute_column", "update", "main"),
+          getNames(xcodeml));
+      xcodeml.write(output.toString(), INDENT);
+      assertArrayEquals(Files.readAllBytes(expected),
+          Files.readAllBytes(output));
+    } finally {
+      deleteDirectory(dir.toFile());
+    }
+  }
+
+  @Test
+  public void calleesKeptTest() throws Exception {
+    Path dir = Files.createTempDirectory("claw-spiller-test");
+    try {
+      // compute_column calls update, only main is spilled
+      XcodeProgram xcodeml = loadWithDirective("compute_column");
+      FunctionSpiller spiller = new FunctionSpiller(xcodeml,
+          Collections.singletonList(group(new T1(
+              directive(xcodeml, "compute_column")))),
+          null, dir.resolve("spill"), INDENT);
+      assertEquals(1, spiller.spillFinished(-1));
+      assertEquals(Arrays.asList("compute_column", "update"),
+          getNames(xcodeml));
+    } finally {
+      deleteDirectory(dir.toFile());
+    }
+  }
+
+  @Test
+  public void translationUnitTransformationTest() throws Exception {
+    Path dir = Files.createTempDirectory("claw-spiller-test");
+    try {
+      XcodeProgram xcodeml =
+          XcodeProgram.createFromFile(TestConstant.TEST_CALL_GRAPH);
+      assertNotNull(xcodeml);
+
+      // Any function can be touched
+      FunctionSpiller spiller = new FunctionSpiller(xcodeml,
+          Collections.singletonList(group(new T1())), null,
+          dir.resolve("spill"), INDENT);
+      assertEquals(0, spiller.spillFinished(-1));
+      assertEquals(0, xcodeml.getSpilledCount());
+
+      // Declared functions only
+      T1 declared = new T1();
+      declared.setTouched(Collections.singletonList(
+          getFctDef(xcodeml, "update")));
+      spiller = new FunctionSpiller(xcodeml,
+          Collections.singletonList(group(declared)), null,
+          dir.resolve("spill"), INDENT);
+      assertEquals(2, spiller.spillFinished(-1));
+      assertEquals(Collections.singletonList("update"), getNames(xcodeml));
+    } finally {
+      deleteDirectory(dir.toFile());
+    }
+  }
+
+  /**
+   * Load the call graph translation unit with a pragma at the start of the
+   * body of a function definition.
+   *
+   * @param fctName Name of the function definition.
+   * @return Translation unit.
+   */
+  private XcodeProgram loadWithDirective(String fctName) {
+    XcodeProgram xcodeml =
+        XcodeProgram.createFromFile(TestConstant.TEST_CALL_GRAPH);
+    assertNotNull(xcodeml);
+    Xnode pragma = xcodeml.createNode(Xcode.F_PRAGMA_STATEMENT);
+    pragma.setValue("claw test");
+    getFctDef(xcodeml, fctName).body().insert(pragma);
+    return xcodeml;
+  }
+
+  private AnalyzedPragma directive(XcodeProgram xcodeml, String fctName) {
+    Xnode pragma = getFctDef(xcodeml, fctName).body()
+        .matchDirectDescendant(Xcode.F_PRAGMA_STATEMENT);
+    assertNotNull(pragma);
+    return new AnalyzedPragma(pragma);
+  }
+
+  private FfunctionDefinition getFctDef(XcodeProgram xcodeml, String name) {
+    for(FfunctionDefinition fctDef : xcodeml.getAllFctDef()) {
+      if(fctDef.getName().equals(name)) {
+        return fctDef;
+      }
+    }
+    fail();
+    return null;
+  }
+
+  private List<String> getNames(XcodeProgram xcodeml) {
+    List<String> names = new ArrayList<>();
+    for(FfunctionDefinition fctDef : xcodeml.getAllFctDef()) {
+      names.add(fctDef.getName());
+    }
+    return names;
+  }
+
+  private TransformationGroup group(Transformation t) {
+    TransformationGroup group = new IndependentTransformationGroup("test");
+    group.add(t);
+    return group;
+  }
+
+  private void deleteDirectory(File dir) {
+    File[] files = dir.listFiles();
+    if(files != null) {
+      for(File file : files) {
+        deleteDirectory(file);
+      }
+    }
+    assertTrue(dir.delete());
+  }
+
+  /**
+   * Only for testing purpose of the spill plan.
+   */
+  private class T1 extends Transformation {
+
+    private List<FfunctionDefinition> _touched = null;
+
+    T1() {
+      super();
+    }
+
+    T1(AnalyzedPragma pragma) {
+      super(pragma);
+    }
+
+    void setTouched(List<FfunctionDefinition> touched) {
+      _touched = touched;
+    }
+
+    @Override
+    public List<FfunctionDefinition> getTouchedFunctions(XcodeProgram xcodeml)
+    {
+      return _touched == null ? super.getTouchedFunctions(xcodeml) : _touched;
+    }
+
+    @Override
+    public boolean analyze(XcodeProgram xcodeml, Translator translator) {
+      return true;
+    }
+
+    @Override
+    public boolean canBeTransformedWith(XcodeProgram xcodeml,
+                                        Transformation other)
+    {
+      return false;
+    }
+
+    @Override
+    public void transform(XcodeProgram xcodeml, Translator translator,
+                          Transformation other)
+    {
+      transformed();
+    }
+  }
+}
@@ -775,6 +775,84 @@ function(claw_add_failure_test)
 
 endfunction()
 
+#
+# Add a build-throughput test running clawfc over a set of input files. Input
+# files are either given or generated. Wall time and peak RSS per file and per
+# build as well as translator phase times are compared with a baseline.
+#
+function(claw_add_perf_test)
+  set(oneValueArgs NAME MODULES DEPTH ROUTINES BASELINE TIME_TOLERANCE
+    RSS_TOLERANCE)
+  set(multiValueArgs INPUTS CLAW_FLAGS)
+  cmake_parse_arguments(claw_add_perf_test "" "${oneValueArgs}"
+    "${multiValueArgs}" ${ARGN})
+
+  if("${claw_add_perf_test_NAME}" STREQUAL "")
+    message(FATAL_ERROR "claw_add_perf_test NAME is required")
+  endif()
+
+  if("${claw_add_perf_test_INPUTS}" STREQUAL ""
+      AND "${claw_add_perf_test_MODULES}" STREQUAL "")
+    message(FATAL_ERROR "claw_add_perf_test INPUTS or MODULES is required")
+  endif()
+
+  if("${claw_add_perf_test_BASELINE}" STREQUAL "")
+    set(claw_add_perf_test_BASELINE
+      ${CLAW_PERF_BASELINE_DIR}/${claw_add_perf_test_NAME}.txt)
+  endif()
+
+  if("${claw_add_perf_test_TIME_TOLERANCE}" STREQUAL "")
+    set(claw_add_perf_test_TIME_TOLERANCE ${CLAW_PERF_TIME_TOLERANCE})
+  endif()
+
+  if("${claw_add_perf_test_RSS_TOLERANCE}" STREQUAL "")
+    set(claw_add_perf_test_RSS_TOLERANCE ${CLAW_PERF_RSS_TOLERANCE})
+  endif()
+
+  set(perf_args
+    --clawfc=${CLAWFC}
+    --work-dir=${CMAKE_CURRENT_BINARY_DIR}/${claw_add_perf_test_NAME}
+    --baseline=${claw_add_perf_test_BASELINE}
+    --time-tolerance=${claw_add_perf_test_TIME_TOLERANCE}
+    --rss-tolerance=${claw_add_perf_test_RSS_TOLERANCE}
+  )
+  if(NOT "${claw_add_perf_test_MODULES}" STREQUAL "")
+    if("${claw_add_perf_test_DEPTH}" STREQUAL "")
+      set(claw_add_perf_test_DEPTH 1)
+    endif()
+    if("${claw_add_perf_test_ROUTINES}" STREQUAL "")
+      set(claw_add_perf_test_ROUTINES 1)
+    endif()
+    set(generate ${claw_add_perf_test_MODULES},${claw_add_perf_test_DEPTH})
+    list(APPEND perf_args
+      --generate=${generate},${claw_add_perf_test_ROUTINES})
+  endif()
+  if(NOT "${claw_add_perf_test_CLAW_FLAGS}" STREQUAL "")
+    string(REPLACE ";" " " perf_flags "${claw_add_perf_test_CLAW_FLAGS}")
+    list(APPEND perf_args "--flags=${perf_flags}")
+  endif()
+
+  add_test(
+    NAME perf-${claw_add_perf_test_NAME}
+    COMMAND ${CMAKE_COMMAND} -E env CLAW_TRANS_SET_PATH=${CLAW_TRANS_SET_PATH}
+      ${CLAW_PERF_SCRIPT} ${perf_args} ${claw_add_perf_test_INPUTS}
+  )
+  set_tests_properties(perf-${claw_add_perf_test_NAME}
+    PROPERTIES LABELS perf RUN_SERIAL TRUE)
+
+  # Target to record the current measurements as the new baseline
+  add_custom_target(
+    perf-baseline-${claw_add_perf_test_NAME}
+    COMMAND ${CMAKE_COMMAND} -E env CLAW_TRANS_SET_PATH=${CLAW_TRANS_SET_PATH}
+      ${CLAW_PERF_SCRIPT} ${perf_args} --update-baseline
+      ${claw_add_perf_test_INPUTS}
+  )
+  if(TARGET perf-baseline)
+    add_dependencies(perf-baseline
+      perf-baseline-${claw_add_perf_test_NAME})
+  endif()
+endfunction()
+
 macro(subdirlist result curdir)
   file(GLOB children RELATIVE ${curdir} ${curdir}/*)
   set(dirlist "")
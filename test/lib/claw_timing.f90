@@ -0,0 +1,136 @@
+! This file is released under terms of BSD license
+! See LICENSE file for more information
+
+! Timing support library for the code instrumented by the CLAW Compiler
+! (clawfc --instrument). Each instrumented region is surrounded by calls to
+! claw_timing_start and claw_timing_stop with an identifier of the form
+! file:line:procedure. The aggregated time and count of each region are
+! printed by claw_timing_report at the end of the main program.
+
+MODULE claw_timing
+  IMPLICIT NONE
+  PRIVATE
+
+  PUBLIC :: claw_timing_start, claw_timing_stop, claw_timing_report, &
+            claw_timing_get
+
+  INTEGER, PARAMETER :: dp = SELECTED_REAL_KIND(15)
+  INTEGER, PARAMETER :: i8 = SELECTED_INT_KIND(18)
+  INTEGER, PARAMETER :: max_regions = 1024
+  INTEGER, PARAMETER :: max_name = 256
+
+  CHARACTER(LEN=max_name) :: region_names(max_regions)
+  INTEGER(KIND=i8) :: region_start(max_regions) = 0
+  INTEGER(KIND=i8) :: region_count(max_regions) = 0
+  REAL(KIND=dp) :: region_time(max_regions) = 0.0_dp
+  INTEGER :: nb_regions = 0
+  INTEGER :: last_region = 0
+
+CONTAINS
+
+  ! Find the slot of a region. A new slot is registered on the first call.
+  ! Returns 0 if all the slots are used.
+  INTEGER FUNCTION find_region(name)
+    CHARACTER(LEN=*), INTENT(IN) :: name
+    INTEGER :: i
+
+    ! The stop call usually follows the start call of the same region
+    IF ( last_region > 0 ) THEN
+      IF ( region_names(last_region) == name ) THEN
+        find_region = last_region
+        RETURN
+      END IF
+    END IF
+    DO i = 1, nb_regions
+      IF ( region_names(i) == name ) THEN
+        find_region = i
+        last_region = i
+        RETURN
+      END IF
+    END DO
+    IF ( nb_regions == max_regions ) THEN
+      find_region = 0
+      RETURN
+    END IF
+    nb_regions = nb_regions + 1
+    region_names(nb_regions) = name
+    find_region = nb_regions
+    last_region = nb_regions
+  END FUNCTION find_region
+
+  SUBROUTINE claw_timing_start(name)
+    CHARACTER(LEN=*), INTENT(IN) :: name
+    INTEGER :: id
+
+    id = find_region(name)
+    IF ( id > 0 ) THEN
+      CALL SYSTEM_CLOCK(region_start(id))
+    END IF
+  END SUBROUTINE claw_timing_start
+
+  SUBROUTINE claw_timing_stop(name)
+    CHARACTER(LEN=*), INTENT(IN) :: name
+    INTEGER :: id
+    INTEGER(KIND=i8) :: now, rate
+
+    CALL SYSTEM_CLOCK(now, rate)
+    id = find_region(name)
+    IF ( id > 0 .AND. rate > 0 ) THEN
+      region_time(id) = region_time(id) &
+          + REAL(now - region_start(id), dp) / REAL(rate, dp)
+      region_count(id) = region_count(id) + 1
+    END IF
+  END SUBROUTINE claw_timing_stop
+
+  ! Get the accumulated time and the number of executions of a region.
+  ! Both are 0 for an unknown region.
+  SUBROUTINE claw_timing_get(name, time, count)
+    CHARACTER(LEN=*), INTENT(IN) :: name
+    REAL(KIND=dp), INTENT(OUT) :: time
+    INTEGER(KIND=i8), INTENT(OUT) :: count
+    INTEGER :: i
+
+    time = 0.0_dp
+    count = 0
+    DO i = 1, nb_regions
+      IF ( region_names(i) == name ) THEN
+        time = region_time(i)
+        count = region_count(i)
+        RETURN
+      END IF
+    END DO
+  END SUBROUTINE claw_timing_get
+
+  ! Print the regions sorted by decreasing accumulated time.
+  SUBROUTINE claw_timing_report()
+    INTEGER :: order(max_regions)
+    INTEGER :: i, j, tmp
+
+    DO i = 1, nb_regions
+      order(i) = i
+    END DO
+    DO i = 2, nb_regions
+      j = i
+      DO WHILE ( j > 1 )
+        IF ( region_time(order(j - 1)) >= region_time(order(j)) ) EXIT
+        tmp = order(j)
+        order(j) = order(j - 1)
+        order(j - 1) = tmp
+        j = j - 1
+      END DO
+    END DO
+
+    WRITE(*, '(A)') 'CLAW timing report'
+    WRITE(*, '(A,T62,A10,1X,A14,1X,A14)') 'Region', 'Count', 'Total (s)', &
+        'Mean (s)'
+    DO i = 1, nb_regions
+      j = order(i)
+      IF ( region_count(j) > 0 ) THEN
+        WRITE(*, '(A,T62,I10,1X,ES14.6,1X,ES14.6)') &
+            TRIM(region_names(j)), region_count(j), region_time(j), &
+            region_time(j) / REAL(region_count(j), dp)
+      END IF
+    END DO
+  END SUBROUTINE claw_timing_report
+
+END MODULE claw_timing
@@ -0,0 +1,40 @@
+! This file is released under terms of BSD license
+! See LICENSE file for more information
+
+! Test the claw_timing module used by the instrumented code.
+
+PROGRAM test_claw_timing
+  USE claw_timing
+  IMPLICIT NONE
+
+  INTEGER, PARAMETER :: dp = SELECTED_REAL_KIND(15)
+  INTEGER, PARAMETER :: i8 = SELECTED_INT_KIND(18)
+  REAL(KIND=dp) :: time
+  INTEGER(KIND=i8) :: count
+  INTEGER :: i
+
+  DO i = 1, 3
+    CALL claw_timing_start('original_code.f90:10:kernel')
+    CALL claw_timing_stop('original_code.f90:10:kernel')
+  END DO
+  CALL claw_timing_start('original_code.f90:20:kernel')
+  CALL claw_timing_stop('original_code.f90:20:kernel')
+
+  CALL claw_timing_get('original_code.f90:10:kernel', time, count)
+  IF ( count /= 3 .OR. time < 0.0_dp ) THEN
+    WRITE(*, *) 'Error: wrong count for the first region', count
+    STOP 1
+  END IF
+  CALL claw_timing_get('original_code.f90:20:kernel', time, count)
+  IF ( count /= 1 ) THEN
+    WRITE(*, *) 'Error: wrong count for the second region', count
+    STOP 1
+  END IF
+  CALL claw_timing_get('unknown', time, count)
+  IF ( count /= 0 ) THEN
+    WRITE(*, *) 'Error: unknown region has a count', count
+    STOP 1
+  END IF
+
+  CALL claw_timing_report()
+END PROGRAM test_claw_timing
@@ -0,0 +1,272 @@
+#!/bin/bash
+#
+# This file is released under terms of BSD license
+# See LICENSE file for more information
+#
+# Build-throughput test. Run clawfc over a set of input files, record the wall
+# time and peak RSS per file and for the whole build as well as the time of
+# each translator phase, and compare them with a stored baseline.
+#
+# author: clementval
+#
+
+###################################################################
+# Print the help of the script
+###################################################################
+function perf::print_help() {
+  cat <<EOF
+usage: $0 <OPTIONS> [<INPUTFILE> ...]
+
+Options:
+   --clawfc=<path>            : clawfc driver to be used.
+   --work-dir=<dir>           : directory for the transformed and generated
+                                files as well as the measurements.
+   --baseline=<file>          : baseline to compare with. Recorded if missing.
+   --update-baseline          : record the measurements as the new baseline.
+   --time-tolerance=<pct>     : accepted time increase in percent (default 20).
+   --rss-tolerance=<pct>      : accepted peak RSS increase in percent
+                                (default 10).
+   --generate=<m>,<d>,<r>     : generate m modules in USE chains of depth d
+                                with r SCA routines each as input files.
+   --flags=<flags>            : additional flags passed to clawfc.
+   -h,--help                  : print usage.
+
+Input files are translated in the given order. Files in the same directory
+share a module directory.
+EOF
+}
+
+###################################################################
+# Generate synthetic input files. Module i uses module i-1 in its chain and
+# forwards the SCA transformation to it.
+# Arguments:
+#   $1: output directory
+#   $2: number of modules
+#   $3: depth of the USE chains
+#   $4: number of SCA routines per module
+# Output:
+#   Generated files in dependency order, one per line
+###################################################################
+function perf::generate() {
+  local out_dir=$1
+  local modules=$2
+  local depth=$3
+  local routines=$4
+  mkdir -p "${out_dir}"
+  for ((m = 1; m <= modules; ++m)); do
+    local file="${out_dir}/mo_perf_${m}.f90"
+    local parent=""
+    if ((depth > 1 && (m - 1) % depth != 0)); then
+      parent=$((m - 1))
+    fi
+    {
+      echo "MODULE mo_perf_${m}"
+      if [[ -n ${parent} ]]; then
+        echo "  USE mo_perf_${parent}, ONLY: compute_${parent}_1"
+      fi
+      echo "  IMPLICIT NONE"
+      echo "CONTAINS"
+      for ((r = 1; r <= routines; ++r)); do
+        cat <<EOF
+  SUBROUTINE compute_${m}_${r}(nz, q, t)
+    INTEGER, INTENT(IN) :: nz
+    REAL, INTENT(INOUT) :: t(:)
+    REAL, INTENT(INOUT) :: q(:)
+    INTEGER :: k
+    REAL :: c
+
+    !\$claw define dimension proma(1:nproma) &
+    !\$claw sca
+
+    c = 5.345 + ${r}
+    DO k = 2, nz
+      t(k) = c * k
+      q(k) = q(k - 1) + t(k) * c
+    END DO
+    q(nz) = q(nz) * c
+  END SUBROUTINE compute_${m}_${r}
+
+EOF
+      done
+      if [[ -n ${parent} ]]; then
+        cat <<EOF
+  SUBROUTINE forward_${m}(nproma, nz, q, t)
+    INTEGER, INTENT(IN) :: nproma, nz
+    REAL, INTENT(INOUT) :: t(:,:)
+    REAL, INTENT(INOUT) :: q(:,:)
+    INTEGER :: p
+
+    !\$claw sca forward
+    DO p = 1, nproma
+      CALL compute_${parent}_1(nz, q(p,:), t(p,:))
+    END DO
+  END SUBROUTINE forward_${m}
+EOF
+      fi
+      echo "END MODULE mo_perf_${m}"
+    } >"${file}"
+    echo "${file}"
+  done
+}
+
+###################################################################
+# Print the seconds elapsed since a given time.
+# Arguments:
+#   $1: start time as given by date +%s.%N
+###################################################################
+function perf::elapsed() {
+  awk -v start="$1" -v end="$(date +%s.%N)" \
+    'BEGIN { printf("%.2f\n", end - start) }'
+}
+
+###################################################################
+# Compare the measurements with the baseline.
+# Arguments:
+#   $1: measurements file
+#   $2: baseline file
+#   $3: time tolerance in percent
+#   $4: RSS tolerance in percent
+# Output:
+#   One line per regression
+###################################################################
+function perf::compare() {
+  awk -v time_tol="$3" -v rss_tol="$4" '
+    NR == FNR { baseline[$1] = $2; next }
+    ($1 in baseline) {
+      tol = ($1 ~ /\.rss$/) ? rss_tol : time_tol
+      # Ignore variations under the timer and sampling resolution
+      floor = ($1 ~ /\.rss$/) ? 1024 : (($1 ~ /^phase\./) ? 50 : 0.1)
+      limit = baseline[$1] * (1 + tol / 100)
+      if($2 > limit && $2 - baseline[$1] > floor) {
+        printf("%s: %s > %s (baseline %s, +%s%%)\n", $1, $2, limit,
+          baseline[$1], tol)
+      }
+    }' "$2" "$1"
+}
+
+clawfc=""
+work_dir="."
+baseline=""
+update_baseline=false
+time_tolerance=20
+rss_tolerance=10
+generate=""
+flags=()
+inputs=()
+
+while [[ -n "$1" ]]; do
+  case "$1" in
+  --clawfc=*) clawfc="${1#--clawfc=}" ;;
+  --work-dir=*) work_dir="${1#--work-dir=}" ;;
+  --baseline=*) baseline="${1#--baseline=}" ;;
+  --update-baseline) update_baseline=true ;;
+  --time-tolerance=*) time_tolerance="${1#--time-tolerance=}" ;;
+  --rss-tolerance=*) rss_tolerance="${1#--rss-tolerance=}" ;;
+  --generate=*) generate="${1#--generate=}" ;;
+  --flags=*) read -r -a flags <<<"${1#--flags=}" ;;
+  -h | --help)
+    perf::print_help
+    exit 0
+    ;;
+  *) inputs+=("$1") ;;
+  esac
+  shift
+done
+
+if [[ -z ${clawfc} ]]; then
+  echo "Error: --clawfc is required"
+  exit 1
+fi
+
+mkdir -p "${work_dir}"
+work_dir=$(cd "${work_dir}" && pwd)
+rm -rf "${work_dir}/out" "${work_dir}/xmod"
+mkdir -p "${work_dir}/out" "${work_dir}/xmod"
+
+if [[ -n ${generate} ]]; then
+  IFS=',' read -r gen_modules gen_depth gen_routines <<<"${generate}"
+  rm -rf "${work_dir}/input"
+  while IFS= read -r file; do
+    inputs+=("${file}")
+  done < <(perf::generate "${work_dir}/input" "${gen_modules}" \
+    "${gen_depth}" "${gen_routines}")
+fi
+
+if [[ ${#inputs[@]} -eq 0 ]]; then
+  echo "Error: no input file"
+  exit 1
+fi
+
+# Peak RSS is measured with GNU time when available
+time_cmd=""
+if /usr/bin/time -f "%e %M" -o /dev/null true 2>/dev/null; then
+  time_cmd=/usr/bin/time
+fi
+
+results="${work_dir}/measurements.txt"
+phases="${work_dir}/phases.txt"
+rm -f "${results}" "${phases}"
+build_rss=0
+build_start=$(date +%s.%N)
+
+for file in "${inputs[@]}"; do
+  file="$(cd "$(dirname "${file}")" && pwd)/$(basename "${file}")"
+  name=$(basename "$(dirname "${file}")")_$(basename "${file}" .f90)
+  xmod_dir="${work_dir}/xmod/$(dirname "${file}" | tr '/' '_')"
+  mkdir -p "${xmod_dir}"
+  (cd "$(dirname "${file}")" || exit 1
+    if [[ -n ${time_cmd} ]]; then
+      ${time_cmd} -f "%e %M" -o "${work_dir}/time.txt" \
+        "${clawfc}" "${flags[@]}" --phase-times="${phases}" -J "${xmod_dir}" \
+        -o "${work_dir}/out/${name}.f90" "${file}"
+    else
+      start=$(date +%s.%N)
+      "${clawfc}" "${flags[@]}" --phase-times="${phases}" -J "${xmod_dir}" \
+        -o "${work_dir}/out/${name}.f90" "${file}" || exit 1
+      echo "$(perf::elapsed "${start}") 0" >"${work_dir}/time.txt"
+    fi
+  ) || {
+    echo "Error: clawfc failed on ${file}"
+    exit 1
+  }
+  read -r wall rss <"${work_dir}/time.txt"
+  echo "file.${name}.wall ${wall}" >>"${results}"
+  if [[ -n ${time_cmd} ]]; then
+    echo "file.${name}.rss ${rss}" >>"${results}"
+    if ((rss > build_rss)); then
+      build_rss=${rss}
+    fi
+  fi
+done
+
+build_wall=$(perf::elapsed "${build_start}")
+echo "build.wall ${build_wall}" >>"${results}"
+if [[ -n ${time_cmd} ]]; then
+  echo "build.rss ${build_rss}" >>"${results}"
+fi
+# Translator phases are summed over the files
+if [[ -f ${phases} ]]; then
+  awk -F'\t' '{ t[$2] += $3 } END { for(p in t) print "phase." p, t[p] }' \
+    "${phases}" | sort >>"${results}"
+fi
+cat "${results}"
+
+if [[ -z ${baseline} ]]; then
+  exit 0
+fi
+
+if [[ ${update_baseline} == true ]] || [[ ! -f ${baseline} ]]; then
+  mkdir -p "$(dirname "${baseline}")"
+  cp "${results}" "${baseline}"
+  echo "Baseline recorded in ${baseline}"
+  exit 0
+fi
+
+regressions=$(perf::compare "${results}" "${baseline}" "${time_tolerance}" \
+  "${rss_tolerance}")
+if [[ -n ${regressions} ]]; then
+  echo "Performance regressions compared to ${baseline}:"
+  echo "${regressions}"
+  exit 1
+fi
+echo "No regression compared to ${baseline}"